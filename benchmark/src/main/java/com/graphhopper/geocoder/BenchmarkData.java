@@ -0,0 +1,130 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonArray;
+import com.github.jsonj.JsonObject;
+import com.github.jsonj.tools.JsonParser;
+import static com.github.jsonj.tools.JsonBuilder.$;
+import static com.github.jsonj.tools.JsonBuilder._;
+import static com.github.jsonj.tools.JsonBuilder.array;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.GHPoint;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Inputs shared by the benchmarks. Synthetic data is created from a fixed seed
+ * so that results of different runs are comparable, the recorded real world
+ * input is the Krumbach boundary also used in JsonFeederTest.
+ *
+ * @author Peter Karich
+ */
+public class BenchmarkData {
+
+    public static final long SEED = 123;
+
+    /**
+     * @return the geometry and tags of osmrelation/444105 with 1531 points
+     */
+    public static JsonObject loadKrumbach() {
+        try {
+            return new JsonParser().parse(GeocoderHelper.toString(
+                    BenchmarkData.class.getResourceAsStream("krumbach.json"))).asObject();
+        } catch (IOException ex) {
+            throw new RuntimeException("cannot load krumbach.json", ex);
+        }
+    }
+
+    public static JsonArray getOuterRing(JsonObject obj) {
+        return obj.getObject("geometry").getArray("coordinates").get(0).asArray();
+    }
+
+    /**
+     * Creates a closed and jagged ring around the specified center similar to
+     * real boundaries.
+     */
+    public static PointList createRingGH(Random rand, double lat, double lon, double radius, int points) {
+        PointList ring = new PointList(points, false);
+        for (int i = 0; i < points - 1; i++) {
+            double angle = 2 * Math.PI * i / (points - 1);
+            double r = radius * (0.7 + 0.3 * rand.nextDouble());
+            ring.add(lat + r * Math.sin(angle), lon + r * Math.cos(angle));
+        }
+        ring.add(ring.getLatitude(0), ring.getLongitude(0));
+        return ring;
+    }
+
+    /**
+     * @return the ring of createRingGH with lon,lat coordinates like in GeoJSON
+     */
+    public static JsonArray createRing(Random rand, double lat, double lon, double radius, int points) {
+        return GeocoderHelper.pointListGHToArray(createRingGH(rand, lat, lon, radius, points));
+    }
+
+    public static JsonArray createLineString(Random rand, double lat, double lon, int points) {
+        JsonArray line = array();
+        for (int i = 0; i < points; i++) {
+            lat += (rand.nextDouble() - 0.3) * 0.001;
+            lon += (rand.nextDouble() - 0.3) * 0.001;
+            line.add(array(lon, lat));
+        }
+        return line;
+    }
+
+    /**
+     * Creates an unprocessed object like the osm2geojson output for a boundary
+     * relation which is the input for MyOsmPostProcessor.interpretTags
+     */
+    public static JsonObject createRawBoundary(Random rand, int points) {
+        JsonObject tags = $(
+                _("boundary", "administrative"),
+                _("admin_level", "8"),
+                _("name", "Testhausen"),
+                _("name:en", "Testtown"),
+                _("population", "12345"),
+                _("wikipedia", "de:Testhausen"),
+                _("addr:postcode", "12345"));
+        JsonArray coordinates = array();
+        coordinates.add(createRing(rand, 50, 10, 0.1, points));
+        return $(_("id", "osmrelation/123"),
+                _("tags", tags),
+                _("title", "Testhausen"),
+                _("admin_centre", "1237"),
+                _("geometry", $(_("type", "Polygon"), _("coordinates", coordinates))));
+    }
+
+    /**
+     * Creates count boundaries on a grid within the specified area where
+     * neighbours overlap a bit, similar to different admin levels.
+     */
+    public static List<Info> createBoundaries(Random rand, double minLat, double minLon, double width,
+            int count, int points) {
+        List<Info> list = new ArrayList<Info>(count);
+        int perRow = (int) Math.ceil(Math.sqrt(count));
+        double cell = width / perRow;
+        for (int i = 0; i < count; i++) {
+            double lat = minLat + (i / perRow + 0.5) * cell;
+            double lon = minLon + (i % perRow + 0.5) * cell;
+            PointList pl = createRingGH(rand, lat, lon, cell * 0.6, points);
+            List<PointList> polygons = new ArrayList<PointList>(1);
+            polygons.add(pl);
+            list.add(new Info("osmrelation/" + i, new GHPoint(lat, lon), polygons,
+                    Collections.singletonList("boundary " + i)));
+        }
+        return list;
+    }
+
+    /**
+     * @return lat,lon pairs
+     */
+    public static double[] createQueryPoints(Random rand, double minLat, double minLon, double width, int count) {
+        double[] points = new double[count * 2];
+        for (int i = 0; i < count; i++) {
+            points[2 * i] = minLat + rand.nextDouble() * width;
+            points[2 * i + 1] = minLon + rand.nextDouble() * width;
+        }
+        return points;
+    }
+}
@@ -0,0 +1,130 @@
+package com.graphhopper.geocoder;
+
+import com.graphhopper.util.shapes.BBox;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Building the BoundaryIndex and point in polygon queries against it like
+ * the RelationShipFixer does for every document.
+ *
+ * @author Peter Karich
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BoundaryIndexBenchmark {
+
+    private static final int QUERIES = 1000;
+    private static final double MIN_LAT = 47, MIN_LON = 6, WIDTH = 8;
+    @Param({"100", "2000"})
+    public int boundaries;
+    @Param({"64", "512"})
+    public int points;
+    private List<Info> infos;
+    private BoundaryIndex index;
+    private double[] queries;
+    private double[] queryLats, queryLons;
+    private ExecutorService executor;
+    private Info containsInfo;
+    private double[] containsQueries;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rand = new Random(BenchmarkData.SEED);
+        infos = BenchmarkData.createBoundaries(rand, MIN_LAT, MIN_LON, WIDTH, boundaries, points);
+        index = add(1);
+        queries = BenchmarkData.createQueryPoints(rand, MIN_LAT, MIN_LON, WIDTH, QUERIES);
+        queryLats = new double[queries.length / 2];
+        queryLons = new double[queries.length / 2];
+        for (int i = 0; i < queryLats.length; i++) {
+            queryLats[i] = queries[2 * i];
+            queryLons[i] = queries[2 * i + 1];
+        }
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+        // point in polygon test without the index, the query points are all close to the info
+        containsInfo = infos.get(infos.size() / 2);
+        double[] center = GeocoderHelper.calcCentroidGH(containsInfo.polygons.get(0));
+        double radius = WIDTH / Math.ceil(Math.sqrt(boundaries));
+        containsQueries = BenchmarkData.createQueryPoints(rand, center[0] - radius, center[1] - radius,
+                2 * radius, QUERIES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    BoundaryIndex add(int threads) {
+        // the same tile width as in the RelationShipFixer
+        BoundaryIndexBuilder builder = new BoundaryIndexBuilder(new BBox(MIN_LON, MIN_LON + WIDTH, MIN_LAT, MIN_LAT + WIDTH), 10000);
+        for (Info info : infos) {
+            builder.add(info);
+        }
+        return builder.build(threads);
+    }
+
+    @Benchmark
+    public BoundaryIndex add() {
+        return add(1);
+    }
+
+    @Benchmark
+    public BoundaryIndex addParallel() {
+        return add(Runtime.getRuntime().availableProcessors());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void searchContaining(Blackhole bh) {
+        for (int i = 0; i < queries.length; i += 2) {
+            int[] res = index.searchContaining(queries[i], queries[i + 1]);
+            bh.consume(res);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int[] searchContainingBatch() {
+        return index.searchContaining(queryLats, queryLons, null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int[] searchContainingBatchParallel() {
+        return index.searchContaining(queryLats, queryLons, executor);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int contains() {
+        int found = 0;
+        for (int i = 0; i < containsQueries.length; i += 2) {
+            if (containsInfo.contains(containsQueries[i], containsQueries[i + 1]))
+                found++;
+        }
+        return found;
+    }
+}
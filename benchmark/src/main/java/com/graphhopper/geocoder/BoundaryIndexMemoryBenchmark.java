@@ -0,0 +1,79 @@
+package com.graphhopper.geocoder;
+
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares the retained heap of the boundaries as Info objects, which the
+ * BoundaryIndex kept before, with the packed arrays of the BoundaryIndex. The
+ * is_in chains repeat county, state and country like real admin boundaries
+ * and every value is a new String like after parsing the search hits. This is
+ * no JMH benchmark as JMH measures time, run it via
+ * <pre>java -cp target/benchmarks.jar com.graphhopper.geocoder.BoundaryIndexMemoryBenchmark [boundaries] [points]</pre>
+ *
+ * @author Peter Karich
+ */
+public class BoundaryIndexMemoryBenchmark {
+
+    private static final double MIN_LAT = 47, MIN_LON = 6, WIDTH = 8;
+
+    public static void main(String[] args) throws InterruptedException {
+        int boundaries = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int points = args.length > 1 ? Integer.parseInt(args[1]) : 128;
+        Random rand = new Random(BenchmarkData.SEED);
+
+        long start = usedHeap();
+        List<Info> infos = createInfos(rand, boundaries, points);
+        long infoBytes = usedHeap() - start;
+
+        // the same tile width as in the RelationShipFixer
+        BoundaryIndexBuilder builder = new BoundaryIndexBuilder(new BBox(MIN_LON, MIN_LON + WIDTH, MIN_LAT, MIN_LAT + WIDTH), 10000);
+        for (Info info : infos) {
+            builder.add(info);
+        }
+        BoundaryIndex index = builder.build();
+        // the index must not reference the infos
+        builder = null;
+        infos = null;
+        long indexBytes = usedHeap() - start;
+
+        System.out.println(String.format(Locale.ROOT,
+                "%d boundaries with %d points, Info objects: %.1f MB, BoundaryIndex: %.1f MB (arrays %.1f MB), ratio %.2f",
+                index.size(), points, infoBytes / 1e6, indexBytes / 1e6, index.getMemoryUsage() / 1e6,
+                (double) indexBytes / infoBytes));
+    }
+
+    static List<Info> createInfos(Random rand, int count, int points) {
+        List<Info> list = new ArrayList<Info>(count);
+        int perRow = (int) Math.ceil(Math.sqrt(count));
+        double cell = WIDTH / perRow;
+        for (int i = 0; i < count; i++) {
+            double lat = MIN_LAT + (i / perRow + 0.5) * cell;
+            double lon = MIN_LON + (i % perRow + 0.5) * cell;
+            PointList pl = BenchmarkData.createRingGH(rand, lat, lon, cell * 0.6, points);
+            List<PointList> polygons = new ArrayList<PointList>(1);
+            polygons.add(pl);
+            // the fixer concatenates the ids of place and boundary
+            String id = "osmnode/" + (100000000L + i) + "|osmrelation/" + (1000000L + i);
+            List<String> isIn = new ArrayList<String>(Arrays.asList("Gemeinde " + i, "Landkreis " + i / 50,
+                    "Bundesland " + i / 1000, new String("Deutschland")));
+            list.add(new Info(id, new GHPoint(lat, lon), polygons, isIn));
+        }
+        return list;
+    }
+
+    static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,95 @@
+package com.graphhopper.geocoder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.util.PointList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the fetch side of the stored bounds: parsing a source with GeoJSON
+ * bounds into PointLists (fixer) and to the API response vs. the same for
+ * bounds_enc. The source sizes of both formats are printed in the setup, the
+ * index size is logged by the feeder.
+ *
+ * @author Peter Karich
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BoundsFormatBenchmark {
+
+    @Param({"256", "4096", "krumbach"})
+    public String input;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private List<PointList> polygons;
+    private String geoJsonSource;
+    private String encodedSource;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random rand = new Random(BenchmarkData.SEED);
+        PointList ring;
+        if ("krumbach".equals(input))
+            ring = GeocoderHelper.polygonToPointListGH(BenchmarkData.getOuterRing(BenchmarkData.loadKrumbach()));
+        else
+            ring = BenchmarkData.createRingGH(rand, 50, 10, 0.1, Integer.parseInt(input));
+        polygons = new ArrayList<PointList>();
+        polygons.add(ring);
+
+        Map<String, Object> source = new HashMap<String, Object>();
+        source.put("name", "Krumbach");
+        source.put("bounds", GeometryCodec.toGeoJson(polygons));
+        geoJsonSource = mapper.writeValueAsString(source);
+        source.remove("bounds");
+        source.put("bounds_enc", GeometryCodec.encodeBase64(polygons));
+        encodedSource = mapper.writeValueAsString(source);
+        System.out.println("\nsource bytes for " + input + ", GeoJSON: " + geoJsonSource.length()
+                + ", bounds_enc: " + encodedSource.length());
+    }
+
+    @Benchmark
+    public List<PointList> fetchGeoJson() throws IOException {
+        return GeometryCodec.getPolygons(mapper.readValue(geoJsonSource, Map.class));
+    }
+
+    @Benchmark
+    public List<PointList> fetchEncoded() throws IOException {
+        return GeometryCodec.getPolygons(mapper.readValue(encodedSource, Map.class));
+    }
+
+    @Benchmark
+    public String responseGeoJson() throws IOException {
+        return mapper.writeValueAsString(mapper.readValue(geoJsonSource, Map.class));
+    }
+
+    @Benchmark
+    public String responseEncoded() throws IOException {
+        Map<String, Object> source = mapper.readValue(encodedSource, Map.class);
+        source.put("bounds", GeometryCodec.toGeoJson(GeometryCodec.decodeBase64((String) source.remove("bounds_enc"))));
+        return mapper.writeValueAsString(source);
+    }
+
+    @Benchmark
+    public String encode() {
+        return GeometryCodec.encodeBase64(polygons);
+    }
+}
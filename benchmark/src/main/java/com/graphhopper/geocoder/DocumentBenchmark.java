@@ -0,0 +1,95 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonArray;
+import com.github.jsonj.JsonObject;
+import com.github.jsonj.tools.JsonParser;
+import com.graphhopper.util.PointList;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.elasticsearch.client.transport.TransportClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The CPU bound part of the import: MyOsmPostProcessor.interpretTags followed
+ * by JsonFeeder.createDoc which simplifies the geometry. Nothing is sent to
+ * Elasticsearch, the client has no transport address.
+ *
+ * @author Peter Karich
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocumentBenchmark {
+
+    @Param({"64", "1024", "krumbach"})
+    public String input;
+    private TransportClient client;
+    private JsonFeeder feeder;
+    private MyOsmPostProcessor postProcessor;
+    private JsonObject raw;
+    private JsonObject doc;
+    private PointList pointList;
+    private JsonArray ring;
+
+    @Setup
+    public void setUp() {
+        client = new TransportClient();
+        feeder = new JsonFeeder(new Configuration(), client);
+        postProcessor = new MyOsmPostProcessor(new JsonParser());
+        raw = BenchmarkData.createRawBoundary(new Random(BenchmarkData.SEED),
+                "krumbach".equals(input) ? 1531 : Integer.parseInt(input));
+        if ("krumbach".equals(input))
+            // recorded after interpretTags
+            doc = BenchmarkData.loadKrumbach();
+        else
+            doc = postProcessor.interpretTags(raw.deepClone(), raw.deepClone());
+
+        ring = BenchmarkData.getOuterRing(doc);
+        pointList = GeocoderHelper.polygonToPointListGH(ring);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+    }
+
+    /**
+     * interpretTags modifies its input, this is the cost of the necessary copy
+     * which has to be subtracted from interpretTags.
+     */
+    @Benchmark
+    public JsonObject cloneBaseline() {
+        return raw.deepClone();
+    }
+
+    @Benchmark
+    public JsonObject interpretTags() {
+        JsonObject obj = raw.deepClone();
+        return postProcessor.interpretTags(obj, obj);
+    }
+
+    @Benchmark
+    public JsonArray simplify() {
+        return feeder.simplify(pointList, ring);
+    }
+
+    @Benchmark
+    public JsonObject createDoc() throws IOException {
+        return feeder.createDoc(doc);
+    }
+}
@@ -0,0 +1,69 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonArray;
+import com.graphhopper.util.PointList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Centroid, area and middle point calculations of GeocoderHelper. The input
+ * "krumbach" is the recorded boundary, all other inputs are synthetic rings
+ * or line strings with the specified number of points.
+ *
+ * @author Peter Karich
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeometryBenchmark {
+
+    @Param({"16", "256", "4096", "krumbach"})
+    public String input;
+    private PointList polygon;
+    private JsonArray lineString;
+
+    @Setup
+    public void setUp() {
+        Random rand = new Random(BenchmarkData.SEED);
+        JsonArray ring;
+        if ("krumbach".equals(input)) {
+            ring = BenchmarkData.getOuterRing(BenchmarkData.loadKrumbach());
+            // use the boundary as line string to have a real world input for both
+            lineString = ring;
+        } else {
+            int points = Integer.parseInt(input);
+            ring = BenchmarkData.createRing(rand, 50, 10, 0.1, points);
+            lineString = BenchmarkData.createLineString(rand, 50, 10, points);
+        }
+        polygon = GeocoderHelper.polygonToPointListGH(ring);
+    }
+
+    @Benchmark
+    public double[] calcCentroidGH() {
+        return GeocoderHelper.calcCentroidGH(polygon);
+    }
+
+    @Benchmark
+    public double calcAreaGH() {
+        return GeocoderHelper.calcAreaGH(polygon);
+    }
+
+    @Benchmark
+    public double[] calcMiddlePoint() {
+        return GeocoderHelper.calcMiddlePoint(lineString);
+    }
+}
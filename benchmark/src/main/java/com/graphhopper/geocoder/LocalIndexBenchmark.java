@@ -0,0 +1,187 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import static com.github.jsonj.tools.JsonBuilder.$;
+import static com.github.jsonj.tools.JsonBuilder._;
+import static com.github.jsonj.tools.JsonBuilder.array;
+import com.graphhopper.util.Helper;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.search.SearchHit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.node.NodeBuilder.nodeBuilder;
+
+/**
+ * Search and suggest of the local backend vs. an embedded Elasticsearch node
+ * with the same documents: places and streets named like after the fixer,
+ * e.g. 'Waldweg, Bergdorf'. Elasticsearch is called in the same JVM without
+ * HTTP and the sources of the hits are parsed like in GeocoderResource.
+ *
+ * @author Peter Karich
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalIndexBenchmark {
+
+    private static final String[] SYLLABLES = {"berg", "dorf", "bach", "au", "wald", "heim", "stein", "feld",
+        "hausen", "burg", "tal", "brück", "kirch", "lin", "ro", "sa"};
+    private static final String[] STREET_SUFFIXES = {"straße", "weg", "gasse", "allee", "ring"};
+    private static final int QUERIES = 1000;
+    @Param({"local", "elasticsearch"})
+    public String backend;
+    @Param({"20000", "200000"})
+    public int docs;
+    private File dir;
+    private Client client;
+    private Node node;
+    private LocalIndex localIndex;
+    private QueryHandler queryHandler;
+    private String[] searches;
+    private String[] suggestions;
+    private int current;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = File.createTempFile("local-index-benchmark", "");
+        dir.delete();
+        Configuration config = new Configuration();
+        if ("local".equals(backend)) {
+            config.set("geocoder.backend", "local");
+            config.set("geocoder.local.dir", dir.getAbsolutePath());
+            client = new TransportClient();
+        } else {
+            node = nodeBuilder().local(true).settings(settingsBuilder().
+                    put("cluster.name", "local-index-benchmark").
+                    put("gateway.type", "none").
+                    put("path.data", dir.getAbsolutePath())).node();
+            client = node.client();
+        }
+
+        JsonFeeder feeder = new JsonFeeder(config, client);
+        feeder.initIndices();
+        Random rand = new Random(BenchmarkData.SEED);
+        List<String> streets = new ArrayList<String>();
+        List<JsonObject> list = new ArrayList<JsonObject>();
+        // a tenth of the documents are places, the streets are named after the places
+        List<String> places = new ArrayList<String>();
+        for (int i = 0; i < docs; i++) {
+            double lat = 47 + 8 * rand.nextDouble(), lon = 6 + 8 * rand.nextDouble();
+            JsonObject obj;
+            if (i % 10 == 0) {
+                String place = createName(rand, 2 + rand.nextInt(2));
+                places.add(place);
+                obj = createDoc("osmnode/" + i, place, "village", lat, lon);
+                obj.put("population", rand.nextInt(100000));
+            } else {
+                String street = createName(rand, 1 + rand.nextInt(2)) + STREET_SUFFIXES[rand.nextInt(STREET_SUFFIXES.length)];
+                String name = street + ", " + places.get(rand.nextInt(places.size()));
+                streets.add(name);
+                obj = createDoc("osmway/" + i, name, "residential", lat, lon);
+            }
+            list.add(obj);
+            if (list.size() >= 1000) {
+                feed(feeder, list);
+                list.clear();
+            }
+        }
+        feed(feeder, list);
+        feeder.closeSink();
+
+        if (node != null) {
+            client.admin().indices().prepareRefresh("osm").get();
+            client.admin().indices().prepareOptimize("osm").setMaxNumSegments(1).get();
+            queryHandler = new QueryHandler(config, client);
+        } else {
+            localIndex = LocalIndex.open(dir);
+        }
+
+        // full searches and the keystrokes of the suggest box
+        searches = new String[QUERIES];
+        suggestions = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String name = streets.get(rand.nextInt(streets.size())).replace(",", "");
+            searches[i] = name;
+            suggestions[i] = name.substring(0, 1 + rand.nextInt(name.length()));
+        }
+    }
+
+    static String createName(Random rand, int syllables) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < syllables; i++) {
+            sb.append(SYLLABLES[rand.nextInt(SYLLABLES.length)]);
+        }
+        return Character.toUpperCase(sb.charAt(0)) + sb.substring(1);
+    }
+
+    static JsonObject createDoc(String id, String name, String type, double lat, double lon) {
+        return $(_("id", id), _("name", name), _("type", type),
+                _("geometry", $(_("type", "Point"), _("coordinates", array(lon, lat)))));
+    }
+
+    static void feed(JsonFeeder feeder, List<JsonObject> list) {
+        if (!feeder.bulkUpdate(list, "osm", "osmobject").isEmpty())
+            throw new IllegalStateException("cannot feed the documents");
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        if (node != null)
+            node.close();
+        Helper.removeDir(dir);
+    }
+
+    String next(String[] queries) {
+        current = (current + 1) % QUERIES;
+        return queries[current];
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> search() {
+        String query = next(searches);
+        if (localIndex != null)
+            return localIndex.search(query, 10);
+        return getSources(queryHandler.createRequest(query, 10).get());
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> suggest() {
+        String query = next(suggestions);
+        if (localIndex != null)
+            return localIndex.suggest(query, 10);
+        return getSources(queryHandler.createSuggestRequest(query, 10).get());
+    }
+
+    static List<Map<String, Object>> getSources(SearchResponse rsp) {
+        List<Map<String, Object>> list = new ArrayList<Map<String, Object>>();
+        for (SearchHit hit : rsp.getHits().getHits()) {
+            list.add(hit.getSource());
+        }
+        return list;
+    }
+}
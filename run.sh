@@ -33,6 +33,12 @@ elif [ "x$ACTION" = "xserver" ]; then
   "$JAVA" $JAVA_OPTS -cp "$JAR" com.graphhopper.geocoder.http.HttpServerMain
 elif [ "x$ACTION" = "xfixer" ]; then
   "$JAVA" $JAVA_OPTS -cp "$JAR" com.graphhopper.geocoder.RelationShipFixer
+elif [ "x$ACTION" = "xpublish" ]; then
+  "$JAVA" $JAVA_OPTS -cp "$JAR" com.graphhopper.geocoder.IndexManager
+elif [ "x$ACTION" = "xupdate" ]; then
+  "$JAVA" $JAVA_OPTS -cp "$JAR" com.graphhopper.geocoder.IncrementalUpdater
+elif [ "x$ACTION" = "xload" ]; then
+  "$JAVA" $JAVA_OPTS -cp "$JAR" com.graphhopper.geocoder.BulkFileLoader
 else    
   echo unknown action $ACTION
 fi
@@ -16,8 +16,11 @@ public abstract class BaseES {
     protected Logger logger = LoggerFactory.getLogger(getClass());
     protected final Configuration config;
     protected final String osmType = "osmobject";
-    protected final String osmIndex = "osm";
+    // the alias or index for queries, a feeder or fixer can work on a different index
+    protected String osmIndex = "osm";
     protected Client client;
+    protected Metrics metrics = Metrics.getDefault();
+    protected final SpatialRouting routing;
 
     public BaseES(Configuration config, Client client) {
         this.config = config;
@@ -25,6 +28,7 @@ public abstract class BaseES {
             throw new IllegalArgumentException("client cannot be null");
 
         this.client = client;
+        routing = new SpatialRouting(config);
     }
 
     public static Client createClient(String cluster, String url, int port) {
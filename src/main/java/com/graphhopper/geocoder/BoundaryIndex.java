@@ -1,90 +1,263 @@
 package com.graphhopper.geocoder;
 
 import com.graphhopper.geohash.KeyAlgo;
-import com.graphhopper.geohash.LinearKeyAlgo;
 import com.graphhopper.util.DistanceCalc;
 import com.graphhopper.util.DistancePlaneProjection;
 import com.graphhopper.util.PointList;
-import com.graphhopper.util.shapes.BBox;
-import gnu.trove.procedure.TIntProcedure;
-import gnu.trove.set.hash.TIntHashSet;
+import com.graphhopper.util.shapes.GHPoint;
+import gnu.trove.list.array.TIntArrayList;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import org.elasticsearch.common.collect.IdentityHashSet;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
+ * An immutable index of boundaries, created via BoundaryIndexBuilder. All
+ * boundaries of a tile are stored in one array, so the index is compact and
+ * can be queried from several threads without locking. The boundaries belong
+ * to named layers like admin or postcode, all layers are searched in the same
+ * traversal of the tiles.
+ * <p/>
+ * The boundaries are not kept as Info objects but in primitive arrays per
+ * attribute: the bounding boxes, centers and areas are packed doubles, the
+ * points of all rings are fixed point integers (1e-7 degree like
+ * GeometryCodec) in one array and the is_in values are positions in a
+ * dictionary, so a state or country name is stored only once.
+ *
  * @author Peter Karich
  */
 public class BoundaryIndex {
 
     private static final DistanceCalc distCalc = new DistancePlaneProjection();
-    private final List<List<Info>> boundaries;
+    private static final double FACTOR = 1e7;
     private final KeyAlgo keyAlgo;
     private final double deltaLat, deltaLon;
-    private int size;
+    private final int[] offsets;
+    // the positions of the boundaries
+    private final int[] entries;
+    private final String[] layers;
+    // the position in layers for every boundary
+    private final int[] infoLayers;
+    private final String[] ids;
+    // minLat, minLon, maxLat, maxLon per boundary
+    private final double[] bboxes;
+    // lat, lon per boundary
+    private final double[] centers;
+    private final double[] areas;
+    // the rings of boundary b are ringOffsets[b] to ringOffsets[b + 1] - 1
+    private final int[] ringOffsets;
+    // the points of ring r are pointOffsets[r] to pointOffsets[r + 1] - 1
+    private final int[] pointOffsets;
+    // lat, lon per point
+    private final int[] points;
+    // the values of boundary b are words[valueIds[valueOffsets[b]]] to words[valueIds[valueOffsets[b + 1] - 1]]
+    private final int[] valueOffsets;
+    private final int[] valueIds;
+    private final String[] words;
+
+    BoundaryIndex(KeyAlgo keyAlgo, double deltaLat, double deltaLon, int[] offsets, int[] entries, Info[] infos,
+            String[] layers, int[] infoLayers) {
+        this.keyAlgo = keyAlgo;
+        this.deltaLat = deltaLat;
+        this.deltaLon = deltaLon;
+        this.offsets = offsets;
+        this.entries = entries;
+        this.layers = layers;
+        this.infoLayers = infoLayers;
+
+        int count = infos.length;
+        ids = new String[count];
+        bboxes = new double[4 * count];
+        centers = new double[2 * count];
+        areas = new double[count];
+        ringOffsets = new int[count + 1];
+        valueOffsets = new int[count + 1];
+        int rings = 0, pointCount = 0;
+        for (Info info : infos) {
+            rings += info.polygons.size();
+            for (PointList pl : info.polygons) {
+                pointCount += pl.size();
+            }
+        }
+        pointOffsets = new int[rings + 1];
+        points = new int[2 * pointCount];
+
+        Map<String, Integer> dictionary = new HashMap<String, Integer>();
+        List<String> wordList = new ArrayList<String>();
+        TIntArrayList valueList = new TIntArrayList();
+        int ring = 0, point = 0;
+        for (int b = 0; b < count; b++) {
+            Info info = infos[b];
+            ids[b] = info.getId();
+            areas[b] = info.getArea();
+            centers[2 * b] = info.getCenter().lat;
+            centers[2 * b + 1] = info.getCenter().lon;
+            double minLat = Double.MAX_VALUE, minLon = Double.MAX_VALUE;
+            double maxLat = -Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+            for (PointList pl : info.polygons) {
+                for (int p = 0; p < pl.size(); p++) {
+                    int lat = GeometryCodec.toFixed(pl.getLatitude(p));
+                    int lon = GeometryCodec.toFixed(pl.getLongitude(p));
+                    points[2 * point] = lat;
+                    points[2 * point + 1] = lon;
+                    point++;
+                    minLat = Math.min(minLat, lat / FACTOR);
+                    minLon = Math.min(minLon, lon / FACTOR);
+                    maxLat = Math.max(maxLat, lat / FACTOR);
+                    maxLon = Math.max(maxLon, lon / FACTOR);
+                }
+                ring++;
+                pointOffsets[ring] = point;
+            }
+            ringOffsets[b + 1] = ring;
+            bboxes[4 * b] = minLat;
+            bboxes[4 * b + 1] = minLon;
+            bboxes[4 * b + 2] = maxLat;
+            bboxes[4 * b + 3] = maxLon;
+
+            for (String value : info.getIsIn()) {
+                Integer word = dictionary.get(value);
+                if (word == null) {
+                    word = wordList.size();
+                    dictionary.put(value, word);
+                    wordList.add(value);
+                }
+                valueList.add(word);
+            }
+            valueOffsets[b + 1] = valueList.size();
+        }
+        valueIds = valueList.toArray();
+        words = wordList.toArray(new String[wordList.size()]);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @return the names of the layers, the admin layer is the first
+     */
+    public String[] getLayers() {
+        return layers.clone();
+    }
 
     /**
-     * @param b the maximum bounding box of this index
-     * @param distance the width of the tiles used in this index. Unit is meter.
+     * @return the position of the layer or -1 if the index has no such layer
      */
-    public BoundaryIndex(BBox b, double distance) {
-
-        // every tile is 10*10km^2 big
-        // double dist = 10 * 1000;
-        double maxLatDist = distCalc.calcDist(b.minLat, b.minLon, b.minLat, b.maxLon);
-        double maxLonDist = distCalc.calcDist(b.minLat, b.minLon, b.maxLat, b.minLon);
-        int latTiles = (int) (maxLatDist / distance);
-        int lonTiles = (int) (maxLonDist / distance);
-        if (latTiles == 0)
-            latTiles++;
-        if (lonTiles == 0)
-            lonTiles++;
-
-        keyAlgo = new LinearKeyAlgo(latTiles, lonTiles).setBounds(b);
-        int max = latTiles * lonTiles;
-        // reserve space
-        boundaries = new ArrayList<List<Info>>(max);
-        for (int i = 0; i < max; i++) {
-            boundaries.add(null);
+    public int getLayer(String name) {
+        for (int i = 0; i < layers.length; i++) {
+            if (layers[i].equals(name))
+                return i;
         }
-        deltaLat = (b.maxLat - b.minLat) / latTiles;
-        deltaLon = (b.maxLon - b.minLon) / lonTiles;
+        return -1;
+    }
+
+    public String getId(int position) {
+        return ids[position];
     }
 
-    public void add(final Info info) {
-        size++;
-        // determine all indices (keys) where we should store the polygon
-        TIntHashSet allKeys = new TIntHashSet();
-        for (PointList pl : info.polygons) {
-            for (int i = 0; i < pl.size(); i++) {
-                allKeys.add((int) keyAlgo.encode(pl.getLatitude(i), pl.getLongitude(i)));
+    public double getArea(int position) {
+        return areas[position];
+    }
+
+    /**
+     * @return the is_in of an admin boundary or the values of another layer
+     */
+    public List<String> getIsIn(final int position) {
+        final int from = valueOffsets[position];
+        final int size = valueOffsets[position + 1] - from;
+        return new AbstractList<String>() {
+            @Override public String get(int index) {
+                if (index < 0 || index >= size)
+                    throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+                return words[valueIds[from + index]];
+            }
+
+            @Override public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return the first value, e.g. the postcode, or null
+     */
+    public String getValue(int position) {
+        int from = valueOffsets[position];
+        return from == valueOffsets[position + 1] ? null : words[valueIds[from]];
+    }
+
+    /**
+     * Creates an Info of the boundary, e.g. for debugging. The index itself
+     * does not keep Info objects.
+     */
+    public Info getInfo(int position) {
+        List<PointList> polygons = new ArrayList<PointList>();
+        for (int r = ringOffsets[position]; r < ringOffsets[position + 1]; r++) {
+            PointList pl = new PointList(pointOffsets[r + 1] - pointOffsets[r], false);
+            for (int p = pointOffsets[r]; p < pointOffsets[r + 1]; p++) {
+                pl.add(points[2 * p] / FACTOR, points[2 * p + 1] / FACTOR);
             }
+            polygons.add(pl);
         }
+        return new Info(ids[position], layers[infoLayers[position]],
+                new GHPoint(centers[2 * position], centers[2 * position + 1]),
+                polygons, new ArrayList<String>(getIsIn(position)));
+    }
 
-        // now add only once to the lists
-        allKeys.forEach(new TIntProcedure() {
+    /**
+     * @return true if a ring of the boundary contains the point
+     */
+    public boolean contains(int position, double queryLat, double queryLon) {
+        int b = 4 * position;
+        if (queryLat < bboxes[b] || queryLon < bboxes[b + 1] || queryLat > bboxes[b + 2] || queryLon > bboxes[b + 3])
+            return false;
+        for (int r = ringOffsets[position]; r < ringOffsets[position + 1]; r++) {
+            int from = pointOffsets[r], to = pointOffsets[r + 1];
+            if (from == to)
+                continue;
 
-            @Override
-            public boolean execute(int key) {
-                List<Info> list = boundaries.get(key);
-                if (list == null) {
-                    list = new ArrayList<Info>();
-                    boundaries.set(key, list);
-                }
-                list.add(info);
-                return true;
+            boolean contains = false;
+            // http://stackoverflow.com/a/2922778/194609
+            for (int i = from, j = to - 1; i < to; j = i++) {
+                double latI = points[2 * i] / FACTOR, lonI = points[2 * i + 1] / FACTOR;
+                double latJ = points[2 * j] / FACTOR, lonJ = points[2 * j + 1] / FACTOR;
+                if (((latI > queryLat) != (latJ > queryLat))
+                        && (queryLon < (lonJ - lonI) * (queryLat - latI) / (latJ - latI) + lonI))
+                    contains = !contains;
             }
-        });
+            if (contains)
+                return true;
+        }
+        return false;
     }
-    
-    public int size() {
-        return size;
+
+    /**
+     * @return the approximate bytes of the arrays of this index
+     */
+    public long getMemoryUsage() {
+        long bytes = 4L * (offsets.length + entries.length + infoLayers.length + ringOffsets.length
+                + pointOffsets.length + points.length + valueOffsets.length + valueIds.length)
+                + 8L * (bboxes.length + centers.length + areas.length);
+        // a String with its char array has roughly 40 bytes overhead
+        for (String id : ids) {
+            bytes += 4 + 40 + 2 * id.length();
+        }
+        for (String word : words) {
+            bytes += 4 + 40 + 2 * word.length();
+        }
+        return bytes;
     }
 
-    public Collection<Info> searchContaining(double queryLat, double queryLon) {
-        Collection<Info> res = new IdentityHashSet<Info>();
+    /**
+     * @return the positions of all boundaries containing the point in
+     * ascending order
+     */
+    public int[] searchContaining(double queryLat, double queryLon) {
+        TIntArrayList res = new TIntArrayList();
 
         // search around the matching tiles => 9 tiles
         double maxLat = queryLat + deltaLat;
@@ -93,16 +266,40 @@ public class BoundaryIndex {
             for (double tmpLon = queryLon - deltaLon; tmpLon <= maxLon; tmpLon += deltaLon) {
                 // 1. filter by key (which is similar to a bounding box)
                 int keyPart = (int) keyAlgo.encode(tmpLat, tmpLon);
-                List<Info> list = boundaries.get(keyPart);
-                if (list != null) {
-                    for (Info info : list) {
-                        // skip if already containing
-                        if (res.contains(info))
-                            continue;
-                        // 2. filter by more precise 'contains' algorithm
-                        if (info.contains(queryLat, queryLon))
-                            res.add(info);
-                    }
+                for (int i = offsets[keyPart]; i < offsets[keyPart + 1]; i++) {
+                    int position = entries[i];
+                    // skip if already containing
+                    if (res.contains(position))
+                        continue;
+                    // 2. filter by more precise 'contains' algorithm
+                    if (contains(position, queryLat, queryLon))
+                        res.add(position);
+                }
+            }
+        }
+        res.sort();
+        return res.toArray();
+    }
+
+    /**
+     * @return the position of the smallest boundary of every layer containing
+     * the point or -1, the order is that of getLayers
+     */
+    public int[] searchLayers(double queryLat, double queryLon) {
+        int[] res = new int[layers.length];
+        Arrays.fill(res, -1);
+        double maxLat = queryLat + deltaLat;
+        double maxLon = queryLon + deltaLon;
+        for (double tmpLat = queryLat - deltaLat; tmpLat <= maxLat; tmpLat += deltaLat) {
+            for (double tmpLon = queryLon - deltaLon; tmpLon <= maxLon; tmpLon += deltaLon) {
+                int keyPart = (int) keyAlgo.encode(tmpLat, tmpLon);
+                for (int i = offsets[keyPart]; i < offsets[keyPart + 1]; i++) {
+                    int position = entries[i];
+                    int layer = infoLayers[position];
+                    if (res[layer] >= 0 && areas[res[layer]] <= areas[position])
+                        continue;
+                    if (contains(position, queryLat, queryLon))
+                        res[layer] = position;
                 }
             }
         }
@@ -110,13 +307,14 @@ public class BoundaryIndex {
     }
 
     /**
-     * Search the closest info object to the specified query coordinates.
+     * Search the closest boundary to the specified query coordinates.
      *
-     * @param maxDist return the info object ONLY IF the calculated distance is
+     * @param maxDist return the position ONLY IF the calculated distance is
      * smaller than maxDist
+     * @return the position of the boundary with the closest center or -1
      */
-    public Info searchClosest(double queryLat, double queryLon, double maxDist) {
-        Info closest = null;
+    public int searchClosest(double queryLat, double queryLon, double maxDist) {
+        int closest = -1;
         double distance = Double.MAX_VALUE;
 
         // search around the matching tiles => 9 tiles
@@ -125,20 +323,95 @@ public class BoundaryIndex {
         for (double tmpLat = queryLat - deltaLat; tmpLat <= maxLat; tmpLat += deltaLat) {
             for (double tmpLon = queryLon - deltaLon; tmpLon <= maxLon; tmpLon += deltaLon) {
                 int keyPart = (int) keyAlgo.encode(tmpLat, tmpLon);
-                List<Info> list = boundaries.get(keyPart);
-                if (list != null) {
-                    for (Info info : list) {
-                        double tmpDistance = info.calculateDistance(tmpLat, tmpLon);
-                        if (tmpDistance < distance) {
-                            distance = tmpDistance;
-                            closest = info;
-                        }
+                for (int i = offsets[keyPart]; i < offsets[keyPart + 1]; i++) {
+                    int position = entries[i];
+                    double tmpDistance = distCalc.calcDist(centers[2 * position], centers[2 * position + 1],
+                            queryLat, queryLon);
+                    if (tmpDistance < distance) {
+                        distance = tmpDistance;
+                        closest = position;
                     }
                 }
             }
         }
         if (maxDist < distance)
-            return null;
+            return -1;
         return closest;
     }
+
+    /**
+     * Resolves the containing admin boundary of many points at once, see
+     * searchLayers.
+     *
+     * @return the position (see getInfo) of the smallest admin boundary
+     * containing the point or -1 for every point
+     */
+    public int[] searchContaining(double[] lats, double[] lons, ExecutorService executor) {
+        return searchLayers(lats, lons, executor)[0];
+    }
+
+    /**
+     * Resolves the containing boundaries of all layers for many points at
+     * once, e.g. of a scroll page. The points are processed in the order of
+     * their tiles and nothing is allocated per point.
+     *
+     * @param executor splits the points into one chunk per processor to search
+     * them in parallel, or null to search in the calling thread
+     * @return for every layer and point the position (see getInfo) of the
+     * smallest boundary of the layer containing the point or -1
+     */
+    public int[][] searchLayers(final double[] lats, final double[] lons, ExecutorService executor) {
+        if (lats.length != lons.length)
+            throw new IllegalArgumentException("lats and lons need the same length " + lats.length + " vs. " + lons.length);
+
+        final int[][] res = new int[layers.length][lats.length];
+        // the key in the upper bits, the position of the point in the lower bits
+        final long[] sorted = new long[lats.length];
+        for (int p = 0; p < lats.length; p++) {
+            sorted[p] = (keyAlgo.encode(lats[p], lons[p]) << 32) | p;
+        }
+        Arrays.sort(sorted);
+
+        GeocoderHelper.runChunked(executor, sorted.length, new GeocoderHelper.ChunkTask() {
+            @Override public void run(int from, int to) {
+                searchLayers(lats, lons, sorted, from, to, res);
+            }
+        });
+        return res;
+    }
+
+    void searchLayers(double[] lats, double[] lons, long[] sorted, int from, int to, int[][] res) {
+        // the last point which checked a boundary, avoids checking it twice if it is in several tiles
+        int[] checked = new int[ids.length];
+        Arrays.fill(checked, -1);
+        double[] bestAreas = new double[layers.length];
+        for (int s = from; s < to; s++) {
+            int p = (int) sorted[s];
+            double queryLat = lats[p], queryLon = lons[p];
+            for (int layer = 0; layer < layers.length; layer++) {
+                res[layer][p] = -1;
+                bestAreas[layer] = Double.MAX_VALUE;
+            }
+
+            // search around the matching tiles => 9 tiles
+            double maxLat = queryLat + deltaLat;
+            double maxLon = queryLon + deltaLon;
+            for (double tmpLat = queryLat - deltaLat; tmpLat <= maxLat; tmpLat += deltaLat) {
+                for (double tmpLon = queryLon - deltaLon; tmpLon <= maxLon; tmpLon += deltaLon) {
+                    int keyPart = (int) keyAlgo.encode(tmpLat, tmpLon);
+                    for (int i = offsets[keyPart]; i < offsets[keyPart + 1]; i++) {
+                        int position = entries[i];
+                        if (checked[position] == p)
+                            continue;
+                        checked[position] = p;
+                        int layer = infoLayers[position];
+                        if (areas[position] < bestAreas[layer] && contains(position, queryLat, queryLon)) {
+                            res[layer][p] = position;
+                            bestAreas[layer] = areas[position];
+                        }
+                    }
+                }
+            }
+        }
+    }
 }
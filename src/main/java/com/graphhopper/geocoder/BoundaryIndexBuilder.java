@@ -0,0 +1,194 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonArray;
+import com.github.jsonj.JsonObject;
+import com.graphhopper.geohash.KeyAlgo;
+import com.graphhopper.geohash.LinearKeyAlgo;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
+import gnu.trove.set.hash.TIntHashSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Collects the boundaries for a BoundaryIndex. Adding is thread-safe, e.g.
+ * from several scroll workers. The tile keys of the boundaries are computed in
+ * parallel while building the index. The layers of the index are the layers of
+ * the added infos, the admin layer is always the first.
+ *
+ * @author Peter Karich
+ */
+public class BoundaryIndexBuilder {
+
+    private static final DistanceCalc distCalc = new DistancePlaneProjection();
+    private final ConcurrentLinkedQueue<Info> infos = new ConcurrentLinkedQueue<Info>();
+    private final KeyAlgo keyAlgo;
+    private final int tiles;
+    private final double deltaLat, deltaLon;
+
+    /**
+     * @param b the maximum bounding box of the index
+     * @param distance the width of the tiles used in the index. Unit is meter.
+     */
+    public BoundaryIndexBuilder(BBox b, double distance) {
+        double maxLatDist = distCalc.calcDist(b.minLat, b.minLon, b.minLat, b.maxLon);
+        double maxLonDist = distCalc.calcDist(b.minLat, b.minLon, b.maxLat, b.minLon);
+        int latTiles = (int) (maxLatDist / distance);
+        int lonTiles = (int) (maxLonDist / distance);
+        if (latTiles == 0)
+            latTiles++;
+        if (lonTiles == 0)
+            lonTiles++;
+
+        keyAlgo = new LinearKeyAlgo(latTiles, lonTiles).setBounds(b);
+        tiles = latTiles * lonTiles;
+        deltaLat = (b.maxLat - b.minLat) / latTiles;
+        deltaLon = (b.maxLon - b.minLon) / lonTiles;
+    }
+
+    public BoundaryIndexBuilder add(Info info) {
+        infos.add(info);
+        return this;
+    }
+
+    public int size() {
+        return infos.size();
+    }
+
+    /**
+     * Creates the infos of a layer from the Polygon and MultiPolygon features
+     * of a GeoJSON FeatureCollection. The value of an info is the property
+     * 'name' of the feature, features without name are skipped.
+     */
+    public static List<Info> createInfos(String layer, JsonObject collection) {
+        List<Info> res = new ArrayList<Info>();
+        JsonArray features = collection.getArray("features");
+        if (features == null)
+            throw new IllegalArgumentException("no FeatureCollection for layer " + layer);
+        for (JsonObject feature : features.objects()) {
+            JsonObject geometry = feature.getObject("geometry");
+            JsonObject properties = feature.getObject("properties");
+            String value = properties == null ? null : properties.getString("name");
+            if (geometry == null || value == null)
+                continue;
+
+            String type = geometry.getString("type");
+            JsonArray coordinates = geometry.getArray("coordinates");
+            List<JsonArray> polygonArrays = new ArrayList<JsonArray>();
+            if ("Polygon".equalsIgnoreCase(type))
+                polygonArrays.add(coordinates);
+            else if ("MultiPolygon".equalsIgnoreCase(type)) {
+                for (JsonArray arr : coordinates.arrays()) {
+                    polygonArrays.add(arr);
+                }
+            }
+
+            // only the outer rings like for the boundaries
+            List<PointList> polygons = new ArrayList<PointList>();
+            for (JsonArray arr : polygonArrays) {
+                PointList pl = GeocoderHelper.polygonToPointListGH(arr.get(0).asArray());
+                if (pl.size() >= 4)
+                    polygons.add(pl);
+            }
+            if (polygons.isEmpty())
+                continue;
+            double[] center = GeocoderHelper.calcCentroidGH(polygons.get(0));
+            res.add(new Info(layer + "/" + value, layer, new GHPoint(center[0], center[1]), polygons,
+                    Collections.singletonList(value)));
+        }
+        return res;
+    }
+
+    public BoundaryIndex build() {
+        return build(1);
+    }
+
+    /**
+     * Creates the immutable index from all boundaries added so far.
+     *
+     * @param threads the number of threads to compute the tile keys
+     */
+    public BoundaryIndex build(int threads) {
+        final Info[] list = infos.toArray(new Info[0]);
+        final int[][] keys = new int[list.length][];
+        ExecutorService service = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            GeocoderHelper.runChunked(service, list.length, new GeocoderHelper.ChunkTask() {
+                @Override public void run(int from, int to) {
+                    calcKeys(list, keys, from, to);
+                }
+            });
+        } finally {
+            if (service != null)
+                service.shutdown();
+        }
+
+        // compressed rows: the infos of tile t are entries[offsets[t]] to entries[offsets[t + 1] - 1]
+        int[] offsets = new int[tiles + 1];
+        for (int[] infoKeys : keys) {
+            for (int key : infoKeys) {
+                offsets[key + 1]++;
+            }
+        }
+        for (int t = 0; t < tiles; t++) {
+            offsets[t + 1] += offsets[t];
+        }
+        int[] entries = new int[offsets[tiles]];
+        int[] next = new int[tiles];
+        System.arraycopy(offsets, 0, next, 0, tiles);
+        for (int i = 0; i < list.length; i++) {
+            for (int key : keys[i]) {
+                entries[next[key]++] = i;
+            }
+        }
+
+        Map<String, Integer> layers = new LinkedHashMap<String, Integer>();
+        layers.put(Info.ADMIN, 0);
+        int[] infoLayers = new int[list.length];
+        for (int i = 0; i < list.length; i++) {
+            Integer layer = layers.get(list[i].getLayer());
+            if (layer == null) {
+                layer = layers.size();
+                layers.put(list[i].getLayer(), layer);
+            }
+            infoLayers[i] = layer;
+        }
+        return new BoundaryIndex(keyAlgo, deltaLat, deltaLon, offsets, entries, list,
+                layers.keySet().toArray(new String[layers.size()]), infoLayers);
+    }
+
+    void calcKeys(Info[] list, int[][] keys, int from, int to) {
+        for (int i = from; i < to; i++) {
+            // determine all indices (keys) where we should store the polygon, only once per key
+            TIntHashSet allKeys = new TIntHashSet();
+            for (PointList pl : list[i].polygons) {
+                double minLat = Double.MAX_VALUE, minLon = Double.MAX_VALUE;
+                double maxLat = -Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+                for (int p = 0; p < pl.size(); p++) {
+                    double lat = pl.getLatitude(p), lon = pl.getLongitude(p);
+                    allKeys.add((int) keyAlgo.encode(lat, lon));
+                    minLat = Math.min(minLat, lat);
+                    minLon = Math.min(minLon, lon);
+                    maxLat = Math.max(maxLat, lat);
+                    maxLon = Math.max(maxLon, lon);
+                }
+                // also the inner tiles, a coarse polygon e.g. of a custom layer has no points there
+                for (double lat = minLat + deltaLat; lat < maxLat; lat += deltaLat) {
+                    for (double lon = minLon + deltaLon; lon < maxLon; lon += deltaLon) {
+                        allKeys.add((int) keyAlgo.encode(lat, lon));
+                    }
+                }
+            }
+            keys[i] = allKeys.toArray();
+        }
+    }
+}
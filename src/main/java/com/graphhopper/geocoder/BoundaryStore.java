@@ -0,0 +1,99 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import com.github.jsonj.tools.JsonParser;
+import gnu.trove.iterator.TLongLongIterator;
+import gnu.trove.map.hash.TLongLongHashMap;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the boundary documents in a temporary file until the document of
+ * their center node is fed. Only the offsets per node id are in memory.
+ *
+ * @author Peter Karich
+ */
+public class BoundaryStore {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final JsonParser parser = new JsonParser();
+    // node id -> offset in the file
+    private final TLongLongHashMap offsets = new TLongLongHashMap();
+    private final List<String> duplicateIds = new ArrayList<String>();
+    private final List<JsonObject> duplicates = new ArrayList<JsonObject>();
+    private final File file;
+    private final RandomAccessFile raf;
+
+    public BoundaryStore() throws IOException {
+        file = File.createTempFile("geocoder-boundaries", ".bin");
+        raf = new RandomAccessFile(file, "rw");
+    }
+
+    public synchronized int size() {
+        return offsets.size() + duplicates.size();
+    }
+
+    /**
+     * Stores the boundary for its center node. If another boundary has the
+     * same center node it is kept in memory and never merged.
+     */
+    public synchronized void put(long nodeId, String id, JsonObject doc) throws IOException {
+        if (offsets.containsKey(nodeId)) {
+            duplicateIds.add(id);
+            duplicates.add(doc);
+            return;
+        }
+        long offset = raf.length();
+        raf.seek(offset);
+        raf.writeUTF(id);
+        byte[] bytes = doc.toString().getBytes(UTF8);
+        raf.writeInt(bytes.length);
+        raf.write(bytes);
+        offsets.put(nodeId, offset);
+    }
+
+    /**
+     * @return the boundary of the specified center node or null
+     */
+    public synchronized JsonObject remove(long nodeId) throws IOException {
+        if (!offsets.containsKey(nodeId))
+            return null;
+        long offset = offsets.remove(nodeId);
+        raf.seek(offset);
+        raf.readUTF();
+        return read();
+    }
+
+    /**
+     * Removes all boundaries whose center node was not found.
+     */
+    public synchronized void removeRemaining(List<String> ids, List<JsonObject> docs) throws IOException {
+        TLongLongIterator iter = offsets.iterator();
+        while (iter.hasNext()) {
+            iter.advance();
+            raf.seek(iter.value());
+            ids.add(raf.readUTF());
+            docs.add(read());
+        }
+        offsets.clear();
+        ids.addAll(duplicateIds);
+        docs.addAll(duplicates);
+        duplicateIds.clear();
+        duplicates.clear();
+    }
+
+    private JsonObject read() throws IOException {
+        byte[] bytes = new byte[raf.readInt()];
+        raf.readFully(bytes);
+        return parser.parse(new String(bytes, UTF8)).asObject();
+    }
+
+    public synchronized void close() throws IOException {
+        raf.close();
+        file.delete();
+    }
+}
@@ -0,0 +1,181 @@
+package com.graphhopper.geocoder;
+
+import com.graphhopper.util.StopWatch;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+
+/**
+ * Sends the files of the BulkFileSink to one or more clusters. The files are
+ * loaded in parallel, every target gets its own index like the feeder would
+ * create it, i.e. a new build index if geocoder.index.bluegreen is true.
+ *
+ * @author Peter Karich
+ */
+public class BulkFileLoader extends BaseES {
+
+    public static void main(String[] args) throws IOException {
+        Configuration config = new Configuration().reload();
+        new BulkFileLoader(config, BaseES.createClient(config)).start();
+    }
+
+    private final int bulkSize;
+
+    public BulkFileLoader(Configuration config, Client client) {
+        super(config, client);
+        bulkSize = config.getFeedBulkSize();
+    }
+
+    public void start() throws IOException {
+        String dir = config.getBulkFileDir();
+        if (dir == null)
+            throw new IllegalStateException("geocoder.bulkfile.dir is not set");
+        File[] files = BulkFileSink.listFiles(new File(dir));
+        if (files.length == 0)
+            throw new IllegalStateException("no bulk files found in " + dir);
+
+        List<String> names = new ArrayList<String>();
+        List<Client> clients = new ArrayList<Client>();
+        String targets = config.getLoadTargets();
+        if (targets == null) {
+            names.add(config.getElasticSearchCluster());
+            clients.add(client);
+        } else {
+            for (String target : targets.split(",")) {
+                String[] parts = parseTarget(target.trim());
+                names.add(parts[0]);
+                clients.add(BaseES.createClient(parts[0], parts[1], Integer.parseInt(parts[2])));
+            }
+        }
+
+        StopWatch sw = new StopWatch().start();
+        ExecutorService service = Executors.newFixedThreadPool(config.getLoadThreads());
+        try {
+            final long[] docs = new long[1];
+            GeocoderHelper.OrderedPipeline<Long> pipeline
+                    = new GeocoderHelper.OrderedPipeline<Long>(service, 2 * config.getLoadThreads(), "bulk file loader") {
+                @Override protected void handle(Long count) {
+                    docs[0] += count;
+                }
+            };
+            for (int i = 0; i < clients.size(); i++) {
+                Client target = clients.get(i);
+                String index = createIndex(target);
+                logger.info("loading " + files.length + " files into " + index + " of " + names.get(i));
+                for (File file : files) {
+                    pipeline.submit(createTask(target, names.get(i), index, file));
+                }
+            }
+            pipeline.finish();
+            float seconds = sw.stop().getSeconds();
+            logger.info("loaded " + docs[0] + " documents in " + seconds + "s, "
+                    + (int) (docs[0] / Math.max(seconds, 0.001f)) + " docs/s\nmetrics:\n" + metrics.toText());
+        } finally {
+            service.shutdownNow();
+            if (targets != null) {
+                for (Client c : clients) {
+                    c.close();
+                }
+            }
+        }
+    }
+
+    String createIndex(Client target) {
+        IndexManager manager = new IndexManager(config, target);
+        if (config.isBlueGreen())
+            return manager.createBuildIndex();
+        manager.initIndex(osmIndex);
+        return osmIndex;
+    }
+
+    private Callable<Long> createTask(final Client target, final String name, final String index, final File file) {
+        return new Callable<Long>() {
+            @Override public Long call() throws Exception {
+                return load(target, name, index, file);
+            }
+        };
+    }
+
+    /**
+     * Streams the file in bulk requests of geocoder.elasticsearch.bulksize
+     * documents.
+     *
+     * @return the number of documents
+     */
+    long load(Client target, String name, String index, File file) throws Exception {
+        InputStream is = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream bulk = new ByteArrayOutputStream(1 << 20);
+            byte[] buffer = new byte[1 << 16];
+            long docs = 0;
+            int lines = 0;
+            int read;
+            while ((read = is.read(buffer)) >= 0) {
+                int start = 0;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] != '\n')
+                        continue;
+                    // an action line and a source line per document
+                    lines++;
+                    if (lines == 2 * bulkSize) {
+                        bulk.write(buffer, start, i + 1 - start);
+                        start = i + 1;
+                        send(target, name, index, bulk);
+                        docs += bulkSize;
+                        lines = 0;
+                    }
+                }
+                bulk.write(buffer, start, read - start);
+            }
+            if (bulk.size() > 0) {
+                send(target, name, index, bulk);
+                docs += lines / 2;
+            }
+            return docs;
+        } finally {
+            is.close();
+        }
+    }
+
+    private void send(Client target, String name, String index, ByteArrayOutputStream bulk) throws Exception {
+        byte[] bytes = bulk.toByteArray();
+        bulk.reset();
+        BulkRequestBuilder brb = target.prepareBulk().add(bytes, 0, bytes.length, false, index, osmType);
+        BulkResponse rsp = brb.get();
+        metrics.counter(Metrics.name("geocoder_load_docs_total", "cluster", name)).addAndGet(brb.numberOfActions());
+        if (!rsp.hasFailures())
+            return;
+
+        int failures = 0;
+        for (BulkItemResponse br : rsp.getItems()) {
+            if (br.isFailed()) {
+                failures++;
+                logger.warn("Cannot index object " + br.getId() + " into " + name + ". Error:" + br.getFailureMessage());
+            }
+        }
+        metrics.counter(Metrics.name("geocoder_load_failures_total", "cluster", name)).addAndGet(failures);
+    }
+
+    /**
+     * @param target cluster@host:port
+     * @return cluster, host and port
+     */
+    static String[] parseTarget(String target) {
+        int at = target.indexOf('@');
+        int colon = target.lastIndexOf(':');
+        if (at <= 0 || colon < at + 2 || colon == target.length() - 1)
+            throw new IllegalArgumentException("target has to be cluster@host:port but was " + target);
+        return new String[]{target.substring(0, at), target.substring(at + 1, colon), target.substring(colon + 1)};
+    }
+}
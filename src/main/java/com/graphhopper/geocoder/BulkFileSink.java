@@ -0,0 +1,117 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import static com.github.jsonj.tools.JsonBuilder.$;
+import static com.github.jsonj.tools.JsonBuilder._;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the documents as bulk requests (NDJSON) into files instead of
+ * sending them. The action lines contain id and routing but no index, so
+ * BulkFileLoader can replay the files into any index and cluster. A new file
+ * is started if the current one exceeds the maximum size.
+ *
+ * @author Peter Karich
+ */
+public class BulkFileSink implements DocumentSink {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String PREFIX = "bulk-";
+    private static final String SUFFIX = ".ndjson";
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Metrics metrics = Metrics.getDefault();
+    private final File dir;
+    private final long maxFileSize;
+    private final SpatialRouting routing;
+    private OutputStream out;
+    private long fileSize;
+    private int fileCount;
+
+    public BulkFileSink(File dir, long maxFileSize, SpatialRouting routing) {
+        this.dir = dir;
+        this.maxFileSize = maxFileSize;
+        this.routing = routing;
+        if (!dir.exists() && !dir.mkdirs())
+            throw new IllegalStateException("cannot create " + dir);
+        if (listFiles(dir).length > 0)
+            throw new IllegalStateException("directory " + dir + " already contains bulk files");
+    }
+
+    @Override
+    public synchronized Collection<Integer> store(String indexName, String indexType, List<String> ids, List<JsonObject> docs) {
+        try {
+            for (int i = 0; i < docs.size(); i++) {
+                if (out == null || fileSize >= maxFileSize)
+                    nextFile();
+                JsonObject meta = $(_("_id", ids.get(i)));
+                String route = routing.getRouting(docs.get(i));
+                if (route != null)
+                    meta.put("_routing", route);
+                write($(_("index", meta)).toString());
+                write(docs.get(i).toString());
+            }
+            metrics.counter("geocoder_feed_written_total").addAndGet(docs.size());
+            return Collections.emptyList();
+        } catch (IOException ex) {
+            logger.error("cannot write " + docs.size() + " documents", ex);
+            List<Integer> failed = new ArrayList<Integer>(docs.size());
+            for (int i = 0; i < docs.size(); i++) {
+                failed.add(i);
+            }
+            return failed;
+        }
+    }
+
+    private void write(String line) throws IOException {
+        byte[] bytes = line.getBytes(UTF8);
+        out.write(bytes);
+        out.write('\n');
+        fileSize += bytes.length + 1;
+    }
+
+    private void nextFile() throws IOException {
+        if (out != null)
+            out.close();
+        File file = new File(dir, String.format(Locale.ROOT, "%s%05d%s", PREFIX, fileCount++, SUFFIX));
+        out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        fileSize = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        logger.info("wrote " + fileCount + " bulk files to " + dir);
+    }
+
+    /**
+     * @return the bulk files of the directory in the order they were written
+     */
+    public static File[] listFiles(File dir) {
+        File[] files = dir.listFiles(new FilenameFilter() {
+            @Override public boolean accept(File dir, String name) {
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }
+        });
+        if (files == null)
+            return new File[0];
+        Arrays.sort(files);
+        return files;
+    }
+}
@@ -0,0 +1,234 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import com.github.jsonj.tools.JsonParser;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads files with one JSON object per line, like the output of osm2geojson,
+ * and parses them in parallel. Uncompressed files are memory mapped and split
+ * into chunks at line boundaries. Gzip files are inflated on the reading
+ * thread while the chunks are parsed by the other threads. The chunks are
+ * handed over in the order of the file.
+ *
+ * @author Peter Karich
+ */
+public class ChunkedJsonReader {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAX_SEGMENT = 1 << 30;
+
+    public interface Transform {
+
+        /**
+         * Called in parallel for every parsed line.
+         *
+         * @return the object to handle or null to skip it
+         */
+        JsonObject transform(JsonObject obj);
+    }
+
+    public interface Handler {
+
+        /**
+         * Called for the objects of every chunk in the order of the file.
+         */
+        void handle(List<JsonObject> objects) throws IOException;
+    }
+
+    private final int threads;
+    private final int chunkSize;
+
+    /**
+     * @param chunkSize the minimum number of bytes parsed by one task
+     */
+    public ChunkedJsonReader(int threads, int chunkSize) {
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    public void read(File file, Transform transform, Handler handler) throws IOException {
+        if (file.getName().endsWith(".zst"))
+            throw new IOException("zstd is not supported, use gzip or decompress " + file);
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+        try {
+            Pipeline pipeline = new Pipeline(service, transform, handler);
+            if (isGzip(file))
+                readStream(file, pipeline);
+            else
+                readMapped(file, pipeline);
+            pipeline.finish();
+        } finally {
+            service.shutdownNow();
+        }
+    }
+
+    static boolean isGzip(File file) throws IOException {
+        InputStream is = new FileInputStream(file);
+        try {
+            return is.read() == 0x1f && is.read() == 0x8b;
+        } finally {
+            is.close();
+        }
+    }
+
+    void readMapped(File file, Pipeline pipeline) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                int length = (int) Math.min(size - position, MAX_SEGMENT);
+                ByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                // the next segment starts with a new line
+                int end = length;
+                if (position + length < size) {
+                    end = lastLineEnd(segment, length);
+                    if (end < 0)
+                        throw new IOException("line longer than " + MAX_SEGMENT + " bytes at " + position);
+                }
+                int start = 0;
+                while (start < end) {
+                    int chunkEnd = nextLineEnd(segment, Math.min(start + chunkSize, end) - 1, end);
+                    ByteBuffer chunk = segment.duplicate();
+                    chunk.limit(chunkEnd);
+                    chunk.position(start);
+                    pipeline.submit(chunk.slice());
+                    start = chunkEnd;
+                }
+                position += end;
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    void readStream(File file, Pipeline pipeline) throws IOException {
+        InputStream is = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16), 1 << 16);
+        try {
+            byte[] buffer = new byte[chunkSize];
+            int filled = 0;
+            while (true) {
+                int read = is.read(buffer, filled, buffer.length - filled);
+                if (read < 0)
+                    break;
+                filled += read;
+                if (filled < buffer.length)
+                    continue;
+
+                int end = lastLineEnd(ByteBuffer.wrap(buffer), filled);
+                if (end < 0) {
+                    // a long line, read more
+                    byte[] tmp = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, tmp, 0, filled);
+                    buffer = tmp;
+                    continue;
+                }
+                byte[] chunk = new byte[end];
+                System.arraycopy(buffer, 0, chunk, 0, end);
+                pipeline.submit(ByteBuffer.wrap(chunk));
+                // keep the incomplete line
+                System.arraycopy(buffer, end, buffer, 0, filled - end);
+                filled -= end;
+            }
+            if (filled > 0) {
+                byte[] chunk = new byte[filled];
+                System.arraycopy(buffer, 0, chunk, 0, filled);
+                pipeline.submit(ByteBuffer.wrap(chunk));
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * @return the position after the last new line before length or -1
+     */
+    static int lastLineEnd(ByteBuffer buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n')
+                return i + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the position after the first new line at or after from, or end
+     */
+    static int nextLineEnd(ByteBuffer buffer, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (buffer.get(i) == '\n')
+                return i + 1;
+        }
+        return end;
+    }
+
+    static List<JsonObject> parse(ByteBuffer chunk, JsonParser parser, Transform transform) {
+        List<JsonObject> res = new ArrayList<JsonObject>();
+        ByteBuffer buffer = chunk.duplicate();
+        byte[] bytes = new byte[0];
+        int start = 0;
+        int end = chunk.limit();
+        for (int i = 0; i <= end; i++) {
+            if (i < end && chunk.get(i) != '\n')
+                continue;
+            int length = i - start;
+            if (length > 0) {
+                if (bytes.length < length)
+                    bytes = new byte[Math.max(length, 2 * bytes.length)];
+                buffer.position(start);
+                buffer.get(bytes, 0, length);
+                String line = new String(bytes, 0, length, UTF8).trim();
+                if (!line.isEmpty()) {
+                    JsonObject obj = transform.transform(parser.parse(line).asObject());
+                    if (obj != null)
+                        res.add(obj);
+                }
+            }
+            start = i + 1;
+        }
+        return res;
+    }
+
+    /**
+     * Parses the chunks in parallel with a bounded number of pending chunks.
+     */
+    class Pipeline extends GeocoderHelper.OrderedPipeline<List<JsonObject>> {
+
+        private final Transform transform;
+        private final Handler handler;
+
+        Pipeline(ExecutorService service, Transform transform, Handler handler) {
+            super(service, 2 * threads, "chunk parser");
+            this.transform = transform;
+            this.handler = handler;
+        }
+
+        void submit(final ByteBuffer chunk) throws IOException {
+            submit(new Callable<List<JsonObject>>() {
+                @Override public List<JsonObject> call() {
+                    return parse(chunk, new JsonParser(), transform);
+                }
+            });
+        }
+
+        @Override protected void handle(List<JsonObject> objects) throws IOException {
+            handler.handle(objects);
+        }
+    }
+}
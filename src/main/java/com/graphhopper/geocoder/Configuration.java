@@ -57,6 +57,39 @@ public class Configuration {
         return Integer.parseInt(value);
     }
 
+    /**
+     * @return the threads which parse the osm2geojson output, with 1 the
+     * OsmPostProcessor of osm2geojson reads it
+     */
+    public int getFeedThreads() {
+        String value = get(appName + ".feed.threads");
+        if (value == null)
+            return Runtime.getRuntime().availableProcessors();
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * @return the bytes of the osm2geojson output parsed by one task
+     */
+    public int getFeedChunkSize() {
+        String value = get(appName + ".feed.chunksize");
+        if (value == null)
+            return 4 * 1024 * 1024;
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * @param type node, way or relation
+     * @return the name of the osm2geojson output file for the specified type,
+     * plain or gzip compressed
+     */
+    public String getFeedFile(String type) {
+        String value = get(appName + ".feed.file." + type);
+        if (value == null)
+            return type + "s.gz";
+        return value;
+    }
+
     public long getKeepInMinutes() {
         String value = get(appName + ".elasticsearch.keepinminutes");
         if (value == null)
@@ -109,6 +142,356 @@ public class Configuration {
         return Boolean.parseBoolean(value);
     }
 
+    /**
+     * @return true if documents are stored in and searched from the embedded
+     * index at getLocalIndexDir instead of Elasticsearch
+     */
+    public boolean isLocalBackend() {
+        return "local".equalsIgnoreCase(get(appName + ".backend"));
+    }
+
+    public String getLocalIndexDir() {
+        String value = get(appName + ".local.dir");
+        if (value == null)
+            return "local-index";
+        return value;
+    }
+
+    /**
+     * @param osmType node, way or relation
+     * @return the expected number of documents for the ETA of the progress
+     * report or 0 if unknown
+     */
+    public long getFeedExpectedCount(String osmType) {
+        String value = get(appName + ".feed.expected." + osmType);
+        if (value == null)
+            return 0;
+        return Long.parseLong(value);
+    }
+
+    public int getFeedProgressSeconds() {
+        String value = get(appName + ".feed.progressinterval");
+        if (value == null)
+            return 30;
+        return Integer.parseInt(value);
+    }
+
+    public int getFeedSlowestCount() {
+        String value = get(appName + ".feed.slowest");
+        if (value == null)
+            return 10;
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * @return true if the feeder stores the bounds compact in bounds_enc and
+     * excludes the GeoJSON bounds from the source. Only for new indices.
+     */
+    public boolean isBoundsEncoded() {
+        String value = get(appName + ".bounds.encoded");
+        if (value == null)
+            return false;
+        return Boolean.parseBoolean(value);
+    }
+
+    /**
+     * @return true if documents are routed by a coarse spatial key of their
+     * center instead of the id. Only for new indices.
+     */
+    public boolean isSpatialRouting() {
+        return "spatial".equalsIgnoreCase(get(appName + ".routing"));
+    }
+
+    public int getRoutingBits() {
+        String value = get(appName + ".routing.bits");
+        if (value == null)
+            return 10;
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * @return the maximum number of routing cells of a bounding box query,
+     * larger boxes are sent to all shards
+     */
+    public int getRoutingMaxCells() {
+        String value = get(appName + ".routing.maxcells");
+        if (value == null)
+            return 16;
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * @return true if the feeder merges boundaries into the documents of
+     * their center nodes instead of leaving this to the fixer
+     */
+    public boolean isMergeBoundaries() {
+        String value = get(appName + ".feed.mergeboundaries");
+        if (value == null)
+            return true;
+        return Boolean.parseBoolean(value);
+    }
+
+    /**
+     * @return true if the feeder builds into a new timestamped index which is
+     * published via IndexManager instead of writing into the live index
+     */
+    public boolean isBlueGreen() {
+        String value = get(appName + ".index.bluegreen");
+        if (value == null)
+            return false;
+        return Boolean.parseBoolean(value);
+    }
+
+    public int getIndexReplicas() {
+        String value = get(appName + ".index.replicas");
+        if (value == null)
+            return 1;
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * @return the number of previous builds kept for a rollback
+     */
+    public int getIndexKeep() {
+        String value = get(appName + ".index.keep");
+        if (value == null)
+            return 1;
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * @return the osmChange file (.osc or .osc.gz) for the incremental update
+     * or null
+     */
+    public String getUpdateOsmChange() {
+        return get(appName + ".update.osmchange");
+    }
+
+    /**
+     * @return the directory with the osm2geojson output of the changed
+     * elements for the incremental update or null
+     */
+    public String getUpdateDir() {
+        return get(appName + ".update.dir");
+    }
+
+    /**
+     * @return the OSM PBF file which the feeder reads directly instead of the
+     * osm2geojson output or null
+     */
+    public String getPbfFile() {
+        return get(appName + ".pbf.file");
+    }
+
+    /**
+     * @return the file for the coordinates of all nodes while reading the PBF
+     * file, it is sparse and deleted afterwards
+     */
+    public String getPbfNodeFile() {
+        String value = get(appName + ".pbf.nodefile");
+        if (value == null)
+            return "nodes.bin";
+        return value;
+    }
+
+    public int getPbfThreads() {
+        String value = get(appName + ".pbf.threads");
+        if (value == null)
+            return Runtime.getRuntime().availableProcessors();
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * @return the directory where the feeder writes bulk files instead of
+     * sending the documents or null
+     */
+    public String getBulkFileDir() {
+        return get(appName + ".bulkfile.dir");
+    }
+
+    public long getBulkFileMaxSize() {
+        String value = get(appName + ".bulkfile.maxsize");
+        if (value == null)
+            return 100L * 1024 * 1024;
+        return Long.parseLong(value);
+    }
+
+    /**
+     * @return the clusters the loader sends the bulk files to, e.g.
+     * staging@host1:9300,production@host2:9300 or null for the configured
+     * cluster
+     */
+    public String getLoadTargets() {
+        return get(appName + ".load.targets");
+    }
+
+    public int getLoadThreads() {
+        String value = get(appName + ".load.threads");
+        if (value == null)
+            return 4;
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * @return true if the feeder sends the documents sorted by their location
+     * at the end of the import
+     */
+    public boolean isSpatialSorting() {
+        String value = get(appName + ".feed.sort");
+        if (value == null)
+            return false;
+        return Boolean.parseBoolean(value);
+    }
+
+    /**
+     * @return the number of documents which are sorted in memory, more are
+     * sorted via temporary files
+     */
+    public int getSortBufferSize() {
+        String value = get(appName + ".feed.sort.buffer");
+        if (value == null)
+            return 200000;
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * @return additional layers for the fixer as name:file.geojson separated
+     * by comma or null
+     */
+    public String getFixerLayers() {
+        return get(appName + ".fixer.layers");
+    }
+
+    /**
+     * @return true if ways of the same street are merged into one document
+     */
+    public boolean isMergeStreets() {
+        String value = get(appName + ".feed.mergestreets");
+        if (value == null)
+            return false;
+        return Boolean.parseBoolean(value);
+    }
+
+    /**
+     * @return the maximum distance in meters between two ways of the same
+     * street
+     */
+    public double getMergeStreetsDistance() {
+        String value = get(appName + ".feed.mergestreets.distance");
+        if (value == null)
+            return 50;
+        return Double.parseDouble(value);
+    }
+
+    /**
+     * @return the file with the hashes of the last import, unchanged documents
+     * are skipped on a re-import into the same index. Null if disabled
+     */
+    public String getContentHashFile() {
+        return get(appName + ".feed.hashes");
+    }
+
+    public boolean isLocalSuggest() {
+        String value = get(appName + ".suggest.local");
+        if (value == null)
+            return false;
+        return Boolean.parseBoolean(value);
+    }
+
+    /**
+     * @return the file where the in-memory suggestions are stored or null
+     */
+    public String getSuggestSnapshot() {
+        return get(appName + ".suggest.snapshot");
+    }
+
+    public int getHttpPort() {
+        String value = get(appName + ".http.port");
+        if (value == null)
+            return 8999;
+        return Integer.parseInt(value);
+    }
+
+    public int getHttpMinThreads() {
+        String value = get(appName + ".http.minthreads");
+        if (value == null)
+            return 8;
+        return Integer.parseInt(value);
+    }
+
+    public int getHttpMaxThreads() {
+        String value = get(appName + ".http.maxthreads");
+        if (value == null)
+            return 64;
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * The maximum number of jobs waiting for a thread before connections are
+     * rejected.
+     */
+    public int getHttpMaxQueued() {
+        String value = get(appName + ".http.maxqueued");
+        if (value == null)
+            return 256;
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * Jetty uses one selector per acceptor thread.
+     */
+    public int getHttpAcceptors() {
+        String value = get(appName + ".http.acceptors");
+        if (value == null)
+            return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        return Integer.parseInt(value);
+    }
+
+    public int getHttpAcceptQueueSize() {
+        String value = get(appName + ".http.acceptqueue");
+        if (value == null)
+            return 128;
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * The time a geocoding request may take until it fails or returns partial
+     * results.
+     */
+    public long getRequestTimeoutMillis() {
+        String value = get(appName + ".request.timeoutms");
+        if (value == null)
+            return 2000;
+        return Long.parseLong(value);
+    }
+
+    /**
+     * Requests beyond this number of concurrent requests are rejected.
+     */
+    public int getMaxInFlightRequests() {
+        String value = get(appName + ".request.maxinflight");
+        if (value == null)
+            return 256;
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * Requests are rejected if more jobs wait for a worker thread.
+     */
+    public int getMaxQueueDepth() {
+        String value = get(appName + ".request.maxqueuedepth");
+        if (value == null)
+            return 64;
+        return Integer.parseInt(value);
+    }
+
+    public int getRetryAfterSeconds() {
+        String value = get(appName + ".request.retryafter");
+        if (value == null)
+            return 1;
+        return Integer.parseInt(value);
+    }
+
     public String get(String key) {
         // system values are more important!
         String val = System.getProperty(key);
@@ -0,0 +1,199 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import com.graphhopper.util.shapes.BBox;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Remembers a hash of every fed document to skip unchanged documents on the
+ * next import into the same index. The hashes of the previous import are
+ * read from the file, the hashes of the current import are written into a
+ * new file which replaces it after a successful import.
+ * <p/>
+ * Unchanged documents keep the is_in of the previous fixer run. So the areas
+ * of changed and deleted boundaries and places are stored in a second file,
+ * the fixer recalculates the entries in them.
+ *
+ * @author Peter Karich
+ */
+public class ContentHashes {
+
+    public static final int NEW = 0, CHANGED = 1, UNCHANGED = 2, UNSUPPORTED = 3;
+    // never returned by hash, so the document is CHANGED on the next import
+    static final long FAILED = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final File file;
+    private final IdHashStore previous;
+    private final IdHashStore current;
+    private final List<BBox> areas = Collections.synchronizedList(new ArrayList<BBox>());
+
+    public ContentHashes(File file) throws IOException {
+        this.file = file;
+        previous = file.exists() ? IdHashStore.open(file) : null;
+        long capacity = previous == null ? 1 << 20 : previous.size();
+        current = IdHashStore.create(new File(file.getPath() + ".new"), capacity);
+    }
+
+    /**
+     * Stores the hash in the field content_hash of the document.
+     *
+     * @return NEW, CHANGED, UNCHANGED or UNSUPPORTED if the id is no OSM id
+     */
+    public int check(String id, JsonObject doc) throws IOException {
+        long key = IdHashStore.toKey(id);
+        if (key < 0)
+            return UNSUPPORTED;
+
+        doc.remove("content_hash");
+        long hash = hash(doc.toString());
+        doc.put("content_hash", hash);
+        current.put(key, hash);
+        if (previous == null)
+            return NEW;
+        long old = previous.get(key);
+        if (old == 0)
+            return NEW;
+        return old == hash ? UNCHANGED : CHANGED;
+    }
+
+    /**
+     * Called if the sink could not store the document after check, so that
+     * the next import sends it again.
+     */
+    public void invalidate(String id) throws IOException {
+        long key = IdHashStore.toKey(id);
+        if (key > 0)
+            current.put(key, FAILED);
+    }
+
+    /**
+     * @return true if this is a re-import
+     */
+    public boolean hasPrevious() {
+        return previous != null;
+    }
+
+    /**
+     * Remembers an area for the fixer.
+     */
+    public void addArea(BBox area) {
+        areas.add(area);
+    }
+
+    /**
+     * @return the ids of the previous import which were not fed this time
+     */
+    public List<String> getDeleted() throws IOException {
+        final List<String> deleted = new ArrayList<String>();
+        if (previous == null)
+            return deleted;
+        previous.forEach(new IdHashStore.Visitor() {
+            @Override public void visit(long key, long hash) {
+                if (current.get(key) == 0)
+                    deleted.add(IdHashStore.toId(key));
+            }
+        });
+        return deleted;
+    }
+
+    /**
+     * Replaces the previous hashes with the ones of this import.
+     */
+    public void commit() throws IOException {
+        closeStores();
+        if (!areas.isEmpty()) {
+            // keep the areas of an import without fixer run afterwards
+            List<BBox> all = readAreas(file);
+            all.addAll(areas);
+            writeAreas(getAreasFile(file), IncrementalUpdater.mergeAreas(all));
+        }
+        if (file.exists() && !file.delete())
+            throw new IOException("cannot delete " + file);
+        if (!current.getFile().renameTo(file))
+            throw new IOException("cannot rename " + current.getFile() + " to " + file);
+    }
+
+    /**
+     * Keeps the previous hashes, e.g. if the import failed.
+     */
+    public void abort() throws IOException {
+        closeStores();
+        current.getFile().delete();
+    }
+
+    static File getAreasFile(File file) {
+        return new File(file.getPath() + ".areas");
+    }
+
+    /**
+     * @param file the hash file
+     * @return the areas changed by the imports since the last fixer run
+     */
+    public static List<BBox> readAreas(File file) throws IOException {
+        List<BBox> res = new ArrayList<BBox>();
+        File areasFile = getAreasFile(file);
+        if (!areasFile.exists())
+            return res;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(areasFile)));
+        try {
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                res.add(new BBox(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble()));
+            }
+        } finally {
+            in.close();
+        }
+        return res;
+    }
+
+    /**
+     * Called by the fixer after it recalculated the areas.
+     */
+    public static void clearAreas(File file) {
+        getAreasFile(file).delete();
+    }
+
+    static void writeAreas(File areasFile, List<BBox> list) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(areasFile)));
+        try {
+            out.writeInt(list.size());
+            for (BBox area : list) {
+                out.writeDouble(area.minLon);
+                out.writeDouble(area.maxLon);
+                out.writeDouble(area.minLat);
+                out.writeDouble(area.maxLat);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void closeStores() throws IOException {
+        if (previous != null)
+            previous.close();
+        current.close();
+    }
+
+    /**
+     * A stable 64 bit FNV-1a hash which is never 0 or FAILED.
+     */
+    static long hash(String str) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : str.getBytes(UTF8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 || hash == FAILED ? 2 : hash;
+    }
+}
@@ -0,0 +1,25 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The storage where JsonFeeder writes the created documents to.
+ *
+ * @author Peter Karich
+ */
+public interface DocumentSink {
+
+    /**
+     * @param ids the document ids, in the same order as docs
+     * @return the positions of the documents which could not be stored
+     */
+    Collection<Integer> store(String indexName, String indexType, List<String> ids, List<JsonObject> docs);
+
+    /**
+     * Called after all documents were stored.
+     */
+    void close() throws IOException;
+}
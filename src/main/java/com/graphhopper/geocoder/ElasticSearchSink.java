@@ -0,0 +1,62 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.Requests;
+
+/**
+ * Stores the documents via the bulk API.
+ *
+ * @author Peter Karich
+ */
+public class ElasticSearchSink extends BaseES implements DocumentSink {
+
+    private final ImportProfiler profiler;
+
+    public ElasticSearchSink(Configuration config, Client client, ImportProfiler profiler) {
+        super(config, client);
+        this.profiler = profiler;
+    }
+
+    @Override
+    public Collection<Integer> store(String indexName, String indexType, List<String> ids, List<JsonObject> docs) {
+        BulkRequestBuilder brb = client.prepareBulk();
+        for (int i = 0; i < docs.size(); i++) {
+            long serializeStart = System.nanoTime();
+            String source = docs.get(i).toString();
+            profiler.record("serialize", serializeStart);
+            brb.add(Requests.indexRequest(indexName).type(indexType).id(ids.get(i)).
+                    routing(routing.getRouting(docs.get(i))).source(source));
+        }
+        if (brb.numberOfActions() == 0)
+            return Collections.emptyList();
+
+        long bulkStart = System.nanoTime();
+        BulkResponse rsp = brb.execute().actionGet();
+        profiler.record("bulk", bulkStart);
+        metrics.counter("geocoder_feed_indexed_total").addAndGet(brb.numberOfActions());
+        if (!rsp.hasFailures())
+            return Collections.emptyList();
+
+        List<Integer> list = new ArrayList<Integer>(rsp.getItems().length);
+        for (BulkItemResponse br : rsp.getItems()) {
+            if (br.isFailed()) {
+                logger.warn("Cannot index object " + br.getId() + ". Error:" + br.getFailureMessage());
+                list.add(br.getItemId());
+            }
+        }
+        metrics.counter(Metrics.name("geocoder_feed_failures_total", "stage", "bulk")).addAndGet(list.size());
+        return list;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -14,11 +14,18 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
 /**
  * @author Peter Karich
@@ -26,6 +33,9 @@ import java.util.Map;
 public class GeocoderHelper {
 
     private static final DistanceCalc distCalc = new DistancePlaneProjection();
+    // same as my_geocoder_tok in settings.json
+    private static final Pattern TOKEN_SPLIT = Pattern.compile("[^\\p{L}\\d]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
 
     /**
      * remove more than two spaces or newlines
@@ -52,6 +62,32 @@ public class GeocoderHelper {
         return sb.toString().trim();
     }
 
+    /**
+     * Lower case and strip accents similar to the lowercase and asciifolding
+     * filters of the geocoder analyzers.
+     */
+    public static String normalize(String str) {
+        String res = str.toLowerCase();
+        res = Normalizer.normalize(res, Normalizer.Form.NFD);
+        res = MARKS.matcher(res).replaceAll("");
+        if (res.indexOf('ß') >= 0)
+            res = res.replace("ß", "ss");
+        return res;
+    }
+
+    /**
+     * Splits the specified string like the geocoder tokenizer does and
+     * normalizes every token.
+     */
+    public static List<String> tokenize(String str) {
+        List<String> res = new ArrayList<String>();
+        for (String token : TOKEN_SPLIT.split(str)) {
+            if (!token.isEmpty())
+                res.add(normalize(token));
+        }
+        return res;
+    }
+
     public static String[] toArray(JsonArray arr) {
         String[] res = new String[arr.size()];
         int i = 0;
@@ -302,4 +338,94 @@ public class GeocoderHelper {
         // If the sign of the area is negative, the order is counter-clockwise
         return sum > 0;
     }
+
+    public interface ChunkTask {
+
+        void run(int from, int to);
+    }
+
+    /**
+     * Splits [0, count) into chunks, one per processor, and runs them in
+     * parallel. Runs in the calling thread if executor is null or count is
+     * too small.
+     */
+    public static void runChunked(ExecutorService executor, int count, final ChunkTask task) {
+        int chunks = Runtime.getRuntime().availableProcessors();
+        if (executor == null || chunks <= 1 || count < 2 * chunks) {
+            task.run(0, count);
+            return;
+        }
+
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(chunks);
+            int chunk = (count + chunks - 1) / chunks;
+            for (int start = 0; start < count; start += chunk) {
+                final int from = start, to = Math.min(count, start + chunk);
+                futures.add(executor.submit(new Runnable() {
+                    @Override public void run() {
+                        task.run(from, to);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while waiting for " + task, ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("cannot run " + task, ex.getCause());
+        }
+    }
+
+    /**
+     * Waits for the result of the task and wraps its failure into an
+     * IOException.
+     */
+    public static <T> T get(Future<T> future, String task) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for " + task, ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("cannot run " + task, ex.getCause());
+        }
+    }
+
+    /**
+     * Runs the submitted tasks in parallel and hands their results to handle
+     * in the order of submission. At most maxPending results are kept back,
+     * so that e.g. a reader does not load the whole file into memory.
+     */
+    public static abstract class OrderedPipeline<T> {
+
+        private final ExecutorService service;
+        private final int maxPending;
+        private final String task;
+        private final LinkedList<Future<T>> pending = new LinkedList<Future<T>>();
+
+        public OrderedPipeline(ExecutorService service, int maxPending, String task) {
+            this.service = service;
+            this.maxPending = maxPending;
+            this.task = task;
+        }
+
+        protected abstract void handle(T result) throws IOException;
+
+        public void submit(Callable<T> callable) throws IOException {
+            pending.add(service.submit(callable));
+            if (pending.size() >= maxPending)
+                handle(get(pending.removeFirst(), task));
+        }
+
+        /**
+         * Waits for and handles the remaining results.
+         */
+        public void finish() throws IOException {
+            while (!pending.isEmpty()) {
+                handle(get(pending.removeFirst(), task));
+            }
+        }
+    }
 }
@@ -0,0 +1,174 @@
+package com.graphhopper.geocoder;
+
+import com.graphhopper.util.PointList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.elasticsearch.common.Base64;
+
+/**
+ * Compact representation of the outer rings of a (Multi)Polygon for the field
+ * bounds_enc. Coordinates are stored as 1e-7 fixed point integers, every value
+ * is the zig-zag varint encoded difference to the previous point:
+ * <pre>
+ * varint polygons, per polygon: varint points, per point: zigzag dLat, zigzag dLon
+ * </pre>
+ * Like the fixer holes are ignored.
+ *
+ * @author Peter Karich
+ */
+public class GeometryCodec {
+
+    private static final double FACTOR = 1e7;
+
+    public static String encodeBase64(List<PointList> polygons) {
+        return Base64.encodeBytes(encode(polygons));
+    }
+
+    public static List<PointList> decodeBase64(String str) {
+        try {
+            return decode(Base64.decode(str));
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("bounds_enc is not valid base64", ex);
+        }
+    }
+
+    public static byte[] encode(List<PointList> polygons) {
+        int points = 0;
+        for (PointList pl : polygons) {
+            points += pl.getSize();
+        }
+        // a 1e-7 delta needs at most 5 bytes
+        byte[] bytes = new byte[5 + polygons.size() * 5 + points * 10];
+        int pos = writeVarint(bytes, 0, polygons.size());
+        int prevLat = 0, prevLon = 0;
+        for (PointList pl : polygons) {
+            pos = writeVarint(bytes, pos, pl.getSize());
+            for (int i = 0; i < pl.getSize(); i++) {
+                int lat = toFixed(pl.getLatitude(i));
+                int lon = toFixed(pl.getLongitude(i));
+                pos = writeVarint(bytes, pos, zigzag(lat - prevLat));
+                pos = writeVarint(bytes, pos, zigzag(lon - prevLon));
+                prevLat = lat;
+                prevLon = lon;
+            }
+        }
+        return Arrays.copyOf(bytes, pos);
+    }
+
+    public static List<PointList> decode(byte[] bytes) {
+        int[] pos = new int[1];
+        int polygons = readVarint(bytes, pos);
+        List<PointList> res = new ArrayList<PointList>(polygons);
+        int lat = 0, lon = 0;
+        for (int p = 0; p < polygons; p++) {
+            int points = readVarint(bytes, pos);
+            PointList pl = new PointList(points, false);
+            for (int i = 0; i < points; i++) {
+                lat += unzigzag(readVarint(bytes, pos));
+                lon += unzigzag(readVarint(bytes, pos));
+                pl.add(lat / FACTOR, lon / FACTOR);
+            }
+            res.add(pl);
+        }
+        return res;
+    }
+
+    /**
+     * @return the GeoJSON of the bounds field, a Polygon for one ring
+     * otherwise a MultiPolygon
+     */
+    public static Map<String, Object> toGeoJson(List<PointList> polygons) {
+        List<Object> coordinates = new ArrayList<Object>(polygons.size());
+        for (PointList pl : polygons) {
+            List<Object> ring = new ArrayList<Object>(pl.getSize());
+            for (int i = 0; i < pl.getSize(); i++) {
+                // lon,lat
+                ring.add(Arrays.asList(pl.getLongitude(i), pl.getLatitude(i)));
+            }
+            List<Object> polygon = new ArrayList<Object>(1);
+            polygon.add(ring);
+            coordinates.add(polygon);
+        }
+        Map<String, Object> json = new HashMap<String, Object>();
+        if (coordinates.size() == 1) {
+            json.put("type", "Polygon");
+            json.put("coordinates", coordinates.get(0));
+        } else {
+            json.put("type", "MultiPolygon");
+            json.put("coordinates", coordinates);
+        }
+        return json;
+    }
+
+    /**
+     * @return the outer rings of the GeoJSON bounds field
+     */
+    public static List<PointList> fromGeoJson(Map<String, Object> bounds) {
+        List coordinates = (List) bounds.get("coordinates");
+        if (!"multipolygon".equalsIgnoreCase((String) bounds.get("type"))) {
+            List tmp = new ArrayList(1);
+            tmp.add(coordinates);
+            coordinates = tmp;
+        }
+
+        List<PointList> res = new ArrayList<PointList>(coordinates.size());
+        for (Object polyWithHoles : coordinates) {
+            // ignore holes for now:
+            List poly = (List) ((List) polyWithHoles).get(0);
+            PointList list = GeocoderHelper.polygonListToPointList(poly);
+            if (!list.isEmpty())
+                res.add(list);
+        }
+        return res;
+    }
+
+    /**
+     * @return the rings of the source, decoded from bounds_enc if bounds is
+     * not stored
+     */
+    public static List<PointList> getPolygons(Map<String, Object> source) {
+        String enc = (String) source.get("bounds_enc");
+        if (enc != null)
+            return decodeBase64(enc);
+        Map<String, Object> bounds = (Map<String, Object>) source.get("bounds");
+        if (bounds == null)
+            return null;
+        return fromGeoJson(bounds);
+    }
+
+    static int toFixed(double degree) {
+        return (int) Math.round(degree * FACTOR);
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int writeVarint(byte[] bytes, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[pos++] = (byte) value;
+        return pos;
+    }
+
+    static int readVarint(byte[] bytes, int[] pos) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = bytes[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IllegalArgumentException("malformed varint at " + (pos[0] - 1));
+    }
+}
@@ -0,0 +1,210 @@
+package com.graphhopper.geocoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hash table from OSM id to a 64 bit hash in a memory mapped file. It uses
+ * open addressing with linear probing, a slot has 16 bytes: key and hash. The
+ * key combines the OSM type and the numeric id, see toKey. Entries cannot be
+ * removed, a new store is created for every import.
+ *
+ * @author Peter Karich
+ */
+public class IdHashStore {
+
+    public interface Visitor {
+
+        void visit(long key, long hash) throws IOException;
+    }
+
+    private static final int HEADER = 16;
+    private static final int SEGMENT_BITS = 26;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+    private static final String[] TYPES = {null, "osmnode/", "osmway/", "osmrelation/"};
+    private final File file;
+    private RandomAccessFile raf;
+    private MappedByteBuffer header;
+    private List<MappedByteBuffer> segments;
+    private long capacity;
+    private long size;
+
+    private IdHashStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Creates a new store, an existing file is overwritten.
+     *
+     * @param capacity the expected number of entries
+     */
+    public static IdHashStore create(File file, long capacity) throws IOException {
+        IdHashStore store = new IdHashStore(file);
+        long slots = 1024;
+        while (slots * 0.7 < capacity) {
+            slots *= 2;
+        }
+        store.map(slots, true);
+        return store;
+    }
+
+    public static IdHashStore open(File file) throws IOException {
+        IdHashStore store = new IdHashStore(file);
+        store.map(-1, false);
+        return store;
+    }
+
+    private void map(long slots, boolean create) throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        if (create)
+            raf.setLength(0);
+        FileChannel channel = raf.getChannel();
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+        if (create) {
+            header.putLong(0, slots);
+            header.putLong(8, 0);
+        }
+        capacity = header.getLong(0);
+        size = header.getLong(8);
+        if (capacity <= 0 || Long.bitCount(capacity) != 1)
+            throw new IOException("invalid hash store " + file + ", capacity " + capacity);
+        segments = new ArrayList<MappedByteBuffer>();
+        for (long slot = 0; slot < capacity; slot += 1L << SEGMENT_BITS) {
+            long slotCount = Math.min(capacity - slot, 1L << SEGMENT_BITS);
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, HEADER + slot * 16, slotCount * 16));
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @return the hash of the key or 0 if not found
+     */
+    public synchronized long get(long key) {
+        long slot = find(key);
+        return getKey(slot) == key ? getHash(slot) : 0;
+    }
+
+    /**
+     * @param hash must not be 0
+     */
+    public synchronized void put(long key, long hash) throws IOException {
+        if (key <= 0 || hash == 0)
+            throw new IllegalArgumentException("key and hash must not be 0: " + key + ", " + hash);
+        if (size + 1 > capacity * 0.7)
+            grow();
+        long slot = find(key);
+        if (getKey(slot) != key) {
+            size++;
+            header.putLong(8, size);
+        }
+        set(slot, key, hash);
+    }
+
+    public synchronized void forEach(Visitor visitor) throws IOException {
+        for (long slot = 0; slot < capacity; slot++) {
+            long key = getKey(slot);
+            if (key != 0)
+                visitor.visit(key, getHash(slot));
+        }
+    }
+
+    /**
+     * Doubles the slots via copying all entries into a new file.
+     */
+    private void grow() throws IOException {
+        File tmp = new File(file.getPath() + ".grow");
+        final IdHashStore bigger = create(tmp, capacity);
+        forEach(new Visitor() {
+            @Override public void visit(long key, long hash) throws IOException {
+                bigger.put(key, hash);
+            }
+        });
+        bigger.close();
+        close();
+        if (!file.delete() || !tmp.renameTo(file))
+            throw new IOException("cannot replace " + file + " with " + tmp);
+        map(-1, false);
+    }
+
+    private long find(long key) {
+        long mask = capacity - 1;
+        long slot = mix(key) & mask;
+        while (true) {
+            long existing = getKey(slot);
+            if (existing == 0 || existing == key)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private long getKey(long slot) {
+        return segments.get((int) (slot >>> SEGMENT_BITS)).getLong((int) (slot & SEGMENT_MASK) * 16);
+    }
+
+    private long getHash(long slot) {
+        return segments.get((int) (slot >>> SEGMENT_BITS)).getLong((int) (slot & SEGMENT_MASK) * 16 + 8);
+    }
+
+    private void set(long slot, long key, long hash) {
+        MappedByteBuffer segment = segments.get((int) (slot >>> SEGMENT_BITS));
+        int pointer = (int) (slot & SEGMENT_MASK) * 16;
+        segment.putLong(pointer, key);
+        segment.putLong(pointer + 8, hash);
+    }
+
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    public synchronized void close() throws IOException {
+        if (raf == null)
+            return;
+        header.force();
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        segments = null;
+        header = null;
+        raf.close();
+        raf = null;
+    }
+
+    /**
+     * @return the key of an id like osmway/123 or -1 if the id has another
+     * format
+     */
+    public static long toKey(String id) {
+        for (int type = 1; type < TYPES.length; type++) {
+            if (!id.startsWith(TYPES[type]))
+                continue;
+            try {
+                long osmId = Long.parseLong(id.substring(TYPES[type].length()));
+                if (osmId < 0 || osmId >= 1L << 60)
+                    return -1;
+                return osmId << 2 | type;
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    public static String toId(long key) {
+        return TYPES[(int) (key & 3)] + (key >>> 2);
+    }
+}
@@ -0,0 +1,171 @@
+package com.graphhopper.geocoder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shows where the import time goes. The stages read (reading and parsing the
+ * osm2geojson output), interpret_tags, create_doc (mainly the geometry
+ * calculations including simplify), simplify, serialize and bulk are recorded
+ * as latency histograms in Metrics. Additionally it counts the documents per
+ * OSM type to report the throughput, the ETA and the slowest documents
+ * periodically.
+ *
+ * @author Peter Karich
+ */
+public class ImportProfiler {
+
+    public static final String[] OSM_TYPES = {"node", "way", "relation"};
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Metrics metrics;
+    private final Configuration config;
+    private final long intervalNanos;
+    private final int slowestCount;
+    private final long start = System.nanoTime();
+    private final Map<String, TypeProgress> types = new LinkedHashMap<String, TypeProgress>();
+    // the fastest of the slowest documents is on top
+    private final PriorityQueue<SlowDoc> slowest;
+    private long lastReport = start;
+
+    public ImportProfiler(Configuration config, Metrics metrics) {
+        this.config = config;
+        this.metrics = metrics;
+        intervalNanos = config.getFeedProgressSeconds() * 1000000000L;
+        slowestCount = config.getFeedSlowestCount();
+        slowest = new PriorityQueue<SlowDoc>(slowestCount + 1, new Comparator<SlowDoc>() {
+            @Override public int compare(SlowDoc o1, SlowDoc o2) {
+                return o1.nanos < o2.nanos ? -1 : o1.nanos > o2.nanos ? 1 : 0;
+            }
+        });
+        for (String type : OSM_TYPES) {
+            types.put(type, new TypeProgress(config.getFeedExpectedCount(type)));
+        }
+    }
+
+    public static String stageName(String stage) {
+        return Metrics.name("geocoder_feed_stage_latency", "stage", stage);
+    }
+
+    public void record(String stage, long startNanos) {
+        metrics.recordSince(stageName(stage), startNanos);
+    }
+
+    /**
+     * Remembers the document if it is one of the slowest.
+     */
+    public synchronized void recordDoc(String id, long nanos) {
+        if (slowestCount <= 0)
+            return;
+        if (slowest.size() < slowestCount) {
+            slowest.add(new SlowDoc(id, nanos));
+        } else if (slowest.peek().nanos < nanos) {
+            slowest.poll();
+            slowest.add(new SlowDoc(id, nanos));
+        }
+    }
+
+    /**
+     * Counts the processed documents and logs the progress if the interval
+     * has passed.
+     */
+    public void count(String osmType, int docs) {
+        String report = null;
+        synchronized (this) {
+            TypeProgress progress = types.get(osmType);
+            if (progress == null) {
+                progress = new TypeProgress(config.getFeedExpectedCount(osmType));
+                types.put(osmType, progress);
+            }
+            long now = System.nanoTime();
+            if (progress.docs == 0)
+                progress.firstNanos = now;
+            progress.docs += docs;
+            progress.lastNanos = now;
+            if (now - lastReport >= intervalNanos) {
+                lastReport = now;
+                report = createReport();
+            }
+        }
+        if (report != null)
+            logger.info(report);
+    }
+
+    public synchronized String createReport() {
+        long now = System.nanoTime();
+        long total = 0;
+        for (TypeProgress progress : types.values()) {
+            total += progress.docs;
+        }
+        double totalRate = rate(total, now - start);
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "progress: %d docs, %.0f docs/s", total, totalRate));
+        for (Map.Entry<String, TypeProgress> e : types.entrySet()) {
+            TypeProgress progress = e.getValue();
+            if (progress.docs == 0 && progress.expected == 0)
+                continue;
+            double typeRate = progress.docs == 0 ? totalRate
+                    : rate(progress.docs, progress.lastNanos - progress.firstNanos);
+            sb.append(String.format(Locale.ROOT, "; %s: %d docs, %.0f docs/s, ETA %s",
+                    e.getKey(), progress.docs, typeRate, eta(progress, typeRate)));
+        }
+        sb.append("; slowest: ").append(getSlowest());
+        return sb.toString();
+    }
+
+    static double rate(long docs, long nanos) {
+        if (nanos <= 0)
+            return 0;
+        return docs * 1e9 / nanos;
+    }
+
+    static String eta(TypeProgress progress, double rate) {
+        if (progress.expected <= 0 || rate <= 0)
+            return "?";
+        long seconds = (long) (Math.max(0, progress.expected - progress.docs) / rate);
+        return String.format(Locale.ROOT, "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
+    /**
+     * @return the slowest documents with their milliseconds, slowest first
+     */
+    public synchronized List<String> getSlowest() {
+        List<SlowDoc> list = new ArrayList<SlowDoc>(slowest);
+        Collections.sort(list, Collections.reverseOrder(slowest.comparator()));
+        List<String> res = new ArrayList<String>(list.size());
+        for (SlowDoc doc : list) {
+            res.add(String.format(Locale.ROOT, "%s %.1fms", doc.id, doc.nanos / 1e6));
+        }
+        return res;
+    }
+
+    static class TypeProgress {
+
+        final long expected;
+        long docs;
+        long firstNanos;
+        long lastNanos;
+
+        TypeProgress(long expected) {
+            this.expected = expected;
+        }
+    }
+
+    static class SlowDoc {
+
+        final String id;
+        final long nanos;
+
+        SlowDoc(String id, long nanos) {
+            this.id = id;
+            this.nanos = nanos;
+        }
+    }
+}
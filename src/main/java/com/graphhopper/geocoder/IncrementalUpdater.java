@@ -0,0 +1,387 @@
+package com.graphhopper.geocoder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.jsonj.JsonArray;
+import com.github.jsonj.JsonObject;
+import static com.github.jsonj.tools.JsonBuilder.array;
+import com.github.jsonj.tools.JsonParser;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.BBox;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+
+/**
+ * Applies changes to the published index instead of a full import. Changed
+ * documents are read from an osmChange file (nodes only) and from the
+ * osm2geojson output of the changed elements. The old version of every touched
+ * document is removed, the new one is created like in the feeder and
+ * afterwards the fixer only recalculates the areas covered by the old and new
+ * versions.
+ *
+ * @author Peter Karich
+ */
+public class IncrementalUpdater extends BaseES {
+
+    public static void main(String[] args) throws IOException {
+        Configuration config = new Configuration().reload();
+        new IncrementalUpdater(config, BaseES.createClient(config)).start();
+    }
+
+    // the areas which need to be fixed afterwards
+    private final List<BBox> areas = new ArrayList<BBox>();
+    private final JsonFeeder feeder;
+    private final int bulkSize;
+    private static final ObjectMapper mapper = new ObjectMapper();
+    // the removed places with a merged boundary, by id
+    private final Map<String, Map<String, Object>> fixedBoundaries = new HashMap<String, Map<String, Object>>();
+
+    public IncrementalUpdater(Configuration config, Client client) {
+        super(config, client);
+        if (config.isLocalBackend())
+            throw new IllegalStateException("incremental updates are not supported for the local backend");
+
+        bulkSize = config.getFeedBulkSize();
+        feeder = new JsonFeeder(config, client) {
+            @Override public Collection<Integer> bulkUpdate(Collection<JsonObject> objects, String indexName, String indexType) {
+                List<String> ids = new ArrayList<String>(objects.size());
+                for (JsonObject o : objects) {
+                    String id = o.getString("id");
+                    if (id != null)
+                        ids.add(id);
+                }
+                // the new version could have a different routing
+                removeOld(ids);
+                return super.bulkUpdate(objects, indexName, indexType);
+            }
+
+            @Override public JsonObject createDoc(JsonObject mainJson) throws IOException {
+                JsonObject doc = super.createDoc(mainJson);
+                // keep the boundary of a changed place if the boundary itself did not change
+                Map<String, Object> old = fixedBoundaries.remove(mainJson.getString("id"));
+                if (old != null && !doc.containsKey("bounds")) {
+                    RelationShipFixer.restoreBounds(old);
+                    mergeBoundary(doc, new JsonParser().parse(mapper.writeValueAsString(old)).asObject());
+                }
+                addArea(doc);
+                return doc;
+            }
+        };
+    }
+
+    public void start() throws IOException {
+        StopWatch sw = new StopWatch().start();
+        String osmChange = config.getUpdateOsmChange();
+        if (osmChange != null)
+            applyOsmChange(new File(osmChange));
+
+        String dir = config.getUpdateDir();
+        if (dir != null)
+            feeder.feed(dir);
+
+        if (areas.isEmpty()) {
+            logger.info("nothing changed");
+            return;
+        }
+        client.admin().indices().prepareRefresh(osmIndex).get();
+        List<BBox> merged = mergeAreas(areas);
+        logger.info("fixing " + merged.size() + " areas, changed documents: " + areas.size());
+        new RelationShipFixer(config, client).update(merged);
+        logger.info("finished in " + sw.stop().getSeconds() + "s, metrics:\n" + metrics.toText());
+    }
+
+    /**
+     * Deletes removed elements and feeds changed nodes directly. Changed ways
+     * and relations are only counted as their geometry has to be created by
+     * osm2geojson.
+     */
+    public void applyOsmChange(File file) throws IOException {
+        ChangeHandler handler = new ChangeHandler(new MyOsmPostProcessor(new JsonParser()), bulkSize) {
+            @Override void removeAll(List<String> ids) {
+                removeOld(ids);
+            }
+
+            @Override void feedAll(List<JsonObject> nodes) {
+                feeder.bulkUpdate(nodes, osmIndex, osmType);
+            }
+        };
+        new OsmChangeReader().read(file, handler);
+        handler.flush();
+        if (handler.otherChanges > 0)
+            logger.info(handler.otherChanges + " ways and relations changed in " + file
+                    + ", feed their osm2geojson output via geocoder.update.dir");
+    }
+
+    /**
+     * Collects the removed ids and the changed nodes of an osmChange in bulks.
+     * A modified node is removed if it is not indexed anymore, e.g. if it lost
+     * its name or all tags.
+     */
+    static abstract class ChangeHandler implements OsmChangeReader.Handler {
+
+        private final MyOsmPostProcessor processor;
+        private final int bulkSize;
+        private final List<String> deleted = new ArrayList<String>();
+        private final List<JsonObject> nodes = new ArrayList<JsonObject>();
+        int otherChanges;
+
+        ChangeHandler(MyOsmPostProcessor processor, int bulkSize) {
+            this.processor = processor;
+            this.bulkSize = bulkSize;
+        }
+
+        abstract void removeAll(List<String> ids);
+
+        abstract void feedAll(List<JsonObject> nodes);
+
+        @Override public void delete(String id) {
+            // a node could be changed several times in one file
+            removePending(id);
+            deleted.add(id);
+            if (deleted.size() >= bulkSize) {
+                removeAll(deleted);
+                deleted.clear();
+            }
+        }
+
+        @Override public void node(boolean created, JsonObject node) {
+            // untagged nodes are only coordinates of ways
+            JsonObject obj = node.getObject("tags").isEmpty() ? null : processor.interpretTags(node, node);
+            if (obj == null) {
+                // the previous version could be indexed
+                if (!created)
+                    delete(node.getString("id"));
+                return;
+            }
+            // feeding removes the old version anyway
+            deleted.remove(node.getString("id"));
+            nodes.add(obj);
+            if (nodes.size() >= bulkSize) {
+                feedAll(nodes);
+                nodes.clear();
+            }
+        }
+
+        private void removePending(String id) {
+            for (int i = nodes.size() - 1; i >= 0; i--) {
+                if (id.equals(nodes.get(i).getString("id")))
+                    nodes.remove(i);
+            }
+        }
+
+        @Override public void changed(String id) {
+            otherChanges++;
+        }
+
+        void flush() {
+            removeAll(deleted);
+            deleted.clear();
+            feedAll(nodes);
+            nodes.clear();
+        }
+    }
+
+    /**
+     * Deletes the specified documents and remembers their areas. A merged
+     * street is found by the ids of all its ways, its other ways are kept as
+     * separate documents.
+     */
+    void removeOld(List<String> ids) {
+        if (ids.isEmpty())
+            return;
+
+        String[] idArray = ids.toArray(new String[ids.size()]);
+        SearchResponse rsp = client.prepareSearch(osmIndex).setTypes(osmType).
+                setQuery(QueryBuilders.boolQuery().
+                        should(QueryBuilders.idsQuery(osmType).addIds(idArray)).
+                        should(QueryBuilders.termsQuery("way_ids", idArray))).
+                setSize(ids.size()).get();
+        Set<String> removed = new HashSet<String>(ids);
+        BulkRequestBuilder brb = client.prepareBulk();
+        for (SearchHit hit : rsp.getHits().getHits()) {
+            Map<String, Object> source = hit.getSource();
+            if (Boolean.TRUE.equals(source.get("has_fixed_boundary")))
+                fixedBoundaries.put(hit.getId(), source);
+            BBox area = getArea(source);
+            if (area != null)
+                areas.add(area);
+            brb.add(Requests.deleteRequest(osmIndex).type(osmType).id(hit.getId()).
+                    routing(routing.getRouting(source)));
+            for (Map.Entry<String, Map<String, Object>> e : splitStreet(source, removed).entrySet()) {
+                brb.add(Requests.indexRequest(osmIndex).type(osmType).id(e.getKey()).
+                        routing(routing.getRouting(e.getValue())).source(e.getValue()));
+            }
+        }
+        if (brb.numberOfActions() == 0)
+            return;
+
+        brb.get();
+        metrics.counter("geocoder_update_deleted_total").addAndGet(brb.numberOfActions());
+    }
+
+    /**
+     * Splits a merged street into one document per way which is not removed,
+     * the lines are in the order of way_ids. Like the feeder of an update it
+     * does not merge them again.
+     *
+     * @return the documents by id
+     */
+    static Map<String, Map<String, Object>> splitStreet(Map<String, Object> source, Set<String> removed) {
+        Map<String, Map<String, Object>> res = new LinkedHashMap<String, Map<String, Object>>();
+        List<String> wayIds = (List<String>) source.get("way_ids");
+        Map<String, Object> lines = (Map<String, Object>) source.get("lines");
+        if (wayIds == null || lines == null)
+            return res;
+        List<List<List<Number>>> coordinates = (List<List<List<Number>>>) lines.get("coordinates");
+        for (int i = 0; i < wayIds.size() && i < coordinates.size(); i++) {
+            if (removed.contains(wayIds.get(i)))
+                continue;
+            JsonArray line = array();
+            for (List<Number> point : coordinates.get(i)) {
+                line.add(array(point.get(0).doubleValue(), point.get(1).doubleValue()));
+            }
+            double[] middle = GeocoderHelper.calcMiddlePoint(line);
+            if (middle == null)
+                continue;
+            Map<String, Object> doc = new HashMap<String, Object>(source);
+            doc.remove("lines");
+            doc.remove("bbox");
+            doc.remove("way_count");
+            doc.remove("way_ids");
+            doc.remove("content_hash");
+            doc.put("center", Arrays.asList(middle[1], middle[0]));
+            res.put(wayIds.get(i), doc);
+        }
+        return res;
+    }
+
+    void addArea(JsonObject doc) throws IOException {
+        BBox area = getArea(doc);
+        if (area != null)
+            areas.add(area);
+    }
+
+    /**
+     * @return the bbox of the bounds or of the center of a created document
+     */
+    static BBox getArea(JsonObject doc) throws IOException {
+        BBox area = null;
+        if (doc.containsKey("bounds_enc")) {
+            area = calcBBox(GeometryCodec.decodeBase64(doc.getString("bounds_enc")));
+        } else if (doc.containsKey("bounds")) {
+            Map<String, Object> bounds = mapper.readValue(doc.getObject("bounds").toString(), Map.class);
+            area = calcBBox(GeometryCodec.fromGeoJson(bounds));
+        } else {
+            JsonArray center = doc.getArray("center");
+            if (center != null && center.size() == 2) {
+                double lon = center.get(0).asDouble(), lat = center.get(1).asDouble();
+                area = new BBox(lon, lon, lat, lat);
+            }
+        }
+        return area;
+    }
+
+    static BBox getArea(Map<String, Object> source) {
+        List<PointList> polygons = GeometryCodec.getPolygons(source);
+        if (polygons != null)
+            return calcBBox(polygons);
+
+        List center = (List) source.get("center");
+        if (center == null || center.size() != 2)
+            return null;
+        double lon = ((Number) center.get(0)).doubleValue(), lat = ((Number) center.get(1)).doubleValue();
+        return new BBox(lon, lon, lat, lat);
+    }
+
+    static BBox calcBBox(List<PointList> polygons) {
+        BBox bbox = BBox.INVERSE.clone();
+        for (PointList pl : polygons) {
+            for (int i = 0; i < pl.size(); i++) {
+                double lat = pl.getLatitude(i), lon = pl.getLongitude(i);
+                bbox.minLat = Math.min(bbox.minLat, lat);
+                bbox.maxLat = Math.max(bbox.maxLat, lat);
+                bbox.minLon = Math.min(bbox.minLon, lon);
+                bbox.maxLon = Math.max(bbox.maxLon, lon);
+            }
+        }
+        return bbox.isValid() ? bbox : null;
+    }
+
+    /**
+     * Merges overlapping areas to avoid fixing the same entries several times.
+     * Every pass sorts the areas by minLon and sweeps over them, an area can
+     * only overlap the areas which are not left of it. A merged area can grow
+     * into an area it already passed, so the passes are repeated until nothing
+     * changes.
+     *
+     * @return the disjoint areas sorted by minLon
+     */
+    static List<BBox> mergeAreas(List<BBox> input) {
+        List<BBox> res = new ArrayList<BBox>();
+        for (BBox area : input) {
+            res.add(area.clone());
+        }
+        Comparator<BBox> byMinLon = new Comparator<BBox>() {
+            @Override public int compare(BBox a, BBox b) {
+                return Double.compare(a.minLon, b.minLon);
+            }
+        };
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            Collections.sort(res, byMinLon);
+            Set<BBox> absorbed = Collections.newSetFromMap(new IdentityHashMap<BBox, Boolean>());
+            // the areas which can still overlap the following ones
+            List<BBox> active = new ArrayList<BBox>();
+            for (BBox area : res) {
+                Iterator<BBox> iter = active.iterator();
+                while (iter.hasNext()) {
+                    BBox other = iter.next();
+                    if (other.maxLon < area.minLon) {
+                        iter.remove();
+                    } else if (intersects(area, other)) {
+                        area.minLon = Math.min(area.minLon, other.minLon);
+                        area.maxLon = Math.max(area.maxLon, other.maxLon);
+                        area.minLat = Math.min(area.minLat, other.minLat);
+                        area.maxLat = Math.max(area.maxLat, other.maxLat);
+                        iter.remove();
+                        absorbed.add(other);
+                        merged = true;
+                    }
+                }
+                active.add(area);
+            }
+            List<BBox> swept = new ArrayList<BBox>(res.size() - absorbed.size());
+            for (BBox area : res) {
+                if (!absorbed.contains(area))
+                    swept.add(area);
+            }
+            res = swept;
+        }
+        return res;
+    }
+
+    static boolean intersects(BBox a, BBox b) {
+        return a.minLon <= b.maxLon && b.minLon <= a.maxLon
+                && a.minLat <= b.maxLat && b.minLat <= a.maxLat;
+    }
+}
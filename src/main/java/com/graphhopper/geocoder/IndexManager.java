@@ -0,0 +1,188 @@
+package com.graphhopper.geocoder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Pattern;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.optimize.OptimizeRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.settings.ImmutableSettings;
+
+/**
+ * Blue/green builds: the feeder creates a timestamped index tuned for bulk
+ * loading and marks it with the alias osm_build, the fixer works on this
+ * index. Publishing restores the production settings, switches the alias osm
+ * atomically to the new index and deletes old builds. Serving traffic never
+ * sees a half imported or unfixed index.
+ *
+ * @author Peter Karich
+ */
+public class IndexManager extends BaseES {
+
+    public static void main(String[] args) {
+        Configuration config = new Configuration().reload();
+        new IndexManager(config, BaseES.createClient(config)).publish();
+    }
+
+    private final String buildAlias = osmIndex + "_build";
+    private final Pattern buildPattern = Pattern.compile(Pattern.quote(osmIndex) + "_\\d{14}");
+
+    public IndexManager(Configuration config, Client client) {
+        super(config, client);
+    }
+
+    /**
+     * Creates the index with settings.json and the mapping, does nothing if it
+     * already exists.
+     */
+    public void initIndex(String indexName) {
+        try {
+            createIndex(indexName, false);
+            logger.info("Created index: " + indexName);
+        } catch (Exception ex) {
+            logger.info("Index " + indexName + " already exists");
+        }
+    }
+
+    /**
+     * @return the name of the new index which is now referenced by the build
+     * alias
+     */
+    public String createBuildIndex() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss", Locale.ROOT);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String indexName = osmIndex + "_" + format.format(new Date());
+        try {
+            createIndex(indexName, true);
+        } catch (IOException ex) {
+            throw new RuntimeException("cannot create index " + indexName, ex);
+        }
+
+        IndicesAliasesRequestBuilder aliases = client.admin().indices().prepareAliases();
+        for (String old : getIndices(buildAlias)) {
+            aliases.removeAlias(old, buildAlias);
+        }
+        aliases.addAlias(indexName, buildAlias).get();
+        logger.info("Created index " + indexName + " for bulk loading");
+        return indexName;
+    }
+
+    /**
+     * @return the index of the current build or null if there is none
+     */
+    public String getBuildIndex() {
+        List<String> list = getIndices(buildAlias);
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    /**
+     * Makes the current build available under the alias osm.
+     */
+    public void publish() {
+        String build = getBuildIndex();
+        if (build == null)
+            throw new IllegalStateException("no index build found, run the feeder with geocoder.index.bluegreen=true first");
+        if (getMetaData().indices().containsKey(osmIndex))
+            throw new IllegalStateException("'" + osmIndex + "' is an index and not an alias. "
+                    + "Delete it before publishing the first build " + build);
+
+        client.admin().indices().prepareUpdateSettings(build).setSettings(ImmutableSettings.settingsBuilder().
+                put("index.number_of_replicas", config.getIndexReplicas()).
+                put("index.refresh_interval", "1s").
+                put("index.merge.policy.segments_per_tier", 10).
+                build()).get();
+        if (config.doOptimize()) {
+            logger.info("Optimizing " + build + " ...");
+            client.admin().indices().optimize(new OptimizeRequest(build).maxNumSegments(1)).actionGet();
+        }
+
+        // all in one request -> atomic
+        IndicesAliasesRequestBuilder aliases = client.admin().indices().prepareAliases();
+        List<String> previous = getIndices(osmIndex);
+        for (String old : previous) {
+            aliases.removeAlias(old, osmIndex);
+        }
+        aliases.addAlias(build, osmIndex).
+                removeAlias(build, buildAlias).get();
+        logger.info("Published " + build + " as " + osmIndex + ", previous: " + previous);
+        deleteOldBuilds(build);
+    }
+
+    /**
+     * Keeps the specified build and the last geocoder.index.keep builds before
+     * it for a rollback.
+     */
+    void deleteOldBuilds(String current) {
+        List<String> builds = new ArrayList<String>();
+        for (String index : getMetaData().indices().keySet()) {
+            if (buildPattern.matcher(index).matches() && index.compareTo(current) < 0)
+                builds.add(index);
+        }
+        // newest first
+        Collections.sort(builds, Collections.reverseOrder());
+        int keep = config.getIndexKeep();
+        for (int i = keep; i < builds.size(); i++) {
+            String index = builds.get(i);
+            // an index which is still referenced is never deleted
+            if (!getMetaData().index(index).aliases().isEmpty())
+                continue;
+            logger.info("Deleting old index " + index);
+            client.admin().indices().prepareDelete(index).get();
+        }
+    }
+
+    List<String> getIndices(String alias) {
+        Map<String, AliasMetaData> map = getMetaData().aliases().get(alias);
+        if (map == null)
+            return Collections.emptyList();
+        return new ArrayList<String>(map.keySet());
+    }
+
+    private MetaData getMetaData() {
+        return client.admin().cluster().prepareState().get().getState().metaData();
+    }
+
+    private void createIndex(String indexName, boolean bulk) throws IOException {
+        String settingsStr = GeocoderHelper.toString(getClass().getResourceAsStream("settings.json"));
+        String mappingSource = GeocoderHelper.toString(getClass().getResourceAsStream(osmType + ".json"));
+        if (config.isBoundsEncoded())
+            mappingSource = excludeFromSource(mappingSource, osmType, "bounds");
+
+        ImmutableSettings.Builder settings = ImmutableSettings.settingsBuilder().loadFromSource(settingsStr);
+        if (bulk) {
+            // restored in publish
+            settings.put("index.number_of_replicas", 0).
+                    put("index.refresh_interval", "-1").
+                    put("index.merge.policy.segments_per_tier", 30);
+        }
+        client.admin().indices().create(new CreateIndexRequest(indexName).
+                settings(settings.build()).
+                mapping(osmType, mappingSource)).actionGet();
+    }
+
+    /**
+     * The field is still indexed but not returned, e.g. if it is stored in a
+     * compact form in another field.
+     */
+    static String excludeFromSource(String mappingSource, String type, String field) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, Object> mapping = mapper.readValue(mappingSource, Map.class);
+        Map<String, Object> typeMapping = (Map<String, Object>) mapping.get(type);
+        Map<String, Object> source = new HashMap<String, Object>();
+        source.put("excludes", Collections.singletonList(field));
+        typeMapping.put("_source", source);
+        return mapper.writeValueAsString(mapping);
+    }
+}
@@ -8,11 +8,16 @@ import com.graphhopper.util.shapes.GHPoint;
 import java.util.List;
 
 /**
+ * A polygon of a BoundaryIndex layer. For admin boundaries the values are the
+ * is_in of the place, for other layers e.g. the postcode.
+ *
  * @author Peter Karich
  */
 public class Info {
 
+    public static final String ADMIN = "admin";
     private static final DistanceCalc distCalc = new DistancePlaneProjection();
+    private final String layer;
     private final GHPoint center;
     // every PointList represents a polygon
     final List<PointList> polygons;
@@ -22,7 +27,12 @@ public class Info {
     private final String id;
 
     public Info(String id, GHPoint center, List<PointList> polygons, List<String> isIn) {
+        this(id, ADMIN, center, polygons, isIn);
+    }
+
+    public Info(String id, String layer, GHPoint center, List<PointList> polygons, List<String> isIn) {
         this.id = id;
+        this.layer = layer;
         this.center = center;
         this.polygons = polygons;
         this.isIn = isIn;
@@ -72,10 +82,33 @@ public class Info {
         return false;
     }
 
+    public double getArea() {
+        return area;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public GHPoint getCenter() {
+        return center;
+    }
+
+    public String getLayer() {
+        return layer;
+    }
+
     public List<String> getIsIn() {
         return isIn;
     }
 
+    /**
+     * @return the first value, e.g. the postcode, or null
+     */
+    public String getValue() {
+        return isIn.isEmpty() ? null : isIn.get(0);
+    }
+
     public double calculateDistance(double lat, double lon) {
         return distCalc.calcDist(center.lat, center.lon, lat, lon);
     }
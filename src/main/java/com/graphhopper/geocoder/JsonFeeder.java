@@ -8,26 +8,33 @@ import com.github.jsonj.tools.JsonParser;
 import static com.github.jsonj.tools.JsonBuilder.$;
 import static com.github.jsonj.tools.JsonBuilder._;
 import static com.github.jsonj.tools.JsonBuilder.array;
+import static com.github.jsonj.tools.JsonBuilder.primitive;
 import com.graphhopper.geohash.KeyAlgo;
 import com.graphhopper.geohash.SpatialKeyAlgo;
 import com.graphhopper.util.PointList;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.BBox;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.list.array.TLongArrayList;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
-import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
-import org.elasticsearch.action.bulk.BulkItemResponse;
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
-import org.elasticsearch.action.bulk.BulkResponse;
-import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.admin.indices.flush.FlushRequest;
+import org.elasticsearch.action.admin.indices.stats.CommonStats;
+import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
-import org.elasticsearch.client.Requests;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
 
 /**
  * @author Peter Karich
@@ -39,47 +46,549 @@ public class JsonFeeder extends BaseES {
         new JsonFeeder(config, BaseES.createClient(config)).start();
     }
 
+    private static final Set<String> PLACE_TYPES = new HashSet<String>(Arrays.asList(PlaceIndex.getTypes()));
     private boolean minimalData;
     private final KeyAlgo keyAlgo;
+    private final ImportProfiler profiler;
+    private DocumentSink sink;
+    private final boolean encodeBounds;
+    // boundaries waiting for the document of their center node
+    private BoundaryStore boundaries;
+    // the hashes of the documents to skip unchanged ones
+    private ContentHashes hashes;
+    // the ways which are merged into one document per street at the end
+    private StreetMerger streets;
 
     public JsonFeeder(Configuration config, Client client) {
         super(config, client);
         keyAlgo = new SpatialKeyAlgo(config.getSpatialKeyResolution());
+        profiler = new ImportProfiler(config, metrics);
+        encodeBounds = config.isBoundsEncoded();
+        String bulkFileDir = config.getBulkFileDir();
+        if (config.isLocalBackend())
+            sink = new LocalIndexWriter(new File(config.getLocalIndexDir()));
+        else if (bulkFileDir != null)
+            sink = new BulkFileSink(new File(bulkFileDir), config.getBulkFileMaxSize(), routing);
+        else
+            sink = new ElasticSearchSink(config, client, profiler);
     }
 
     public void start() {
-        initIndices();
-
-        OsmPostProcessor processor = new MyOsmPostProcessor(new JsonParser()) {
-            boolean dryRun = config.isDryRun();
-
-            @Override public Collection<Integer> bulkUpdate(List<JsonObject> objects, String indexName, String indexType) {
-                if (dryRun)
-                    return Collections.EMPTY_LIST;
-                // use only one index for all data
-                Collection<Integer> coll = JsonFeeder.this.bulkUpdate(objects, osmIndex, osmType);
-                if (!coll.isEmpty()) {
-                    Collection<String> ids = new ArrayList(coll.size());
-                    for (Integer integ : coll) {
-                        ids.add(objects.get(integ).getString("id"));
-                    }
-                    logger.warn(coll.size() + " problem(s) while feeding " + objects.size() + " object(s)! " + ids);
+        StopWatch sw = new StopWatch().start();
+        // the bulk files are loaded into an index later
+        if (!config.isLocalBackend() && config.getBulkFileDir() == null) {
+            if (config.isBlueGreen())
+                osmIndex = new IndexManager(config, client).createBuildIndex();
+            else
+                initIndices();
+        }
+
+        hashes = createContentHashes();
+        if (config.isSpatialSorting())
+            sortSpatially();
+        boolean success = false;
+        try {
+            String pbf = config.getPbfFile();
+            if (config.isMergeStreets())
+                streets = new StreetMerger(config.getMergeStreetsDistance(), 64);
+            if (pbf != null)
+                feedPbf(new File(pbf));
+            else
+                feed(config.getIndexDir());
+            if (streets != null)
+                feedMergedStreets();
+            closeSink();
+            if (hashes != null) {
+                List<String> deleted = hashes.getDeleted();
+                addOldAreas(deleted);
+                deleteDocs(deleted);
+            }
+            success = true;
+        } catch (IOException ex) {
+            throw new RuntimeException("cannot finish feeding into " + sink, ex);
+        } finally {
+            if (streets != null) {
+                streets.close();
+                streets = null;
+            }
+            closeContentHashes(success);
+        }
+        logIndexStats();
+        logger.info("finished in " + sw.stop().getSeconds() + "s, " + profiler.createReport()
+                + "\nmetrics:\n" + metrics.toText());
+    }
+
+    /**
+     * Passes all following documents sorted by the spatial key of their
+     * center to the sink when it is closed.
+     */
+    public void sortSpatially() {
+        sink = new SpatialSortingSink(sink, keyAlgo, config.getSortBufferSize(), config.getFeedBulkSize());
+    }
+
+    /**
+     * Called after all documents were fed.
+     */
+    public void closeSink() throws IOException {
+        sink.close();
+        if (sink instanceof SpatialSortingSink)
+            invalidateHashes(((SpatialSortingSink) sink).getFailedIds());
+    }
+
+    void setSink(DocumentSink sink) {
+        this.sink = sink;
+    }
+
+    void setContentHashes(ContentHashes hashes) {
+        this.hashes = hashes;
+    }
+
+    /**
+     * The hashes were recorded before storing, so the documents which the sink
+     * could not store would be skipped as unchanged on the next import.
+     */
+    void invalidateHashes(List<String> ids) {
+        if (hashes == null || ids.isEmpty())
+            return;
+        try {
+            for (String id : ids) {
+                hashes.invalidate(id);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("cannot invalidate the hashes of " + ids, ex);
+        }
+        logger.info("invalidated the hashes of " + ids.size() + " documents which could not be stored");
+    }
+
+    List<String> getIds(List<String> ids, Collection<Integer> positions) {
+        List<String> res = new ArrayList<String>(positions.size());
+        for (Integer index : positions) {
+            res.add(ids.get(index));
+        }
+        return res;
+    }
+
+    ContentHashes createContentHashes() {
+        String file = config.getContentHashFile();
+        if (file == null)
+            return null;
+        if (config.isBlueGreen() || config.isLocalBackend() || config.getBulkFileDir() != null || config.isDryRun()) {
+            logger.warn("content hashes only work for a re-import into the same index, ignoring " + file);
+            return null;
+        }
+        try {
+            return new ContentHashes(new File(file));
+        } catch (IOException ex) {
+            throw new RuntimeException("cannot open content hashes " + file, ex);
+        }
+    }
+
+    void closeContentHashes(boolean success) {
+        if (hashes == null)
+            return;
+        try {
+            if (success)
+                hashes.commit();
+            else
+                hashes.abort();
+        } catch (IOException ex) {
+            logger.warn("cannot close content hashes", ex);
+        }
+        hashes = null;
+    }
+
+    /**
+     * @param changed the ids of changed documents are added to it
+     * @return true if the document did not change since the last import
+     */
+    boolean skipUnchanged(String id, JsonObject doc, List<String> changed) throws IOException {
+        if (hashes == null)
+            return false;
+        int state = hashes.check(id, doc);
+        if (state == ContentHashes.UNCHANGED) {
+            metrics.counter("geocoder_feed_unchanged_total").incrementAndGet();
+            return true;
+        }
+        if (state == ContentHashes.CHANGED)
+            changed.add(id);
+        if (hashes.hasPrevious() && isArea(doc.getString("type"), doc.containsKey("bounds") || doc.containsKey("bounds_enc"))) {
+            // the unchanged entries in the old and the new area could belong to another boundary or place now
+            if (state == ContentHashes.CHANGED)
+                addOldAreas(Collections.singletonList(id));
+            BBox area = IncrementalUpdater.getArea(doc);
+            if (area != null)
+                hashes.addArea(area);
+        }
+        return false;
+    }
+
+    /**
+     * @return true for documents which determine the is_in of others
+     */
+    static boolean isArea(String type, boolean hasBounds) {
+        return hasBounds || type != null && PLACE_TYPES.contains(type);
+    }
+
+    /**
+     * Remembers the areas of the indexed boundaries and places before they
+     * are changed or deleted.
+     */
+    void addOldAreas(List<String> ids) {
+        if (hashes == null || ids.isEmpty())
+            return;
+        int bulkSize = config.getFeedBulkSize();
+        for (int from = 0; from < ids.size(); from += bulkSize) {
+            List<String> sub = ids.subList(from, Math.min(ids.size(), from + bulkSize));
+            SearchResponse rsp = client.prepareSearch(osmIndex).setTypes(osmType).
+                    setQuery(QueryBuilders.idsQuery(osmType).addIds(sub.toArray(new String[sub.size()]))).
+                    setSize(sub.size()).get();
+            for (SearchHit hit : rsp.getHits().getHits()) {
+                Map<String, Object> source = hit.getSource();
+                if (!isArea((String) source.get("type"), source.containsKey("bounds") || source.containsKey("bounds_enc")))
+                    continue;
+                BBox area = IncrementalUpdater.getArea(source);
+                if (area != null)
+                    hashes.addArea(area);
+            }
+        }
+    }
+
+    /**
+     * Deletes the documents independent of their routing.
+     */
+    void deleteDocs(List<String> ids) {
+        if (ids.isEmpty())
+            return;
+        int bulkSize = config.getFeedBulkSize();
+        for (int from = 0; from < ids.size(); from += bulkSize) {
+            List<String> sub = ids.subList(from, Math.min(ids.size(), from + bulkSize));
+            client.prepareDeleteByQuery(osmIndex).setTypes(osmType).
+                    setQuery(QueryBuilders.idsQuery(osmType).addIds(sub.toArray(new String[sub.size()]))).get();
+        }
+        metrics.counter("geocoder_feed_deleted_total").addAndGet(ids.size());
+        logger.info("deleted " + ids.size() + " documents");
+    }
+
+    /**
+     * Feeds the nodes, ways and relations of the osm2geojson output in the
+     * specified directory. If the files are found they are parsed in
+     * parallel, otherwise the OsmPostProcessor of osm2geojson reads them.
+     */
+    public void feed(String directory) {
+        minimalData = config.isMinimalDataMode();
+        final FeedTask nodes, ways, relations;
+        final File dir = new File(directory);
+        if (config.getFeedThreads() > 1 && new File(dir, config.getFeedFile("node")).exists()) {
+            nodes = createChunkedTask(new File(dir, config.getFeedFile("node")), "node");
+            ways = createChunkedTask(new File(dir, config.getFeedFile("way")), "way");
+            relations = createChunkedTask(new File(dir, config.getFeedFile("relation")), "relation");
+        } else {
+            final OsmPostProcessor processor = new MyOsmPostProcessor(new JsonParser()) {
+                @Override public Collection<Integer> bulkUpdate(List<JsonObject> objects, String indexName, String indexType) {
+                    return feedObjects(objects, indexType);
+                }
+            }.setBulkSize(config.getFeedBulkSize());
+            processor.setDirectory(directory);
+            nodes = new FeedTask() {
+                @Override public void feed() {
+                    processor.processNodes();
+                }
+            };
+            ways = new FeedTask() {
+                @Override public void feed() {
+                    processor.processWays();
+                }
+            };
+            relations = new FeedTask() {
+                @Override public void feed() {
+                    processor.processRelations();
+                }
+            };
+        }
+
+        if (!config.isMergeBoundaries()) {
+            try {
+                nodes.feed();
+                ways.feed();
+                relations.feed();
+            } catch (IOException ex) {
+                throw new RuntimeException("cannot feed " + directory, ex);
+            }
+            return;
+        }
+
+        // all boundaries are known before their center nodes are fed
+        feedMergingBoundaries(new FeedTask() {
+            @Override public void feed() throws IOException {
+                relations.feed();
+                ways.feed();
+                nodes.feed();
+            }
+        });
+    }
+
+    /**
+     * Parses the lines of the file in parallel and interprets them like
+     * the OsmPostProcessor. Missing files are skipped.
+     */
+    FeedTask createChunkedTask(final File file, final String elementType) {
+        final int threads = config.getFeedThreads();
+        final int bulkSize = config.getFeedBulkSize();
+        // interpretTags measures its time in a field
+        final ThreadLocal<MyOsmPostProcessor> processors = new ThreadLocal<MyOsmPostProcessor>() {
+            @Override protected MyOsmPostProcessor initialValue() {
+                return new MyOsmPostProcessor(new JsonParser());
+            }
+        };
+        return new FeedTask() {
+            @Override public void feed() throws IOException {
+                if (!file.exists()) {
+                    logger.warn("skipped missing file " + file);
+                    return;
                 }
-                return coll;
+                new ChunkedJsonReader(threads, config.getFeedChunkSize()).read(file, new ChunkedJsonReader.Transform() {
+                    @Override public JsonObject transform(JsonObject obj) {
+                        return processors.get().interpretTags(obj, obj);
+                    }
+                }, new ChunkedJsonReader.Handler() {
+                    @Override public void handle(List<JsonObject> objects) {
+                        for (int from = 0; from < objects.size(); from += bulkSize) {
+                            feedObjects(objects.subList(from, Math.min(objects.size(), from + bulkSize)), elementType);
+                        }
+                    }
+                });
             }
-        }.setBulkSize(config.getFeedBulkSize());
+        };
+    }
 
+    /**
+     * Feeds the specified OSM PBF file directly, see PbfImporter.
+     */
+    public void feedPbf(final File file) {
         minimalData = config.isMinimalDataMode();
-        processor.setDirectory(config.getIndexDir());
-        processor.processNodes();
-        processor.processWays();
-        processor.processRelations();       
+        final PbfImporter importer = new PbfImporter(config, this);
+        FeedTask task = new FeedTask() {
+            @Override public void feed() throws IOException {
+                importer.read(file);
+            }
+        };
+        if (config.isMergeBoundaries()) {
+            feedMergingBoundaries(task);
+        } else {
+            try {
+                task.feed();
+            } catch (IOException ex) {
+                throw new RuntimeException("cannot read " + file, ex);
+            }
+        }
+    }
+
+    interface FeedTask {
+
+        void feed() throws IOException;
+    }
+
+    /**
+     * Keeps boundaries with a center node back while the task feeds, the task
+     * has to feed the boundaries before the nodes.
+     */
+    void feedMergingBoundaries(FeedTask task) {
+        try {
+            boundaries = new BoundaryStore();
+            task.feed();
+            feedRemainingBoundaries();
+        } catch (IOException ex) {
+            throw new RuntimeException("cannot merge boundaries", ex);
+        } finally {
+            if (boundaries != null) {
+                try {
+                    boundaries.close();
+                } catch (IOException ex) {
+                    logger.warn("cannot close boundary store", ex);
+                }
+                boundaries = null;
+            }
+        }
+    }
+
+    /**
+     * Feeds the interpreted objects of one OSM type into the index.
+     *
+     * @param elementType node, way or relation
+     * @return the positions of the objects which could not be fed
+     */
+    Collection<Integer> feedObjects(List<JsonObject> objects, String elementType) {
+        metrics.counter(Metrics.name("geocoder_feed_docs_total", "osm_type", elementType)).addAndGet(objects.size());
+        if (config.isDryRun()) {
+            profiler.count(elementType, objects.size());
+            return Collections.EMPTY_LIST;
+        }
+        // use only one index for all data
+        Collection<Integer> coll = bulkUpdate(objects, osmIndex, osmType);
+        profiler.count(elementType, objects.size());
+        if (!coll.isEmpty()) {
+            Collection<String> ids = new ArrayList(coll.size());
+            for (Integer integ : coll) {
+                ids.add(objects.get(integ).getString("id"));
+            }
+            logger.warn(coll.size() + " problem(s) while feeding " + objects.size() + " object(s)! " + ids);
+        }
+        return coll;
+    }
+
+    /**
+     * Feeds the boundaries whose center node was not found, the fixer assigns
+     * them later.
+     */
+    void feedRemainingBoundaries() throws IOException {
+        List<String> ids = new ArrayList<String>();
+        List<JsonObject> docs = new ArrayList<JsonObject>();
+        boundaries.removeRemaining(ids, docs);
+        logger.info(ids.size() + " boundaries without center node");
+        if (hashes != null) {
+            List<String> changed = new ArrayList<String>();
+            for (int i = ids.size() - 1; i >= 0; i--) {
+                if (skipUnchanged(ids.get(i), docs.get(i), changed)) {
+                    ids.remove(i);
+                    docs.remove(i);
+                }
+            }
+            if (routing.isEnabled())
+                deleteDocs(changed);
+        }
+        store(ids, docs, "boundaries");
+    }
+
+    private void store(List<String> ids, List<JsonObject> docs, String what) {
+        int bulkSize = config.getFeedBulkSize();
+        for (int from = 0; from < ids.size(); from += bulkSize) {
+            int to = Math.min(ids.size(), from + bulkSize);
+            List<String> sub = ids.subList(from, to);
+            Collection<Integer> failed = sink.store(osmIndex, osmType, sub, docs.subList(from, to));
+            if (!failed.isEmpty()) {
+                logger.warn(failed.size() + " problem(s) while feeding " + (to - from) + " " + what);
+                invalidateHashes(getIds(sub, failed));
+            }
+        }
+    }
+
+    /**
+     * Feeds one document per street for the ways kept back by the
+     * StreetMerger.
+     */
+    void feedMergedStreets() throws IOException {
+        final int bulkSize = config.getFeedBulkSize();
+        final List<String> ids = new ArrayList<String>(bulkSize);
+        final List<JsonObject> docs = new ArrayList<JsonObject>(bulkSize);
+        final List<String> changed = new ArrayList<String>();
+        int ways = streets.size();
+        final int[] count = new int[1];
+        streets.finish(new StreetMerger.Handler() {
+            @Override public void handle(String id, JsonObject doc) throws IOException {
+                count[0]++;
+                if (skipUnchanged(id, doc, changed))
+                    return;
+                ids.add(id);
+                docs.add(doc);
+                if (ids.size() >= bulkSize)
+                    flush();
+            }
+
+            void flush() {
+                if (routing.isEnabled())
+                    deleteDocs(changed);
+                changed.clear();
+                store(ids, docs, "streets");
+                ids.clear();
+                docs.clear();
+            }
+        });
+        if (routing.isEnabled())
+            deleteDocs(changed);
+        store(ids, docs, "streets");
+        metrics.counter("geocoder_feed_merged_ways_total").addAndGet(ways - count[0]);
+        logger.info("merged " + ways + " ways into " + count[0] + " streets");
+    }
+
+    /**
+     * A boundary with a center node is kept back and merged into the
+     * document of the node, so the fixer does not need to look it up and
+     * reindex the node.
+     *
+     * @return true if the document is kept back
+     */
+    boolean mergeBoundaries(String id, JsonObject doc) throws IOException {
+        if (boundaries == null)
+            return false;
+
+        try {
+            String centerNode = doc.getString("center_node");
+            if (centerNode != null && doc.containsKey("has_boundary")) {
+                boundaries.put(Long.parseLong(centerNode), id, doc);
+                return true;
+            }
+            if (id.startsWith("osmnode/")) {
+                JsonObject boundary = boundaries.remove(Long.parseLong(id.substring("osmnode/".length())));
+                if (boundary != null) {
+                    mergeBoundary(doc, boundary);
+                    metrics.counter("geocoder_feed_merged_boundaries_total").incrementAndGet();
+                }
+            }
+        } catch (NumberFormatException ex) {
+            logger.warn("invalid node id for " + id + ", " + ex.getMessage());
+        }
+        return false;
+    }
+
+    static void mergeBoundary(JsonObject place, JsonObject boundary) {
+        mergeBoundary(place, boundary, primitive(true));
+    }
+
+    /**
+     * Copies bounds, admin_level and wikipedia of the boundary to the place.
+     * Used while feeding and by RelationShipFixer for boundaries of older
+     * feeds, so it works on the JsonObject and on the source of a hit.
+     *
+     * @param fixed true as value of the map for has_fixed_boundary
+     */
+    static <V> void mergeBoundary(Map<String, V> place, Map<String, V> boundary, V fixed) {
+        place.remove("bounds_enc");
+        place.put("bounds", boundary.get("bounds"));
+        if (boundary.containsKey("bounds_enc"))
+            place.put("bounds_enc", boundary.get("bounds_enc"));
+        if (boundary.containsKey("bounds_area"))
+            place.put("bounds_area", boundary.get("bounds_area"));
+        if (!place.containsKey("admin_level") && boundary.containsKey("admin_level"))
+            place.put("admin_level", boundary.get("admin_level"));
+        if (!place.containsKey("wikipedia") && boundary.containsKey("wikipedia"))
+            place.put("wikipedia", boundary.get("wikipedia"));
+        place.put("has_fixed_boundary", fixed);
+    }
+
+    /**
+     * Logs size, documents and segments of the index e.g. to compare the
+     * impact of mapping changes.
+     */
+    public void logIndexStats() {
+        if (config.isDryRun() || config.isLocalBackend() || config.getBulkFileDir() != null)
+            return;
+        client.admin().indices().flush(new FlushRequest(osmIndex)).actionGet();
+        CommonStats stats = client.admin().indices().prepareStats(osmIndex).clear().
+                setStore(true).setDocs(true).setSegments(true).get().getPrimaries();
+        logger.info("index " + osmIndex + " size:" + stats.getStore().getSize()
+                + ", docs:" + stats.getDocs().getCount()
+                + ", segments:" + stats.getSegments().getCount());
     }
 
     public Collection<Integer> bulkUpdate(Collection<JsonObject> objects, String indexName, String indexType) {
-        // now using bulk API instead of feeding each doc separate with feedDoc
-        BulkRequestBuilder brb = client.prepareBulk();
+        List<String> ids = new ArrayList<String>(objects.size());
+        List<JsonObject> docs = new ArrayList<JsonObject>(objects.size());
+        // the position in objects for every created document
+        TIntArrayList positions = new TIntArrayList(objects.size());
+        List<String> changed = new ArrayList<String>();
+        int position = -1;
         for (JsonObject o : objects) {
+            position++;
             String id = o.getString("id");
             if (id == null) {
                 logger.warn("Skipped object without id when bulkUpdate:" + o);
@@ -87,28 +596,35 @@ public class JsonFeeder extends BaseES {
             }
 
             try {
+                long docStart = System.nanoTime();
                 JsonObject obj = createDoc(o);
-                IndexRequest indexReq = Requests.indexRequest(indexName).type(indexType).id(id).source(obj.toString());
-                brb.add(indexReq);
+                profiler.record("create_doc", docStart);
+                profiler.recordDoc(id, System.nanoTime() - docStart);
+                if (streets != null && streets.add(id, o, obj))
+                    continue;
+                if (mergeBoundaries(id, obj) || skipUnchanged(id, obj, changed))
+                    continue;
+                ids.add(id);
+                docs.add(obj);
+                positions.add(position);
             } catch (Exception ex) {
+                metrics.counter(Metrics.name("geocoder_feed_failures_total", "stage", "create")).incrementAndGet();
                 logger.warn("cannot add object " + id + " -> " + o.toString(), ex);
             }
         }
-        if (brb.numberOfActions() > 0) {
-            BulkResponse rsp = brb.execute().actionGet();
-            if (rsp.hasFailures()) {
-                List<Integer> list = new ArrayList<Integer>(rsp.getItems().length);
-                for (BulkItemResponse br : rsp.getItems()) {
-                    if (br.isFailed()) {
-                        logger.warn("Cannot index object " + br.getId() + ". Error:" + br.getFailureMessage());
-                        list.add(br.getItemId());
-                    }
-                }
-                return list;
-            }
+        if (docs.isEmpty())
+            return Collections.emptyList();
+
+        // the new version could have a different routing
+        if (routing.isEnabled())
+            deleteDocs(changed);
+        Collection<Integer> failed = sink.store(indexName, indexType, ids, docs);
+        invalidateHashes(getIds(ids, failed));
+        List<Integer> res = new ArrayList<Integer>(failed.size());
+        for (Integer index : failed) {
+            res.add(positions.get(index));
         }
-
-        return Collections.emptyList();
+        return res;
     }
 
     // {"id":"osmnode/1411809098","title":"Bensons Rift",
@@ -138,6 +654,7 @@ public class JsonFeeder extends BaseES {
                 foundLocation = true;
                 double boundsArea = 0;
                 double[] middlePoint = null;
+                List<PointList> boundsRings = new ArrayList<PointList>(1);
 
                 if ("Point".equalsIgnoreCase(geoType)) {
                     // order is lon,lat, but order of middlePoint is lat,lon
@@ -163,6 +680,7 @@ public class JsonFeeder extends BaseES {
                         polyBoundary.add(boundary);
                         result.put("bounds", $(_("type", "Polygon"),
                                 _("coordinates", polyBoundary)));
+                        boundsRings.add(GeocoderHelper.polygonToPointListGH(boundary));
                     }
 
                 } else if ("MultiPolygon".equalsIgnoreCase(geoType)) {
@@ -187,6 +705,7 @@ public class JsonFeeder extends BaseES {
                             JsonArray polyBoundary = array();
                             polyBoundary.add(outerBoundary);
                             coordinates.add(polyBoundary);
+                            boundsRings.add(GeocoderHelper.polygonToPointListGH(outerBoundary));
 
                             if (largestArea < tmpArea) {
                                 largestArea = tmpArea;
@@ -216,6 +735,9 @@ public class JsonFeeder extends BaseES {
                     // lon,lat
                     result.put("center", array(middlePoint[1], middlePoint[0]));
 
+                if (encodeBounds && !boundsRings.isEmpty())
+                    result.put("bounds_enc", GeometryCodec.encodeBase64(boundsRings));
+
                 result.put("bounds_area", boundsArea);
             } else if (key.equalsIgnoreCase("center_node")) {
                 // a relation normally has a center_node associated -> could make fetching easier/faster
@@ -340,9 +862,6 @@ public class JsonFeeder extends BaseES {
         return name;
     }
 
-    int counter = 0;
-    float res = 0;
-
     /**
      * A very simple simplify algorithm. Create the spatial key of a point and
      * compare to the previous one. If identical -> skip. So, if the resolution
@@ -353,6 +872,7 @@ public class JsonFeeder extends BaseES {
         if (orig.size() < config.getSmallBoundary())
             return orig;
 
+        long simplifyStart = System.nanoTime();
         JsonArray outerBoundary = new JsonArray();
         int max = pointList.size();
         TLongArrayList keys = new TLongArrayList(max);
@@ -376,38 +896,17 @@ public class JsonFeeder extends BaseES {
         }
         if (outerBoundary.size() < 4) {
             logger.warn("reduced multi too much: " + outerBoundary.size() + " vs. original " + orig.size());
+            profiler.record("simplify", simplifyStart);
             return orig;
         }
 
-        res += (float) outerBoundary.size() / max;
-        counter++;
-        if (counter % 100 == 0)
-            logger.info("simplified:" + res / counter);
+        metrics.counter(Metrics.name("geocoder_feed_simplify_points_total", "kind", "input")).addAndGet(max);
+        metrics.counter(Metrics.name("geocoder_feed_simplify_points_total", "kind", "output")).addAndGet(outerBoundary.size());
+        profiler.record("simplify", simplifyStart);
         return outerBoundary;
     }
 
     public void initIndices() {
-        initIndex(osmIndex, osmType);
-    }
-
-    private void createIndexAndPutMapping(String indexName, String type) {
-        boolean log = true;
-        try {
-            String settingsStr = GeocoderHelper.toString(getClass().getResourceAsStream("settings.json"));
-            String mappingSource = GeocoderHelper.toString(getClass().getResourceAsStream(type + ".json"));
-
-            client.admin().indices().create(new CreateIndexRequest(indexName).
-                    settings(settingsStr).
-                    mapping(type, mappingSource)).actionGet();
-            if (log)
-                logger.info("Created index: " + indexName);
-        } catch (Exception ex) {
-            if (log)
-                logger.info("Index " + indexName + " already exists");
-        }
-    }
-
-    private void initIndex(String indexName, String type) {
-        createIndexAndPutMapping(indexName, type);
+        new IndexManager(config, client).initIndex(osmIndex);
     }
 }
@@ -0,0 +1,97 @@
+package com.graphhopper.geocoder;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram with log-linear buckets similar to HdrHistogram: every
+ * power of two range is split into 32 buckets, so values are recorded with a
+ * relative error of about 3%. Values are typically microseconds.
+ *
+ * @author Peter Karich
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // allows values up to 2^40 which is more than 12 days in micro seconds
+    private static final int MAX_EXP = 40;
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_EXP - SUB_BITS + 2) * SUB_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    static int toIndex(long value) {
+        if (value < SUB_COUNT)
+            return (int) Math.max(0, value);
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        if (exp > MAX_EXP)
+            return toIndex((1L << (MAX_EXP + 1)) - 1);
+        int shift = exp - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >> shift) - SUB_COUNT);
+    }
+
+    /**
+     * @return the largest value which is stored in the bucket
+     */
+    static long toValue(int index) {
+        if (index < SUB_COUNT)
+            return index;
+        int shift = index / SUB_COUNT - 1;
+        long lower = (long) (index % SUB_COUNT + SUB_COUNT) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    public void record(long value) {
+        counts.incrementAndGet(toIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long tmpMax = max.get();
+        while (value > tmpMax && !max.compareAndSet(tmpMax, value)) {
+            tmpMax = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long tmpCount = count.get();
+        if (tmpCount == 0)
+            return 0;
+        return (double) sum.get() / tmpCount;
+    }
+
+    /**
+     * @param percentile e.g. 99.9
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        int len = counts.length();
+        long[] snapshot = new long[len];
+        for (int i = 0; i < len; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < len; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return Math.min(toValue(i), getMax());
+        }
+        return getMax();
+    }
+}
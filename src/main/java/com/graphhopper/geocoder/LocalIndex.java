@@ -0,0 +1,296 @@
+package com.graphhopper.geocoder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.util.shapes.BBox;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * An embedded alternative to Elasticsearch for single region deployments.
+ * All files are memory mapped: a sorted term dictionary of the normalized name
+ * tokens with postings, columns for center, population and type_rank, the
+ * names and the stored documents. Document ids are their rank (population,
+ * then type_rank) so that the first matches found while merging the postings
+ * are the best ones. Queries are matched like the Elasticsearch queries of
+ * QueryHandler, except that there is no fuzziness.
+ *
+ * @author Peter Karich
+ */
+public class LocalIndex {
+
+    static final String TERM_OFFSETS = "term_offsets.i32";
+    static final String TERMS = "terms.u8";
+    static final String POSTING_STARTS = "posting_starts.i32";
+    static final String POSTINGS = "postings.i32";
+    static final String LATS = "lat.i32";
+    static final String LONS = "lon.i32";
+    static final String POPULATIONS = "population.i64";
+    static final String TYPE_RANKS = "type_rank.f32";
+    static final String NAME_OFFSETS = "name_offsets.i32";
+    static final String NAMES = "names.u8";
+    static final String SOURCE_OFFSETS = "source_offsets.i32";
+    static final String SOURCES = "sources.u8";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final double FACTOR = 1e7;
+    // the query matching uses a bit set per document
+    private static final int MAX_TOKENS = 63;
+    private final IntBuffer termOffsets;
+    private final ByteBuffer terms;
+    private final IntBuffer postingStarts;
+    private final IntBuffer postings;
+    private final IntBuffer lats;
+    private final IntBuffer lons;
+    private final LongBuffer populations;
+    private final FloatBuffer typeRanks;
+    private final IntBuffer nameOffsets;
+    private final ByteBuffer names;
+    private final IntBuffer sourceOffsets;
+    private final ByteBuffer sources;
+    private final int termCount;
+    private final int docs;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Creates an empty index.
+     */
+    public LocalIndex() {
+        termOffsets = postingStarts = nameOffsets = sourceOffsets = IntBuffer.wrap(new int[]{0});
+        postings = lats = lons = IntBuffer.allocate(0);
+        terms = names = sources = ByteBuffer.allocate(0);
+        populations = LongBuffer.allocate(0);
+        typeRanks = FloatBuffer.allocate(0);
+        termCount = docs = 0;
+    }
+
+    private LocalIndex(File dir) throws IOException {
+        termOffsets = map(dir, TERM_OFFSETS).asIntBuffer();
+        terms = map(dir, TERMS);
+        postingStarts = map(dir, POSTING_STARTS).asIntBuffer();
+        postings = map(dir, POSTINGS).asIntBuffer();
+        lats = map(dir, LATS).asIntBuffer();
+        lons = map(dir, LONS).asIntBuffer();
+        populations = map(dir, POPULATIONS).asLongBuffer();
+        typeRanks = map(dir, TYPE_RANKS).asFloatBuffer();
+        nameOffsets = map(dir, NAME_OFFSETS).asIntBuffer();
+        names = map(dir, NAMES);
+        sourceOffsets = map(dir, SOURCE_OFFSETS).asIntBuffer();
+        sources = map(dir, SOURCES);
+        termCount = termOffsets.capacity() - 1;
+        docs = lats.capacity();
+    }
+
+    public static LocalIndex open(File dir) throws IOException {
+        return new LocalIndex(dir);
+    }
+
+    private static ByteBuffer map(File dir, String name) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(new File(dir, name), "r");
+        try {
+            // the mapping stays valid after closing the file
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    static int toFixed(double degree) {
+        return (int) Math.round(degree * FACTOR);
+    }
+
+    public int size() {
+        return docs;
+    }
+
+    public boolean isEmpty() {
+        return docs == 0;
+    }
+
+    public double getLat(int doc) {
+        return lats.get(doc) / FACTOR;
+    }
+
+    public double getLon(int doc) {
+        return lons.get(doc) / FACTOR;
+    }
+
+    public long getPopulation(int doc) {
+        return populations.get(doc);
+    }
+
+    public float getTypeRank(int doc) {
+        return typeRanks.get(doc);
+    }
+
+    public String getName(int doc) {
+        return decode(names, nameOffsets.get(doc), nameOffsets.get(doc + 1));
+    }
+
+    /**
+     * @return the document as it was fed
+     */
+    public Map<String, Object> getSource(int doc) {
+        int start = sourceOffsets.get(doc);
+        byte[] bytes = new byte[sourceOffsets.get(doc + 1) - start];
+        ByteBuffer tmp = sources.duplicate();
+        tmp.position(start);
+        tmp.get(bytes);
+        try {
+            return mapper.readValue(bytes, Map.class);
+        } catch (IOException ex) {
+            throw new IllegalStateException("cannot read document " + doc, ex);
+        }
+    }
+
+    String getTerm(int term) {
+        return decode(terms, termOffsets.get(term), termOffsets.get(term + 1));
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        ByteBuffer tmp = buffer.duplicate();
+        tmp.position(start);
+        tmp.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * @return the index of the first term which is equal or greater than the
+     * specified key
+     */
+    int lowerBound(String key) {
+        int low = 0, high = termCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getTerm(middle).compareTo(key) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * The same as the match query with minimum_should_match 3<90%
+     */
+    public List<Map<String, Object>> search(String query, int size) {
+        return search(query, size, null);
+    }
+
+    /**
+     * @param bbox limits the results to documents with a center inside, can
+     * be null
+     */
+    public List<Map<String, Object>> search(String query, int size, BBox bbox) {
+        List<String> tokens = GeocoderHelper.tokenize(query);
+        List<int[]> cursors = new ArrayList<int[]>();
+        int groups = Math.min(MAX_TOKENS, tokens.size());
+        for (int group = 0; group < groups; group++) {
+            addTerm(cursors, tokens.get(group), group);
+        }
+        long all = (1L << groups) - 1;
+        return collect(cursors, all, minimumShouldMatch(groups), 0, size, bbox);
+    }
+
+    /**
+     * The tokens before the last separator are matched like in search, the
+     * last token as prefix.
+     */
+    public List<Map<String, Object>> suggest(String query, int size) {
+        return suggest(query, size, null);
+    }
+
+    public List<Map<String, Object>> suggest(String query, int size, BBox bbox) {
+        int index = query.length() - 1;
+        while (index >= 0 && Character.isLetterOrDigit(query.charAt(index))) {
+            index--;
+        }
+        String front = index >= 0 ? query.substring(0, index) : "";
+        String end = query.substring(index + 1);
+        List<String> tokens = GeocoderHelper.tokenize(front);
+        List<int[]> cursors = new ArrayList<int[]>();
+        int groups = Math.min(MAX_TOKENS - 1, tokens.size());
+        for (int group = 0; group < groups; group++) {
+            addTerm(cursors, tokens.get(group), group);
+        }
+        long frontGroups = (1L << groups) - 1;
+        long required = 0;
+        if (!end.isEmpty()) {
+            String prefix = GeocoderHelper.normalize(end);
+            int from = lowerBound(prefix);
+            int to = lowerBound(prefix + Character.MAX_VALUE);
+            for (int term = from; term < to; term++) {
+                addCursor(cursors, term, groups);
+            }
+            required = 1L << groups;
+        } else if (groups == 0) {
+            return new ArrayList<Map<String, Object>>(0);
+        }
+        return collect(cursors, frontGroups, minimumShouldMatch(groups), required, size, bbox);
+    }
+
+    static int minimumShouldMatch(int clauses) {
+        if (clauses <= 3)
+            return clauses;
+        return (int) (clauses * 0.9);
+    }
+
+    private void addTerm(List<int[]> cursors, String token, int group) {
+        int term = lowerBound(token);
+        if (term < termCount && getTerm(term).equals(token))
+            addCursor(cursors, term, group);
+    }
+
+    private void addCursor(List<int[]> cursors, int term, int group) {
+        int from = postingStarts.get(term), to = postingStarts.get(term + 1);
+        if (from < to)
+            cursors.add(new int[]{from, to, group});
+    }
+
+    /**
+     * Merges the postings in document order, i.e. best ranked first.
+     *
+     * @param optionalGroups the groups where at least minMatch have to match
+     * @param requiredGroups the groups which have to match
+     */
+    private List<Map<String, Object>> collect(List<int[]> cursors, long optionalGroups, int minMatch,
+            long requiredGroups, int size, BBox bbox) {
+        List<Map<String, Object>> res = new ArrayList<Map<String, Object>>(Math.max(0, size));
+        if (cursors.isEmpty() || size <= 0)
+            return res;
+
+        PriorityQueue<int[]> queue = new PriorityQueue<int[]>(cursors.size(), new Comparator<int[]>() {
+            @Override public int compare(int[] o1, int[] o2) {
+                return postings.get(o1[0]) - postings.get(o2[0]);
+            }
+        });
+        queue.addAll(cursors);
+        while (!queue.isEmpty() && res.size() < size) {
+            int doc = postings.get(queue.peek()[0]);
+            long matched = 0;
+            while (!queue.isEmpty() && postings.get(queue.peek()[0]) == doc) {
+                int[] cursor = queue.poll();
+                matched |= 1L << cursor[2];
+                cursor[0]++;
+                if (cursor[0] < cursor[1])
+                    queue.add(cursor);
+            }
+            if ((matched & requiredGroups) == requiredGroups
+                    && Long.bitCount(matched & optionalGroups) >= minMatch
+                    && (bbox == null || bbox.contains(getLat(doc), getLon(doc))))
+                res.add(getSource(doc));
+        }
+        return res;
+    }
+}
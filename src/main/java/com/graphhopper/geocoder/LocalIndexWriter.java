@@ -0,0 +1,233 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonArray;
+import com.github.jsonj.JsonObject;
+import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the documents of the feeder and writes the files of a LocalIndex
+ * on close. The sources are written to a temporary file while feeding, only
+ * the names, the tokens and the columns are kept in memory. The fixer does not
+ * run on a local index, so fed documents keep the name without is_in.
+ *
+ * @author Peter Karich
+ */
+public class LocalIndexWriter implements DocumentSink {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final File dir;
+    private final Map<String, TIntArrayList> termMap = new HashMap<String, TIntArrayList>();
+    private final List<String> names = new ArrayList<String>();
+    private final TIntArrayList lats = new TIntArrayList();
+    private final TIntArrayList lons = new TIntArrayList();
+    private final TLongArrayList populations = new TLongArrayList();
+    private final TFloatArrayList typeRanks = new TFloatArrayList();
+    private final TIntArrayList sourceOffsets = new TIntArrayList();
+    private File sourceFile;
+    private DataOutputStream sourceOut;
+    private int sourceSize;
+    private int skipped;
+
+    public LocalIndexWriter(File dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public synchronized Collection<Integer> store(String indexName, String indexType, List<String> ids, List<JsonObject> docs) {
+        try {
+            if (sourceOut == null) {
+                dir.mkdirs();
+                sourceFile = new File(dir, "sources.tmp");
+                sourceOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sourceFile), 1 << 16));
+            }
+            for (JsonObject doc : docs) {
+                String name = doc.getString("name");
+                JsonArray center = doc.getArray("center");
+                // cannot be found or displayed
+                if (name == null || name.isEmpty() || center == null || center.size() != 2) {
+                    skipped++;
+                    continue;
+                }
+
+                byte[] bytes = doc.toString().getBytes(UTF8);
+                if ((long) sourceSize + bytes.length > Integer.MAX_VALUE)
+                    throw new IllegalStateException("the local index supports only 2GB of documents");
+
+                int docId = names.size();
+                sourceOffsets.add(sourceSize);
+                sourceOut.write(bytes);
+                sourceSize += bytes.length;
+                names.add(name);
+                lats.add(LocalIndex.toFixed(center.get(1).asDouble()));
+                lons.add(LocalIndex.toFixed(center.get(0).asDouble()));
+                Long population = doc.getLong("population");
+                populations.add(population == null ? 0 : population);
+                Double typeRank = doc.getDouble("type_rank");
+                typeRanks.add(typeRank == null ? 0 : typeRank.floatValue());
+                for (String token : new LinkedHashSet<String>(GeocoderHelper.tokenize(name))) {
+                    TIntArrayList list = termMap.get(token);
+                    if (list == null) {
+                        list = new TIntArrayList(2);
+                        termMap.put(token, list);
+                    }
+                    list.add(docId);
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("cannot write documents to " + sourceFile, ex);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Sorts the documents by population and type_rank like the Elasticsearch
+     * query does and writes all files.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        dir.mkdirs();
+        if (sourceOut != null)
+            sourceOut.close();
+        final int docs = names.size();
+        Integer[] order = new Integer[docs];
+        for (int i = 0; i < docs; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override public int compare(Integer o1, Integer o2) {
+                long p1 = populations.get(o1), p2 = populations.get(o2);
+                if (p1 != p2)
+                    return p1 > p2 ? -1 : 1;
+                return Float.compare(typeRanks.get(o2), typeRanks.get(o1));
+            }
+        });
+        int[] rankOf = new int[docs];
+        for (int rank = 0; rank < docs; rank++) {
+            rankOf[order[rank]] = rank;
+        }
+
+        DataOutputStream latOut = create(LocalIndex.LATS);
+        DataOutputStream lonOut = create(LocalIndex.LONS);
+        DataOutputStream popOut = create(LocalIndex.POPULATIONS);
+        DataOutputStream rankOut = create(LocalIndex.TYPE_RANKS);
+        DataOutputStream nameOffsetOut = create(LocalIndex.NAME_OFFSETS);
+        DataOutputStream nameOut = create(LocalIndex.NAMES);
+        DataOutputStream sourceOffsetOut = create(LocalIndex.SOURCE_OFFSETS);
+        DataOutputStream sourceDataOut = create(LocalIndex.SOURCES);
+        RandomAccessFile raf = sourceFile == null ? null : new RandomAccessFile(sourceFile, "r");
+        try {
+            ByteBuffer sources = raf == null ? ByteBuffer.allocate(0)
+                    : raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, sourceSize);
+            int nameOffset = 0, sourceOffset = 0;
+            for (int rank = 0; rank < docs; rank++) {
+                int old = order[rank];
+                latOut.writeInt(lats.get(old));
+                lonOut.writeInt(lons.get(old));
+                popOut.writeLong(populations.get(old));
+                rankOut.writeFloat(typeRanks.get(old));
+
+                byte[] nameBytes = names.get(old).getBytes(UTF8);
+                nameOffsetOut.writeInt(nameOffset);
+                nameOut.write(nameBytes);
+                nameOffset += nameBytes.length;
+
+                int start = sourceOffsets.get(old);
+                int end = old + 1 < docs ? sourceOffsets.get(old + 1) : sourceSize;
+                byte[] sourceBytes = new byte[end - start];
+                sources.position(start);
+                sources.get(sourceBytes);
+                sourceOffsetOut.writeInt(sourceOffset);
+                sourceDataOut.write(sourceBytes);
+                sourceOffset += sourceBytes.length;
+            }
+            nameOffsetOut.writeInt(nameOffset);
+            sourceOffsetOut.writeInt(sourceOffset);
+        } finally {
+            if (raf != null)
+                raf.close();
+            latOut.close();
+            lonOut.close();
+            popOut.close();
+            rankOut.close();
+            nameOffsetOut.close();
+            nameOut.close();
+            sourceOffsetOut.close();
+            sourceDataOut.close();
+        }
+        writeTerms(rankOf);
+        logger.info("wrote local index with " + docs + " documents and " + termMap.size() + " terms to "
+                + dir + ", skipped " + skipped + " documents without name or center");
+        if (sourceFile != null)
+            sourceFile.delete();
+    }
+
+    private void writeTerms(int[] rankOf) throws IOException {
+        String[] terms = termMap.keySet().toArray(new String[termMap.size()]);
+        Arrays.sort(terms);
+        DataOutputStream termOffsetOut = create(LocalIndex.TERM_OFFSETS);
+        DataOutputStream termOut = create(LocalIndex.TERMS);
+        DataOutputStream startOut = create(LocalIndex.POSTING_STARTS);
+        DataOutputStream postingOut = create(LocalIndex.POSTINGS);
+        try {
+            int termOffset = 0, postingStart = 0;
+            for (String term : terms) {
+                byte[] bytes = term.getBytes(UTF8);
+                termOffsetOut.writeInt(termOffset);
+                termOut.write(bytes);
+                termOffset += bytes.length;
+
+                // postings are sorted by rank so that the best documents come first
+                TIntArrayList list = termMap.get(term);
+                int[] postings = new int[list.size()];
+                for (int i = 0; i < postings.length; i++) {
+                    postings[i] = rankOf[list.get(i)];
+                }
+                Arrays.sort(postings);
+                startOut.writeInt(postingStart);
+                for (int doc : postings) {
+                    postingOut.writeInt(doc);
+                }
+                postingStart += postings.length;
+            }
+            termOffsetOut.writeInt(termOffset);
+            startOut.writeInt(postingStart);
+        } finally {
+            termOffsetOut.close();
+            termOut.close();
+            startOut.close();
+            postingOut.close();
+        }
+    }
+
+    private DataOutputStream create(String name) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, name)), 1 << 16));
+    }
+
+    @Override
+    public String toString() {
+        return "local index " + dir;
+    }
+}
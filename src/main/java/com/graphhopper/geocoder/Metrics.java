@@ -0,0 +1,141 @@
+package com.graphhopper.geocoder;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of counters, gauges and latency histograms which can be written in
+ * the Prometheus text format. Names can contain labels e.g.
+ * geocoder_requests_total{endpoint="suggest"}, see name.
+ *
+ * @author Peter Karich
+ */
+public class Metrics {
+
+    private static final Metrics DEFAULT = new Metrics();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+
+    /**
+     * The registry shared by the server, the feeder and the fixer.
+     */
+    public static Metrics getDefault() {
+        return DEFAULT;
+    }
+
+    public static interface Gauge {
+
+        double get();
+    }
+
+    /**
+     * @param labels pairs of label name and value
+     */
+    public static String name(String name, String... labels) {
+        if (labels.length == 0)
+            return name;
+        if (labels.length % 2 != 0)
+            throw new IllegalArgumentException("labels have to be pairs " + name);
+        StringBuilder sb = new StringBuilder(name).append('{');
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(labels[i]).append("=\"").append(labels[i + 1]).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    public AtomicLong counter(String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            counters.putIfAbsent(name, new AtomicLong());
+            counter = counters.get(name);
+        }
+        return counter;
+    }
+
+    /**
+     * A histogram which expects micro seconds.
+     */
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histograms.putIfAbsent(name, new LatencyHistogram());
+            histogram = histograms.get(name);
+        }
+        return histogram;
+    }
+
+    public void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Records the time since startNanos in the specified histogram.
+     */
+    public void recordSince(String name, long startNanos) {
+        histogram(name).record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, AtomicLong> e : new TreeMap<String, AtomicLong>(counters).entrySet()) {
+            line(sb, e.getKey(), e.getValue().get());
+        }
+        for (Map.Entry<String, Gauge> e : new TreeMap<String, Gauge>(gauges).entrySet()) {
+            line(sb, e.getKey(), e.getValue().get());
+        }
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<String, LatencyHistogram>(histograms).entrySet()) {
+            String key = e.getKey();
+            LatencyHistogram h = e.getValue();
+            int labelIndex = key.indexOf('{');
+            String base = labelIndex < 0 ? key : key.substring(0, labelIndex);
+            String labels = labelIndex < 0 ? "" : key.substring(labelIndex + 1, key.length() - 1);
+            for (double q : QUANTILES) {
+                String qLabel = "quantile=\"" + q + "\"";
+                line(sb, base + "_seconds{" + (labels.isEmpty() ? qLabel : labels + "," + qLabel) + "}",
+                        h.getValueAtPercentile(q * 100) / 1e6);
+            }
+            String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+            line(sb, base + "_seconds_max" + suffix, h.getMax() / 1e6);
+            line(sb, base + "_seconds_sum" + suffix, h.getSum() / 1e6);
+            line(sb, base + "_seconds_count" + suffix, h.getCount());
+        }
+        appendJvm(sb);
+        return sb.toString();
+    }
+
+    void appendJvm(StringBuilder sb) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        line(sb, "jvm_memory_bytes_used{area=\"heap\"}", heap.getUsed());
+        line(sb, "jvm_memory_bytes_committed{area=\"heap\"}", heap.getCommitted());
+        line(sb, "jvm_memory_bytes_max{area=\"heap\"}", heap.getMax());
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        line(sb, "jvm_memory_bytes_used{area=\"nonheap\"}", nonHeap.getUsed());
+        line(sb, "jvm_threads_current", ManagementFactory.getThreadMXBean().getThreadCount());
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String gcLabel = "{gc=\"" + gc.getName() + "\"}";
+            line(sb, "jvm_gc_collection_seconds_count" + gcLabel, gc.getCollectionCount());
+            line(sb, "jvm_gc_collection_seconds_sum" + gcLabel, gc.getCollectionTime() / 1e3);
+        }
+        line(sb, "process_uptime_seconds", ManagementFactory.getRuntimeMXBean().getUptime() / 1e3);
+    }
+
+    private static void line(StringBuilder sb, String name, double value) {
+        sb.append(name).append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value))
+            sb.append((long) value);
+        else
+            sb.append(String.format(Locale.ROOT, "%.6f", value));
+        sb.append('\n');
+    }
+}
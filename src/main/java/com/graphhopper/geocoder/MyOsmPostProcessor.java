@@ -6,7 +6,6 @@ import com.github.jsonj.JsonArray;
 import com.github.jsonj.JsonElement;
 import com.github.jsonj.JsonObject;
 import com.github.jsonj.tools.JsonParser;
-import com.graphhopper.util.StopWatch;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -22,9 +21,11 @@ import org.slf4j.LoggerFactory;
 public class MyOsmPostProcessor extends OsmPostProcessor {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
-    private final StopWatch sw = new StopWatch().start();
+    private final Metrics metrics = Metrics.getDefault();
     private long counter = 0;
     private int bulkSize;
+    // the time spent in interpretTags since the last added object
+    private long interpretNanos;
 
     public MyOsmPostProcessor(JsonParser jsonParser) {
         super(jsonParser);
@@ -44,18 +45,21 @@ public class MyOsmPostProcessor extends OsmPostProcessor {
         final String tmpType = type.toString().toLowerCase();
         return new OsmPostProcessor.JsonWriter() {
             List<JsonObject> list = new ArrayList<JsonObject>(bulkSize);
+            long lastAdd = -1;
 
             @Override
             public void add(JsonObject json) throws IOException {
+                // everything between two add calls except interpretTags is reading and parsing
+                if (lastAdd >= 0)
+                    metrics.histogram(ImportProfiler.stageName("read")).record((System.nanoTime() - lastAdd - interpretNanos) / 1000);
+                interpretNanos = 0;
                 list.add(json);
                 if (list.size() >= bulkSize) {
                     counter += list.size();
-//                    sw.stop();
-//                    logger.info("took: " + (float) sw.getSeconds() / counter);
-//                    sw.start();
                     bulkUpdate(list, tmpType, tmpType);
                     list.clear();
                 }
+                lastAdd = System.nanoTime();
             }
 
             @Override
@@ -70,9 +74,23 @@ public class MyOsmPostProcessor extends OsmPostProcessor {
 
     @Override
     protected JsonObject interpretTags(JsonObject input, JsonObject mainJson) {
+        long start = System.nanoTime();
+        try {
+            return interpret(input, mainJson);
+        } finally {
+            long nanos = System.nanoTime() - start;
+            interpretNanos += nanos;
+            metrics.histogram(ImportProfiler.stageName("interpret_tags")).record(nanos / 1000);
+        }
+    }
+
+    private JsonObject interpret(JsonObject input, JsonObject mainJson) {
         JsonObject tags = input.getObject("tags");
         input.remove("tags");
-        JsonElement name = mainJson.get("title");
+        // postcode areas have often no name
+        String postcodeArea = getPostcodeArea(tags);
+        JsonElement title = mainJson.get("title");
+        String name = title == null ? postcodeArea : title.asString();
         if (name == null)
             return null;
         if(input.getString("id").equalsIgnoreCase("191645"))
@@ -166,11 +184,16 @@ public class MyOsmPostProcessor extends OsmPostProcessor {
                 type = "boundary";
         }
 
+        if (type == null && postcodeArea != null) {
+            type = "postcode";
+            address.put("postcode", postcodeArea);
+        }
+
         if (type == null)
             return null;
         mainJson.put("type", type);
         // I don't like title -> use original OSM 'name' instead                
-        mainJson.put("name", name.asString());
+        mainJson.put("name", name);
         mainJson.remove("title");
 
         if (!names.isEmpty())
@@ -262,6 +285,16 @@ public class MyOsmPostProcessor extends OsmPostProcessor {
         return mainJson;
     }
 
+    /**
+     * @return the postcode of a boundary=postal_code area or null
+     */
+    static String getPostcodeArea(JsonObject tags) {
+        if (tags == null || !"postal_code".equals(tags.getString("boundary")))
+            return null;
+        String postcode = tags.getString("postal_code");
+        return postcode == null || postcode.trim().isEmpty() ? null : postcode.trim();
+    }
+
     private boolean notState(String val) {
         return !"county".equals(val) && !"state".equals(val);
     }
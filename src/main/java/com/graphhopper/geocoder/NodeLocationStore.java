@@ -0,0 +1,93 @@
+package com.graphhopper.geocoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores the coordinates of all nodes outside of the heap in a memory mapped
+ * file. The node id is the position in the file, so the file is sparse and
+ * only the pages of used id ranges need disk space. Latitude and longitude are
+ * stored as int with a precision of 1e-7 degree like in OSM.
+ *
+ * @author Peter Karich
+ */
+public class NodeLocationStore {
+
+    private static final int SEGMENT_BITS = 27;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+    private static final double FACTOR = 1e7;
+    // a stored latitude is never 0, so 0 means missing
+    private static final int LAT_SHIFT = 1000000000;
+    private final File file;
+    private final RandomAccessFile raf;
+    private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+    private long count;
+
+    public NodeLocationStore(File file) throws IOException {
+        this.file = file;
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+    }
+
+    public long size() {
+        return count;
+    }
+
+    public void put(long nodeId, double lat, double lon) throws IOException {
+        if (nodeId < 0)
+            throw new IllegalArgumentException("negative node id " + nodeId);
+        MappedByteBuffer segment = getSegment((int) (nodeId >>> SEGMENT_BITS), true);
+        int pointer = (int) ((nodeId & SEGMENT_MASK) << 3);
+        segment.putInt(pointer, (int) Math.round(lat * FACTOR) + LAT_SHIFT);
+        segment.putInt(pointer + 4, (int) Math.round(lon * FACTOR));
+        count++;
+    }
+
+    /**
+     * @param latLon the latitude and longitude of the node
+     * @return false if the node is unknown
+     */
+    public boolean get(long nodeId, double[] latLon) throws IOException {
+        if (nodeId < 0)
+            return false;
+        MappedByteBuffer segment = getSegment((int) (nodeId >>> SEGMENT_BITS), false);
+        if (segment == null)
+            return false;
+        int pointer = (int) ((nodeId & SEGMENT_MASK) << 3);
+        int lat = segment.getInt(pointer);
+        if (lat == 0)
+            return false;
+        latLon[0] = (lat - LAT_SHIFT) / FACTOR;
+        latLon[1] = segment.getInt(pointer + 4) / FACTOR;
+        return true;
+    }
+
+    private MappedByteBuffer getSegment(int index, boolean create) throws IOException {
+        if (index < segments.size() && segments.get(index) != null)
+            return segments.get(index);
+        if (!create)
+            return null;
+        while (segments.size() <= index) {
+            segments.add(null);
+        }
+        long size = 8L << SEGMENT_BITS;
+        MappedByteBuffer segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, index * size, size);
+        segments.set(index, segment);
+        return segment;
+    }
+
+    /**
+     * Deletes the file. The mappings are released by the garbage collector.
+     */
+    public void close() throws IOException {
+        segments.clear();
+        raf.close();
+        if (!file.delete())
+            file.deleteOnExit();
+    }
+}
@@ -0,0 +1,114 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import static com.github.jsonj.tools.JsonBuilder.$;
+import static com.github.jsonj.tools.JsonBuilder._;
+import static com.github.jsonj.tools.JsonBuilder.array;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streams an OSM change file (.osc or .osc.gz). Nodes are converted into the
+ * raw format of osm2geojson so that they can be interpreted and fed directly.
+ * Ways and relations only reference their members, their geometry has to come
+ * from osm2geojson, so only their ids are reported.
+ *
+ * @author Peter Karich
+ */
+public class OsmChangeReader {
+
+    public interface Handler {
+
+        /**
+         * @param id e.g. osmway/123
+         */
+        void delete(String id);
+
+        /**
+         * @param created true if the node is new, false if it was modified
+         * @param node the node in the format of osm2geojson with id, title,
+         * tags and geometry
+         */
+        void node(boolean created, JsonObject node);
+
+        /**
+         * A created or modified way or relation.
+         */
+        void changed(String id);
+    }
+
+    public void read(File file, Handler handler) throws IOException {
+        InputStream is = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        try {
+            if (file.getName().endsWith(".gz"))
+                is = new GZIPInputStream(is, 1 << 16);
+            read(is, handler);
+        } finally {
+            is.close();
+        }
+    }
+
+    public void read(InputStream is, Handler handler) throws IOException {
+        try {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(is, "UTF-8");
+            try {
+                String action = null;
+                JsonObject node = null;
+                JsonObject tags = null;
+                String otherId = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if ("create".equals(name) || "modify".equals(name) || "delete".equals(name)) {
+                            action = name;
+                        } else if ("node".equals(name)) {
+                            String id = "osmnode/" + reader.getAttributeValue(null, "id");
+                            if ("delete".equals(action)) {
+                                handler.delete(id);
+                            } else {
+                                tags = new JsonObject();
+                                node = $(_("id", id), _("tags", tags), _("geometry", $(_("type", "Point"),
+                                        _("coordinates", array(Double.parseDouble(reader.getAttributeValue(null, "lon")),
+                                                Double.parseDouble(reader.getAttributeValue(null, "lat")))))));
+                            }
+                        } else if ("way".equals(name) || "relation".equals(name)) {
+                            String id = "osm" + name + "/" + reader.getAttributeValue(null, "id");
+                            if ("delete".equals(action))
+                                handler.delete(id);
+                            else
+                                otherId = id;
+                        } else if ("tag".equals(name) && tags != null) {
+                            tags.put(reader.getAttributeValue(null, "k"), reader.getAttributeValue(null, "v"));
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if ("node".equals(name) && node != null) {
+                            String title = tags.getString("name");
+                            if (title != null)
+                                node.put("title", title);
+                            handler.node("create".equals(action), node);
+                            node = null;
+                            tags = null;
+                        } else if (("way".equals(name) || "relation".equals(name)) && otherId != null) {
+                            handler.changed(otherId);
+                            otherId = null;
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("cannot read osmChange", ex);
+        }
+    }
+}
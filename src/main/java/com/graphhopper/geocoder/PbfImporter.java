@@ -0,0 +1,297 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonArray;
+import com.github.jsonj.JsonObject;
+import com.github.jsonj.tools.JsonParser;
+import static com.github.jsonj.tools.JsonBuilder.$;
+import static com.github.jsonj.tools.JsonBuilder._;
+import static com.github.jsonj.tools.JsonBuilder.array;
+import com.graphhopper.util.StopWatch;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Feeds an OSM PBF file without osm2geojson and without intermediate files.
+ * The first pass reads only the relations to know which ways form boundaries
+ * and which nodes are admin centres. The second pass stores the coordinates
+ * of all nodes in a NodeLocationStore, creates the geometries of the ways
+ * from it and assembles the outer rings of the relations. Every named element
+ * is interpreted like the osm2geojson output and fed via the JsonFeeder.
+ *
+ * @author Peter Karich
+ */
+public class PbfImporter {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Metrics metrics = Metrics.getDefault();
+    private final Configuration config;
+    private final JsonFeeder feeder;
+    private final MyOsmPostProcessor processor = new MyOsmPostProcessor(new JsonParser());
+    private final int bulkSize;
+    // the outer ways of named boundaries and multipolygons
+    private final TLongHashSet memberWays = new TLongHashSet();
+    private final TLongHashSet adminCentres = new TLongHashSet();
+    private final TLongObjectHashMap<long[]> memberWayRefs = new TLongObjectHashMap<long[]>();
+    private final List<JsonObject> nodes = new ArrayList<JsonObject>();
+    private final List<JsonObject> ways = new ArrayList<JsonObject>();
+    private final List<JsonObject> relations = new ArrayList<JsonObject>();
+    // fed after the relations so that their boundaries can be merged
+    private final List<JsonObject> centreNodes = new ArrayList<JsonObject>();
+    private NodeLocationStore locations;
+
+    public PbfImporter(Configuration config, JsonFeeder feeder) {
+        this.config = config;
+        this.feeder = feeder;
+        this.bulkSize = config.getFeedBulkSize();
+    }
+
+    public void read(File file) throws IOException {
+        int threads = config.getPbfThreads();
+        StopWatch sw = new StopWatch().start();
+        new PbfReader(threads).setSkipNodes(true).setSkipWays(true).read(file, new PbfReader.Handler() {
+            @Override public void handle(PbfReader.Block block) {
+                for (PbfReader.Relation relation : block.relations) {
+                    collectMembers(relation);
+                }
+            }
+        });
+        logger.info("found " + memberWays.size() + " boundary ways and " + adminCentres.size()
+                + " admin centres in " + sw.stop().getSeconds() + "s");
+
+        sw = new StopWatch().start();
+        locations = new NodeLocationStore(new File(config.getPbfNodeFile()));
+        try {
+            new PbfReader(threads).read(file, new PbfReader.Handler() {
+                @Override public void handle(PbfReader.Block block) throws IOException {
+                    handleNodes(block);
+                    for (PbfReader.Way way : block.ways) {
+                        handleWay(way);
+                    }
+                    for (PbfReader.Relation relation : block.relations) {
+                        handleRelation(relation);
+                    }
+                }
+            });
+            flush(nodes, "node");
+            flush(ways, "way");
+            flush(relations, "relation");
+            flush(centreNodes, "node");
+            logger.info("read " + locations.size() + " node locations in " + sw.stop().getSeconds() + "s");
+        } finally {
+            locations.close();
+            locations = null;
+        }
+    }
+
+    void collectMembers(PbfReader.Relation relation) {
+        if (!isNamed(relation.tags) || !isArea(relation.tags))
+            return;
+        for (int i = 0; i < relation.memberIds.length; i++) {
+            int type = relation.memberTypes[i];
+            String role = relation.memberRoles[i];
+            if (type == PbfReader.WAY && isOuter(role))
+                memberWays.add(relation.memberIds[i]);
+            else if (type == PbfReader.NODE && "admin_centre".equals(role))
+                adminCentres.add(relation.memberIds[i]);
+        }
+    }
+
+    void handleNodes(PbfReader.Block block) throws IOException {
+        for (int i = 0; i < block.nodeIds.size(); i++) {
+            long id = block.nodeIds.get(i);
+            double lat = block.nodeLats.get(i), lon = block.nodeLons.get(i);
+            locations.put(id, lat, lon);
+            Map<String, String> tags = block.nodeTags.get(i);
+            if (tags == null || !tags.containsKey("name"))
+                continue;
+
+            JsonObject obj = interpret("osmnode/" + id, tags, $(_("type", "Point"), _("coordinates", array(lon, lat))));
+            if (obj == null)
+                continue;
+            if (adminCentres.contains(id))
+                centreNodes.add(obj);
+            else
+                add(nodes, obj, "node");
+        }
+    }
+
+    void handleWay(PbfReader.Way way) throws IOException {
+        if (memberWays.contains(way.id))
+            memberWayRefs.put(way.id, way.refs);
+        if (!isNamed(way.tags) || way.refs.length < 2)
+            return;
+
+        JsonArray coordinates = toCoordinates(way.refs);
+        if (coordinates == null) {
+            metrics.counter(Metrics.name("geocoder_pbf_incomplete_total", "osm_type", "way")).incrementAndGet();
+            return;
+        }
+        JsonObject geometry;
+        boolean closed = way.refs.length >= 4 && way.refs[0] == way.refs[way.refs.length - 1];
+        if (closed && !way.tags.containsKey("highway")) {
+            JsonArray polygon = array();
+            polygon.add(coordinates);
+            geometry = $(_("type", "Polygon"), _("coordinates", polygon));
+        } else {
+            geometry = $(_("type", "LineString"), _("coordinates", coordinates));
+        }
+        JsonObject obj = interpret("osmway/" + way.id, way.tags, geometry);
+        if (obj != null)
+            add(ways, obj, "way");
+    }
+
+    void handleRelation(PbfReader.Relation relation) throws IOException {
+        if (!isNamed(relation.tags) || !isArea(relation.tags))
+            return;
+
+        List<long[]> outerWays = new ArrayList<long[]>();
+        String adminCentre = null;
+        for (int i = 0; i < relation.memberIds.length; i++) {
+            int type = relation.memberTypes[i];
+            String role = relation.memberRoles[i];
+            if (type == PbfReader.WAY && isOuter(role)) {
+                long[] refs = memberWayRefs.get(relation.memberIds[i]);
+                if (refs != null)
+                    outerWays.add(refs);
+            } else if (type == PbfReader.NODE && "admin_centre".equals(role)) {
+                adminCentre = Long.toString(relation.memberIds[i]);
+            }
+        }
+
+        JsonArray polygons = array();
+        for (long[] ring : buildRings(outerWays)) {
+            JsonArray coordinates = toCoordinates(ring);
+            if (coordinates == null)
+                continue;
+            JsonArray polygon = array();
+            polygon.add(coordinates);
+            polygons.add(polygon);
+        }
+        if (polygons.isEmpty()) {
+            metrics.counter(Metrics.name("geocoder_pbf_incomplete_total", "osm_type", "relation")).incrementAndGet();
+            return;
+        }
+        String id = "osmrelation/" + relation.id;
+        JsonObject input = createInput(id, relation.tags, $(_("type", "MultiPolygon"), _("coordinates", polygons)));
+        if (adminCentre != null)
+            input.put("admin_centre", adminCentre);
+        JsonObject obj = processor.interpretTags(input, input);
+        if (obj != null)
+            add(relations, obj, "relation");
+    }
+
+    /**
+     * Joins the ways at their end nodes into closed rings. Ways which do not
+     * form a closed ring are skipped.
+     */
+    static List<long[]> buildRings(List<long[]> ways) {
+        List<long[]> rings = new ArrayList<long[]>();
+        LinkedList<long[]> remaining = new LinkedList<long[]>();
+        for (long[] way : ways) {
+            if (way.length >= 2)
+                remaining.add(way);
+        }
+        while (!remaining.isEmpty()) {
+            TLongArrayList ring = new TLongArrayList(remaining.removeFirst());
+            while (ring.get(0) != ring.get(ring.size() - 1)) {
+                long last = ring.get(ring.size() - 1);
+                long[] next = null;
+                boolean reverse = false;
+                for (long[] way : remaining) {
+                    if (way[0] == last) {
+                        next = way;
+                        break;
+                    } else if (way[way.length - 1] == last) {
+                        next = way;
+                        reverse = true;
+                        break;
+                    }
+                }
+                if (next == null)
+                    break;
+
+                remaining.remove(next);
+                for (int i = 1; i < next.length; i++) {
+                    ring.add(reverse ? next[next.length - 1 - i] : next[i]);
+                }
+            }
+            if (ring.size() >= 4 && ring.get(0) == ring.get(ring.size() - 1))
+                rings.add(ring.toArray());
+        }
+        return rings;
+    }
+
+    /**
+     * @return the coordinates as lon,lat or null if a node is missing
+     */
+    JsonArray toCoordinates(long[] refs) throws IOException {
+        JsonArray coordinates = array();
+        double[] latLon = new double[2];
+        for (long ref : refs) {
+            if (!locations.get(ref, latLon))
+                return null;
+            coordinates.add(array(latLon[1], latLon[0]));
+        }
+        return coordinates;
+    }
+
+    private JsonObject interpret(String id, Map<String, String> tags, JsonObject geometry) {
+        JsonObject input = createInput(id, tags, geometry);
+        return processor.interpretTags(input, input);
+    }
+
+    /**
+     * Creates the object like osm2geojson does with id, title, tags and
+     * geometry.
+     */
+    static JsonObject createInput(String id, Map<String, String> tags, JsonObject geometry) {
+        JsonObject jsonTags = new JsonObject();
+        for (Map.Entry<String, String> e : tags.entrySet()) {
+            jsonTags.put(e.getKey(), e.getValue());
+        }
+        JsonObject input = $(_("id", id), _("tags", jsonTags), _("geometry", geometry));
+        String title = tags.get("name");
+        if (title != null)
+            input.put("title", title);
+        return input;
+    }
+
+    private void add(List<JsonObject> list, JsonObject obj, String type) {
+        list.add(obj);
+        if (list.size() >= bulkSize)
+            flush(list, type);
+    }
+
+    private void flush(List<JsonObject> list, String type) {
+        if (list.isEmpty())
+            return;
+        feeder.feedObjects(list, type);
+        list.clear();
+    }
+
+    /**
+     * @return true if the element has a name or is a postcode area, which has
+     * often no name
+     */
+    static boolean isNamed(Map<String, String> tags) {
+        return tags.containsKey("name") || "postal_code".equals(tags.get("boundary")) && tags.containsKey("postal_code");
+    }
+
+    static boolean isArea(Map<String, String> tags) {
+        String type = tags.get("type");
+        return "boundary".equals(type) || "multipolygon".equals(type);
+    }
+
+    static boolean isOuter(String role) {
+        return "outer".equals(role) || role.isEmpty();
+    }
+}
@@ -0,0 +1,523 @@
+package com.graphhopper.geocoder;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads OSM PBF files without intermediate files. The blobs are read
+ * sequentially, inflated and decoded in parallel and then passed to the
+ * handler in the order of the file. Only the parts of the protobuf messages
+ * needed for the geocoder are decoded, see
+ * https://wiki.openstreetmap.org/wiki/PBF_Format
+ *
+ * @author Peter Karich
+ */
+public class PbfReader {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+    public static final int NODE = 0, WAY = 1, RELATION = 2;
+
+    public interface Handler {
+
+        /**
+         * Called for every block in the order of the file.
+         */
+        void handle(Block block) throws IOException;
+    }
+
+    public static class Way {
+
+        public long id;
+        public long[] refs;
+        public Map<String, String> tags;
+    }
+
+    public static class Relation {
+
+        public long id;
+        public long[] memberIds;
+        // NODE, WAY or RELATION
+        public int[] memberTypes;
+        public String[] memberRoles;
+        public Map<String, String> tags;
+    }
+
+    /**
+     * The decoded elements of one blob. Nodes are stored column wise as most
+     * of them have no tags.
+     */
+    public static class Block {
+
+        public final TLongArrayList nodeIds = new TLongArrayList();
+        public final TDoubleArrayList nodeLats = new TDoubleArrayList();
+        public final TDoubleArrayList nodeLons = new TDoubleArrayList();
+        // the tags of the node at the same position, null if it has none
+        public final List<Map<String, String>> nodeTags = new ArrayList<Map<String, String>>();
+        public final List<Way> ways = new ArrayList<Way>();
+        public final List<Relation> relations = new ArrayList<Relation>();
+    }
+
+    private final int threads;
+    private boolean skipNodes;
+    private boolean skipWays;
+
+    public PbfReader(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Nodes are not decoded, e.g. for a pass which only needs relations.
+     */
+    public PbfReader setSkipNodes(boolean skipNodes) {
+        this.skipNodes = skipNodes;
+        return this;
+    }
+
+    public PbfReader setSkipWays(boolean skipWays) {
+        this.skipWays = skipWays;
+        return this;
+    }
+
+    public void read(File file, final Handler handler) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+        try {
+            // keep all threads busy but do not read the whole file into memory
+            GeocoderHelper.OrderedPipeline<Block> pipeline
+                    = new GeocoderHelper.OrderedPipeline<Block>(service, 2 * threads, "block decoder") {
+                @Override protected void handle(Block block) throws IOException {
+                    handler.handle(block);
+                }
+            };
+            while (true) {
+                int headerSize;
+                try {
+                    headerSize = in.readInt();
+                } catch (EOFException ex) {
+                    break;
+                }
+                if (headerSize < 0 || headerSize > MAX_HEADER_SIZE)
+                    throw new IOException("invalid blob header size " + headerSize);
+
+                byte[] header = new byte[headerSize];
+                in.readFully(header);
+                String type = null;
+                int dataSize = -1;
+                ProtoReader hr = new ProtoReader(header, 0, header.length);
+                while (hr.hasNext()) {
+                    int field = hr.nextField();
+                    if (field == 1)
+                        type = hr.readString();
+                    else if (field == 3)
+                        dataSize = (int) hr.readVarint();
+                    else
+                        hr.skip();
+                }
+                if (dataSize < 0 || dataSize > MAX_BLOB_SIZE)
+                    throw new IOException("invalid blob size " + dataSize);
+
+                final byte[] blob = new byte[dataSize];
+                in.readFully(blob);
+                if ("OSMHeader".equals(type)) {
+                    checkHeader(inflate(blob));
+                } else if ("OSMData".equals(type)) {
+                    pipeline.submit(new Callable<Block>() {
+                        @Override public Block call() throws Exception {
+                            return decode(inflate(blob));
+                        }
+                    });
+                }
+            }
+            pipeline.finish();
+        } finally {
+            service.shutdownNow();
+            in.close();
+        }
+    }
+
+    static byte[] inflate(byte[] blob) throws IOException {
+        ProtoReader reader = new ProtoReader(blob, 0, blob.length);
+        byte[] raw = null;
+        int rawSize = -1;
+        int zlibStart = -1, zlibLength = 0;
+        while (reader.hasNext()) {
+            int field = reader.nextField();
+            if (field == 1) {
+                raw = reader.readBytes();
+            } else if (field == 2) {
+                rawSize = (int) reader.readVarint();
+            } else if (field == 3) {
+                zlibLength = (int) reader.readVarint();
+                zlibStart = reader.pos;
+                reader.pos += zlibLength;
+            } else if (field == 4 || field == 5 || field == 7) {
+                throw new IOException("unsupported compression in blob field " + field);
+            } else {
+                reader.skip();
+            }
+        }
+        if (raw != null)
+            return raw;
+        if (zlibStart < 0 || rawSize < 0)
+            throw new IOException("blob without data");
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob, zlibStart, zlibLength);
+            byte[] res = new byte[rawSize];
+            int size = inflater.inflate(res);
+            if (size != rawSize)
+                throw new IOException("inflated " + size + " bytes instead of " + rawSize);
+            return res;
+        } catch (DataFormatException ex) {
+            throw new IOException("cannot inflate blob", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    static void checkHeader(byte[] data) throws IOException {
+        ProtoReader reader = new ProtoReader(data, 0, data.length);
+        while (reader.hasNext()) {
+            int field = reader.nextField();
+            if (field == 4) {
+                String feature = reader.readString();
+                if (!"OsmSchema-V0.6".equals(feature) && !"DenseNodes".equals(feature))
+                    throw new IOException("unsupported required feature " + feature);
+            } else {
+                reader.skip();
+            }
+        }
+    }
+
+    Block decode(byte[] data) throws IOException {
+        ProtoReader reader = new ProtoReader(data, 0, data.length);
+        List<String> strings = new ArrayList<String>();
+        List<int[]> groups = new ArrayList<int[]>();
+        long granularity = 100, latOffset = 0, lonOffset = 0;
+        while (reader.hasNext()) {
+            int field = reader.nextField();
+            if (field == 1) {
+                int end = reader.readLength() + reader.pos;
+                while (reader.pos < end) {
+                    reader.nextField();
+                    strings.add(reader.readString());
+                }
+            } else if (field == 2) {
+                int length = reader.readLength();
+                groups.add(new int[]{reader.pos, length});
+                reader.pos += length;
+            } else if (field == 17) {
+                granularity = reader.readVarint();
+            } else if (field == 19) {
+                latOffset = reader.readVarint();
+            } else if (field == 20) {
+                lonOffset = reader.readVarint();
+            } else {
+                reader.skip();
+            }
+        }
+
+        // the string table comes first, but do not rely on it
+        String[] table = strings.toArray(new String[strings.size()]);
+        Block block = new Block();
+        for (int[] group : groups) {
+            ProtoReader gr = new ProtoReader(data, group[0], group[1]);
+            while (gr.hasNext()) {
+                int field = gr.nextField();
+                if (field == 1 && !skipNodes)
+                    decodeNode(gr.sub(), table, granularity, latOffset, lonOffset, block);
+                else if (field == 2 && !skipNodes)
+                    decodeDense(gr.sub(), table, granularity, latOffset, lonOffset, block);
+                else if (field == 3 && !skipWays)
+                    block.ways.add(decodeWay(gr.sub(), table));
+                else if (field == 4)
+                    block.relations.add(decodeRelation(gr.sub(), table));
+                else
+                    gr.skip();
+            }
+        }
+        return block;
+    }
+
+    void decodeNode(ProtoReader reader, String[] table, long granularity, long latOffset, long lonOffset, Block block) throws IOException {
+        long id = 0, lat = 0, lon = 0;
+        TIntArrayList keys = new TIntArrayList(), vals = new TIntArrayList();
+        while (reader.hasNext()) {
+            int field = reader.nextField();
+            if (field == 1)
+                id = reader.readSVarint();
+            else if (field == 2)
+                reader.readInts(keys);
+            else if (field == 3)
+                reader.readInts(vals);
+            else if (field == 8)
+                lat = reader.readSVarint();
+            else if (field == 9)
+                lon = reader.readSVarint();
+            else
+                reader.skip();
+        }
+        block.nodeIds.add(id);
+        block.nodeLats.add(1e-9 * (latOffset + granularity * lat));
+        block.nodeLons.add(1e-9 * (lonOffset + granularity * lon));
+        block.nodeTags.add(keys.isEmpty() ? null : toTags(keys, vals, table));
+    }
+
+    void decodeDense(ProtoReader reader, String[] table, long granularity, long latOffset, long lonOffset, Block block) throws IOException {
+        TLongArrayList ids = new TLongArrayList(), lats = new TLongArrayList(), lons = new TLongArrayList();
+        TIntArrayList keysVals = new TIntArrayList();
+        while (reader.hasNext()) {
+            int field = reader.nextField();
+            if (field == 1)
+                reader.readSLongs(ids);
+            else if (field == 8)
+                reader.readSLongs(lats);
+            else if (field == 9)
+                reader.readSLongs(lons);
+            else if (field == 10)
+                reader.readInts(keysVals);
+            else
+                reader.skip();
+        }
+        if (ids.size() != lats.size() || ids.size() != lons.size())
+            throw new IOException("invalid dense nodes " + ids.size() + ", " + lats.size() + ", " + lons.size());
+
+        long id = 0, lat = 0, lon = 0;
+        int kv = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            // delta coded
+            id += ids.get(i);
+            lat += lats.get(i);
+            lon += lons.get(i);
+            block.nodeIds.add(id);
+            block.nodeLats.add(1e-9 * (latOffset + granularity * lat));
+            block.nodeLons.add(1e-9 * (lonOffset + granularity * lon));
+
+            // key, value pairs of all nodes, separated by 0
+            Map<String, String> tags = null;
+            while (kv < keysVals.size() && keysVals.get(kv) != 0) {
+                if (tags == null)
+                    tags = new HashMap<String, String>(4);
+                tags.put(table[keysVals.get(kv)], table[keysVals.get(kv + 1)]);
+                kv += 2;
+            }
+            kv++;
+            block.nodeTags.add(tags);
+        }
+    }
+
+    Way decodeWay(ProtoReader reader, String[] table) throws IOException {
+        Way way = new Way();
+        TIntArrayList keys = new TIntArrayList(), vals = new TIntArrayList();
+        TLongArrayList refs = new TLongArrayList();
+        while (reader.hasNext()) {
+            int field = reader.nextField();
+            if (field == 1)
+                way.id = reader.readVarint();
+            else if (field == 2)
+                reader.readInts(keys);
+            else if (field == 3)
+                reader.readInts(vals);
+            else if (field == 8)
+                reader.readSLongs(refs);
+            else
+                reader.skip();
+        }
+        long ref = 0;
+        for (int i = 0; i < refs.size(); i++) {
+            ref += refs.get(i);
+            refs.set(i, ref);
+        }
+        way.refs = refs.toArray();
+        way.tags = toTags(keys, vals, table);
+        return way;
+    }
+
+    Relation decodeRelation(ProtoReader reader, String[] table) throws IOException {
+        Relation relation = new Relation();
+        TIntArrayList keys = new TIntArrayList(), vals = new TIntArrayList(), roles = new TIntArrayList();
+        TLongArrayList memIds = new TLongArrayList();
+        TIntArrayList types = new TIntArrayList();
+        while (reader.hasNext()) {
+            int field = reader.nextField();
+            if (field == 1)
+                relation.id = reader.readVarint();
+            else if (field == 2)
+                reader.readInts(keys);
+            else if (field == 3)
+                reader.readInts(vals);
+            else if (field == 8)
+                reader.readInts(roles);
+            else if (field == 9)
+                reader.readSLongs(memIds);
+            else if (field == 10)
+                reader.readInts(types);
+            else
+                reader.skip();
+        }
+        int size = memIds.size();
+        if (roles.size() != size || types.size() != size)
+            throw new IOException("invalid members of relation " + relation.id);
+        relation.memberIds = new long[size];
+        relation.memberTypes = types.toArray();
+        relation.memberRoles = new String[size];
+        long memId = 0;
+        for (int i = 0; i < size; i++) {
+            memId += memIds.get(i);
+            relation.memberIds[i] = memId;
+            relation.memberRoles[i] = table[roles.get(i)];
+        }
+        relation.tags = toTags(keys, vals, table);
+        return relation;
+    }
+
+    static Map<String, String> toTags(TIntArrayList keys, TIntArrayList vals, String[] table) throws IOException {
+        if (keys.size() != vals.size())
+            throw new IOException("keys and values differ " + keys.size() + " vs. " + vals.size());
+        if (keys.isEmpty())
+            return Collections.emptyMap();
+        Map<String, String> tags = new HashMap<String, String>(keys.size() * 2);
+        for (int i = 0; i < keys.size(); i++) {
+            tags.put(table[keys.get(i)], table[vals.get(i)]);
+        }
+        return tags;
+    }
+
+    /**
+     * Decodes the protobuf wire format of a message.
+     */
+    static class ProtoReader {
+
+        private final byte[] data;
+        private final int end;
+        private int pos;
+        private int wireType;
+
+        ProtoReader(byte[] data, int offset, int length) {
+            this.data = data;
+            this.pos = offset;
+            this.end = offset + length;
+        }
+
+        boolean hasNext() {
+            return pos < end;
+        }
+
+        int nextField() throws IOException {
+            long key = readVarint();
+            wireType = (int) (key & 7);
+            return (int) (key >>> 3);
+        }
+
+        long readVarint() throws IOException {
+            long res = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= end)
+                    throw new IOException("truncated varint");
+                byte b = data[pos++];
+                res |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return res;
+            }
+            throw new IOException("malformed varint");
+        }
+
+        long readSVarint() throws IOException {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        int readLength() throws IOException {
+            int length = (int) readVarint();
+            if (length < 0 || pos + length > end)
+                throw new IOException("invalid length " + length);
+            return length;
+        }
+
+        byte[] readBytes() throws IOException {
+            int length = readLength();
+            byte[] bytes = new byte[length];
+            System.arraycopy(data, pos, bytes, 0, length);
+            pos += length;
+            return bytes;
+        }
+
+        String readString() throws IOException {
+            int length = readLength();
+            String str = new String(data, pos, length, UTF8);
+            pos += length;
+            return str;
+        }
+
+        ProtoReader sub() throws IOException {
+            int length = readLength();
+            ProtoReader reader = new ProtoReader(data, pos, length);
+            pos += length;
+            return reader;
+        }
+
+        /**
+         * Reads a packed or a single repeated int field.
+         */
+        void readInts(TIntArrayList list) throws IOException {
+            if (wireType != 2) {
+                list.add((int) readVarint());
+                return;
+            }
+            int packedEnd = readLength() + pos;
+            while (pos < packedEnd) {
+                list.add((int) readVarint());
+            }
+        }
+
+        /**
+         * Reads a packed or a single repeated sint64 field.
+         */
+        void readSLongs(TLongArrayList list) throws IOException {
+            if (wireType != 2) {
+                list.add(readSVarint());
+                return;
+            }
+            int packedEnd = readLength() + pos;
+            while (pos < packedEnd) {
+                list.add(readSVarint());
+            }
+        }
+
+        void skip() throws IOException {
+            if (wireType == 0) {
+                readVarint();
+            } else if (wireType == 1) {
+                pos += 8;
+            } else if (wireType == 2) {
+                int length = readLength();
+                pos += length;
+            } else if (wireType == 5) {
+                pos += 4;
+            } else {
+                throw new IOException("unsupported wire type " + wireType);
+            }
+        }
+    }
+}
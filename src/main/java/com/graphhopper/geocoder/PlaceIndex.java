@@ -0,0 +1,165 @@
+package com.graphhopper.geocoder;
+
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistancePlaneProjection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Finds the nearest place (city, town, ...) for entries outside of every
+ * boundary, created via PlaceIndexBuilder. The places are stored in a packed
+ * grid, all places of a cell are neighbours in the primitive arrays. A query
+ * searches rings of cells around the query point until no closer place is
+ * possible. Every place type has its own maximum radius, e.g. a street 10km
+ * away from a hamlet does not belong to it.
+ *
+ * @author Peter Karich
+ */
+public class PlaceIndex {
+
+    private static final DistanceCalc distCalc = new DistancePlaneProjection();
+    private static final Map<String, Double> MAX_RADIUS = new HashMap<String, Double>() {
+        {
+            put("city", 20000d);
+            put("town", 10000d);
+            put("borough", 5000d);
+            put("village", 4000d);
+            put("hamlet", 2000d);
+            put("locality", 1000d);
+        }
+    };
+
+    public static String[] getTypes() {
+        return MAX_RADIUS.keySet().toArray(new String[MAX_RADIUS.size()]);
+    }
+
+    /**
+     * @return the maximum distance in meter to entries belonging to a place
+     * of this type or 0 if it is not a place
+     */
+    public static double getMaxRadius(String type) {
+        Double radius = MAX_RADIUS.get(type);
+        return radius == null ? 0 : radius;
+    }
+
+    private final double minLat, minLon, cellDegree;
+    private final int latCells, lonCells;
+    // the places of cell c are at offsets[c] to offsets[c + 1] - 1
+    private final int[] offsets;
+    // the maximum number of rings to search
+    private final int maxRing;
+    // the minimum distance between two rings in meter
+    private final double ringDistance;
+    private final double[] lats;
+    private final double[] lons;
+    private final double[] radii;
+    private final List<String>[] isIns;
+
+    PlaceIndex(double minLat, double minLon, double cellDegree, int latCells, int lonCells, int[] offsets,
+            double[] lats, double[] lons, double[] radii, List<String>[] isIns) {
+        this.minLat = minLat;
+        this.minLon = minLon;
+        this.cellDegree = cellDegree;
+        this.latCells = latCells;
+        this.lonCells = lonCells;
+        this.offsets = offsets;
+        this.lats = lats;
+        this.lons = lons;
+        this.radii = radii;
+        this.isIns = isIns;
+        double maxRadius = 0;
+        for (double radius : radii) {
+            maxRadius = Math.max(maxRadius, radius);
+        }
+        // a degree of longitude is shortest at the latitude farthest from the equator
+        double maxAbsLat = Math.min(85, Math.max(Math.abs(minLat), Math.abs(minLat + latCells * cellDegree)));
+        ringDistance = Math.min(distCalc.calcDist(0, 0, cellDegree, 0),
+                distCalc.calcDist(maxAbsLat, 0, maxAbsLat, cellDegree));
+        maxRing = (int) Math.ceil(maxRadius / ringDistance) + 1;
+    }
+
+    public int size() {
+        return lats.length;
+    }
+
+    public List<String> getIsIn(int position) {
+        return isIns[position];
+    }
+
+    /**
+     * @return the position of the nearest place which is within its maximum
+     * radius or -1
+     */
+    public int searchClosest(double queryLat, double queryLon) {
+        if (lats.length == 0 || Double.isNaN(queryLat) || Double.isNaN(queryLon))
+            return -1;
+
+        int latCell = getLatCell(queryLat), lonCell = getLonCell(queryLon);
+        int best = -1;
+        double bestDist = Double.MAX_VALUE;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // all places in this and the following rings are at least that far away
+            if ((ring - 1) * ringDistance > bestDist)
+                break;
+            int minLatCell = latCell - ring, maxLatCell = latCell + ring;
+            for (int y = Math.max(0, minLatCell); y <= Math.min(latCells - 1, maxLatCell); y++) {
+                // only the border of the ring
+                boolean fullRow = y == minLatCell || y == maxLatCell;
+                int step = fullRow ? 1 : 2 * ring;
+                for (int x = lonCell - ring; x <= lonCell + ring; x += step) {
+                    if (x >= 0 && x < lonCells) {
+                        int cell = getCell(y, x);
+                        for (int i = offsets[cell]; i < offsets[cell + 1]; i++) {
+                            double dist = distCalc.calcDist(queryLat, queryLon, lats[i], lons[i]);
+                            if (dist < bestDist && dist <= radii[i]) {
+                                bestDist = dist;
+                                best = i;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The batch version of searchClosest, e.g. for a scroll page.
+     *
+     * @param executor searches chunks of the points in parallel, or null to
+     * search in the calling thread
+     * @return the position of the nearest place or -1 for every point
+     */
+    public int[] searchClosest(final double[] queryLats, final double[] queryLons, ExecutorService executor) {
+        if (queryLats.length != queryLons.length)
+            throw new IllegalArgumentException("lats and lons need the same length " + queryLats.length + " vs. " + queryLons.length);
+
+        final int[] res = new int[queryLats.length];
+        GeocoderHelper.runChunked(executor, res.length, new GeocoderHelper.ChunkTask() {
+            @Override public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    res[i] = searchClosest(queryLats[i], queryLons[i]);
+                }
+            }
+        });
+        return res;
+    }
+
+    int getLatCell(double lat) {
+        return getCell(lat, minLat, cellDegree, latCells);
+    }
+
+    int getLonCell(double lon) {
+        return getCell(lon, minLon, cellDegree, lonCells);
+    }
+
+    int getCell(int latCell, int lonCell) {
+        return latCell * lonCells + lonCell;
+    }
+
+    static int getCell(double value, double min, double cellDegree, int cells) {
+        return Math.max(0, Math.min(cells - 1, (int) Math.floor((value - min) / cellDegree)));
+    }
+}
@@ -0,0 +1,88 @@
+package com.graphhopper.geocoder;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the places for a PlaceIndex.
+ *
+ * @author Peter Karich
+ */
+public class PlaceIndexBuilder {
+
+    private final TDoubleArrayList lats = new TDoubleArrayList();
+    private final TDoubleArrayList lons = new TDoubleArrayList();
+    private final TDoubleArrayList radii = new TDoubleArrayList();
+    private final List<List<String>> isIns = new ArrayList<List<String>>();
+    private final double cellDegree;
+
+    /**
+     * @param cellDegree the width and height of a grid cell
+     */
+    public PlaceIndexBuilder(double cellDegree) {
+        this.cellDegree = cellDegree;
+    }
+
+    /**
+     * @param isIn the value which entries belonging to this place get
+     * @return false if type is not a place
+     */
+    public boolean add(double lat, double lon, String type, List<String> isIn) {
+        double radius = PlaceIndex.getMaxRadius(type);
+        if (radius <= 0)
+            return false;
+        lats.add(lat);
+        lons.add(lon);
+        radii.add(radius);
+        isIns.add(isIn);
+        return true;
+    }
+
+    public int size() {
+        return lats.size();
+    }
+
+    public PlaceIndex build() {
+        int size = lats.size();
+        double minLat = 0, maxLat = 0, minLon = 0, maxLon = 0;
+        if (size > 0) {
+            minLat = lats.min();
+            maxLat = lats.max();
+            minLon = lons.min();
+            maxLon = lons.max();
+        }
+        int latCells = (int) ((maxLat - minLat) / cellDegree) + 1;
+        int lonCells = (int) ((maxLon - minLon) / cellDegree) + 1;
+        int cellCount = latCells * lonCells;
+
+        // sort the places by cell via counting
+        int[] cells = new int[size];
+        int[] offsets = new int[cellCount + 1];
+        for (int i = 0; i < size; i++) {
+            int latCell = PlaceIndex.getCell(lats.get(i), minLat, cellDegree, latCells);
+            int lonCell = PlaceIndex.getCell(lons.get(i), minLon, cellDegree, lonCells);
+            cells[i] = latCell * lonCells + lonCell;
+            offsets[cells[i] + 1]++;
+        }
+        for (int c = 0; c < cellCount; c++) {
+            offsets[c + 1] += offsets[c];
+        }
+
+        double[] sortedLats = new double[size];
+        double[] sortedLons = new double[size];
+        double[] sortedRadii = new double[size];
+        List<String>[] sortedIsIns = new List[size];
+        int[] next = new int[cellCount];
+        System.arraycopy(offsets, 0, next, 0, cellCount);
+        for (int i = 0; i < size; i++) {
+            int position = next[cells[i]]++;
+            sortedLats[position] = lats.get(i);
+            sortedLons[position] = lons.get(i);
+            sortedRadii[position] = radii.get(i);
+            sortedIsIns[position] = isIns.get(i);
+        }
+        return new PlaceIndex(minLat, minLon, cellDegree, latCells, lonCells, offsets,
+                sortedLats, sortedLons, sortedRadii, sortedIsIns);
+    }
+}
@@ -1,9 +1,14 @@
 package com.graphhopper.geocoder;
 
 import com.google.inject.Inject;
+import com.graphhopper.util.shapes.BBox;
+import java.util.List;
+import java.util.Map;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.MatchQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.QueryStringQueryBuilder;
@@ -14,47 +19,156 @@ import org.elasticsearch.search.sort.SortOrder;
  */
 public class QueryHandler extends BaseES {
 
+    // the max_gram of the edge_ngram filter in settings.json
+    private static final int MAX_GRAM = 20;
+    private Suggester suggester = new Suggester().prepare();
+    private LocalIndex localIndex = new LocalIndex();
+
     @Inject
     public QueryHandler(Configuration config, Client client) {
         super(config, client);
     }
 
+    @Inject
+    public void setSuggester(Suggester suggester) {
+        this.suggester = suggester;
+    }
+
+    @Inject
+    public void setLocalIndex(LocalIndex localIndex) {
+        this.localIndex = localIndex;
+    }
+
+    /**
+     * Answers the query from the local backend if configured.
+     *
+     * @return null if the query has to be handled via Elasticsearch
+     */
+    public List<Map<String, Object>> searchLocal(String query, int size, boolean suggest, BBox bbox) {
+        if (query == null || localIndex.isEmpty())
+            return null;
+        if (suggest)
+            return localIndex.suggest(query, size, bbox);
+        return localIndex.search(query, size, bbox);
+    }
+
+    /**
+     * Answers a single token suggestion from memory without Elasticsearch.
+     *
+     * @return null if the query has to be handled via suggest
+     */
+    public List<Map<String, Object>> suggestLocal(String query, int size) {
+        if (query == null || suggester.isEmpty())
+            return null;
+        // a trailing space means the last token is complete -> refine via ES
+        if (query.endsWith(" "))
+            return null;
+        List<String> tokens = GeocoderHelper.tokenize(query);
+        if (tokens.size() != 1)
+            return null;
+        return suggester.suggest(tokens.get(0), size);
+    }
+
+    /**
+     * @return the number of all local suggestions for a query which
+     * suggestLocal answers
+     */
+    public int countLocal(String query) {
+        return suggester.count(GeocoderHelper.tokenize(query).get(0));
+    }
+
     public SearchResponse doRequest(String query, int size) {
+        SearchRequestBuilder srb = createRequest(query, size);
+        if (srb == null)
+            return null;
+        return srb.get();
+    }
+
+    public SearchRequestBuilder createRequest(String query, int size) {
+        return createRequest(query, size, null);
+    }
+
+    /**
+     * @param bbox limits the results to documents with a center inside, can
+     * be null
+     * @return the not yet executed search or null if the query is empty
+     */
+    public SearchRequestBuilder createRequest(String query, int size, BBox bbox) {
         if (query == null || query.isEmpty())
             return null;
         QueryBuilder builder = QueryBuilders.matchQuery("name", query).minimumShouldMatch("3<90%").fuzziness(0.8);
-        SearchRequestBuilder srb = _doSearch(builder, size);
+        return _doSearch(builder, size, bbox);
+    }
+
+    public SearchResponse suggest(String query, int size) {
+        SearchRequestBuilder srb = createSuggestRequest(query, size);
+        if (srb == null)
+            return null;
         return srb.get();
     }
 
-    public SearchResponse suggest(String query, int size) {        
+    public SearchRequestBuilder createSuggestRequest(String query, int size) {
+        return createSuggestRequest(query, size, null);
+    }
+
+    /**
+     * @param bbox limits the results to documents with a center inside, can
+     * be null
+     * @return the not yet executed suggest search or null if the query is
+     * empty
+     */
+    public SearchRequestBuilder createSuggestRequest(String query, int size, BBox bbox) {
         if (query == null || query.isEmpty())
             return null;
-        // TODO replace via tokenizer
-        int index = query.lastIndexOf(" ");
+        // split at the last separator of my_geocoder_tok
+        int index = query.length() - 1;
+        while (index >= 0 && Character.isLetterOrDigit(query.charAt(index))) {
+            index--;
+        }
         String front = "";
         String end = query;
-        if (index > 0) {
-            front = query.substring(0, index);
+        if (index >= 0) {
+            front = query.substring(0, index).trim();
             end = query.substring(index + 1);
         }
-        QueryBuilder builder = QueryBuilders.prefixQuery("name", end.toLowerCase());
+        QueryBuilder builder = null;
+        if (!end.isEmpty()) {
+            if (end.length() > MAX_GRAM)
+                builder = QueryBuilders.prefixQuery("name", GeocoderHelper.normalize(end));
+            else
+                // the search analyzer does not create ngrams -> exact term matches against the edge ngrams
+                builder = QueryBuilders.matchQuery("name.prefix", end).operator(MatchQueryBuilder.Operator.AND);
+        }
         if (!front.isEmpty()) {
             // not fuzzy as suggest should be stricter when filtering
-            builder = QueryBuilders.boolQuery().
-                    must(builder).
-                    must(QueryBuilders.matchQuery("name", front).minimumShouldMatch("3<90%"));
+            QueryBuilder frontQuery = QueryBuilders.matchQuery("name", front).minimumShouldMatch("3<90%");
+            if (builder == null)
+                builder = frontQuery;
+            else
+                builder = QueryBuilders.boolQuery().
+                        must(builder).
+                        must(frontQuery);
         }
-        SearchRequestBuilder srb = _doSearch(builder, size);
-        return srb.get();
+        if (builder == null)
+            return null;
+        return _doSearch(builder, size, bbox);
     }
 
-    private SearchRequestBuilder _doSearch(QueryBuilder query, int size) {
-        return client.prepareSearch(osmIndex).setTypes(osmType).
+    private SearchRequestBuilder _doSearch(QueryBuilder query, int size, BBox bbox) {
+        SearchRequestBuilder srb = client.prepareSearch(osmIndex).setTypes(osmType).
                 setSize(size).
-                setQuery(query).
                 addSort("population", SortOrder.DESC).
                 addSort("type_rank", SortOrder.DESC);
+        if (bbox == null)
+            return srb.setQuery(query);
+
+        srb.setQuery(QueryBuilders.filteredQuery(query, FilterBuilders.geoBoundingBoxFilter("center").
+                topLeft(bbox.maxLat, bbox.minLon).bottomRight(bbox.minLat, bbox.maxLon)));
+        // only the shards of the cells within the bbox
+        String[] routings = routing.getRoutings(bbox);
+        if (routings != null)
+            srb.setRouting(routings);
+        return srb;
     }
 
     public SearchResponse rawRequest(String query) {
@@ -1,13 +1,26 @@
 package com.graphhopper.geocoder;
 
+import com.github.jsonj.tools.JsonParser;
 import com.graphhopper.util.PointList;
 import com.graphhopper.util.StopWatch;
 import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.shape.Shape;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.elasticsearch.action.admin.indices.flush.FlushRequest;
 import org.elasticsearch.action.admin.indices.optimize.OptimizeRequest;
 import org.elasticsearch.action.bulk.BulkItemResponse;
@@ -22,6 +35,7 @@ import org.elasticsearch.client.Client;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.FilterBuilder;
 import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.OrFilterBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 
@@ -38,40 +52,168 @@ public class RelationShipFixer extends BaseES {
         new RelationShipFixer(config, BaseES.createClient(config)).start();
     }
 
+    static final String POSTCODE = "postcode";
     private final long keepTimeInMinutes;
+    // the polygons of the layers from geocoder.fixer.layers
+    private List<Info> customLayers;
 
-    private RelationShipFixer(Configuration config, Client client) {
+    public RelationShipFixer(Configuration config, Client client) {
         super(config, client);
         keepTimeInMinutes = config.getKeepInMinutes();
     }
 
     public void start() {
         StopWatch sw = new StopWatch().start();
-        logger.info("start!");
+        if (config.isBlueGreen()) {
+            osmIndex = new IndexManager(config, client).getBuildIndex();
+            if (osmIndex == null)
+                throw new IllegalStateException("no index build found, run the feeder first");
+        }
+        logger.info("start! index:" + osmIndex);
         // TODO copyIsInIntoName();
 
-        BoundaryIndex index = assignBoundaryToParent();
-        logger.info("updateEntries! index.size:" + index.size());
-        updateEntries(index);
-        
+        BoundaryIndex index = createBoundaryIndex(null);
+        logger.info("updateEntries! index.size:" + index.size() + ", layers:" + Arrays.toString(index.getLayers()));
+        FilterBuilder unassigned = FilterBuilders.notFilter(FilterBuilders.existsFilter("is_in"));
+        // with more layers than admin also the entries with is_in can get values
+        updateEntries(index, index.getLayers().length > 1 ? null : unassigned, true);
+
         // if no boundary matched => calculate closest via distance to city, village, ...
-        // TODO updateUnassignedEntries();
+        PlaceIndex places = createPlaceIndex();
+        logger.info("updateUnassignedEntries! places:" + places.size());
+        updateUnassignedEntries(places, unassigned);
+
+        // the unchanged entries of a re-import with content hashes keep their is_in
+        String hashFile = config.getContentHashFile();
+        if (hashFile != null && !config.isBlueGreen()) {
+            try {
+                List<BBox> areas = ContentHashes.readAreas(new File(hashFile));
+                if (!areas.isEmpty()) {
+                    logger.info("updating " + areas.size() + " areas changed by the re-import");
+                    update(areas);
+                }
+                ContentHashes.clearAreas(new File(hashFile));
+            } catch (IOException ex) {
+                throw new RuntimeException("cannot read the changed areas of " + hashFile, ex);
+            }
+        }
         if (config.doOptimize()) {
             logger.info("Optimizing ...");
             client.admin().indices().optimize(new OptimizeRequest(osmIndex).maxNumSegments(1)).actionGet();
         }
         
-        logger.info("finished in " + sw.stop().getSeconds() + "s");
+        logger.info("finished in " + sw.stop().getSeconds() + "s, metrics:\n" + metrics.toText());
+    }
+
+    /**
+     * Fixes only the specified areas after an incremental update: boundaries
+     * intersecting an area are assigned to their parents again and the is_in
+     * of all entries with a center inside an area is recalculated. Entries
+     * still without is_in get the nearest place. All areas share one boundary
+     * index and one scroll.
+     */
+    public void update(Collection<BBox> areas) {
+        if (areas.isEmpty())
+            return;
+        StopWatch sw = new StopWatch().start();
+        OrFilterBuilder intersecting = FilterBuilders.orFilter();
+        OrFilterBuilder inAreas = FilterBuilders.orFilter();
+        for (BBox area : areas) {
+            Shape shape = SpatialContext.GEO.makeRectangle(area.minLon, area.maxLon, area.minLat, area.maxLat);
+            intersecting.add(FilterBuilders.geoIntersectionFilter("bounds", shape));
+            inAreas.add(FilterBuilders.geoBoundingBoxFilter("center").
+                    topLeft(area.maxLat, area.minLon).bottomRight(area.minLat, area.maxLon));
+        }
+        BoundaryIndex index = createBoundaryIndex(intersecting);
+        updateEntries(index, inAreas, false);
+        updateUnassignedEntries(createPlaceIndex(), FilterBuilders.andFilter(inAreas,
+                FilterBuilders.notFilter(FilterBuilders.existsFilter("is_in"))));
+        logger.info("updated " + areas.size() + " areas in " + sw.stop().getSeconds() + "s");
     }
 
     /**
-     * get all boundaries and merge with its parents
+     * @param area limits the boundaries or null for all
      */
-    private BoundaryIndex assignBoundaryToParent() {
+    private BoundaryIndex createBoundaryIndex(FilterBuilder area) {
         // TODO how to determine this upfront -> stored in elasticsearch from JsonFeeder?        
         BBox bbox = new BBox(-2, 19, 46, 57);
-        final BoundaryIndex index = new BoundaryIndex(bbox, 10000);
-        SearchResponse rsp = createScan(FilterBuilders.termFilter("has_boundary", true)).get();
+        BoundaryIndexBuilder builder = new BoundaryIndexBuilder(bbox, 10000);
+        Set<String> parents = assignBoundaryToParent(builder, and(FilterBuilders.termFilter("has_boundary", true), area));
+        // merged by the feeder or fixed in a previous run
+        addFixedBoundaries(builder, and(FilterBuilders.termFilter("has_fixed_boundary", true), area), parents);
+        addPostcodeAreas(builder, and(FilterBuilders.termFilter("type", POSTCODE), area));
+        for (Info info : getCustomLayers()) {
+            builder.add(info);
+        }
+        return builder.build(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Adds the boundary=postal_code areas to the postcode layer.
+     */
+    private void addPostcodeAreas(final BoundaryIndexBuilder builder, FilterBuilder filter) {
+        SearchResponse rsp = createScan(filter).get();
+        scroll(rsp, new SimpleExecute() {
+
+            @Override public void handle(SearchHit scanSearchHit,
+                    List<IndexRequest> toFeed, List<DeleteRequest> toDelete) {
+                current++;
+                Map<String, Object> source = scanSearchHit.getSource();
+                List<PointList> polygons = GeometryCodec.getPolygons(source);
+                Map<String, Object> address = (Map<String, Object>) source.get("address");
+                String postcode = address == null ? null : (String) address.get("postcode");
+                if (polygons == null || polygons.isEmpty() || postcode == null)
+                    return;
+                Info info = createInfo(scanSearchHit.getId(), POSTCODE, source, polygons, Collections.singletonList(postcode));
+                if (info != null)
+                    builder.add(info);
+            }
+        });
+    }
+
+    /**
+     * Reads the GeoJSON files of geocoder.fixer.layers once.
+     */
+    synchronized List<Info> getCustomLayers() {
+        if (customLayers != null)
+            return customLayers;
+        customLayers = new ArrayList<Info>();
+        String layers = config.getFixerLayers();
+        if (layers == null)
+            return customLayers;
+        for (String layer : layers.split(",")) {
+            int index = layer.indexOf(':');
+            if (index <= 0)
+                throw new IllegalArgumentException("layer has to be name:file.geojson but was " + layer);
+            String name = layer.substring(0, index).trim();
+            if (Info.ADMIN.equals(name) || POSTCODE.equals(name))
+                throw new IllegalArgumentException("the layer name " + name + " is reserved");
+            File file = new File(layer.substring(index + 1).trim());
+            try {
+                String json = GeocoderHelper.toString(new FileInputStream(file));
+                List<Info> infos = BoundaryIndexBuilder.createInfos(name, new JsonParser().parse(json).asObject());
+                logger.info("read " + infos.size() + " polygons of layer " + name + " from " + file);
+                customLayers.addAll(infos);
+            } catch (IOException ex) {
+                throw new RuntimeException("cannot read layer " + name + " from " + file, ex);
+            }
+        }
+        return customLayers;
+    }
+
+    static FilterBuilder and(FilterBuilder filter, FilterBuilder area) {
+        return area == null ? filter : FilterBuilders.andFilter(filter, area);
+    }
+
+    /**
+     * get all boundaries which are still separate documents and merge with
+     * its parents
+     *
+     * @return the ids of the parents
+     */
+    private Set<String> assignBoundaryToParent(final BoundaryIndexBuilder builder, FilterBuilder filter) {
+        final Set<String> parents = new HashSet<String>();
+        SearchResponse rsp = createScan(filter).get();
         scroll(rsp, new SimpleExecute() {
 
             @Override public void handle(SearchHit scanSearchHit,
@@ -81,8 +223,8 @@ public class RelationShipFixer extends BaseES {
                 String boundaryId = scanSearchHit.getId();
                 Map<String, Object> boundarySource = scanSearchHit.getSource();
                 String name = (String) boundarySource.get("name");
-                Map bounds = (Map) boundarySource.get("bounds");
-                if (bounds == null)
+                List<PointList> polygons = GeometryCodec.getPolygons(boundarySource);
+                if (polygons == null)
                     throw new IllegalStateException("has_boundary but no bounds!?" + boundaryId + ", " + name);
 
                 String centerNode = (String) boundarySource.get("center_node");
@@ -103,73 +245,84 @@ public class RelationShipFixer extends BaseES {
                 SearchHit parent = rsp.getHits().getHits()[0];
                 String parentId = parent.getId();
                 Map<String, Object> parentSource = parent.getSource();
-                if (parentSource.containsKey("bounds")) {
+                // a fixed boundary is replaced as it could have changed since the last run
+                boolean hasOwnBounds = parentSource.containsKey("bounds") || parentSource.containsKey("bounds_enc");
+                if (hasOwnBounds && !Boolean.TRUE.equals(parentSource.get("has_fixed_boundary"))) {
                     logger.info("Parent " + parentId + " already contains boundary. It was: " + boundaryId);
                 } else {
-                    parentSource.put("bounds", bounds);
-
-                    if (!parentSource.containsKey("admin_level")) {
-                        Integer adminLevel = (Integer) boundarySource.get("admin_level");
-                        parentSource.put("admin_level", adminLevel);
-                    }
-
-                    if (!parentSource.containsKey("wikipedia")) {
-                        String wikipedia = (String) boundarySource.get("wikipedia");
-                        parentSource.put("wikipedia", wikipedia);
-                    }
-
-                    if (!parentSource.containsKey("type_rank")) {
-                        String typeRank = (String) boundarySource.get("type_rank");
-                        parentSource.put("type_rank", typeRank);
-                    }
-
-                    parentSource.put("has_fixed_boundary", true);
-                    toFeed.add(new IndexRequest(osmIndex, osmType, parentId).source(parentSource));
+                    // bounds is always needed for the geo_shape, even if excluded from the source
+                    restoreBounds(boundarySource);
+                    JsonFeeder.mergeBoundary(parentSource, boundarySource, Boolean.TRUE);
+                    toFeed.add(new IndexRequest(osmIndex, osmType, parentId).
+                            routing(routing.getRouting(parentSource)).source(parentSource));
                 }
 
-                List isIn = (List) parentSource.get("is_in");
-                if (isIn == null)
-                    logger.warn("is_in is null for " + parentId + ", " + boundaryId);
-                else {
-                    GHPoint centerPoint = new GHPoint();
-                    List center = (List) parentSource.get("center");
-                    if (center != null) {
-                        centerPoint.lat = (Double) center.get(1);
-                        centerPoint.lon = (Double) center.get(0);
-                    } else {
-                        logger.warn("center is null for " + parentId + ", " + boundaryId);
-                    }
-
-                    List<PointList> polygonsToFeed = getPointLists(bounds);
-                    index.add(new Info(parentId + "|" + boundaryId, centerPoint, polygonsToFeed, isIn));
-                }
+                parents.add(parentId);
+                Info info = createInfo(parentId + "|" + boundaryId, parentSource, polygons);
+                if (info != null)
+                    builder.add(info);
 
-                toDelete.add(new DeleteRequest(osmIndex, osmType, boundaryId));
+                toDelete.add(new DeleteRequest(osmIndex, osmType, boundaryId).
+                        routing(routing.getRouting(boundarySource)));
             }
+        });
+        flush();
+        return parents;
+    }
 
-            List<PointList> getPointLists(Map<String, Object> bounds) {
-                List coordinates = (List) bounds.get("coordinates");
-                List<PointList> polygonsToFeed = new ArrayList<PointList>(coordinates.size());
-                if (((String) bounds.get("type")).equalsIgnoreCase("multipolygon")) {
-                    // no special handling
-                } else {
-                    List tmp = new ArrayList(1);
-                    tmp.add(coordinates);
-                    coordinates = tmp;
-                }
+    /**
+     * Adds the places which already contain the bounds of their boundary, no
+     * lookup or reindexing necessary.
+     *
+     * @param skip the places already added
+     */
+    private void addFixedBoundaries(final BoundaryIndexBuilder builder, FilterBuilder filter, final Set<String> skip) {
+        client.admin().indices().prepareRefresh(osmIndex).get();
+        SearchResponse rsp = createScan(filter).get();
+        scroll(rsp, new SimpleExecute() {
+
+            @Override public void handle(SearchHit scanSearchHit,
+                    List<IndexRequest> toFeed, List<DeleteRequest> toDelete) {
+                current++;
+                String id = scanSearchHit.getId();
+                if (skip.contains(id))
+                    return;
 
-                for (Object polyWithHoles : coordinates) {
-                    // ignore holes for now:
-                    List poly = (List) ((List) polyWithHoles).get(0);
-                    PointList list = GeocoderHelper.polygonListToPointList(poly);
-                    if (!list.isEmpty())
-                        polygonsToFeed.add(list);
+                Map<String, Object> source = scanSearchHit.getSource();
+                List<PointList> polygons = GeometryCodec.getPolygons(source);
+                if (polygons == null) {
+                    logger.warn("has_fixed_boundary but no bounds!? " + id);
+                    return;
                 }
-                return polygonsToFeed;
+                Info info = createInfo(id, source, polygons);
+                if (info != null)
+                    builder.add(info);
             }
         });
-        flush();
-        return index;
+    }
+
+    /**
+     * @return the info with the is_in of the place or null if it has none
+     */
+    Info createInfo(String id, Map<String, Object> placeSource, List<PointList> polygons) {
+        List isIn = (List) placeSource.get("is_in");
+        if (isIn == null) {
+            logger.warn("is_in is null for " + id);
+            return null;
+        }
+        return createInfo(id, Info.ADMIN, placeSource, polygons, isIn);
+    }
+
+    Info createInfo(String id, String layer, Map<String, Object> placeSource, List<PointList> polygons, List<String> values) {
+        GHPoint centerPoint = new GHPoint();
+        List center = (List) placeSource.get("center");
+        if (center != null) {
+            centerPoint.lat = ((Number) center.get(1)).doubleValue();
+            centerPoint.lon = ((Number) center.get(0)).doubleValue();
+        } else {
+            logger.warn("center is null for " + id);
+        }
+        return new Info(id, layer, centerPoint, polygons, values);
     }
 
     SearchRequestBuilder createScan(FilterBuilder filter) {
@@ -190,70 +343,273 @@ public class RelationShipFixer extends BaseES {
     /**
      * Fetch all entries (streets, POIs, unassigned stuff) to determine the
      * associated boundary with BoundaryIndex.search and feed the updated entry
-     * which should then contain is_in information and the city/village etc
+     * which should then contain is_in information and the city/village etc.
+     * The other layers of the index are resolved in the same search, the
+     * postcode is stored in address.postcode if missing and the values of the
+     * custom layers in layers.name.
+     *
+     * @param keepIsIn true if an existing is_in is not replaced, otherwise the
+     * is_in of an entry outside of every boundary is removed so that the
+     * nearest place is assigned again
      */
-    private void updateEntries(final BoundaryIndex index) {
-        FilterBuilder filter = FilterBuilders.notFilter(FilterBuilders.existsFilter("is_in"));
-        SearchResponse rsp = createScan(filter).get();
+    private void updateEntries(final BoundaryIndex index, FilterBuilder filter, final boolean keepIsIn) {
+        final String[] layers = index.getLayers();
+        final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            SearchResponse rsp = createScan(filter).get();
+            scroll(rsp, new SimpleExecute() {
+
+                @Override public void handle(SearchHit[] hits,
+                        List<IndexRequest> toFeed, List<DeleteRequest> toDelete) {
+                    // resolve the boundaries of the whole page at once
+                    double[] lats = new double[hits.length];
+                    double[] lons = new double[hits.length];
+                    getCenters(hits, lats, lons);
+                    int[][] positions = index.searchLayers(lats, lons, executor);
+                    for (int i = 0; i < hits.length; i++) {
+                        current++;
+                        if (Double.isNaN(lats[i]))
+                            continue;
+
+                        // we need to build a hierarchy of boundaries as we cannot rely on the fact that boundary always have is_in values
+                        List<String> isIn = null;
+                        if (positions[0][i] < 0) {
+                            if (!keepIsIn)
+                                isIn = Collections.emptyList();
+                        } else if (!(keepIsIn && hits[i].getSource().containsKey("is_in")))
+                            isIn = index.getIsIn(positions[0][i]);
+                        Map<String, String> values = new HashMap<String, String>();
+                        for (int layer = 1; layer < layers.length; layer++) {
+                            if (positions[layer][i] >= 0)
+                                values.put(layers[layer], index.getValue(positions[layer][i]));
+                        }
+                        IndexRequest request = createUpdate(hits[i], isIn, values);
+                        if (request != null)
+                            toFeed.add(request);
+                    }
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+        flush();
+    }
+
+    /**
+     * Fetch all places (city, town, ...) with their name and is_in for the
+     * nearest place fallback.
+     */
+    PlaceIndex createPlaceIndex() {
+        // the is_in of the previous steps
+        client.admin().indices().prepareRefresh(osmIndex).get();
+        final PlaceIndexBuilder builder = new PlaceIndexBuilder(0.1);
+        SearchResponse rsp = createScan(FilterBuilders.termsFilter("type", PlaceIndex.getTypes())).get();
         scroll(rsp, new SimpleExecute() {
 
             @Override public void handle(SearchHit scanSearchHit,
                     List<IndexRequest> toFeed, List<DeleteRequest> toDelete) {
                 current++;
-
-                String id = scanSearchHit.getId();
-                if (id.contains("4259951"))
-                    id = id;
                 Map<String, Object> source = scanSearchHit.getSource();
-                List centerCoord = (List) source.get("center");
-                if (centerCoord == null || centerCoord.size() != 2) {
-                    logger.warn(id + " object has no center or center has not 2 entries: " + centerCoord);
+                List center = (List) source.get("center");
+                String name = (String) source.get("orig_name");
+                if (name == null)
+                    name = (String) source.get("name");
+                if (center == null || center.size() != 2 || name == null)
                     return;
-                }
 
-                Double lat = (Double) centerCoord.get(1);
-                Double lon = (Double) centerCoord.get(0);
+                // entries of this place are in the place itself and in everything the place is in
+                List<String> isIn = new ArrayList<String>();
+                isIn.add(name);
+                List<String> placeIsIn = (List<String>) source.get("is_in");
+                if (placeIsIn != null)
+                    isIn.addAll(placeIsIn);
+                builder.add(((Number) center.get(1)).doubleValue(), ((Number) center.get(0)).doubleValue(),
+                        (String) source.get("type"), isIn);
+            }
+        });
+        return builder.build();
+    }
 
-                // TODO which info object should we select?
-                // we need to build a hierarchy of boundaries as we cannot rely on the fact that boundary always have is_in values
-                Collection<Info> list = index.searchContaining(lat, lon);
-                if (list.isEmpty()) {
-                    // logger.warn("no boundaries found for " + id);
-                    return;
-                } else if (list.size() == 2) {
-                    logger.warn("more than one boundary found for " + id + " -> " + list);
+    /**
+     * Assigns the entries (streets, POIs) outside of every boundary to the
+     * nearest place within its radius.
+     */
+    private void updateUnassignedEntries(final PlaceIndex places, FilterBuilder filter) {
+        if (places.size() == 0)
+            return;
+
+        client.admin().indices().prepareRefresh(osmIndex).get();
+        final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            SearchResponse rsp = createScan(FilterBuilders.andFilter(filter,
+                    FilterBuilders.notFilter(FilterBuilders.termsFilter("type", PlaceIndex.getTypes())))).get();
+            scroll(rsp, new SimpleExecute() {
+
+                @Override public void handle(SearchHit[] hits,
+                        List<IndexRequest> toFeed, List<DeleteRequest> toDelete) {
+                    double[] lats = new double[hits.length];
+                    double[] lons = new double[hits.length];
+                    getCenters(hits, lats, lons);
+                    int[] positions = places.searchClosest(lats, lons, executor);
+                    for (int i = 0; i < hits.length; i++) {
+                        current++;
+                        if (positions[i] >= 0)
+                            toFeed.add(createUpdate(hits[i], places.getIsIn(positions[i])));
+                    }
+                    metrics.counter("geocoder_fixer_nearest_place_total").addAndGet(toFeed.size());
                 }
-                Info info = list.iterator().next();
-                String name = (String) source.get("name");
-                if (name != null)
-                    source.put("orig_name", name);
-
-                source.put("name", getName(name, info.getIsIn()));
-                source.put("is_in", info.getIsIn());
-                // logger.info("boundary matched " + id + " -> " + info.toString());
-                toFeed.add(new IndexRequest(osmIndex, osmType, id).source(source));
+            });
+        } finally {
+            executor.shutdown();
+        }
+        flush();
+    }
+
+    /**
+     * Reads the centers of the hits, lat is NaN if there is no center.
+     */
+    void getCenters(SearchHit[] hits, double[] lats, double[] lons) {
+        for (int i = 0; i < hits.length; i++) {
+            List centerCoord = (List) hits[i].getSource().get("center");
+            if (centerCoord == null || centerCoord.size() != 2) {
+                logger.warn(hits[i].getId() + " object has no center or center has not 2 entries: " + centerCoord);
+                lats[i] = Double.NaN;
+                continue;
             }
+            lats[i] = ((Number) centerCoord.get(1)).doubleValue();
+            lons[i] = ((Number) centerCoord.get(0)).doubleValue();
+        }
+    }
 
-            String getName(String name, List<String> isIn) {
-                if (name == null)
-                    name = "";
-
-                String previous = name.trim();
-                for (int i = 0; i < isIn.size(); i++) {
-                    String tmp = isIn.get(i).trim();
-                    if (tmp.equalsIgnoreCase(previous))
-                        continue;
-
-                    if (name.isEmpty())
-                        name = tmp;
-                    else
-                        name += ", " + tmp;
-                    previous = tmp;
+    /**
+     * Appends is_in to the name and sets it.
+     */
+    IndexRequest createUpdate(SearchHit hit, List<String> isIn) {
+        Map<String, Object> source = hit.getSource();
+        setIsIn(source, isIn);
+        restoreBounds(source);
+        return new IndexRequest(osmIndex, osmType, hit.getId()).
+                routing(routing.getRouting(source)).source(source);
+    }
+
+    /**
+     * Sets is_in if not null, an empty is_in removes it. Sets the values of
+     * the other layers.
+     *
+     * @return the update or null if nothing changed
+     */
+    IndexRequest createUpdate(SearchHit hit, List<String> isIn, Map<String, String> values) {
+        Map<String, Object> source = hit.getSource();
+        boolean changed = false;
+        if (isIn != null && isIn.isEmpty()) {
+            changed = removeIsIn(source);
+        } else if (isIn != null) {
+            setIsIn(source, isIn);
+            changed = true;
+        }
+        if (setLayerValues(source, values))
+            changed = true;
+        if (!changed)
+            return null;
+        restoreBounds(source);
+        return new IndexRequest(osmIndex, osmType, hit.getId()).
+                routing(routing.getRouting(source)).source(source);
+    }
+
+    /**
+     * Replaces layers with the found values and stores the postcode in
+     * address.postcode if the entry has none from OSM. The found postcode is
+     * also in layers.postcode, so a later run can tell it from a tagged one
+     * and replace or remove it.
+     *
+     * @return true if the source was changed
+     */
+    static boolean setLayerValues(Map<String, Object> source, Map<String, String> values) {
+        boolean changed = false;
+        Map<String, Object> layers = (Map<String, Object>) source.get("layers");
+        Map<String, Object> address = (Map<String, Object>) source.get("address");
+        Object oldPostcode = address == null ? null : address.get(POSTCODE);
+        boolean tagged = oldPostcode != null && (layers == null || !oldPostcode.equals(layers.get(POSTCODE)));
+        if (!tagged) {
+            String postcode = values.get(POSTCODE);
+            if (postcode == null) {
+                if (oldPostcode != null) {
+                    address.remove(POSTCODE);
+                    changed = true;
+                }
+            } else if (!postcode.equals(oldPostcode)) {
+                if (address == null) {
+                    address = new HashMap<String, Object>();
+                    source.put("address", address);
                 }
-                return name.trim();
+                address.put(POSTCODE, postcode);
+                changed = true;
             }
-        });
-        flush();
+        }
+
+        if (values.isEmpty()) {
+            if (source.remove("layers") != null)
+                changed = true;
+        } else if (!values.equals(layers)) {
+            source.put("layers", new HashMap<String, Object>(values));
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static void setIsIn(Map<String, Object> source, List<String> isIn) {
+        // the name could already contain the is_in of a previous run
+        String name = (String) source.get("orig_name");
+        if (name == null)
+            name = (String) source.get("name");
+        if (name != null)
+            source.put("orig_name", name);
+
+        source.put("name", getName(name, isIn));
+        source.put("is_in", isIn);
+    }
+
+    /**
+     * Removes is_in and restores the name without it.
+     *
+     * @return true if the source had an is_in
+     */
+    private static boolean removeIsIn(Map<String, Object> source) {
+        if (source.remove("is_in") == null)
+            return false;
+        String name = (String) source.remove("orig_name");
+        if (name != null)
+            source.put("name", name);
+        return true;
+    }
+
+    static String getName(String name, List<String> isIn) {
+        if (name == null)
+            name = "";
+
+        String previous = name.trim();
+        for (int i = 0; i < isIn.size(); i++) {
+            String tmp = isIn.get(i).trim();
+            if (tmp.equalsIgnoreCase(previous))
+                continue;
+
+            if (name.isEmpty())
+                name = tmp;
+            else
+                name += ", " + tmp;
+            previous = tmp;
+        }
+        return name.trim();
+    }
+
+    /**
+     * If bounds is excluded from the source (geocoder.bounds.encoded) it has
+     * to be fed again, otherwise the geo_shape gets lost while reindexing.
+     */
+    static void restoreBounds(Map<String, Object> source) {
+        String enc = (String) source.get("bounds_enc");
+        if (enc != null && !source.containsKey("bounds"))
+            source.put("bounds", GeometryCodec.toGeoJson(GeometryCodec.decodeBase64(enc)));
     }
 
     private void flush() {
@@ -282,6 +638,16 @@ public class RelationShipFixer extends BaseES {
         public void handle(SearchHit scanSearchHit, List<IndexRequest> toFeed, List<DeleteRequest> toDelete) {
         }
 
+        /**
+         * Handles all hits of a scroll page, override it to process them in
+         * one batch.
+         */
+        public void handle(SearchHit[] hits, List<IndexRequest> toFeed, List<DeleteRequest> toDelete) {
+            for (SearchHit sh : hits) {
+                handle(sh, toFeed, toDelete);
+            }
+        }
+
         protected void logInfo() {
             if (current % 10 == 0)
                 logger.info((float) current * 100 / total + "% -> time/call:" + timePerCall);
@@ -304,27 +670,30 @@ public class RelationShipFixer extends BaseES {
 
             List<IndexRequest> toIndex = new ArrayList<IndexRequest>();
             List<DeleteRequest> toDelete = new ArrayList<DeleteRequest>();
-            for (SearchHit sh : rsp.getHits().getHits()) {
-                exec.handle(sh, toIndex, toDelete);
-            }
+            exec.handle(rsp.getHits().getHits(), toIndex, toDelete);
             BulkRequestBuilder brb = client.prepareBulk();
             for (IndexRequest ir : toIndex) {
                 brb.add(ir);
             }
             if (toIndex.size() == 0)
-                return;
+                continue;
 
 //            for (DeleteRequest dr : toDelete) {
 //                brb.add(dr);
 //            }
+            long bulkStart = System.nanoTime();
             BulkResponse bulkRsp = brb.get();
+            metrics.recordSince("geocoder_fixer_bulk_latency", bulkStart);
+            metrics.counter("geocoder_fixer_reindexed_total").addAndGet(toIndex.size());
             int failed = 0;
             for (BulkItemResponse bur : bulkRsp.getItems()) {
                 if (bur.isFailed())
                     failed++;
             }
-            if (failed > 0)
+            if (failed > 0) {
+                metrics.counter("geocoder_fixer_failures_total").addAndGet(failed);
                 logger.warn(failed + " objects failed to reindex!");
+            }
         }
     }
 }
@@ -0,0 +1,99 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonArray;
+import com.github.jsonj.JsonObject;
+import com.graphhopper.geohash.SpatialKeyAlgo;
+import com.graphhopper.util.shapes.BBox;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Routes documents by a coarse spatial key of their center instead of the id
+ * so that all documents of a cell are on the same shard. A query limited to a
+ * bounding box then only needs to ask the shards of the intersecting cells.
+ * Documents without center use the default routing.
+ *
+ * @author Peter Karich
+ */
+public class SpatialRouting {
+
+    private final SpatialKeyAlgo keyAlgo;
+    private final int latCells;
+    private final int lonCells;
+    private final int maxCells;
+
+    public SpatialRouting(Configuration config) {
+        this(config.isSpatialRouting(), config.getRoutingBits(), config.getRoutingMaxCells());
+    }
+
+    public SpatialRouting(boolean enabled, int bits, int maxCells) {
+        if (bits < 2 || bits % 2 != 0 || bits > 30)
+            throw new IllegalArgumentException("routing bits has to be even and between 2 and 30 but was " + bits);
+        keyAlgo = enabled ? new SpatialKeyAlgo(bits) : null;
+        latCells = lonCells = 1 << (bits / 2);
+        this.maxCells = maxCells;
+    }
+
+    public boolean isEnabled() {
+        return keyAlgo != null;
+    }
+
+    /**
+     * @return the routing of the cell or null if disabled
+     */
+    public String getRouting(double lat, double lon) {
+        if (keyAlgo == null)
+            return null;
+        return Long.toString(keyAlgo.encode(lat, lon));
+    }
+
+    public String getRouting(JsonObject doc) {
+        JsonArray center = doc.getArray("center");
+        if (center == null || center.size() != 2)
+            return null;
+        return getRouting(center.get(1).asDouble(), center.get(0).asDouble());
+    }
+
+    /**
+     * @param source the document fetched from Elasticsearch
+     */
+    public String getRouting(Map<String, Object> source) {
+        List center = (List) source.get("center");
+        if (center == null || center.size() != 2)
+            return null;
+        return getRouting(((Number) center.get(1)).doubleValue(), ((Number) center.get(0)).doubleValue());
+    }
+
+    /**
+     * @return the routing values of all cells intersecting the bbox or null if
+     * disabled or if more than maxCells are involved, i.e. all shards are
+     * asked
+     */
+    public String[] getRoutings(BBox bbox) {
+        // e.g. crossing the date line
+        if (keyAlgo == null || bbox == null || bbox.minLat > bbox.maxLat || bbox.minLon > bbox.maxLon)
+            return null;
+        double latDelta = 180.0 / latCells, lonDelta = 360.0 / lonCells;
+        int minLatIndex = cell(bbox.minLat + 90, latDelta, latCells);
+        int maxLatIndex = cell(bbox.maxLat + 90, latDelta, latCells);
+        int minLonIndex = cell(bbox.minLon + 180, lonDelta, lonCells);
+        int maxLonIndex = cell(bbox.maxLon + 180, lonDelta, lonCells);
+        if ((long) (maxLatIndex - minLatIndex + 1) * (maxLonIndex - minLonIndex + 1) > maxCells)
+            return null;
+
+        Set<String> res = new LinkedHashSet<String>();
+        for (int latIndex = minLatIndex; latIndex <= maxLatIndex; latIndex++) {
+            for (int lonIndex = minLonIndex; lonIndex <= maxLonIndex; lonIndex++) {
+                // the center of the cell
+                res.add(getRouting((latIndex + 0.5) * latDelta - 90, (lonIndex + 0.5) * lonDelta - 180));
+            }
+        }
+        return res.toArray(new String[res.size()]);
+    }
+
+    private static int cell(double value, double delta, int cells) {
+        return Math.max(0, Math.min(cells - 1, (int) Math.floor(value / delta)));
+    }
+}
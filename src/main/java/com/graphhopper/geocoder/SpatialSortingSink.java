@@ -0,0 +1,239 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonArray;
+import com.github.jsonj.JsonObject;
+import com.github.jsonj.tools.JsonParser;
+import com.graphhopper.geohash.KeyAlgo;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Passes the documents sorted by the spatial key of their center to another
+ * sink, so that neighbours end up in the same segments. As the documents do
+ * not fit into memory sorted runs are written to temporary files and merged
+ * on close. Documents without center come last.
+ *
+ * @author Peter Karich
+ */
+public class SpatialSortingSink implements DocumentSink {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Comparator<Entry> ENTRY_COMPARATOR = new Comparator<Entry>() {
+        @Override public int compare(Entry o1, Entry o2) {
+            return o1.key < o2.key ? -1 : o1.key == o2.key ? 0 : 1;
+        }
+    };
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Metrics metrics = Metrics.getDefault();
+    private final DocumentSink sink;
+    private final KeyAlgo keyAlgo;
+    private final int bufferSize;
+    private final int bulkSize;
+    private final List<Entry> buffer = new ArrayList<Entry>();
+    private final List<File> runs = new ArrayList<File>();
+    private final List<String> failedIds = new ArrayList<String>();
+    private String indexName;
+    private String indexType;
+
+    /**
+     * @param bufferSize the number of documents sorted in memory
+     */
+    public SpatialSortingSink(DocumentSink sink, KeyAlgo keyAlgo, int bufferSize, int bulkSize) {
+        this.sink = sink;
+        this.keyAlgo = keyAlgo;
+        this.bufferSize = bufferSize;
+        this.bulkSize = bulkSize;
+    }
+
+    @Override
+    public synchronized Collection<Integer> store(String indexName, String indexType, List<String> ids, List<JsonObject> docs) {
+        this.indexName = indexName;
+        this.indexType = indexType;
+        for (int i = 0; i < docs.size(); i++) {
+            buffer.add(new Entry(getKey(docs.get(i)), ids.get(i), docs.get(i)));
+            if (buffer.size() >= bufferSize) {
+                try {
+                    writeRun();
+                } catch (IOException ex) {
+                    throw new RuntimeException("cannot write sorted run", ex);
+                }
+            }
+        }
+        // failures are only known while merging, see getFailedIds
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the ids of the documents which the sink could not store while
+     * closing
+     */
+    public synchronized List<String> getFailedIds() {
+        return failedIds;
+    }
+
+    long getKey(JsonObject doc) {
+        JsonArray center = doc.getArray("center");
+        if (center == null || center.size() != 2)
+            return Long.MAX_VALUE;
+        return keyAlgo.encode(center.get(1).asDouble(), center.get(0).asDouble());
+    }
+
+    private void writeRun() throws IOException {
+        Collections.sort(buffer, ENTRY_COMPARATOR);
+        File file = File.createTempFile("geocoder-run", ".bin");
+        runs.add(file);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try {
+            for (Entry e : buffer) {
+                out.writeLong(e.key);
+                out.writeUTF(e.id);
+                byte[] bytes = e.doc.toString().getBytes(UTF8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } finally {
+            out.close();
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Merges the runs and passes all documents to the sink before closing it.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (runs.isEmpty()) {
+                Collections.sort(buffer, ENTRY_COMPARATOR);
+                for (int from = 0; from < buffer.size(); from += bulkSize) {
+                    forward(buffer.subList(from, Math.min(buffer.size(), from + bulkSize)));
+                }
+                buffer.clear();
+            } else {
+                if (!buffer.isEmpty())
+                    writeRun();
+                merge();
+            }
+        } finally {
+            for (File run : runs) {
+                run.delete();
+            }
+            runs.clear();
+        }
+        sink.close();
+    }
+
+    private void merge() throws IOException {
+        logger.info("merging " + runs.size() + " sorted runs");
+        JsonParser parser = new JsonParser();
+        PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(runs.size(), new Comparator<RunReader>() {
+            @Override public int compare(RunReader o1, RunReader o2) {
+                return ENTRY_COMPARATOR.compare(o1.current, o2.current);
+            }
+        });
+        List<RunReader> readers = new ArrayList<RunReader>(runs.size());
+        try {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run, parser);
+                readers.add(reader);
+                if (reader.next())
+                    queue.add(reader);
+            }
+            List<Entry> batch = new ArrayList<Entry>(bulkSize);
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                batch.add(reader.current);
+                if (reader.next())
+                    queue.add(reader);
+                if (batch.size() >= bulkSize) {
+                    forward(batch);
+                    batch.clear();
+                }
+            }
+            forward(batch);
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private void forward(List<Entry> entries) {
+        if (entries.isEmpty())
+            return;
+        List<String> ids = new ArrayList<String>(entries.size());
+        List<JsonObject> docs = new ArrayList<JsonObject>(entries.size());
+        for (Entry e : entries) {
+            ids.add(e.id);
+            docs.add(e.doc);
+        }
+        Collection<Integer> failed = sink.store(indexName, indexType, ids, docs);
+        if (!failed.isEmpty()) {
+            for (Integer index : failed) {
+                failedIds.add(ids.get(index));
+            }
+            metrics.counter(Metrics.name("geocoder_feed_failures_total", "stage", "sorted")).addAndGet(failed.size());
+            logger.warn(failed.size() + " problem(s) while feeding " + entries.size() + " sorted object(s)");
+        }
+    }
+
+    static class Entry {
+
+        final long key;
+        final String id;
+        final JsonObject doc;
+
+        Entry(long key, String id, JsonObject doc) {
+            this.key = key;
+            this.id = id;
+            this.doc = doc;
+        }
+    }
+
+    static class RunReader {
+
+        private final DataInputStream in;
+        private final JsonParser parser;
+        Entry current;
+
+        RunReader(File file, JsonParser parser) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 14));
+            this.parser = parser;
+        }
+
+        boolean next() throws IOException {
+            long key;
+            try {
+                key = in.readLong();
+            } catch (EOFException ex) {
+                current = null;
+                return false;
+            }
+            String id = in.readUTF();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            current = new Entry(key, id, parser.parse(new String(bytes, UTF8)).asObject());
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
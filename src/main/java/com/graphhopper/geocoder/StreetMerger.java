@@ -0,0 +1,359 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonArray;
+import com.github.jsonj.JsonElement;
+import com.github.jsonj.JsonObject;
+import com.github.jsonj.tools.JsonParser;
+import static com.github.jsonj.tools.JsonBuilder.$;
+import static com.github.jsonj.tools.JsonBuilder._;
+import static com.github.jsonj.tools.JsonBuilder.array;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistancePlaneProjection;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the ways of one street into a single document. OSM splits a street
+ * into many ways, e.g. at every change of the speed limit. Ways with the same
+ * name, type and is_in are merged if they touch or if their end points are
+ * closer than the maximum distance to the other way. The merged document gets
+ * all lines as MultiLineString in 'lines', the bounding box in 'bbox' and
+ * the point of the lines closest to the middle of the bounding box as
+ * center. The ids of the ways are in 'way_ids' in the order of the lines.
+ * <p/>
+ * The ways are written into temporary partition files by their street key,
+ * so only one partition needs to be in memory while merging.
+ *
+ * @author Peter Karich
+ */
+public class StreetMerger {
+
+    public interface Handler {
+
+        void handle(String id, JsonObject doc) throws IOException;
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final DistanceCalc distCalc = new DistancePlaneProjection();
+    private static final double METERS_PER_DEGREE = 111195;
+    private final double maxDistance;
+    private final File[] files;
+    private final DataOutputStream[] outs;
+    private int count;
+
+    public StreetMerger(double maxDistance, int partitions) throws IOException {
+        this.maxDistance = maxDistance;
+        files = new File[partitions];
+        outs = new DataOutputStream[partitions];
+        try {
+            for (int i = 0; i < partitions; i++) {
+                files[i] = File.createTempFile("geocoder-streets", ".bin");
+                outs[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(files[i]), 1 << 14));
+            }
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Keeps the document back if it is a named way with a LineString.
+     *
+     * @param mainJson the object with the geometry
+     * @param doc the created document
+     * @return true if the document is kept back
+     */
+    public synchronized boolean add(String id, JsonObject mainJson, JsonObject doc) throws IOException {
+        if (!id.startsWith("osmway/"))
+            return false;
+        String key = getKey(doc);
+        JsonObject geometry = mainJson.getObject("geometry");
+        if (key == null || geometry == null || !"LineString".equalsIgnoreCase(geometry.getString("type")))
+            return false;
+        JsonArray coordinates = geometry.getArray("coordinates");
+        if (coordinates == null || coordinates.isEmpty())
+            return false;
+
+        DataOutputStream out = outs[(key.hashCode() & Integer.MAX_VALUE) % outs.length];
+        out.writeUTF(key);
+        out.writeUTF(id);
+        out.writeInt(coordinates.size());
+        for (JsonElement point : coordinates) {
+            JsonArray arr = point.asArray();
+            out.writeDouble(arr.get(1).asDouble());
+            out.writeDouble(arr.get(0).asDouble());
+        }
+        byte[] bytes = doc.toString().getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        count++;
+        return true;
+    }
+
+    /**
+     * @return the key of ways which can be merged or null
+     */
+    static String getKey(JsonObject doc) {
+        String name = doc.getString("name");
+        String type = doc.getString("type");
+        if (name == null || name.isEmpty() || type == null)
+            return null;
+        JsonElement isIn = doc.get("is_in");
+        return name + "|" + type + "|" + (isIn == null ? "" : isIn.toString());
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Merges the kept back ways and passes one document per street to the
+     * handler.
+     */
+    public synchronized void finish(Handler handler) throws IOException {
+        for (DataOutputStream out : outs) {
+            out.close();
+        }
+        JsonParser parser = new JsonParser();
+        for (File file : files) {
+            Map<String, List<Street>> groups = new LinkedHashMap<String, List<Street>>();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            try {
+                while (true) {
+                    String key;
+                    try {
+                        key = in.readUTF();
+                    } catch (EOFException ex) {
+                        break;
+                    }
+                    String id = in.readUTF();
+                    int size = in.readInt();
+                    double[] lats = new double[size];
+                    double[] lons = new double[size];
+                    for (int i = 0; i < size; i++) {
+                        lats[i] = in.readDouble();
+                        lons[i] = in.readDouble();
+                    }
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    List<Street> group = groups.get(key);
+                    if (group == null) {
+                        group = new ArrayList<Street>();
+                        groups.put(key, group);
+                    }
+                    group.add(new Street(id, parser.parse(new String(bytes, UTF8)).asObject(), lats, lons));
+                }
+            } finally {
+                in.close();
+            }
+            file.delete();
+
+            for (List<Street> group : groups.values()) {
+                for (List<Street> cluster : cluster(group, maxDistance)) {
+                    Street first = cluster.get(0);
+                    handler.handle(first.id, cluster.size() == 1 ? first.doc : merge(cluster));
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the ways of one street key into clusters of connected ways. The
+     * ways are sorted by their southern bound, so only ways which overlap in
+     * latitude need to be compared.
+     */
+    static List<List<Street>> cluster(List<Street> streets, double maxDistance) {
+        List<Street> sorted = new ArrayList<Street>(streets);
+        Collections.sort(sorted, new Comparator<Street>() {
+            @Override public int compare(Street o1, Street o2) {
+                return Double.compare(o1.minLat, o2.minLat);
+            }
+        });
+        int[] parents = new int[sorted.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        double latDelta = maxDistance / METERS_PER_DEGREE;
+        for (int i = 0; i < sorted.size(); i++) {
+            Street a = sorted.get(i);
+            double maxAbsLat = Math.max(Math.abs(a.minLat), Math.abs(a.maxLat));
+            double lonDelta = latDelta / Math.max(0.01, Math.cos(Math.toRadians(maxAbsLat)));
+            for (int j = i + 1; j < sorted.size(); j++) {
+                Street b = sorted.get(j);
+                if (b.minLat > a.maxLat + latDelta)
+                    break;
+                if (b.minLon > a.maxLon + lonDelta || b.maxLon < a.minLon - lonDelta)
+                    continue;
+                if (find(parents, i) != find(parents, j) && isConnected(a, b, maxDistance))
+                    parents[find(parents, i)] = find(parents, j);
+            }
+        }
+
+        Map<Integer, List<Street>> clusters = new LinkedHashMap<Integer, List<Street>>();
+        for (int i = 0; i < sorted.size(); i++) {
+            int root = find(parents, i);
+            List<Street> cluster = clusters.get(root);
+            if (cluster == null) {
+                cluster = new ArrayList<Street>();
+                clusters.put(root, cluster);
+            }
+            cluster.add(sorted.get(i));
+        }
+        List<List<Street>> res = new ArrayList<List<Street>>(clusters.values());
+        for (List<Street> cluster : res) {
+            // the smallest id stays stable across imports
+            Collections.sort(cluster, new Comparator<Street>() {
+                @Override public int compare(Street o1, Street o2) {
+                    long id1 = o1.getOsmId(), id2 = o2.getOsmId();
+                    return id1 < id2 ? -1 : id1 == id2 ? 0 : 1;
+                }
+            });
+        }
+        return res;
+    }
+
+    private static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+    /**
+     * @return true if an end point of one way is close to a point of the
+     * other way. Touching ways share a point.
+     */
+    static boolean isConnected(Street a, Street b, double maxDistance) {
+        return isEndClose(a, b, maxDistance) || isEndClose(b, a, maxDistance);
+    }
+
+    private static boolean isEndClose(Street a, Street b, double maxDistance) {
+        int last = a.lats.length - 1;
+        for (int i = 0; i < b.lats.length; i++) {
+            if (distCalc.calcDist(a.lats[0], a.lons[0], b.lats[i], b.lons[i]) <= maxDistance
+                    || distCalc.calcDist(a.lats[last], a.lons[last], b.lats[i], b.lons[i]) <= maxDistance)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Creates the document of the street from the document of its longest
+     * way.
+     */
+    static JsonObject merge(List<Street> cluster) {
+        double minLat = Double.MAX_VALUE, minLon = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        Street longest = null;
+        double longestDist = -1;
+        JsonArray lines = array();
+        JsonArray wayIds = array();
+        for (Street s : cluster) {
+            wayIds.add(s.id);
+            minLat = Math.min(minLat, s.minLat);
+            minLon = Math.min(minLon, s.minLon);
+            maxLat = Math.max(maxLat, s.maxLat);
+            maxLon = Math.max(maxLon, s.maxLon);
+            JsonArray line = array();
+            double dist = 0;
+            for (int i = 0; i < s.lats.length; i++) {
+                line.add(array(s.lons[i], s.lats[i]));
+                if (i > 0)
+                    dist += distCalc.calcDist(s.lats[i - 1], s.lons[i - 1], s.lats[i], s.lons[i]);
+            }
+            lines.add(line);
+            if (dist > longestDist) {
+                longestDist = dist;
+                longest = s;
+            }
+        }
+
+        double midLat = (minLat + maxLat) / 2, midLon = (minLon + maxLon) / 2;
+        double centerLat = 0, centerLon = 0, minDist = Double.MAX_VALUE;
+        for (Street s : cluster) {
+            for (int i = 0; i < s.lats.length; i++) {
+                double dist = distCalc.calcDist(midLat, midLon, s.lats[i], s.lons[i]);
+                if (dist < minDist) {
+                    minDist = dist;
+                    centerLat = s.lats[i];
+                    centerLon = s.lons[i];
+                }
+            }
+        }
+
+        JsonObject doc = longest.doc;
+        doc.put("center", array(centerLon, centerLat));
+        doc.put("lines", $(_("type", "MultiLineString"), _("coordinates", lines)));
+        doc.put("bbox", array(minLon, minLat, maxLon, maxLat));
+        doc.put("way_count", cluster.size());
+        doc.put("way_ids", wayIds);
+        return doc;
+    }
+
+    /**
+     * Deletes the partition files.
+     */
+    public synchronized void close() {
+        for (int i = 0; i < files.length; i++) {
+            try {
+                if (outs[i] != null)
+                    outs[i].close();
+            } catch (IOException ex) {
+                // the file is deleted anyway
+            }
+            if (files[i] != null)
+                files[i].delete();
+        }
+    }
+
+    static class Street {
+
+        final String id;
+        final JsonObject doc;
+        final double[] lats;
+        final double[] lons;
+        final double minLat, minLon, maxLat, maxLon;
+
+        Street(String id, JsonObject doc, double[] lats, double[] lons) {
+            this.id = id;
+            this.doc = doc;
+            this.lats = lats;
+            this.lons = lons;
+            double tmpMinLat = Double.MAX_VALUE, tmpMinLon = Double.MAX_VALUE;
+            double tmpMaxLat = -Double.MAX_VALUE, tmpMaxLon = -Double.MAX_VALUE;
+            for (int i = 0; i < lats.length; i++) {
+                tmpMinLat = Math.min(tmpMinLat, lats[i]);
+                tmpMinLon = Math.min(tmpMinLon, lons[i]);
+                tmpMaxLat = Math.max(tmpMaxLat, lats[i]);
+                tmpMaxLon = Math.max(tmpMaxLon, lons[i]);
+            }
+            minLat = tmpMinLat;
+            minLon = tmpMinLon;
+            maxLat = tmpMaxLat;
+            maxLon = tmpMaxLon;
+        }
+
+        long getOsmId() {
+            try {
+                return Long.parseLong(id.substring(id.indexOf('/') + 1));
+            } catch (NumberFormatException ex) {
+                return Long.MAX_VALUE;
+            }
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package com.graphhopper.geocoder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-memory autocompletion for single token queries. Every normalized token of
+ * a name is stored in a sorted term dictionary which points into one posting
+ * array. All terms with the same prefix form a continuous range in this array
+ * and the top k documents of such a range are picked via a block based range
+ * minimum structure, where documents are ranked like in the Elasticsearch
+ * query: by population and then by type_rank.
+ * <p/>
+ * Documents added with their source are returned with the same fields as
+ * from Elasticsearch. The source is kept as JSON in one byte array, the bounds
+ * delta encoded in bounds_enc and without the lines of merged streets.
+ *
+ * @author Peter Karich
+ */
+public class Suggester {
+
+    private static final int BLOCK_BITS = 6;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    // negative to differ from the old snapshots which start with the document count
+    private static final int FORMAT = -2;
+    private static final ObjectMapper mapper = new ObjectMapper();
+    // documents before prepare
+    private List<String> ids = new ArrayList<String>();
+    private List<String> names = new ArrayList<String>();
+    private List<String> types = new ArrayList<String>();
+    private TDoubleArrayList lats = new TDoubleArrayList();
+    private TDoubleArrayList lons = new TDoubleArrayList();
+    private TLongArrayList populations = new TLongArrayList();
+    private TDoubleArrayList typeRanks = new TDoubleArrayList();
+    private final TByteArrayList sources = new TByteArrayList();
+    // the position of the source in sources, the length is 0 if there is none
+    private TIntArrayList sourceStarts = new TIntArrayList();
+    private TIntArrayList sourceLengths = new TIntArrayList();
+    // the prepared index, documents are sorted by rank
+    private String[] terms = new String[0];
+    private int[] termStart = new int[]{0};
+    private int[] postings = new int[0];
+    private int[][] blockMin = new int[0][];
+    // the common prefixes of the tokens of a document, to count every document once
+    private String[] sharedPrefixes = new String[0];
+    private boolean prepared;
+
+    public void add(String id, String name, double lat, double lon, long population, double typeRank, String type) {
+        add(id, name, lat, lon, population, typeRank, type, null);
+    }
+
+    /**
+     * Adds the document with its source as stored in Elasticsearch.
+     */
+    public void add(String id, Map<String, Object> source) {
+        List center = (List) source.get("center");
+        if (center == null || center.size() != 2)
+            return;
+        Map<String, Object> copy = new LinkedHashMap<String, Object>(source);
+        // only returned on request, the suggest falls back to Elasticsearch then
+        copy.remove("lines");
+        Map<String, Object> bounds = (Map<String, Object>) copy.remove("bounds");
+        if (bounds != null && !copy.containsKey("bounds_enc"))
+            copy.put("bounds_enc", GeometryCodec.encodeBase64(GeometryCodec.fromGeoJson(bounds)));
+        byte[] bytes;
+        try {
+            bytes = mapper.writeValueAsBytes(copy);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("cannot serialize source of " + id, ex);
+        }
+        Number population = (Number) source.get("population");
+        Number typeRank = (Number) source.get("type_rank");
+        add(id, (String) source.get("name"),
+                ((Number) center.get(1)).doubleValue(), ((Number) center.get(0)).doubleValue(),
+                population == null ? 0 : population.longValue(),
+                typeRank == null ? 0 : typeRank.doubleValue(),
+                (String) source.get("type"), bytes);
+    }
+
+    void add(String id, String name, double lat, double lon, long population, double typeRank, String type,
+            byte[] source) {
+        if (prepared)
+            throw new IllegalStateException("cannot add " + id + " to an already prepared suggester");
+        if (name == null || name.isEmpty())
+            return;
+        ids.add(id);
+        names.add(name);
+        types.add(type);
+        lats.add(lat);
+        lons.add(lon);
+        populations.add(population);
+        typeRanks.add(typeRank);
+        sourceStarts.add(sources.size());
+        sourceLengths.add(source == null ? 0 : source.length);
+        if (source != null)
+            sources.add(source);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Sorts the documents by rank and builds the term dictionary. Call this
+     * after all documents were added.
+     */
+    public Suggester prepare() {
+        if (prepared)
+            return this;
+        prepared = true;
+        final int docs = size();
+        Integer[] order = new Integer[docs];
+        for (int i = 0; i < docs; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override public int compare(Integer o1, Integer o2) {
+                long p1 = populations.get(o1), p2 = populations.get(o2);
+                if (p1 != p2)
+                    return p1 > p2 ? -1 : 1;
+                return Double.compare(typeRanks.get(o2), typeRanks.get(o1));
+            }
+        });
+        reorder(order);
+
+        // document ids are now equal to their rank
+        Map<String, TIntArrayList> termMap = new HashMap<String, TIntArrayList>();
+        List<String> prefixes = new ArrayList<String>();
+        for (int doc = 0; doc < docs; doc++) {
+            List<String> tokens = GeocoderHelper.tokenize(names.get(doc));
+            addSharedPrefixes(tokens, prefixes);
+            for (String token : tokens) {
+                TIntArrayList list = termMap.get(token);
+                if (list == null) {
+                    list = new TIntArrayList(2);
+                    termMap.put(token, list);
+                }
+                // avoid duplicates if a token occurs twice in a name
+                if (list.isEmpty() || list.get(list.size() - 1) != doc)
+                    list.add(doc);
+            }
+        }
+
+        terms = termMap.keySet().toArray(new String[termMap.size()]);
+        Arrays.sort(terms);
+        termStart = new int[terms.length + 1];
+        int postingCount = 0;
+        for (int i = 0; i < terms.length; i++) {
+            termStart[i] = postingCount;
+            postingCount += termMap.get(terms[i]).size();
+        }
+        termStart[terms.length] = postingCount;
+        postings = new int[postingCount];
+        for (int i = 0; i < terms.length; i++) {
+            termMap.get(terms[i]).toArray(postings, 0, termStart[i], termStart[i + 1] - termStart[i]);
+        }
+        buildBlockMin();
+        sharedPrefixes = prefixes.toArray(new String[prefixes.size()]);
+        Arrays.sort(sharedPrefixes);
+        return this;
+    }
+
+    /**
+     * The tokens of a document with a prefix are neighbours in sorted order.
+     * If n of them start with the prefix, n - 1 common prefixes of neighbours
+     * start with it, which is the number of postings too many.
+     */
+    static void addSharedPrefixes(List<String> tokens, List<String> prefixes) {
+        if (tokens.size() < 2)
+            return;
+        String previous = null;
+        for (String token : new TreeSet<String>(tokens)) {
+            if (previous != null) {
+                int len = 0, max = Math.min(previous.length(), token.length());
+                while (len < max && previous.charAt(len) == token.charAt(len)) {
+                    len++;
+                }
+                if (len > 0)
+                    prefixes.add(token.substring(0, len));
+            }
+            previous = token;
+        }
+    }
+
+    private void reorder(Integer[] order) {
+        List<String> tmpIds = new ArrayList<String>(order.length);
+        List<String> tmpNames = new ArrayList<String>(order.length);
+        List<String> tmpTypes = new ArrayList<String>(order.length);
+        TDoubleArrayList tmpLats = new TDoubleArrayList(order.length);
+        TDoubleArrayList tmpLons = new TDoubleArrayList(order.length);
+        TLongArrayList tmpPops = new TLongArrayList(order.length);
+        TDoubleArrayList tmpRanks = new TDoubleArrayList(order.length);
+        TIntArrayList tmpStarts = new TIntArrayList(order.length);
+        TIntArrayList tmpLengths = new TIntArrayList(order.length);
+        for (int old : order) {
+            tmpIds.add(ids.get(old));
+            tmpNames.add(names.get(old));
+            tmpTypes.add(types.get(old));
+            tmpLats.add(lats.get(old));
+            tmpLons.add(lons.get(old));
+            tmpPops.add(populations.get(old));
+            tmpRanks.add(typeRanks.get(old));
+            tmpStarts.add(sourceStarts.get(old));
+            tmpLengths.add(sourceLengths.get(old));
+        }
+        ids = tmpIds;
+        names = tmpNames;
+        types = tmpTypes;
+        lats = tmpLats;
+        lons = tmpLons;
+        populations = tmpPops;
+        typeRanks = tmpRanks;
+        sourceStarts = tmpStarts;
+        sourceLengths = tmpLengths;
+    }
+
+    /**
+     * blockMin[0][b] is the position of the best posting in block b,
+     * blockMin[j][b] is the best over the blocks b to b + 2^j - 1.
+     */
+    private void buildBlockMin() {
+        int blocks = (postings.length + BLOCK_SIZE - 1) >> BLOCK_BITS;
+        int levels = 1;
+        while ((1 << levels) <= blocks) {
+            levels++;
+        }
+        blockMin = new int[levels][];
+        blockMin[0] = new int[blocks];
+        for (int b = 0; b < blocks; b++) {
+            int from = b << BLOCK_BITS;
+            blockMin[0][b] = scanMin(from, Math.min(postings.length, from + BLOCK_SIZE) - 1);
+        }
+        for (int j = 1; j < levels; j++) {
+            int count = blocks - (1 << j) + 1;
+            blockMin[j] = new int[count];
+            int half = 1 << (j - 1);
+            for (int b = 0; b < count; b++) {
+                blockMin[j][b] = better(blockMin[j - 1][b], blockMin[j - 1][b + half]);
+            }
+        }
+    }
+
+    private int better(int pos1, int pos2) {
+        return postings[pos1] <= postings[pos2] ? pos1 : pos2;
+    }
+
+    private int scanMin(int from, int to) {
+        int best = from;
+        for (int i = from + 1; i <= to; i++) {
+            if (postings[i] < postings[best])
+                best = i;
+        }
+        return best;
+    }
+
+    /**
+     * @return the position of the best ranked posting in [from, to]
+     */
+    int argMin(int from, int to) {
+        int fromBlock = from >> BLOCK_BITS, toBlock = to >> BLOCK_BITS;
+        if (toBlock - fromBlock < 2)
+            return scanMin(from, to);
+
+        int best = scanMin(from, ((fromBlock + 1) << BLOCK_BITS) - 1);
+        best = better(best, scanMin(toBlock << BLOCK_BITS, to));
+        int first = fromBlock + 1, last = toBlock - 1;
+        int level = 31 - Integer.numberOfLeadingZeros(last - first + 1);
+        best = better(best, blockMin[level][first]);
+        return better(best, blockMin[level][last - (1 << level) + 1]);
+    }
+
+    /**
+     * @return the documents where one token starts with the normalized prefix,
+     * best ranked first
+     */
+    public List<Map<String, Object>> suggest(String prefix, int size) {
+        if (!prepared)
+            throw new IllegalStateException("call prepare before suggest");
+        List<Map<String, Object>> res = new ArrayList<Map<String, Object>>(size);
+        String normed = GeocoderHelper.normalize(prefix.trim());
+        if (normed.isEmpty() || size <= 0)
+            return res;
+
+        int fromTerm = find(terms, normed);
+        int toTerm = find(terms, normed + Character.MAX_VALUE);
+        if (fromTerm >= toTerm)
+            return res;
+
+        PriorityQueue<int[]> queue = new PriorityQueue<int[]>(size * 2 + 1, new Comparator<int[]>() {
+            @Override public int compare(int[] o1, int[] o2) {
+                return postings[o1[2]] - postings[o2[2]];
+            }
+        });
+        int from = termStart[fromTerm], to = termStart[toTerm] - 1;
+        queue.add(new int[]{from, to, argMin(from, to)});
+        int[] found = new int[size];
+        int foundCount = 0;
+        while (!queue.isEmpty() && foundCount < size) {
+            int[] range = queue.poll();
+            int pos = range[2];
+            int doc = postings[pos];
+            // the same document can be reached via two terms with the same prefix
+            boolean duplicate = false;
+            for (int i = 0; i < foundCount; i++) {
+                if (found[i] == doc) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                found[foundCount++] = doc;
+                res.add(toMap(doc));
+            }
+
+            if (range[0] < pos)
+                queue.add(new int[]{range[0], pos - 1, argMin(range[0], pos - 1)});
+            if (pos < range[1])
+                queue.add(new int[]{pos + 1, range[1], argMin(pos + 1, range[1])});
+        }
+        return res;
+    }
+
+    /**
+     * @return the number of documents where one token starts with the
+     * normalized prefix
+     */
+    public int count(String prefix) {
+        if (!prepared)
+            throw new IllegalStateException("call prepare before count");
+        String normed = GeocoderHelper.normalize(prefix.trim());
+        if (normed.isEmpty())
+            return 0;
+        String end = normed + Character.MAX_VALUE;
+        int postingCount = termStart[find(terms, end)] - termStart[find(terms, normed)];
+        return postingCount - (find(sharedPrefixes, end) - find(sharedPrefixes, normed));
+    }
+
+    /**
+     * @return the position of the first entry which is not smaller
+     */
+    private static int find(String[] sorted, String str) {
+        int pos = Arrays.binarySearch(sorted, str);
+        return pos < 0 ? -pos - 1 : pos;
+    }
+
+    Map<String, Object> toMap(int doc) {
+        int length = sourceLengths.get(doc);
+        if (length > 0) {
+            byte[] bytes = new byte[length];
+            sources.toArray(bytes, sourceStarts.get(doc), 0, length);
+            try {
+                return mapper.readValue(bytes, Map.class);
+            } catch (IOException ex) {
+                throw new IllegalStateException("cannot read source of " + ids.get(doc), ex);
+            }
+        }
+        // similar to the source of an indexed document
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("id", ids.get(doc));
+        map.put("name", names.get(doc));
+        if (types.get(doc) != null)
+            map.put("type", types.get(doc));
+        List<Double> center = new ArrayList<Double>(2);
+        center.add(lons.get(doc));
+        center.add(lats.get(doc));
+        map.put("center", center);
+        map.put("population", populations.get(doc));
+        map.put("type_rank", typeRanks.get(doc));
+        return map;
+    }
+
+    public void save(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(file))));
+        try {
+            int docs = size();
+            out.writeInt(FORMAT);
+            out.writeInt(docs);
+            for (int i = 0; i < docs; i++) {
+                out.writeUTF(ids.get(i));
+                out.writeUTF(names.get(i));
+                String type = types.get(i);
+                out.writeUTF(type == null ? "" : type);
+                out.writeDouble(lats.get(i));
+                out.writeDouble(lons.get(i));
+                out.writeLong(populations.get(i));
+                out.writeDouble(typeRanks.get(i));
+                byte[] source = new byte[sourceLengths.get(i)];
+                sources.toArray(source, sourceStarts.get(i), 0, source.length);
+                out.writeInt(source.length);
+                out.write(source);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Adds all documents of the specified snapshot. Call prepare afterwards.
+     */
+    public Suggester load(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))));
+        try {
+            if (in.readInt() != FORMAT)
+                throw new IOException("unsupported format of the suggestion snapshot " + file);
+            int docs = in.readInt();
+            for (int i = 0; i < docs; i++) {
+                String id = in.readUTF();
+                String name = in.readUTF();
+                String type = in.readUTF();
+                double lat = in.readDouble(), lon = in.readDouble();
+                long population = in.readLong();
+                double typeRank = in.readDouble();
+                byte[] source = new byte[in.readInt()];
+                in.readFully(source);
+                add(id, name, lat, lon, population, typeRank, type.isEmpty() ? null : type,
+                        source.length == 0 ? null : source);
+            }
+        } finally {
+            in.close();
+        }
+        return this;
+    }
+}
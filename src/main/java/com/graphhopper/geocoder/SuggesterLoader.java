@@ -0,0 +1,73 @@
+package com.graphhopper.geocoder;
+
+import com.graphhopper.util.StopWatch;
+import java.io.File;
+import java.io.IOException;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.search.SearchHit;
+
+/**
+ * Fills a Suggester from a snapshot file or from all named documents of the
+ * index.
+ *
+ * @author Peter Karich
+ */
+public class SuggesterLoader extends BaseES {
+
+    public SuggesterLoader(Configuration config, Client client) {
+        super(config, client);
+    }
+
+    public Suggester load() {
+        Suggester suggester = new Suggester();
+        String snapshot = config.getSuggestSnapshot();
+        File file = snapshot == null ? null : new File(snapshot);
+        try {
+            if (file != null && file.exists()) {
+                try {
+                    suggester.load(file);
+                    logger.info("loaded " + suggester.size() + " suggestions from " + file);
+                    return suggester.prepare();
+                } catch (IOException ex) {
+                    // e.g. a snapshot of an older version
+                    logger.warn("cannot load suggestion snapshot " + file + ", fetching them again", ex);
+                    suggester = new Suggester();
+                }
+            }
+            fill(suggester);
+            if (file != null) {
+                suggester.save(file);
+                logger.info("stored suggestion snapshot at " + file);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("cannot load suggestions from " + file, ex);
+        }
+        return suggester.prepare();
+    }
+
+    void fill(Suggester suggester) {
+        StopWatch sw = new StopWatch().start();
+        TimeValue keep = TimeValue.timeValueMinutes(config.getKeepInMinutes());
+        SearchResponse rsp = client.prepareSearch(osmIndex).setTypes(osmType).
+                setSize(config.getFeedBulkSize()).
+                setSearchType(SearchType.SCAN).
+                setScroll(keep).
+                setFilter(FilterBuilders.existsFilter("name")).
+                get();
+        while (true) {
+            rsp = client.prepareSearchScroll(rsp.getScrollId()).setScroll(keep).get();
+            if (rsp.getHits().hits().length == 0)
+                break;
+
+            for (SearchHit hit : rsp.getHits().getHits()) {
+                // the whole source, so the hits are the same as from Elasticsearch
+                suggester.add(hit.getId(), hit.getSource());
+            }
+        }
+        logger.info("fetched " + suggester.size() + " suggestions in " + sw.stop().getSeconds() + "s");
+    }
+}
@@ -0,0 +1,79 @@
+package com.graphhopper.geocoder.http;
+
+import com.google.inject.Inject;
+import com.graphhopper.geocoder.Configuration;
+import com.graphhopper.geocoder.Metrics;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rejects requests early when too many are in flight or too many jobs wait
+ * for a worker thread. Under overload it is better to answer some requests
+ * fast with 503 than all of them too late.
+ *
+ * @author Peter Karich
+ */
+public class AdmissionControl {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final BlockingQueue<Runnable> jobQueue;
+    private final int maxInFlight;
+    private final int maxQueueDepth;
+    private final int retryAfterSeconds;
+
+    @Inject
+    public AdmissionControl(Configuration config, Metrics metrics) {
+        jobQueue = new ArrayBlockingQueue<Runnable>(Math.max(1, config.getHttpMaxQueued()));
+        maxInFlight = config.getMaxInFlightRequests();
+        maxQueueDepth = config.getMaxQueueDepth();
+        retryAfterSeconds = config.getRetryAfterSeconds();
+        metrics.gauge("geocoder_requests_in_flight", new Metrics.Gauge() {
+            @Override public double get() {
+                return getInFlight();
+            }
+        });
+        metrics.gauge("geocoder_http_queue_depth", new Metrics.Gauge() {
+            @Override public double get() {
+                return getQueueDepth();
+            }
+        });
+    }
+
+    /**
+     * The job queue of the Jetty thread pool.
+     */
+    public BlockingQueue<Runnable> getJobQueue() {
+        return jobQueue;
+    }
+
+    /**
+     * @return true if the request is accepted. Then release has to be called
+     * after the response was written.
+     */
+    public boolean tryAcquire() {
+        if (jobQueue.size() > maxQueueDepth)
+            return false;
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getQueueDepth() {
+        return jobQueue.size();
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -3,7 +3,13 @@ package com.graphhopper.geocoder.http;
 import com.google.inject.AbstractModule;
 import com.graphhopper.geocoder.Configuration;
 import com.graphhopper.geocoder.JsonFeeder;
+import com.graphhopper.geocoder.LocalIndex;
+import com.graphhopper.geocoder.Metrics;
 import com.graphhopper.geocoder.QueryHandler;
+import com.graphhopper.geocoder.Suggester;
+import com.graphhopper.geocoder.SuggesterLoader;
+import java.io.File;
+import java.io.IOException;
 import javax.inject.Singleton;
 import org.elasticsearch.client.Client;
 import org.slf4j.Logger;
@@ -16,25 +22,69 @@ public class DefaultModule extends AbstractModule {
 
     private Logger logger = LoggerFactory.getLogger(getClass());
     private Configuration config;
+    private Client client;
+
+    public DefaultModule() {
+    }
+
+    /**
+     * Uses the specified configuration and client e.g. for an embedded node
+     * instead of reading config.properties and connecting via transport.
+     */
+    public DefaultModule(Configuration config, Client client) {
+        this.config = config;
+        this.client = client;
+    }
 
     @Override
     protected void configure() {
         configureConfiguration();
+        bind(Metrics.class).toInstance(Metrics.getDefault());
         configureClient();
+        configureSuggester();
+        configureLocalIndex();
         configureQueryHandler();
     }
 
     private void configureConfiguration() {
-        config = new Configuration();
-        config.startReloadThread();
+        if (config == null) {
+            config = new Configuration();
+            config.startReloadThread();
+        }
         bind(Configuration.class).toInstance(config);
     }
 
     private void configureClient() {
-        Client client = JsonFeeder.createClient(config.getElasticSearchCluster(), config.getElasticSearchHost(), config.getElasticSearchPort());        
+        if (client == null)
+            client = JsonFeeder.createClient(config.getElasticSearchCluster(), config.getElasticSearchHost(), config.getElasticSearchPort());        
         bind(Client.class).toInstance(client);
     }
 
+    private void configureSuggester() {
+        Suggester suggester;
+        if (config.isLocalSuggest())
+            suggester = new SuggesterLoader(config, client).load();
+        else
+            suggester = new Suggester().prepare();
+        logger.info("local suggestions: " + suggester.size());
+        bind(Suggester.class).toInstance(suggester);
+    }
+
+    private void configureLocalIndex() {
+        LocalIndex localIndex;
+        if (config.isLocalBackend()) {
+            File dir = new File(config.getLocalIndexDir());
+            try {
+                localIndex = LocalIndex.open(dir);
+            } catch (IOException ex) {
+                throw new RuntimeException("cannot open local index " + dir, ex);
+            }
+        } else
+            localIndex = new LocalIndex();
+        logger.info("local index documents: " + localIndex.size());
+        bind(LocalIndex.class).toInstance(localIndex);
+    }
+
     private void configureQueryHandler() {
         bind(QueryHandler.class).in(Singleton.class);
     }
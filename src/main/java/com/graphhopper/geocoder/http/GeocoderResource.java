@@ -1,100 +1,351 @@
 package com.graphhopper.geocoder.http;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
+import com.graphhopper.geocoder.Configuration;
+import com.graphhopper.geocoder.GeometryCodec;
+import com.graphhopper.geocoder.Metrics;
 import com.graphhopper.geocoder.QueryHandler;
 import com.graphhopper.util.shapes.BBox;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import javax.ws.rs.DefaultValue;
-import javax.ws.rs.GET;
-import javax.ws.rs.Produces;
-import javax.ws.rs.QueryParam;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.search.SearchHit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Geocoding query.
+ * Geocoding query. The Jetty thread is released while Elasticsearch is
+ * searching, the response is written from the ActionListener.
  *
  * @author Peter Karich
  */
-@Produces("application/json; charset=UTF-8")
-@javax.ws.rs.Path("/geocoder")
-public class GeocoderResource {
+public class GeocoderResource extends HttpServlet {
 
     @Inject
     private QueryHandler queryHandler;
+    @Inject
+    private ObjectMapper mapper;
+    @Inject
+    private AdmissionControl admission;
+    @Inject
+    private Configuration config;
+    @Inject
+    private Metrics metrics;
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    @GET
-    public Map<String, Object> getGeocode(
-            @QueryParam("q") String address,
-            @DefaultValue("false")
-            @QueryParam("suggest") boolean suggest,
-            @DefaultValue("10")
-            @QueryParam("size") int size,
-            @DefaultValue("true")
-            @QueryParam("withBounds") boolean withBounds
-    /*@QueryParam("locale") String locale, 
-     @QueryParam("boostNear") Coord boostNearPoint, 
-     @QueryParam("maxBounds") BBox maxBounds*/) {
-
-        long start = System.nanoTime();
-        Map<String, Object> json = new HashMap<String, Object>();
-        SearchResponse rsp;
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
+        if (!admission.tryAcquire()) {
+            countError("rejected");
+            res.setHeader("Retry-After", "" + admission.getRetryAfterSeconds());
+            writeError(res, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "too many requests");
+            return;
+        }
+
+        boolean async = false;
+        try {
+            async = handle(req, res);
+        } finally {
+            if (!async)
+                admission.release();
+        }
+    }
+
+    /**
+     * @return true if the request was suspended and will be completed later
+     */
+    boolean handle(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        final long start = System.nanoTime();
+        final String address = req.getParameter("q");
+        final boolean suggest = getBoolean(req, "suggest", false);
+        final boolean withBounds = getBoolean(req, "withBounds", true);
+        // the lines of a merged street are big and only needed to draw it
+        final boolean withGeometry = getBoolean(req, "withGeometry", false);
+        final int size;
+        try {
+            size = getInt(req, "size", 10);
+        } catch (NumberFormatException ex) {
+            countError("bad_request");
+            writeError(res, HttpServletResponse.SC_BAD_REQUEST, "size has to be a number");
+            return false;
+        }
+        BBox bbox;
+        try {
+            bbox = getBBox(req, "bbox");
+        } catch (IllegalArgumentException ex) {
+            countError("bad_request");
+            writeError(res, HttpServletResponse.SC_BAD_REQUEST, "bbox has to be minLon,minLat,maxLon,maxLat");
+            return false;
+        }
+        // TODO locale, boostNear
+
+        // the suggester ranks without location, a bbox would need a scan of all entries with the prefix.
+        // The lines of merged streets are not kept in memory
+        if (suggest && bbox == null && !withGeometry) {
+            List<Map<String, Object>> results = queryHandler.suggestLocal(address, size);
+            if (results != null) {
+                for (Map<String, Object> source : results) {
+                    prepareBounds(source, withBounds, withGeometry);
+                }
+                int total = queryHandler.countLocal(address);
+                writeJson(res, createJson(results, total, start));
+                record("suggest_local", start);
+                logger.info("q=" + address + "&suggest=" + suggest + " # local, total:" + total);
+                return false;
+            }
+        }
+
+        List<Map<String, Object>> localResults = queryHandler.searchLocal(address, size, suggest, bbox);
+        if (localResults != null) {
+            for (Map<String, Object> source : localResults) {
+                prepareBounds(source, withBounds, withGeometry);
+            }
+            writeJson(res, createJson(localResults, localResults.size(), start));
+            record(suggest ? "local_suggest" : "local_search", start);
+            logger.info("q=" + address + "&suggest=" + suggest + " # local index, total:" + localResults.size());
+            return false;
+        }
+
+        SearchRequestBuilder srb;
         if (suggest)
-            rsp = queryHandler.suggest(address, size);
+            srb = queryHandler.createSuggestRequest(address, size, bbox);
         else
-            rsp = queryHandler.doRequest(address, size);
-
-        long total = 0;
-        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
-        if (rsp != null) {
-            SearchHit[] sHits = rsp.getHits().getHits();
-            BBox bbox = BBox.INVERSE.clone();
-            for (int i = 0; i < size && i < sHits.length; i++) {
-                SearchHit sh = sHits[i];
-                if (!withBounds)
-                    sh.getSource().remove("bounds");
-
-                results.add(sh.getSource());
-
-                List center = (List) sh.getSource().get("center");
-                if (center == null)
-                    continue;
-                double lat = (Double) center.get(1);
-                double lon = (Double) center.get(0);
-                if (lat > bbox.maxLat)
-                    bbox.maxLat = lat;
-
-                if (lat < bbox.minLat)
-                    bbox.minLat = lat;
-
-                if (lon > bbox.maxLon)
-                    bbox.maxLon = lon;
-
-                if (lon < bbox.minLon)
-                    bbox.minLon = lon;
+            srb = queryHandler.createRequest(address, size, bbox);
+
+        final String type = suggest ? "suggest" : "search";
+        if (srb == null) {
+            writeJson(res, createJson(null, 0, start));
+            record(type, start);
+            return false;
+        }
+
+        // Elasticsearch stops collecting hits after the timeout and returns what it has,
+        // the async timeout is a hard limit in case even that does not arrive in time
+        long timeout = config.getRequestTimeoutMillis();
+        srb.setTimeout(TimeValue.timeValueMillis(timeout));
+        final AsyncContext ctx = req.startAsync(req, res);
+        ctx.setTimeout(timeout + Math.max(100, timeout / 2));
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        ctx.addListener(new AsyncListener() {
+
+            @Override public void onTimeout(AsyncEvent event) throws IOException {
+                if (!finished.compareAndSet(false, true))
+                    return;
+                logger.warn("deadline exceeded for q=" + address);
+                countError("timeout");
+                try {
+                    Map<String, Object> json = createJson(null, 0, start);
+                    json.put("timed_out", true);
+                    json.put("message", "deadline exceeded");
+                    HttpServletResponse response = (HttpServletResponse) ctx.getResponse();
+                    response.setStatus(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+                    writeJson(response, json);
+                    record(type, start);
+                } finally {
+                    admission.release();
+                    ctx.complete();
+                }
+            }
+
+            @Override public void onComplete(AsyncEvent event) {
+            }
+
+            @Override public void onError(AsyncEvent event) {
+                if (finished.compareAndSet(false, true)) {
+                    countError("async");
+                    admission.release();
+                }
+            }
+
+            @Override public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        final long esStart = System.nanoTime();
+        ActionListener<SearchResponse> listener = new ActionListener<SearchResponse>() {
+
+            @Override public void onResponse(SearchResponse rsp) {
+                if (!finished.compareAndSet(false, true))
+                    return;
+                metrics.recordSince(Metrics.name("geocoder_es_latency", "type", type), esStart);
+                try {
+                    List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+                    SearchHit[] sHits = rsp.getHits().getHits();
+                    for (int i = 0; i < size && i < sHits.length; i++) {
+                        Map<String, Object> source = sHits[i].getSource();
+                        prepareBounds(source, withBounds, withGeometry);
+                        results.add(source);
+                    }
+                    long total = rsp.getHits().getTotalHits();
+                    Map<String, Object> json = createJson(results, total, start);
+                    if (rsp.isTimedOut())
+                        json.put("timed_out", true);
+                    if (rsp.getFailedShards() > 0)
+                        json.put("partial", true);
+                    long serializationStart = System.nanoTime();
+                    writeJson((HttpServletResponse) ctx.getResponse(), json);
+                    metrics.recordSince(Metrics.name("geocoder_serialization_latency", "type", type), serializationStart);
+                    record(type, start);
+                    logger.info("q=" + address + "&suggest=" + suggest + " # took:" + json.get("took") + " total:" + total);
+                } catch (Exception ex) {
+                    countError("write");
+                    logger.error("cannot write response for q=" + address, ex);
+                } finally {
+                    admission.release();
+                    ctx.complete();
+                }
+            }
+
+            @Override public void onFailure(Throwable ex) {
+                if (!finished.compareAndSet(false, true))
+                    return;
+                countError("failure");
+                logger.error("search failed for q=" + address, ex);
+                try {
+                    writeError((HttpServletResponse) ctx.getResponse(),
+                            HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "search failed");
+                } catch (IOException ioEx) {
+                    logger.error("cannot write error for q=" + address, ioEx);
+                } finally {
+                    admission.release();
+                    ctx.complete();
+                }
             }
-            total = rsp.getHits().getTotalHits();
-
-            double epsilon = 0.0001;
-            bbox.maxLat += epsilon;
-            bbox.minLat -= epsilon;
-            bbox.maxLon += epsilon;
-            bbox.minLon -= epsilon;
-            json.put("approx_bbox", bbox.toGeoJson());
+        };
+        try {
+            srb.execute(listener);
+        } catch (RuntimeException ex) {
+            // the request is already async, so the listener completes it and releases the slot
+            listener.onFailure(ex);
         }
+        return true;
+    }
+
+    /**
+     * Removes the bounds or returns them always as GeoJSON, also if they are
+     * stored in bounds_enc. The lines of a merged street are only returned if
+     * the geometry is requested.
+     */
+    static void prepareBounds(Map<String, Object> source, boolean withBounds, boolean withGeometry) {
+        if (!withGeometry)
+            source.remove("lines");
+        Object enc = source.remove("bounds_enc");
+        if (!withBounds)
+            source.remove("bounds");
+        else if (enc != null && !source.containsKey("bounds"))
+            source.put("bounds", GeometryCodec.toGeoJson(GeometryCodec.decodeBase64((String) enc)));
+    }
+
+    void record(String type, long start) {
+        metrics.counter(Metrics.name("geocoder_requests_total", "type", type)).incrementAndGet();
+        metrics.recordSince(Metrics.name("geocoder_request_latency", "type", type), start);
+    }
+
+    void countError(String reason) {
+        metrics.counter(Metrics.name("geocoder_errors_total", "reason", reason)).incrementAndGet();
+    }
+
+    Map<String, Object> createJson(List<Map<String, Object>> results, long total, long start) {
+        Map<String, Object> json = new HashMap<String, Object>();
+        if (results == null)
+            results = new ArrayList<Map<String, Object>>();
+        else
+            json.put("approx_bbox", calcApproxBBox(results).toGeoJson());
 
         json.put("total", total);
         json.put("hits", results);
-        long end = System.nanoTime();
-        float took = (float) (end - start) / 1000000;
+        float took = (float) (System.nanoTime() - start) / 1000000;
         json.put("took", took);
-        logger.info("q=" + address + "&suggest=" + suggest + " # took:" + took + " total:" + total);
         return json;
     }
+
+    void writeJson(HttpServletResponse res, Map<String, Object> json) throws IOException {
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        mapper.writeValue(res.getWriter(), json);
+    }
+
+    void writeError(HttpServletResponse res, int status, String message) throws IOException {
+        Map<String, Object> json = new HashMap<String, Object>();
+        json.put("message", message);
+        res.setStatus(status);
+        writeJson(res, json);
+    }
+
+    static int getInt(HttpServletRequest req, String name, int defaultValue) {
+        String value = req.getParameter(name);
+        if (value == null || value.isEmpty())
+            return defaultValue;
+        return Integer.parseInt(value);
+    }
+
+    static boolean getBoolean(HttpServletRequest req, String name, boolean defaultValue) {
+        String value = req.getParameter(name);
+        if (value == null || value.isEmpty())
+            return defaultValue;
+        return Boolean.parseBoolean(value);
+    }
+
+    /**
+     * @return the bbox of the parameter in the order of BBox.toGeoJson or null
+     * if not specified
+     */
+    static BBox getBBox(HttpServletRequest req, String name) {
+        String value = req.getParameter(name);
+        if (value == null || value.isEmpty())
+            return null;
+        String[] values = value.split(",");
+        if (values.length != 4)
+            throw new IllegalArgumentException("bbox needs 4 values but was " + value);
+        // throws NumberFormatException which is an IllegalArgumentException
+        BBox bbox = new BBox(Double.parseDouble(values[0]), Double.parseDouble(values[2]),
+                Double.parseDouble(values[1]), Double.parseDouble(values[3]));
+        if (bbox.minLat > bbox.maxLat || bbox.minLon > bbox.maxLon)
+            throw new IllegalArgumentException("bbox min has to be smaller than max " + value);
+        return bbox;
+    }
+
+    static BBox calcApproxBBox(List<Map<String, Object>> results) {
+        BBox bbox = BBox.INVERSE.clone();
+        for (Map<String, Object> source : results) {
+            List center = (List) source.get("center");
+            if (center == null)
+                continue;
+            double lat = (Double) center.get(1);
+            double lon = (Double) center.get(0);
+            if (lat > bbox.maxLat)
+                bbox.maxLat = lat;
+
+            if (lat < bbox.minLat)
+                bbox.minLat = lat;
+
+            if (lon > bbox.maxLon)
+                bbox.maxLon = lon;
+
+            if (lon < bbox.minLon)
+                bbox.minLon = lon;
+        }
+
+        double epsilon = 0.0001;
+        bbox.maxLat += epsilon;
+        bbox.minLat -= epsilon;
+        bbox.maxLon += epsilon;
+        bbox.minLon -= epsilon;
+        return bbox;
+    }
 }
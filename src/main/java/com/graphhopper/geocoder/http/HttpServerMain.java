@@ -3,7 +3,9 @@ package com.graphhopper.geocoder.http;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.google.inject.Module;
 import com.google.inject.servlet.GuiceFilter;
+import com.graphhopper.geocoder.Configuration;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletHolder;
 
@@ -12,31 +14,52 @@ import javax.servlet.DispatcherType;
 import org.eclipse.jetty.server.nio.SelectChannelConnector;
 import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.slf4j.LoggerFactory;
 
 public class HttpServerMain {
 
     public static void main(String[] args) throws Exception {
+        start(createInjector(new DefaultModule()));
+    }
+
+    public static Injector createInjector(final Module defaultModule) {
         // see http://blog.palominolabs.com/2011/08/15/a-simple-java-web-stack-with-guice-jetty-jersey-and-jackson/
-        Injector injector = Guice.createInjector(new AbstractModule() {
+        return Guice.createInjector(new AbstractModule() {
             @Override
             protected void configure() {
                 binder().requireExplicitBindings();
 
-                install(new DefaultModule());
+                install(defaultModule);
                 install(new MyServletModule());
 
                 bind(GuiceFilter.class);
             }
         });
+    }
 
+    /**
+     * Starts the server for the specified injector, call stop on the returned
+     * server to shut it down.
+     */
+    public static Server start(Injector injector) throws Exception {
+        Configuration config = injector.getInstance(Configuration.class);
         Server server = new Server();
+        // bounded pool: requests are rejected instead of queued forever if Elasticsearch is slow
+        // the queue is shared with AdmissionControl to shed load based on its depth
+        QueuedThreadPool threadPool = new QueuedThreadPool(injector.getInstance(AdmissionControl.class).getJobQueue());
+        threadPool.setName("geocoder-http");
+        threadPool.setMinThreads(config.getHttpMinThreads());
+        threadPool.setMaxThreads(config.getHttpMaxThreads());
+        server.setThreadPool(threadPool);
         ServletContextHandler handler = new ServletContextHandler();
         handler.setContextPath("/");
 
         handler.addServlet(new ServletHolder(new InvalidRequestServlet()), "/*");
 
         FilterHolder guiceFilter = new FilterHolder(injector.getInstance(GuiceFilter.class));
+        // GeocoderResource suspends the request until Elasticsearch responds
+        guiceFilter.setAsyncSupported(true);
         handler.addFilter(guiceFilter, "/*", EnumSet.allOf(DispatcherType.class));                
 
         // SPDY works over TLS
@@ -47,9 +70,12 @@ public class HttpServerMain {
 //        SslContextFactory sslFactory = new SslContextFactory();
 //        sslFactory.setKeyStorePath("src/main/resources/spdy.keystore");
 //        sslFactory.setKeyStorePassword("whatacomplexthingtodo");
-        int httpPort = 8999, sslPort = 8442, spdyPort = 9442;
+        int httpPort = config.getHttpPort(), sslPort = 8442, spdyPort = 9442;
         SelectChannelConnector connector0 = new SelectChannelConnector();
         connector0.setPort(httpPort);
+        // every acceptor has its own selector in Jetty 8
+        connector0.setAcceptors(config.getHttpAcceptors());
+        connector0.setAcceptQueueSize(config.getHttpAcceptQueueSize());
         server.addConnector(connector0);
 
 //        SslSelectChannelConnector connector1 = new SslSelectChannelConnector(sslFactory);
@@ -63,5 +89,6 @@ public class HttpServerMain {
         
         LoggerFactory.getLogger(HttpServerMain.class).info("Started server at HTTP " + httpPort
                 + ", HTTPS " + sslPort + " and SPDY " + spdyPort);
+        return server;
     }
 }
@@ -0,0 +1,28 @@
+package com.graphhopper.geocoder.http;
+
+import com.google.inject.Inject;
+import com.graphhopper.geocoder.Metrics;
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Latency histograms, counters and JVM statistics in the Prometheus text
+ * format.
+ *
+ * @author Peter Karich
+ */
+public class MetricsServlet extends HttpServlet {
+
+    @Inject
+    private Metrics metrics;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
+        res.setContentType("text/plain; version=0.0.4");
+        res.setCharacterEncoding("UTF-8");
+        res.getWriter().append(metrics.toText());
+    }
+}
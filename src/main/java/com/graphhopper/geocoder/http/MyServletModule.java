@@ -2,10 +2,8 @@ package com.graphhopper.geocoder.http;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
 import com.google.inject.Provides;
-import com.sun.jersey.guice.JerseyServletModule;
-import com.sun.jersey.guice.spi.container.servlet.GuiceContainer;
+import com.google.inject.servlet.ServletModule;
 import java.util.HashMap;
 import java.util.Map;
 import javax.inject.Singleton;
@@ -13,7 +11,7 @@ import javax.inject.Singleton;
 /**
  * @author Peter Karich
  */
-public class MyServletModule extends JerseyServletModule {
+public class MyServletModule extends ServletModule {
 
     @Override
     protected void configureServlets() {
@@ -33,22 +31,13 @@ public class MyServletModule extends JerseyServletModule {
         filter("/*").through(CORSFilter.class);
         bind(CORSFilter.class).in(Singleton.class);
 
+        // a plain servlet as Jersey 1 cannot suspend a request until Elasticsearch responds
+        bind(AdmissionControl.class).in(Singleton.class);
         bind(GeocoderResource.class).in(Singleton.class);
+        serve("/geocoder").with(GeocoderResource.class);
 
-        // hook Jersey into Guice Servlet
-        bind(GuiceContainer.class);
-
-        // hook Jackson into Jersey as the POJO <-> JSON mapper        
-        // bind(JacksonJsonProvider.class).in(Singleton.class); -> use jacksonJsonProvider
-        
-        // writing DateTime via MyDateTimeSerializer
-        // reading DateTime via:
-        // bind(DateTimeDeserializer.class).in(Singleton.class);
-        
-        Map<String, String> guiceContainerConfig = new HashMap<String, String>();
-        // make jersey read through the package to e.g. find DateTimeDeserializer as @Provider
-        // guiceContainerConfig.put(PackagesResourceConfig.PROPERTY_PACKAGES, "com.graphhopper.geocoder.http");
-        serve("/*").with(GuiceContainer.class, guiceContainerConfig);
+        bind(MetricsServlet.class).in(Singleton.class);
+        serve("/metrics").with(MetricsServlet.class);
     }
 
     // use custom objectmapper for jackson!
@@ -67,9 +56,4 @@ public class MyServletModule extends JerseyServletModule {
         // mapper.writerWithDefaultPrettyPrinter()
         return mapper;
     }
-
-    @Provides @Singleton
-    JacksonJsonProvider jacksonJsonProvider(ObjectMapper mapper) {
-        return new JacksonJsonProvider(mapper);
-    }
 }
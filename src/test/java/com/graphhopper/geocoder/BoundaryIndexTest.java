@@ -1,11 +1,16 @@
 package com.graphhopper.geocoder;
 
+import com.github.jsonj.JsonObject;
+import com.github.jsonj.tools.JsonParser;
 import com.graphhopper.util.PointList;
 import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -18,7 +23,7 @@ public class BoundaryIndexTest {
     @Test
     public void testSearch() {
         BBox bbox = new BBox(-4, 4, -4, 4);
-        BoundaryIndex index = new BoundaryIndex(bbox, 100 * 1000);
+        BoundaryIndexBuilder builder = new BoundaryIndexBuilder(bbox, 100 * 1000);
 
         List<PointList> polygons = new ArrayList<PointList>();
         PointList pl1 = new PointList(3, false);
@@ -29,7 +34,7 @@ public class BoundaryIndexTest {
         polygons.add(pl1);
         List<String> isInList = new ArrayList<String>();
         Info info = new Info("1", new GHPoint(), polygons, isInList);
-        index.add(info);
+        builder.add(info);
 
         polygons = new ArrayList<PointList>();
         PointList pl2 = new PointList(3, false);
@@ -39,15 +44,204 @@ public class BoundaryIndexTest {
         pl2.add(0, -1);
         polygons.add(pl2);
         info = new Info("2", new GHPoint(), polygons, isInList);
-        index.add(info);
+        builder.add(info);
 
-        Collection<Info> matchingBounds = index.searchContaining(0.8, 0.5);
-        assertEquals(0, matchingBounds.size());
+        BoundaryIndex index = builder.build();
+        assertEquals(2, index.size());
+        int[] matchingBounds = index.searchContaining(0.8, 0.5);
+        assertEquals(0, matchingBounds.length);
         
         matchingBounds = index.searchContaining(0.5, 1);
-        assertEquals(1, matchingBounds.size());
+        assertEquals(1, matchingBounds.length);
 
         matchingBounds = index.searchContaining(0.2, 0.5);
-        assertEquals(2, matchingBounds.size());
+        assertEquals(2, matchingBounds.length);
+    }
+
+    @Test
+    public void testBuildParallel() {
+        BBox bbox = new BBox(0, 10, 0, 10);
+        BoundaryIndexBuilder builder = new BoundaryIndexBuilder(bbox, 50 * 1000);
+        List<String> isInList = new ArrayList<String>();
+        // 10x10 squares of 1 degree
+        for (int lat = 0; lat < 10; lat++) {
+            for (int lon = 0; lon < 10; lon++) {
+                builder.add(createSquare(lat + "_" + lon, lat, lon, 1, isInList));
+            }
+        }
+
+        BoundaryIndex serial = builder.build();
+        BoundaryIndex parallel = builder.build(4);
+        assertEquals(100, parallel.size());
+        for (double lat = 0.25; lat < 10; lat += 0.5) {
+            for (double lon = 0.25; lon < 10; lon += 0.5) {
+                int[] res = parallel.searchContaining(lat, lon);
+                assertEquals(1, res.length);
+                assertEquals((int) lat + "_" + (int) lon, parallel.getId(res[0]));
+                assertArrayEquals(serial.searchContaining(lat, lon), res);
+            }
+        }
+    }
+
+    @Test
+    public void testSearchContainingBatch() throws Exception {
+        BBox bbox = new BBox(0, 10, 0, 10);
+        BoundaryIndexBuilder builder = new BoundaryIndexBuilder(bbox, 50 * 1000);
+        List<String> isInList = new ArrayList<String>();
+        for (int lat = 0; lat < 10; lat++) {
+            for (int lon = 0; lon < 10; lon++) {
+                builder.add(createSquare(lat + "_" + lon, lat, lon, 1, isInList));
+            }
+        }
+        // overlaps the squares but is bigger -> never the result
+        builder.add(createSquare("big", 0, 0, 5, isInList));
+        BoundaryIndex index = builder.build(2);
+
+        int count = 400;
+        double[] lats = new double[count + 1];
+        double[] lons = new double[count + 1];
+        for (int i = 0; i < count; i++) {
+            lats[i] = 0.25 + (i / 20) * 0.5;
+            lons[i] = 0.25 + (i % 20) * 0.5;
+        }
+        // outside
+        lats[count] = 20;
+        lons[count] = 20;
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            int[] parallel = index.searchContaining(lats, lons, executor);
+            int[] serial = index.searchContaining(lats, lons, null);
+            assertArrayEquals(serial, parallel);
+            for (int i = 0; i < count; i++) {
+                assertEquals((int) lats[i] + "_" + (int) lons[i], index.getId(parallel[i]));
+            }
+            assertEquals(-1, parallel[count]);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testLayers() throws Exception {
+        BBox bbox = new BBox(0, 10, 0, 10);
+        BoundaryIndexBuilder builder = new BoundaryIndexBuilder(bbox, 50 * 1000);
+        builder.add(createSquare("town", 0, 0, 4, Arrays.asList("Town")));
+        builder.add(createSquare("district", 0, 0, 2, Arrays.asList("District", "Town")));
+        builder.add(createSquare("postcode", "postcode", 1, 1, 4, Arrays.asList("01067")));
+        builder.add(createSquare("area", "custom", 0, 0, 10, Arrays.asList("Area")));
+        BoundaryIndex index = builder.build();
+        assertArrayEquals(new String[]{"admin", "postcode", "custom"}, index.getLayers());
+        assertEquals(1, index.getLayer("postcode"));
+        assertEquals(-1, index.getLayer("unknown"));
+
+        int[] res = index.searchLayers(1.5, 1.5);
+        assertEquals("District", index.getValue(res[0]));
+        assertEquals(Arrays.asList("District", "Town"), index.getIsIn(res[0]));
+        assertEquals("01067", index.getValue(res[1]));
+        assertEquals("Area", index.getValue(res[2]));
+
+        res = index.searchLayers(0.5, 0.5);
+        assertEquals("District", index.getValue(res[0]));
+        assertEquals(-1, res[1]);
+
+        double[] lats = {1.5, 3.5, 0.5, 9.5, 20};
+        double[] lons = {1.5, 3.5, 0.5, 9.5, 20};
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            int[][] positions = index.searchLayers(lats, lons, executor);
+            assertEquals(3, positions.length);
+            String[][] expected = {
+                {"District", "Town", "District", null, null},
+                {"01067", "01067", null, null, null},
+                {"Area", "Area", "Area", "Area", null}};
+            for (int layer = 0; layer < 3; layer++) {
+                for (int i = 0; i < lats.length; i++) {
+                    String value = positions[layer][i] < 0 ? null : index.getValue(positions[layer][i]);
+                    assertEquals(layer + " " + i, expected[layer][i], value);
+                }
+            }
+            assertArrayEquals(positions[0], index.searchContaining(lats, lons, null));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPackedBoundaries() {
+        BBox bbox = new BBox(0, 10, 0, 10);
+        BoundaryIndexBuilder builder = new BoundaryIndexBuilder(bbox, 50 * 1000);
+        List<Info> infos = new ArrayList<Info>();
+        Random rand = new Random(1);
+        for (int i = 0; i < 10; i++) {
+            List<PointList> polygons = new ArrayList<PointList>();
+            for (int ring = 0; ring <= i % 3; ring++) {
+                PointList pl = new PointList(10, false);
+                double lat = rand.nextDouble() * 8 + 1, lon = rand.nextDouble() * 8 + 1;
+                for (int p = 0; p < 9; p++) {
+                    double angle = 2 * Math.PI * p / 9;
+                    double r = 0.5 + 0.5 * rand.nextDouble();
+                    pl.add(lat + r * Math.sin(angle), lon + r * Math.cos(angle));
+                }
+                pl.add(pl.getLatitude(0), pl.getLongitude(0));
+                polygons.add(pl);
+            }
+            // equal but not the same strings
+            List<String> isIn = Arrays.asList("City " + i, new String("Sachsen"), new String("Deutschland"));
+            Info info = new Info("osmrelation/" + i, new GHPoint(5, 5), polygons, isIn);
+            infos.add(info);
+            builder.add(info);
+        }
+        BoundaryIndex index = builder.build();
+        assertEquals(10, index.size());
+        for (int position = 0; position < index.size(); position++) {
+            Info info = infos.get(position);
+            assertEquals(info.getId(), index.getId(position));
+            assertEquals(info.getIsIn(), index.getIsIn(position));
+            assertEquals(info.getArea(), index.getArea(position), 1e-6);
+            assertEquals(info.getIsIn(), index.getInfo(position).getIsIn());
+            assertEquals(info.polygons.size(), index.getInfo(position).polygons.size());
+            // the dictionary stores repeated values once
+            assertSame(index.getIsIn(0).get(1), index.getIsIn(position).get(1));
+            for (int i = 0; i < 200; i++) {
+                double lat = rand.nextDouble() * 10, lon = rand.nextDouble() * 10;
+                assertEquals(info.contains(lat, lon), index.contains(position, lat, lon));
+            }
+        }
+        assertTrue(index.getMemoryUsage() > 0);
+    }
+
+    @Test
+    public void testCreateInfos() {
+        JsonObject collection = new JsonParser().parse("{\"type\":\"FeatureCollection\",\"features\":["
+                + "{\"type\":\"Feature\",\"properties\":{\"name\":\"A\"},\"geometry\":{\"type\":\"Polygon\","
+                + "\"coordinates\":[[[0,0],[1,0],[1,1],[0,1],[0,0]]]}},"
+                + "{\"type\":\"Feature\",\"properties\":{\"name\":\"B\"},\"geometry\":{\"type\":\"MultiPolygon\","
+                + "\"coordinates\":[[[[2,2],[3,2],[3,3],[2,3],[2,2]]],[[[5,5],[6,5],[6,6],[5,6],[5,5]]]]}},"
+                + "{\"type\":\"Feature\",\"properties\":{},\"geometry\":{\"type\":\"Polygon\","
+                + "\"coordinates\":[[[0,0],[1,0],[1,1],[0,1],[0,0]]]}}]}").asObject();
+        List<Info> infos = BoundaryIndexBuilder.createInfos("district", collection);
+        assertEquals(2, infos.size());
+        assertEquals("district", infos.get(0).getLayer());
+        assertEquals("A", infos.get(0).getValue());
+        assertTrue(infos.get(0).contains(0.5, 0.5));
+        assertTrue(infos.get(1).contains(5.5, 5.5));
+        assertFalse(infos.get(1).contains(4, 4));
+    }
+
+    Info createSquare(String id, String layer, double lat, double lon, double width, List<String> values) {
+        List<PointList> polygons = new ArrayList<PointList>();
+        PointList pl = new PointList(5, false);
+        pl.add(lat, lon);
+        pl.add(lat, lon + width);
+        pl.add(lat + width, lon + width);
+        pl.add(lat + width, lon);
+        pl.add(lat, lon);
+        polygons.add(pl);
+        return new Info(id, layer, new GHPoint(), polygons, values);
+    }
+
+    Info createSquare(String id, double lat, double lon, double width, List<String> isIn) {
+        return createSquare(id, Info.ADMIN, lat, lon, width, isIn);
     }
 }
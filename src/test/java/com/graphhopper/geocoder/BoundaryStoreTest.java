@@ -0,0 +1,44 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import static com.github.jsonj.tools.JsonBuilder.$;
+import static com.github.jsonj.tools.JsonBuilder._;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class BoundaryStoreTest {
+
+    @Test
+    public void testStore() throws Exception {
+        BoundaryStore store = new BoundaryStore();
+        try {
+            store.put(1, "osmrelation/10", $(_("name", "Dresden"), _("admin_level", 6)));
+            store.put(2, "osmrelation/20", $(_("name", "Düsseldorf")));
+            // same center node
+            store.put(1, "osmrelation/11", $(_("name", "Dresden 2")));
+            assertEquals(3, store.size());
+
+            JsonObject doc = store.remove(1);
+            assertEquals("Dresden", doc.getString("name"));
+            assertEquals(6, (int) doc.getInt("admin_level"));
+            assertNull(store.remove(1));
+            assertNull(store.remove(3));
+
+            List<String> ids = new ArrayList<String>();
+            List<JsonObject> docs = new ArrayList<JsonObject>();
+            store.removeRemaining(ids, docs);
+            assertEquals("[osmrelation/20, osmrelation/11]", ids.toString());
+            assertEquals("Düsseldorf", docs.get(0).getString("name"));
+            assertEquals("Dresden 2", docs.get(1).getString("name"));
+            assertEquals(0, store.size());
+        } finally {
+            store.close();
+        }
+    }
+}
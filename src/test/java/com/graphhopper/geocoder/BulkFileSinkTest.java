@@ -0,0 +1,70 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import com.github.jsonj.tools.JsonParser;
+import static com.github.jsonj.tools.JsonBuilder.$;
+import static com.github.jsonj.tools.JsonBuilder._;
+import static com.github.jsonj.tools.JsonBuilder.array;
+import com.graphhopper.util.Helper;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class BulkFileSinkTest {
+
+    @Test
+    public void testStore() throws Exception {
+        File dir = new File("target/bulkfile-test");
+        Helper.removeDir(dir);
+        try {
+            BulkFileSink sink = new BulkFileSink(dir, 50, new SpatialRouting(true, 10, 16));
+            List<String> ids = new ArrayList<String>();
+            List<JsonObject> docs = new ArrayList<JsonObject>();
+            for (int i = 0; i < 3; i++) {
+                ids.add("osmnode/" + i);
+                docs.add($(_("name", "Dresden " + i), _("center", array(13.74, 51.05))));
+            }
+            assertTrue(sink.store("osm", "osmobject", ids, docs).isEmpty());
+            sink.close();
+
+            // rotated after every document as the maximum size is small
+            File[] files = BulkFileSink.listFiles(dir);
+            assertEquals(3, files.length);
+            assertEquals("bulk-00000.ndjson", files[0].getName());
+
+            List<String> lines = Helper.readFile(files[1].getAbsolutePath());
+            assertEquals(2, lines.size());
+            JsonObject meta = new JsonParser().parse(lines.get(0)).asObject().getObject("index");
+            assertEquals("osmnode/1", meta.getString("_id"));
+            assertEquals(new SpatialRouting(true, 10, 16).getRouting(51.05, 13.74), meta.getString("_routing"));
+            assertFalse(meta.containsKey("_index"));
+            assertEquals("Dresden 1", new JsonParser().parse(lines.get(1)).asObject().getString("name"));
+
+            try {
+                new BulkFileSink(dir, 150, new SpatialRouting(false, 10, 16));
+                fail("existing bulk files must not be mixed");
+            } catch (IllegalStateException ex) {
+            }
+        } finally {
+            Helper.removeDir(dir);
+        }
+    }
+
+    @Test
+    public void testParseTarget() {
+        assertEquals(Arrays.asList("staging", "host1", "9300"),
+                Arrays.asList(BulkFileLoader.parseTarget("staging@host1:9300")));
+        try {
+            BulkFileLoader.parseTarget("host1:9300");
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+}
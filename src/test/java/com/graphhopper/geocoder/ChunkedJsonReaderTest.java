@@ -0,0 +1,94 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class ChunkedJsonReaderTest {
+
+    @Test
+    public void testReadPlain() throws Exception {
+        File file = File.createTempFile("geocoder-test", ".json");
+        try {
+            write(new FileOutputStream(file), 1000);
+            assertFalse(ChunkedJsonReader.isGzip(file));
+            assertRead(file, 1000);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReadGzip() throws Exception {
+        File file = File.createTempFile("geocoder-test", ".json.gz");
+        try {
+            write(new GZIPOutputStream(new FileOutputStream(file)), 1000);
+            assertTrue(ChunkedJsonReader.isGzip(file));
+            assertRead(file, 1000);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReadEmpty() throws Exception {
+        File file = File.createTempFile("geocoder-test", ".json");
+        try {
+            write(new FileOutputStream(file), 0);
+            assertRead(file, 0);
+        } finally {
+            file.delete();
+        }
+    }
+
+    void assertRead(File file, int lines) throws IOException {
+        final List<JsonObject> res = new ArrayList<JsonObject>();
+        // small chunks to get many of them
+        new ChunkedJsonReader(3, 100).read(file, new ChunkedJsonReader.Transform() {
+            @Override public JsonObject transform(JsonObject obj) {
+                if (obj.getString("id").endsWith("7"))
+                    return null;
+                obj.put("name", obj.getString("title"));
+                return obj;
+            }
+        }, new ChunkedJsonReader.Handler() {
+            @Override public void handle(List<JsonObject> objects) {
+                res.addAll(objects);
+            }
+        });
+        assertEquals(lines - lines / 10, res.size());
+        // in the order of the file
+        int expected = 0;
+        for (JsonObject obj : res) {
+            if (expected % 10 == 7)
+                expected++;
+            assertEquals("osmnode/" + expected, obj.getString("id"));
+            assertEquals("Straße " + expected, obj.getString("name"));
+            expected++;
+        }
+    }
+
+    static void write(OutputStream out, int lines) throws IOException {
+        try {
+            for (int i = 0; i < lines; i++) {
+                String line = "{\"id\":\"osmnode/" + i + "\",\"title\":\"Straße " + i + "\"}";
+                // also accept windows line endings and empty lines
+                line += i % 3 == 0 ? "\r\n" : i % 5 == 0 ? "\n\n" : "\n";
+                out.write(line.getBytes("UTF-8"));
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
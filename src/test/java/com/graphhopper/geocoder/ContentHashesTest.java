@@ -0,0 +1,87 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import static com.github.jsonj.tools.JsonBuilder.$;
+import static com.github.jsonj.tools.JsonBuilder._;
+import com.graphhopper.util.shapes.BBox;
+import java.io.File;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class ContentHashesTest {
+
+    @Test
+    public void testReimport() throws Exception {
+        File file = File.createTempFile("geocoder-hashes", ".bin");
+        file.delete();
+        try {
+            ContentHashes hashes = new ContentHashes(file);
+            JsonObject doc = $(_("name", "Dresden"));
+            assertEquals(ContentHashes.NEW, hashes.check("osmnode/1", doc));
+            assertEquals(ContentHashes.hash("{\"name\":\"Dresden\"}"), (long) doc.getLong("content_hash"));
+            assertEquals(ContentHashes.NEW, hashes.check("osmway/2", $(_("name", "Pragerstraße"))));
+            assertEquals(ContentHashes.NEW, hashes.check("osmway/3", $(_("name", "Bautzner Straße"))));
+            assertEquals(ContentHashes.UNSUPPORTED, hashes.check("test/1", $(_("name", "Test"))));
+            assertTrue(hashes.getDeleted().isEmpty());
+            hashes.commit();
+
+            // a failed import keeps the hashes
+            hashes = new ContentHashes(file);
+            assertEquals(ContentHashes.CHANGED, hashes.check("osmnode/1", $(_("name", "Dresden 2"))));
+            hashes.abort();
+
+            hashes = new ContentHashes(file);
+            // the old hash in the document is ignored
+            assertEquals(ContentHashes.UNCHANGED, hashes.check("osmnode/1", doc));
+            assertEquals(ContentHashes.CHANGED, hashes.check("osmway/2", $(_("name", "Prager Straße"))));
+            assertEquals(ContentHashes.NEW, hashes.check("osmway/4", $(_("name", "Hauptstraße"))));
+            assertEquals(Arrays.asList("osmway/3"), hashes.getDeleted());
+            hashes.commit();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testAreas() throws Exception {
+        File file = File.createTempFile("geocoder-hashes", ".bin");
+        file.delete();
+        try {
+            ContentHashes hashes = new ContentHashes(file);
+            assertFalse(hashes.hasPrevious());
+            hashes.commit();
+            assertTrue(ContentHashes.readAreas(file).isEmpty());
+
+            hashes = new ContentHashes(file);
+            assertTrue(hashes.hasPrevious());
+            hashes.addArea(new BBox(13, 14, 51, 52));
+            hashes.commit();
+
+            // a second import without fixer run keeps the areas
+            hashes = new ContentHashes(file);
+            hashes.addArea(new BBox(13.5, 15, 51.5, 53));
+            hashes.addArea(new BBox(6, 7, 50, 51));
+            hashes.commit();
+            assertEquals(Arrays.asList(new BBox(6, 7, 50, 51), new BBox(13, 15, 51, 53)), ContentHashes.readAreas(file));
+
+            ContentHashes.clearAreas(file);
+            assertTrue(ContentHashes.readAreas(file).isEmpty());
+        } finally {
+            ContentHashes.clearAreas(file);
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testIsArea() {
+        assertTrue(JsonFeeder.isArea("village", false));
+        assertTrue(JsonFeeder.isArea("boundary", true));
+        assertFalse(JsonFeeder.isArea("residential", false));
+        assertFalse(JsonFeeder.isArea(null, false));
+    }
+}
@@ -5,8 +5,13 @@
 package com.graphhopper.geocoder;
 
 import com.graphhopper.util.shapes.GHPoint;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -30,6 +35,14 @@ public class GeocoderHelperTest {
         assertEquals(9.1603476, res[1], 1e-5);
     }
 
+    @Test
+    public void testTokenize() {
+        assertEquals(Arrays.asList("dresden", "sankt", "benno", "gymnasium"),
+                GeocoderHelper.tokenize("Dresden, Sankt-Benno-Gymnasium"));
+        assertEquals(Arrays.asList("dusseldorf", "strasse", "1"),
+                GeocoderHelper.tokenize(" Düsseldorf Straße 1"));
+    }
+
     public List<GHPoint> parseJSON(String str) {
         List<GHPoint> res = new ArrayList<GHPoint>();
         for (String latlon : str.split("\\[")) {
@@ -45,4 +58,43 @@ public class GeocoderHelperTest {
         }
         return res;
     }
+
+    @Test
+    public void testOrderedPipeline() throws IOException {
+        ExecutorService service = Executors.newFixedThreadPool(4);
+        try {
+            final List<Integer> results = new ArrayList<Integer>();
+            GeocoderHelper.OrderedPipeline<Integer> pipeline = new GeocoderHelper.OrderedPipeline<Integer>(service, 3, "test") {
+                @Override protected void handle(Integer result) {
+                    results.add(result);
+                }
+            };
+            for (int i = 0; i < 10; i++) {
+                final int value = i;
+                pipeline.submit(new Callable<Integer>() {
+                    @Override public Integer call() throws Exception {
+                        // the first tasks finish last
+                        Thread.sleep(10 - value);
+                        return value;
+                    }
+                });
+            }
+            pipeline.finish();
+            assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), results);
+
+            pipeline.submit(new Callable<Integer>() {
+                @Override public Integer call() throws Exception {
+                    throw new IllegalStateException("broken");
+                }
+            });
+            try {
+                pipeline.finish();
+                fail("the failure of a task has to be thrown");
+            } catch (IOException ex) {
+                assertEquals("broken", ex.getCause().getMessage());
+            }
+        } finally {
+            service.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,83 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import com.github.jsonj.tools.JsonParser;
+import com.graphhopper.util.PointList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class GeometryCodecTest {
+
+    PointList createRing(double... latLons) {
+        PointList pl = new PointList();
+        for (int i = 0; i < latLons.length; i += 2) {
+            pl.add(latLons[i], latLons[i + 1]);
+        }
+        return pl;
+    }
+
+    @Test
+    public void testZigZagAndVarint() {
+        for (int value : new int[]{0, 1, -1, 63, -64, 1000000, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            assertEquals(value, GeometryCodec.unzigzag(GeometryCodec.zigzag(value)));
+            byte[] bytes = new byte[5];
+            int len = GeometryCodec.writeVarint(bytes, 0, GeometryCodec.zigzag(value));
+            int[] pos = new int[1];
+            assertEquals(value, GeometryCodec.unzigzag(GeometryCodec.readVarint(bytes, pos)));
+            assertEquals(len, pos[0]);
+        }
+        byte[] bytes = new byte[5];
+        assertEquals(1, GeometryCodec.writeVarint(bytes, 0, GeometryCodec.zigzag(-64)));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        List<PointList> polygons = new ArrayList<PointList>();
+        polygons.add(createRing(51.1, 13.1, 51.2, 13.1, 51.2, 13.2, 51.1, 13.1));
+        // crosses the date line to check overflowing deltas
+        polygons.add(createRing(-10.12345678, 179.9999999, -10, -179.9999999, -11, -179.5, -10.12345678, 179.9999999));
+
+        List<PointList> res = GeometryCodec.decodeBase64(GeometryCodec.encodeBase64(polygons));
+        assertEquals(2, res.size());
+        for (int p = 0; p < polygons.size(); p++) {
+            assertEquals(polygons.get(p).getSize(), res.get(p).getSize());
+            for (int i = 0; i < polygons.get(p).getSize(); i++) {
+                assertEquals(polygons.get(p).getLatitude(i), res.get(p).getLatitude(i), 1e-7);
+                assertEquals(polygons.get(p).getLongitude(i), res.get(p).getLongitude(i), 1e-7);
+            }
+        }
+        assertEquals(0, GeometryCodec.decode(GeometryCodec.encode(new ArrayList<PointList>())).size());
+    }
+
+    @Test
+    public void testGeoJson() {
+        PointList ring = createRing(51.1, 13.1, 51.2, 13.1, 51.2, 13.2, 51.1, 13.1);
+        Map<String, Object> json = GeometryCodec.toGeoJson(Arrays.asList(ring));
+        assertEquals("Polygon", json.get("type"));
+        List<PointList> res = GeometryCodec.fromGeoJson(json);
+        assertEquals(1, res.size());
+        assertEquals(4, res.get(0).getSize());
+        assertEquals(13.2, res.get(0).getLongitude(2), 1e-9);
+
+        json = GeometryCodec.toGeoJson(Arrays.asList(ring, ring));
+        assertEquals("MultiPolygon", json.get("type"));
+        assertEquals(2, GeometryCodec.fromGeoJson(json).size());
+    }
+
+    @Test
+    public void testSmallerThanGeoJson() throws Exception {
+        JsonObject obj = new JsonParser().parse(GeocoderHelper.toString(getClass().getResourceAsStream("krumbach.json"))).asObject();
+        PointList ring = GeocoderHelper.polygonToPointListGH(obj.getArray("geometry", "coordinates").get(0).asArray());
+        String geoJson = GeocoderHelper.pointListGHToArray(ring).toString();
+        String enc = GeometryCodec.encodeBase64(Arrays.asList(ring));
+        assertTrue(enc.length() + " vs. " + geoJson.length(), enc.length() * 4 < geoJson.length());
+    }
+}
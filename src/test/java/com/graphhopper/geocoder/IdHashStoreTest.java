@@ -0,0 +1,55 @@
+package com.graphhopper.geocoder;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class IdHashStoreTest {
+
+    @Test
+    public void testPutAndGrow() throws Exception {
+        File file = File.createTempFile("geocoder-hashes", ".bin");
+        try {
+            IdHashStore store = IdHashStore.create(file, 10);
+            for (long i = 1; i <= 5000; i++) {
+                store.put(i, i * 31);
+            }
+            // overwrite
+            store.put(7, 8);
+            assertEquals(5000, store.size());
+            assertEquals(8, store.get(7));
+            assertEquals(31 * 4999, store.get(4999));
+            assertEquals(0, store.get(5001));
+            store.close();
+
+            store = IdHashStore.open(file);
+            assertEquals(5000, store.size());
+            assertEquals(31 * 1234, store.get(1234));
+            final long[] sum = new long[1];
+            store.forEach(new IdHashStore.Visitor() {
+                @Override public void visit(long key, long hash) throws IOException {
+                    sum[0] += key;
+                }
+            });
+            assertEquals(5000L * 5001 / 2, sum[0]);
+            store.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testKey() {
+        assertEquals("osmnode/123", IdHashStore.toId(IdHashStore.toKey("osmnode/123")));
+        assertEquals("osmway/0", IdHashStore.toId(IdHashStore.toKey("osmway/0")));
+        assertEquals("osmrelation/4000000000", IdHashStore.toId(IdHashStore.toKey("osmrelation/4000000000")));
+        assertTrue(IdHashStore.toKey("osmway/0") > 0);
+        assertEquals(-1, IdHashStore.toKey("osmnode/abc"));
+        assertEquals(-1, IdHashStore.toKey("synthetic/1"));
+    }
+}
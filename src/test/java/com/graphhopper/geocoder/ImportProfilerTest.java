@@ -0,0 +1,57 @@
+package com.graphhopper.geocoder;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class ImportProfilerTest {
+
+    @Test
+    public void testSlowest() {
+        Configuration config = new Configuration();
+        config.set("geocoder.feed.slowest", "2");
+        ImportProfiler profiler = new ImportProfiler(config, new Metrics());
+        profiler.recordDoc("osmnode/1", 3000000);
+        profiler.recordDoc("osmnode/2", 1000000);
+        profiler.recordDoc("osmway/3", 5000000);
+        profiler.recordDoc("osmway/4", 2000000);
+        assertEquals(Arrays.asList("osmway/3 5.0ms", "osmnode/1 3.0ms"), profiler.getSlowest());
+    }
+
+    @Test
+    public void testReport() {
+        Configuration config = new Configuration();
+        config.set("geocoder.feed.expected.way", "1000");
+        config.set("geocoder.feed.progressinterval", "1000");
+        ImportProfiler profiler = new ImportProfiler(config, new Metrics());
+        profiler.count("way", 10);
+        profiler.count("way", 10);
+        String report = profiler.createReport();
+        assertTrue(report, report.startsWith("progress: 20 docs"));
+        assertTrue(report, report.contains("; way: 20 docs"));
+        // no expected count and no documents
+        assertFalse(report, report.contains("node"));
+    }
+
+    @Test
+    public void testEta() {
+        ImportProfiler.TypeProgress progress = new ImportProfiler.TypeProgress(4000);
+        progress.docs = 400;
+        assertEquals("0:01:00", ImportProfiler.eta(progress, 60));
+        assertEquals("?", ImportProfiler.eta(progress, 0));
+        assertEquals("?", ImportProfiler.eta(new ImportProfiler.TypeProgress(0), 60));
+    }
+
+    @Test
+    public void testStages() {
+        Metrics metrics = new Metrics();
+        ImportProfiler profiler = new ImportProfiler(new Configuration(), metrics);
+        profiler.record("bulk", System.nanoTime());
+        assertEquals(1, metrics.histogram(ImportProfiler.stageName("bulk")).getCount());
+        assertTrue(metrics.toText().contains("geocoder_feed_stage_latency_seconds_count{stage=\"bulk\"} 1"));
+    }
+}
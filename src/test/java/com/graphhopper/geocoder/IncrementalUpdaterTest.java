@@ -0,0 +1,143 @@
+package com.graphhopper.geocoder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.jsonj.JsonObject;
+import com.github.jsonj.tools.JsonParser;
+import com.graphhopper.util.shapes.BBox;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class IncrementalUpdaterTest {
+
+    @Test
+    public void testMergeAreas() {
+        List<BBox> areas = new ArrayList<BBox>();
+        areas.add(new BBox(13, 14, 51, 52));
+        areas.add(new BBox(6, 7, 50, 51));
+        // a point inside the first area
+        areas.add(new BBox(13.5, 13.5, 51.5, 51.5));
+        // touching the first area
+        areas.add(new BBox(14, 15, 51.5, 53));
+        List<BBox> res = IncrementalUpdater.mergeAreas(areas);
+        assertEquals(2, res.size());
+        assertEquals(new BBox(6, 7, 50, 51), res.get(0));
+        assertEquals(new BBox(13, 15, 51, 53), res.get(1));
+        // the input is unchanged
+        assertEquals(new BBox(13, 14, 51, 52), areas.get(0));
+
+        // the merge of the last two areas grows into the first one
+        areas.clear();
+        areas.add(new BBox(0, 1, 0, 1));
+        areas.add(new BBox(0.5, 3, 5, 6));
+        areas.add(new BBox(2, 4, 0.5, 5.5));
+        res = IncrementalUpdater.mergeAreas(areas);
+        assertEquals(1, res.size());
+        assertEquals(new BBox(0, 4, 0, 6), res.get(0));
+    }
+
+    @Test
+    public void testGetArea() {
+        Map<String, Object> source = new HashMap<String, Object>();
+        assertNull(IncrementalUpdater.getArea(source));
+
+        List<Double> center = new ArrayList<Double>();
+        center.add(13.7);
+        center.add(51.1);
+        source.put("center", center);
+        assertEquals(new BBox(13.7, 13.7, 51.1, 51.1), IncrementalUpdater.getArea(source));
+    }
+
+    @Test
+    public void testSplitStreet() throws Exception {
+        Map<String, Object> source = new ObjectMapper().readValue("{\"name\":\"Hauptstraße\",\"type\":\"residential\","
+                + "\"center\":[13.41,52.5],\"bbox\":[13.4,52.5,13.43,52.5],\"way_count\":3,"
+                + "\"way_ids\":[\"osmway/3\",\"osmway/2\",\"osmway/7\"],\"lines\":{\"type\":\"MultiLineString\",\"coordinates\":"
+                + "[[[13.4,52.5],[13.41,52.5]],[[13.41,52.5],[13.42,52.5],[13.43,52.5]],[[13.43,52.5],[13.45,52.5]]]}}", Map.class);
+        assertTrue(IncrementalUpdater.splitStreet(source, new HashSet<String>(Arrays.asList("osmway/3", "osmway/2", "osmway/7"))).isEmpty());
+
+        // osmway/2 changed, the other ways are kept
+        Map<String, Map<String, Object>> res = IncrementalUpdater.splitStreet(source, Collections.singleton("osmway/2"));
+        assertEquals(Arrays.asList("osmway/3", "osmway/7"), new ArrayList<String>(res.keySet()));
+        Map<String, Object> way = res.get("osmway/7");
+        assertEquals("Hauptstraße", way.get("name"));
+        assertEquals(Arrays.asList(13.43, 52.5), way.get("center"));
+        assertFalse(way.containsKey("lines"));
+        assertFalse(way.containsKey("way_ids"));
+        assertFalse(way.containsKey("bbox"));
+
+        // no merged street
+        source.remove("way_ids");
+        assertTrue(IncrementalUpdater.splitStreet(source, Collections.singleton("osmway/2")).isEmpty());
+    }
+
+    @Test
+    public void testRemoveModifiedNodes() throws Exception {
+        String osc = "<?xml version='1.0' encoding='UTF-8'?>\n"
+                + "<osmChange version=\"0.6\">\n"
+                + " <modify>\n"
+                // lost its name
+                + "  <node id=\"1\" lat=\"51.05\" lon=\"13.74\" version=\"2\">\n"
+                + "   <tag k=\"place\" v=\"city\"/>\n"
+                + "  </node>\n"
+                // lost all tags
+                + "  <node id=\"2\" lat=\"51.0\" lon=\"13.0\" version=\"3\"/>\n"
+                + "  <node id=\"3\" lat=\"51.1\" lon=\"13.1\" version=\"2\">\n"
+                + "   <tag k=\"name\" v=\"Pirna\"/>\n"
+                + "   <tag k=\"place\" v=\"town\"/>\n"
+                + "  </node>\n"
+                + " </modify>\n"
+                + " <create>\n"
+                + "  <node id=\"4\" lat=\"51.0\" lon=\"13.0\" version=\"1\"/>\n"
+                + " </create>\n"
+                + "</osmChange>";
+        final List<String> removed = new ArrayList<String>();
+        final List<String> fed = new ArrayList<String>();
+        IncrementalUpdater.ChangeHandler handler = new IncrementalUpdater.ChangeHandler(new MyOsmPostProcessor(new JsonParser()), 100) {
+            @Override void removeAll(List<String> ids) {
+                removed.addAll(ids);
+            }
+
+            @Override void feedAll(List<JsonObject> nodes) {
+                for (JsonObject node : nodes) {
+                    fed.add(node.getString("id"));
+                }
+            }
+        };
+        new OsmChangeReader().read(new ByteArrayInputStream(osc.getBytes("UTF-8")), handler);
+        handler.flush();
+        assertEquals("[osmnode/1, osmnode/2]", removed.toString());
+        assertEquals("[osmnode/3]", fed.toString());
+
+        // a node which is renamed and then loses its name in the same file is only removed
+        removed.clear();
+        fed.clear();
+        JsonObject named = createNode("osmnode/5", "Heidenau");
+        handler.node(false, named);
+        handler.node(false, createNode("osmnode/5", null));
+        handler.flush();
+        assertEquals("[osmnode/5]", removed.toString());
+        assertEquals("[]", fed.toString());
+    }
+
+    JsonObject createNode(String id, String name) throws Exception {
+        JsonObject node = new JsonParser().parse("{\"id\":\"" + id + "\", \"tags\":{\"place\":\"village\"},"
+                + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[13.8,50.9]}}").asObject();
+        if (name != null) {
+            node.getObject("tags").put("name", name);
+            node.put("title", name);
+        }
+        return node;
+    }
+}
@@ -6,8 +6,10 @@ import static com.github.jsonj.tools.JsonBuilder.$;
 import static com.github.jsonj.tools.JsonBuilder._;
 import static com.github.jsonj.tools.JsonBuilder.array;
 import com.github.jsonj.tools.JsonParser;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
@@ -187,6 +189,32 @@ public class JsonFeederTest extends AbstractNodesTests {
         assertEquals(1, rsp.getHits().getTotalHits());
         rsp = queryHandler.suggest("dresden b", 10);
         assertEquals(1, rsp.getHits().getTotalHits());
+        rsp = queryHandler.suggest("dresden-birk", 10);
+        assertEquals(1, rsp.getHits().getTotalHits());
+    }
+
+    @Test
+    public void testSuggestionsFolding() throws IOException {
+        List<JsonObject> list = new ArrayList<JsonObject>();
+        JsonArray coordinates = array(-11, 11);
+        JsonObject geo = $(_("type", "Point"), _("coordinates", coordinates));
+
+        list.add($(_("id", "osmnode/123"), _("geometry", geo), _("name", "Düsseldorf")));
+        list.add($(_("id", "osmway/124"), _("geometry", geo), _("name", "Große Straße")));
+
+        Collection<Integer> res = feeder.bulkUpdate(list, osmIndex, osmType);
+        assertEquals(res.toString(), 0, res.size());
+        refresh(osmIndex);
+
+        SearchResponse rsp = queryHandler.suggest("dus", 10);
+        assertEquals(1, rsp.getHits().getTotalHits());
+        rsp = queryHandler.suggest("Düs", 10);
+        assertEquals(1, rsp.getHits().getTotalHits());
+        rsp = queryHandler.suggest("grosse str", 10);
+        assertEquals(1, rsp.getHits().getTotalHits());
+
+        rsp = queryHandler.doRequest("dusseldorf", 10);
+        assertEquals(1, rsp.getHits().getTotalHits());
     }
 
     @Test
@@ -217,6 +245,95 @@ public class JsonFeederTest extends AbstractNodesTests {
         assertEquals(1, rsp.getHits().getTotalHits());
     }
 
+    @Test
+    public void testMergeBoundary() {
+        JsonObject place = $(_("name", "Dresden"), _("center", array(13.74, 51.05)), _("bounds_area", 0),
+                _("wikipedia", "de:Dresden"));
+        JsonObject bounds = $(_("type", "Polygon"), _("coordinates", array()));
+        JsonObject boundary = $(_("name", "Dresden"), _("bounds", bounds), _("bounds_area", 0.04),
+                _("admin_level", 6), _("wikipedia", "en:Dresden"), _("center_node", "1"));
+        JsonFeeder.mergeBoundary(place, boundary);
+        assertEquals(bounds, place.getObject("bounds"));
+        assertEquals(0.04, place.getDouble("bounds_area"), 1e-6);
+        assertEquals(6, (int) place.getInt("admin_level"));
+        // the own value wins
+        assertEquals("de:Dresden", place.getString("wikipedia"));
+        assertTrue(place.containsKey("has_fixed_boundary"));
+        assertFalse(place.containsKey("center_node"));
+    }
+
+    @Test
+    public void testResendFailedDocuments() throws Exception {
+        File file = File.createTempFile("geocoder-hashes", ".bin");
+        file.delete();
+        final List<String> stored = new ArrayList<String>();
+        final List<String> failing = new ArrayList<String>();
+        DocumentSink sink = new DocumentSink() {
+            @Override public Collection<Integer> store(String indexName, String indexType, List<String> ids, List<JsonObject> docs) {
+                List<Integer> failed = new ArrayList<Integer>();
+                for (int i = 0; i < ids.size(); i++) {
+                    if (failing.contains(ids.get(i)))
+                        failed.add(i);
+                    else
+                        stored.add(ids.get(i));
+                }
+                return failed;
+            }
+
+            @Override public void close() {
+            }
+        };
+        try {
+            feeder.setSink(sink);
+            feeder.setContentHashes(new ContentHashes(file));
+            failing.add("osmway/2");
+            assertEquals(Arrays.asList(1), feeder.bulkUpdate(createStreets(), osmIndex, osmType));
+            feeder.closeContentHashes(true);
+            assertEquals(Arrays.asList("osmway/1"), stored);
+
+            // the failed document is sent again although it is unchanged
+            stored.clear();
+            failing.clear();
+            feeder.setContentHashes(new ContentHashes(file));
+            assertTrue(feeder.bulkUpdate(createStreets(), osmIndex, osmType).isEmpty());
+            feeder.closeContentHashes(true);
+            assertEquals(Arrays.asList("osmway/2"), stored);
+
+            // the sorting sink knows its failures only after closing
+            stored.clear();
+            failing.add("osmway/1");
+            feeder.setContentHashes(new ContentHashes(file));
+            feeder.sortSpatially();
+            assertTrue(feeder.bulkUpdate(createStreets("Hauptstraße 2"), osmIndex, osmType).isEmpty());
+            feeder.closeSink();
+            feeder.closeContentHashes(true);
+            assertTrue(stored.isEmpty());
+
+            failing.clear();
+            feeder.setSink(sink);
+            feeder.setContentHashes(new ContentHashes(file));
+            assertTrue(feeder.bulkUpdate(createStreets("Hauptstraße 2"), osmIndex, osmType).isEmpty());
+            feeder.closeContentHashes(true);
+            assertEquals(Arrays.asList("osmway/1"), stored);
+        } finally {
+            ContentHashes.clearAreas(file);
+            file.delete();
+        }
+    }
+
+    List<JsonObject> createStreets() {
+        return createStreets("Hauptstraße");
+    }
+
+    List<JsonObject> createStreets(String firstName) {
+        List<JsonObject> list = new ArrayList<JsonObject>();
+        list.add($(_("id", "osmway/1"), _("name", firstName), _("type", "residential"),
+                _("geometry", $(_("type", "Point"), _("coordinates", array(13.74, 51.05))))));
+        list.add($(_("id", "osmway/2"), _("name", "Bergstraße"), _("type", "residential"),
+                _("geometry", $(_("type", "Point"), _("coordinates", array(13.75, 51.06))))));
+        return list;
+    }
+
     protected void refresh(String indexName) {
         client.admin().indices().refresh(new RefreshRequest(indexName)).actionGet();
     }
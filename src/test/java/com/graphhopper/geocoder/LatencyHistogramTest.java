@@ -0,0 +1,45 @@
+package com.graphhopper.geocoder;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testIndex() {
+        assertEquals(0, LatencyHistogram.toIndex(0));
+        assertEquals(31, LatencyHistogram.toIndex(31));
+        assertEquals(32, LatencyHistogram.toIndex(32));
+        assertEquals(63, LatencyHistogram.toIndex(63));
+        assertEquals(64, LatencyHistogram.toIndex(64));
+        assertEquals(64, LatencyHistogram.toIndex(65));
+        assertEquals(65, LatencyHistogram.toIndex(66));
+
+        assertEquals(31, LatencyHistogram.toValue(31));
+        assertEquals(65, LatencyHistogram.toValue(64));
+        for (long value = 1; value < 1L << 40; value = value * 3 + 1) {
+            long bucketValue = LatencyHistogram.toValue(LatencyHistogram.toIndex(value));
+            assertTrue(value + " " + bucketValue, bucketValue >= value);
+            assertTrue(value + " " + bucketValue, bucketValue - value <= value / 32);
+        }
+    }
+
+    @Test
+    public void testPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 1e-6);
+        assertEquals(500, histogram.getValueAtPercentile(50), 500 / 32);
+        assertEquals(990, histogram.getValueAtPercentile(99), 990 / 32);
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+    }
+}
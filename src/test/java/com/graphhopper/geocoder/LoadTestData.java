@@ -0,0 +1,222 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonArray;
+import com.github.jsonj.JsonObject;
+import static com.github.jsonj.tools.JsonBuilder.$;
+import static com.github.jsonj.tools.JsonBuilder._;
+import static com.github.jsonj.tools.JsonBuilder.array;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates a synthetic OSM extract in the format of osm2geojson and a query mix
+ * for it. Everything is derived from the seed so that two load test runs with
+ * the same seed are comparable.
+ *
+ * @author Peter Karich
+ */
+public class LoadTestData {
+
+    private static final String[] SYLLABLES = {"berg", "dorf", "bach", "au", "wald", "heim", "stein", "feld",
+        "brück", "hausen", "lin", "ro", "sa", "mar", "kö", "neu", "alt", "gru", "lo", "wi"};
+    private static final String[] STREET_SUFFIXES = {"straße", "weg", "gasse", "allee", "ring"};
+    private static final String[] PLACES = {"city", "town", "village", "hamlet"};
+    // within the boundary area of the RelationShipFixer
+    private static final double MIN_LAT = 47, MIN_LON = 6, WIDTH = 8;
+    private final Random rand;
+    private final List<String> cityNames = new ArrayList<String>();
+    private final List<String> streetNames = new ArrayList<String>();
+    private final List<String> streetCities = new ArrayList<String>();
+    // the cell of the place of every street as minLon,minLat,maxLon,maxLat
+    private final List<String> streetBBoxes = new ArrayList<String>();
+    private long ids = 1000;
+
+    public LoadTestData(long seed) {
+        rand = new Random(seed);
+    }
+
+    /**
+     * @return raw objects with tags which have to be converted via
+     * MyOsmPostProcessor.interpretTags before feeding
+     */
+    public List<JsonObject> createExtract(int places, int streetsPerPlace) {
+        List<JsonObject> list = new ArrayList<JsonObject>();
+        int perRow = (int) Math.ceil(Math.sqrt(places));
+        double cell = WIDTH / perRow;
+        for (int i = 0; i < places; i++) {
+            double lat = MIN_LAT + (i / perRow + 0.5) * cell;
+            double lon = MIN_LON + (i % perRow + 0.5) * cell;
+            String name = createName(2 + rand.nextInt(2));
+            String place = PLACES[Math.min(PLACES.length - 1, rand.nextInt(PLACES.length + 2))];
+            long population = place.equals("city") ? 100000 + rand.nextInt(1000000) : rand.nextInt(20000);
+            cityNames.add(name);
+
+            long nodeId = ids++;
+            JsonObject nodeTags = $(_("place", place),
+                    _("population", "" + population),
+                    _("is_in", name + ", Testland"));
+            list.add(createObject("osmnode/" + nodeId, name, nodeTags,
+                    $(_("type", "Point"), _("coordinates", array(lon, lat)))));
+
+            JsonObject boundaryTags = $(_("boundary", "administrative"),
+                    _("admin_level", "8"),
+                    _("wikipedia", "de:" + name));
+            JsonArray coordinates = array();
+            coordinates.add(createRing(lat, lon, cell * 0.45, 32));
+            JsonObject boundary = createObject("osmrelation/" + ids++, name, boundaryTags,
+                    $(_("type", "Polygon"), _("coordinates", coordinates)));
+            boundary.put("admin_centre", "" + nodeId);
+            list.add(boundary);
+
+            for (int s = 0; s < streetsPerPlace; s++) {
+                String streetName = capitalize(createName(1 + rand.nextInt(2)))
+                        + STREET_SUFFIXES[rand.nextInt(STREET_SUFFIXES.length)];
+                streetNames.add(streetName);
+                streetCities.add(name);
+                streetBBoxes.add((lon - cell / 2) + "," + (lat - cell / 2) + "," + (lon + cell / 2) + "," + (lat + cell / 2));
+                JsonArray line = array();
+                double tmpLat = lat + (rand.nextDouble() - 0.5) * cell * 0.4;
+                double tmpLon = lon + (rand.nextDouble() - 0.5) * cell * 0.4;
+                for (int p = 0; p < 5; p++) {
+                    line.add(array(tmpLon, tmpLat));
+                    tmpLat += (rand.nextDouble() - 0.5) * 0.002;
+                    tmpLon += (rand.nextDouble() - 0.5) * 0.002;
+                }
+                list.add(createObject("osmway/" + ids++, streetName,
+                        $(_("highway", rand.nextBoolean() ? "residential" : "secondary")),
+                        $(_("type", "LineString"), _("coordinates", line))));
+            }
+        }
+        return list;
+    }
+
+    JsonObject createObject(String id, String name, JsonObject tags, JsonObject geometry) {
+        return $(_("id", id), _("title", name), _("tags", tags), _("geometry", geometry));
+    }
+
+    JsonArray createRing(double lat, double lon, double radius, int points) {
+        JsonArray ring = array();
+        double firstLat = 0, firstLon = 0;
+        for (int i = 0; i < points - 1; i++) {
+            double angle = 2 * Math.PI * i / (points - 1);
+            double r = radius * (0.8 + 0.2 * rand.nextDouble());
+            double tmpLat = lat + r * Math.sin(angle), tmpLon = lon + r * Math.cos(angle);
+            if (i == 0) {
+                firstLat = tmpLat;
+                firstLon = tmpLon;
+            }
+            ring.add(array(tmpLon, tmpLat));
+        }
+        ring.add(array(firstLon, firstLat));
+        return ring;
+    }
+
+    String createName(int syllables) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < syllables; i++) {
+            sb.append(SYLLABLES[rand.nextInt(SYLLABLES.length)]);
+        }
+        return capitalize(sb.toString());
+    }
+
+    static String capitalize(String str) {
+        return Character.toUpperCase(str.charAt(0)) + str.substring(1);
+    }
+
+    /**
+     * Creates the query mix for the names of the last createExtract call:
+     * keystroke sequences of the suggest box, full searches like 'street
+     * city', searches of a street within the bbox of its city and batches
+     * which are sent at once.
+     *
+     * @param count the approximate number of requests
+     */
+    public List<Query> createQueries(int count, int batchSize) {
+        if (cityNames.isEmpty())
+            throw new IllegalStateException("call createExtract before createQueries");
+
+        List<Query> list = new ArrayList<Query>(count + 20);
+        while (list.size() < count) {
+            int action = rand.nextInt(10);
+            if (action < 6) {
+                String name = rand.nextBoolean() ? pick(cityNames) : pick(streetNames);
+                for (int i = 1; i <= name.length(); i++) {
+                    list.add(new Query("suggest", "suggest=true&q=" + GeocoderHelper.encodeUrl(name.substring(0, i)), false));
+                }
+            } else if (action < 8) {
+                list.add(new Query("search", "q=" + GeocoderHelper.encodeUrl(createSearch()), false));
+            } else if (action < 9) {
+                int index = rand.nextInt(streetNames.size());
+                list.add(new Query("bbox", "q=" + GeocoderHelper.encodeUrl(streetNames.get(index))
+                        + "&bbox=" + streetBBoxes.get(index), false));
+            } else {
+                for (int i = 0; i < batchSize; i++) {
+                    list.add(new Query("batch", "q=" + GeocoderHelper.encodeUrl(createSearch()), i > 0));
+                }
+            }
+        }
+        return list;
+    }
+
+    String createSearch() {
+        int index = rand.nextInt(streetNames.size());
+        return streetNames.get(index) + " " + streetCities.get(index);
+    }
+
+    String pick(List<String> list) {
+        return list.get(rand.nextInt(list.size()));
+    }
+
+    /**
+     * Reads a recorded query mix. Every line contains the type and the query
+     * string separated by a tab e.g. 'suggest\tsuggest=true&q=Dre'. Subsequent
+     * lines of the type batch are sent at once.
+     */
+    public static List<Query> readQueries(File file) throws IOException {
+        List<Query> list = new ArrayList<Query>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            String previousType = null;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                int index = line.indexOf('\t');
+                if (index < 0)
+                    throw new IllegalArgumentException("type and query have to be separated by a tab: " + line);
+                String type = line.substring(0, index);
+                list.add(new Query(type, line.substring(index + 1), "batch".equals(type) && type.equals(previousType)));
+                previousType = type;
+            }
+        } finally {
+            reader.close();
+        }
+        return list;
+    }
+
+    public static class Query {
+
+        final String type;
+        final String params;
+        // if true it is sent at the same time as the previous query
+        final boolean withPrevious;
+
+        public Query(String type, String params, boolean withPrevious) {
+            this.type = type;
+            this.params = params;
+            this.withPrevious = withPrevious;
+        }
+
+        @Override
+        public String toString() {
+            return type + "\t" + params;
+        }
+    }
+}
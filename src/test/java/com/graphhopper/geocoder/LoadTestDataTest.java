@@ -0,0 +1,59 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import com.github.jsonj.tools.JsonParser;
+import com.graphhopper.geocoder.LoadTestData.Query;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class LoadTestDataTest {
+
+    @Test
+    public void testSameSeedSameData() {
+        LoadTestData data1 = new LoadTestData(1);
+        LoadTestData data2 = new LoadTestData(1);
+        assertEquals(data1.createExtract(10, 3).toString(), data2.createExtract(10, 3).toString());
+        assertEquals(data1.createQueries(100, 5).toString(), data2.createQueries(100, 5).toString());
+    }
+
+    @Test
+    public void testExtract() {
+        List<JsonObject> list = new LoadTestData(1).createExtract(4, 2);
+        // node, boundary and streets per place
+        assertEquals(4 * 4, list.size());
+
+        MyOsmPostProcessor postProc = new MyOsmPostProcessor(new JsonParser());
+        JsonObject boundary = postProc.interpretTags(list.get(1), list.get(1));
+        assertEquals("boundary", boundary.getString("type"));
+        assertEquals(8, (int) boundary.getInt("admin_level"));
+        assertEquals("" + (1000), boundary.getString("center_node"));
+    }
+
+    @Test
+    public void testKeystrokes() {
+        LoadTestData data = new LoadTestData(2);
+        data.createExtract(4, 2);
+        List<Query> queries = data.createQueries(200, 5);
+        assertTrue(queries.size() >= 200);
+        Query previous = null;
+        for (Query q : queries) {
+            if ("batch".equals(q.type)) {
+                if (q.withPrevious)
+                    assertEquals("batch", previous.type);
+            } else {
+                assertFalse(q.withPrevious);
+            }
+            if ("bbox".equals(q.type))
+                assertTrue(q.params, q.params.contains("&bbox="));
+            if ("suggest".equals(q.type) && previous != null && "suggest".equals(previous.type)
+                    && q.params.length() > previous.params.length())
+                assertTrue(q.params.startsWith(previous.params));
+            previous = q;
+        }
+    }
+}
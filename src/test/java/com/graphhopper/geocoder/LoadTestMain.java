@@ -0,0 +1,289 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import com.github.jsonj.tools.JsonParser;
+import com.graphhopper.geocoder.LoadTestData.Query;
+import com.graphhopper.geocoder.http.DefaultModule;
+import com.graphhopper.geocoder.http.HttpServerMain;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.eclipse.jetty.server.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * End-to-end load test: starts an embedded Elasticsearch node, feeds an
+ * extract through JsonFeeder and RelationShipFixer, starts the HTTP server in
+ * the same JVM and replays a query mix at a fixed rate. Latencies are measured
+ * from the planned start of every request so that a slow server cannot hide
+ * its queueing delay. Start it via
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.graphhopper.geocoder.LoadTestMain -Dloadtest.qps=200
+ *
+ * Options (system properties):
+ * <pre>
+ * loadtest.seed       seed of the synthetic extract and query mix, default 1
+ * loadtest.places     number of places in the synthetic extract, default 500
+ * loadtest.streets    streets per place, default 20
+ * loadtest.extract    osm2geojson output folder to feed instead of the synthetic extract
+ * loadtest.queries    recorded query mix, see LoadTestData.readQueries
+ * loadtest.requests   number of generated requests, default 10000
+ * loadtest.batch      requests per batch, default 10
+ * loadtest.qps        target requests per second, default 100
+ * loadtest.threads    client threads, default 64
+ * loadtest.sorted     feed the documents sorted by location, default false
+ * loadtest.backend    elasticsearch or local, default elasticsearch
+ * </pre>
+ *
+ * To measure the spatially sorted feeding run it with and without
+ * loadtest.sorted and compare the logged index size and segments, the
+ * duration of the fixer as well as the latencies of the bbox queries.
+ *
+ * With loadtest.backend=local the fixed documents are copied from the
+ * embedded node into a local index and the server answers from it, so both
+ * backends can be compared with the same documents and queries.
+ *
+ * @author Peter Karich
+ */
+public class LoadTestMain extends AbstractNodesTests {
+
+    public static void main(String[] args) throws Exception {
+        new LoadTestMain().run();
+    }
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+
+    public void run() throws Exception {
+        Configuration config = new Configuration().reload();
+        long seed = Long.getLong("loadtest.seed", 1);
+        startNode("loadtest");
+        Client client = client("loadtest");
+        Server server = null;
+        File localDir = null;
+        try {
+            List<Query> queries = prepare(config, client, seed);
+            if ("local".equalsIgnoreCase(System.getProperty("loadtest.backend")))
+                localDir = copyToLocal(config, client);
+            server = HttpServerMain.start(HttpServerMain.createInjector(new DefaultModule(config, client)));
+            replay(new URL("http://localhost:" + config.getHttpPort() + "/geocoder?"), queries,
+                    Integer.getInteger("loadtest.qps", 100), Integer.getInteger("loadtest.threads", 64));
+        } finally {
+            if (server != null)
+                server.stop();
+            closeAllNodes();
+            if (localDir != null)
+                Helper.removeDir(localDir);
+        }
+    }
+
+    List<Query> prepare(Configuration config, Client client, long seed) throws IOException {
+        StopWatch sw = new StopWatch().start();
+        LoadTestData data = new LoadTestData(seed);
+        JsonFeeder feeder = new JsonFeeder(config, client);
+        String extract = System.getProperty("loadtest.extract");
+        boolean sorted = Boolean.getBoolean("loadtest.sorted");
+        if (extract != null) {
+            config.set("geocoder.indexdir", extract);
+            config.set("geocoder.feed.sort", Boolean.toString(sorted));
+            feeder.start();
+        } else {
+            feeder.initIndices();
+            if (sorted)
+                feeder.sortSpatially();
+            MyOsmPostProcessor postProcessor = new MyOsmPostProcessor(new JsonParser());
+            List<JsonObject> docs = new ArrayList<JsonObject>();
+            for (JsonObject obj : data.createExtract(Integer.getInteger("loadtest.places", 500),
+                    Integer.getInteger("loadtest.streets", 20))) {
+                obj = postProcessor.interpretTags(obj, obj);
+                if (obj != null)
+                    docs.add(obj);
+                if (docs.size() >= config.getFeedBulkSize()) {
+                    feed(feeder, docs);
+                    docs.clear();
+                }
+            }
+            feed(feeder, docs);
+            feeder.closeSink();
+            feeder.logIndexStats();
+        }
+        refresh(client);
+        new RelationShipFixer(config, client).start();
+        refresh(client);
+        log.info("prepared index in " + sw.stop().getSeconds() + "s");
+
+        String recorded = System.getProperty("loadtest.queries");
+        if (recorded != null)
+            return LoadTestData.readQueries(new File(recorded));
+        if (extract != null)
+            throw new IllegalArgumentException("specify loadtest.queries for the extract " + extract);
+        return data.createQueries(Integer.getInteger("loadtest.requests", 10000), Integer.getInteger("loadtest.batch", 10));
+    }
+
+    /**
+     * Writes all documents of the embedded node into a local index and
+     * configures the local backend for the server.
+     *
+     * @return the directory of the local index
+     */
+    File copyToLocal(Configuration config, Client client) throws IOException {
+        StopWatch sw = new StopWatch().start();
+        File dir = File.createTempFile("loadtest-local", "");
+        dir.delete();
+        LocalIndexWriter writer = new LocalIndexWriter(dir);
+        JsonParser parser = new JsonParser();
+        SearchResponse rsp = client.prepareSearch("osm").setTypes("osmobject").
+                setSize(config.getFeedBulkSize()).
+                setSearchType(SearchType.SCAN).
+                setScroll(TimeValue.timeValueMinutes(5)).get();
+        while (true) {
+            rsp = client.prepareSearchScroll(rsp.getScrollId()).setScroll(TimeValue.timeValueMinutes(5)).get();
+            if (rsp.getHits().hits().length == 0)
+                break;
+            List<String> ids = new ArrayList<String>();
+            List<JsonObject> docs = new ArrayList<JsonObject>();
+            for (SearchHit hit : rsp.getHits().hits()) {
+                ids.add(hit.getId());
+                docs.add(parser.parse(hit.getSourceAsString()).asObject());
+            }
+            writer.store("osm", "osmobject", ids, docs);
+        }
+        writer.close();
+
+        long size = 0;
+        for (File file : dir.listFiles()) {
+            size += file.length();
+        }
+        log.info("local index " + dir + " size:" + size + ", docs:" + LocalIndex.open(dir).size()
+                + ", took:" + sw.stop().getSeconds() + "s");
+        config.set("geocoder.backend", "local");
+        config.set("geocoder.local.dir", dir.getAbsolutePath());
+        return dir;
+    }
+
+    void feed(JsonFeeder feeder, List<JsonObject> docs) {
+        if (!feeder.bulkUpdate(docs, "osm", "osmobject").isEmpty())
+            throw new IllegalStateException("feeding the synthetic extract failed");
+    }
+
+    void refresh(Client client) {
+        client.admin().indices().refresh(new RefreshRequest("osm")).actionGet();
+    }
+
+    void replay(final URL baseUrl, List<Query> queries, int qps, int threads) throws InterruptedException {
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / qps;
+        log.info("replaying " + queries.size() + " requests at " + qps + " requests/s against " + baseUrl);
+        final long start = System.nanoTime();
+        long planned = start;
+        for (int i = 0; i < queries.size(); i++) {
+            final Query query = queries.get(i);
+            if (i > 0 && !query.withPrevious)
+                planned += intervalNanos;
+            long wait = planned - System.nanoTime();
+            if (wait > 0)
+                TimeUnit.NANOSECONDS.sleep(wait);
+
+            final long plannedStart = planned;
+            service.execute(new Runnable() {
+                @Override public void run() {
+                    send(baseUrl, query, plannedStart);
+                }
+            });
+        }
+        service.shutdown();
+        service.awaitTermination(10, TimeUnit.MINUTES);
+        report(queries.size(), System.nanoTime() - start);
+    }
+
+    void send(URL baseUrl, Query query, long plannedStart) {
+        HttpURLConnection conn = null;
+        try {
+            conn = (HttpURLConnection) new URL(baseUrl + query.params).openConnection();
+            conn.setConnectTimeout(5000);
+            conn.setReadTimeout(30000);
+            int status = conn.getResponseCode();
+            InputStream is = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+            if (is != null) {
+                // read everything to reuse the connection
+                byte[] buffer = new byte[8192];
+                while (is.read(buffer) >= 0) {
+                }
+                is.close();
+            }
+            if (status != HttpURLConnection.HTTP_OK)
+                countError(query.type, "status_" + status);
+        } catch (IOException ex) {
+            countError(query.type, ex.getClass().getSimpleName());
+            if (conn != null)
+                conn.disconnect();
+        } finally {
+            histogram(query.type).record((System.nanoTime() - plannedStart) / 1000);
+        }
+    }
+
+    LatencyHistogram histogram(String type) {
+        LatencyHistogram histogram = latencies.get(type);
+        if (histogram == null) {
+            latencies.putIfAbsent(type, new LatencyHistogram());
+            histogram = latencies.get(type);
+        }
+        return histogram;
+    }
+
+    void countError(String type, String reason) {
+        String key = type + " " + reason;
+        AtomicLong counter = errors.get(key);
+        if (counter == null) {
+            errors.putIfAbsent(key, new AtomicLong());
+            counter = errors.get(key);
+        }
+        counter.incrementAndGet();
+    }
+
+    void report(int requests, long tookNanos) {
+        double seconds = tookNanos / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "requests:%d, took:%.1fs, throughput:%.1f/s%n",
+                requests, seconds, requests / seconds));
+        sb.append(String.format(Locale.ROOT, "%-10s %8s %9s %9s %9s %9s %9s%n",
+                "type", "count", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<String, LatencyHistogram>(latencies).entrySet()) {
+            LatencyHistogram h = e.getValue();
+            sb.append(String.format(Locale.ROOT, "%-10s %8d %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                    e.getKey(), h.getCount(), h.getValueAtPercentile(50) / 1e3, h.getValueAtPercentile(90) / 1e3,
+                    h.getValueAtPercentile(99) / 1e3, h.getValueAtPercentile(99.9) / 1e3, h.getMax() / 1e3));
+        }
+        long errorCount = 0;
+        for (Map.Entry<String, AtomicLong> e : new TreeMap<String, AtomicLong>(errors).entrySet()) {
+            sb.append("errors ").append(e.getKey()).append(": ").append(e.getValue().get()).append('\n');
+            errorCount += e.getValue().get();
+        }
+        sb.append(String.format(Locale.ROOT, "error rate:%.2f%%", 100.0 * errorCount / Math.max(1, requests)));
+        log.info("load test result:\n" + sb);
+    }
+}
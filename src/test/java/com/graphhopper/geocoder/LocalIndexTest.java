@@ -0,0 +1,146 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import static com.github.jsonj.tools.JsonBuilder.$;
+import static com.github.jsonj.tools.JsonBuilder._;
+import static com.github.jsonj.tools.JsonBuilder.array;
+import com.graphhopper.util.shapes.BBox;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class LocalIndexTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("local-index", "");
+        dir.delete();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    JsonObject createDoc(String id, String name, double lat, double lon, long population, double typeRank) {
+        return $(_("id", id), _("name", name), _("center", array(lon, lat)),
+                _("population", population), _("type_rank", typeRank));
+    }
+
+    LocalIndex createIndex() throws Exception {
+        List<String> ids = new ArrayList<String>();
+        List<JsonObject> docs = new ArrayList<JsonObject>();
+        docs.add(createDoc("osmway/2", "Dresden gorbitz birkenstrasse", 51.04, 13.65, 0, 30));
+        docs.add(createDoc("osmnode/1", "Dresden", 51.05, 13.74, 500000, 1000));
+        docs.add(createDoc("osmway/3", "bautzen dresdenerstrasse", 51.18, 14.42, 0, 30));
+        docs.add(createDoc("osmnode/4", "Düsseldorf", 51.22, 6.77, 600000, 1000));
+        docs.add(createDoc("osmway/5", "Dresdner Weg", 51.0, 13.0, 0, 5));
+        // no name
+        docs.add($(_("id", "osmway/6"), _("center", array(13.0, 51.0))));
+        for (JsonObject doc : docs) {
+            ids.add(doc.getString("id"));
+        }
+
+        LocalIndexWriter writer = new LocalIndexWriter(dir);
+        assertTrue(writer.store("osm", "osmobject", ids.subList(0, 3), docs.subList(0, 3)).isEmpty());
+        assertTrue(writer.store("osm", "osmobject", ids.subList(3, 6), docs.subList(3, 6)).isEmpty());
+        writer.close();
+        return LocalIndex.open(dir);
+    }
+
+    @Test
+    public void testColumns() throws Exception {
+        LocalIndex index = createIndex();
+        assertEquals(5, index.size());
+        // sorted by population, then type_rank
+        assertEquals("Düsseldorf", index.getName(0));
+        assertEquals(600000, index.getPopulation(0));
+        assertEquals(51.22, index.getLat(0), 1e-7);
+        assertEquals(6.77, index.getLon(0), 1e-7);
+        assertEquals("Dresden", index.getName(1));
+        assertEquals("Dresdner Weg", index.getName(4));
+        assertEquals(5, index.getTypeRank(4), 1e-6);
+        assertEquals("osmnode/1", index.getSource(1).get("id"));
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        LocalIndex index = createIndex();
+        List<Map<String, Object>> res = index.search("dresden", 10);
+        assertEquals(2, res.size());
+        assertEquals("osmnode/1", res.get(0).get("id"));
+        assertEquals("osmway/2", res.get(1).get("id"));
+
+        // all tokens have to match for short queries
+        res = index.search("Birkenstraße Dresden", 10);
+        assertEquals(1, res.size());
+        assertEquals("osmway/2", res.get(0).get("id"));
+
+        res = index.search("dresden xyz", 10);
+        assertEquals(0, res.size());
+
+        res = index.search("dresden", 1);
+        assertEquals(1, res.size());
+        assertEquals("osmnode/1", res.get(0).get("id"));
+
+        res = index.search("dresden", 10, new BBox(13.6, 13.7, 51, 51.1));
+        assertEquals(1, res.size());
+        assertEquals("osmway/2", res.get(0).get("id"));
+    }
+
+    @Test
+    public void testMinimumShouldMatch() {
+        assertEquals(3, LocalIndex.minimumShouldMatch(3));
+        assertEquals(3, LocalIndex.minimumShouldMatch(4));
+        assertEquals(9, LocalIndex.minimumShouldMatch(10));
+    }
+
+    @Test
+    public void testSuggest() throws Exception {
+        LocalIndex index = createIndex();
+        List<Map<String, Object>> res = index.suggest("dre", 10);
+        assertEquals(4, res.size());
+        assertEquals("osmnode/1", res.get(0).get("id"));
+        assertEquals("osmway/5", res.get(3).get("id"));
+
+        res = index.suggest("Dresden Bir", 10);
+        assertEquals(1, res.size());
+        assertEquals("osmway/2", res.get(0).get("id"));
+
+        // trailing space -> all tokens complete
+        res = index.suggest("dresden ", 10);
+        assertEquals(2, res.size());
+
+        res = index.suggest("dus", 10);
+        assertEquals(1, res.size());
+        assertEquals("Düsseldorf", res.get(0).get("name"));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        assertTrue(new LocalIndex().isEmpty());
+        assertEquals(0, new LocalIndex().search("dresden", 10).size());
+
+        new LocalIndexWriter(dir).close();
+        LocalIndex index = LocalIndex.open(dir);
+        assertTrue(index.isEmpty());
+        assertEquals(0, index.suggest("dre", 10).size());
+    }
+}
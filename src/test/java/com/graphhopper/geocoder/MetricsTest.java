@@ -0,0 +1,29 @@
+package com.graphhopper.geocoder;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class MetricsTest {
+
+    @Test
+    public void testToText() {
+        Metrics metrics = new Metrics();
+        metrics.counter(Metrics.name("requests_total", "type", "suggest")).addAndGet(3);
+        metrics.histogram(Metrics.name("latency", "type", "suggest")).record(2000);
+        metrics.gauge("in_flight", new Metrics.Gauge() {
+            @Override public double get() {
+                return 7;
+            }
+        });
+        String text = metrics.toText();
+        assertTrue(text, text.contains("requests_total{type=\"suggest\"} 3\n"));
+        assertTrue(text, text.contains("in_flight 7\n"));
+        assertTrue(text, text.contains("latency_seconds{type=\"suggest\",quantile=\"0.99\"} 0.002000\n"));
+        assertTrue(text, text.contains("latency_seconds_count{type=\"suggest\"} 1\n"));
+        assertTrue(text, text.contains("jvm_memory_bytes_used{area=\"heap\"}"));
+    }
+}
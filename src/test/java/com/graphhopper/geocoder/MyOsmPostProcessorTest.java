@@ -96,4 +96,23 @@ public class MyOsmPostProcessorTest {
         assertEquals("7", obj.getString("admin_level"));
         assertNotNull(obj.get("geometry"));
     }
+
+    @Test
+    public void testPostcodeArea() {
+        MyOsmPostProcessor postProc = new MyOsmPostProcessor(new JsonParser());
+        JsonObject obj = createPolygon();
+        obj.remove("title");
+        obj.remove("admin_centre");
+        obj.put("tags", $(_("boundary", "postal_code"), _("postal_code", "01067")));
+        obj = postProc.interpretTags(obj, obj);
+        assertEquals("postcode", obj.getString("type"));
+        assertEquals("01067", obj.getString("name"));
+        assertEquals("01067", obj.getObject("address").getString("postcode"));
+
+        // no postcode
+        obj = createPolygon();
+        obj.remove("title");
+        obj.put("tags", $(_("boundary", "postal_code")));
+        assertNull(postProc.interpretTags(obj, obj));
+    }
 }
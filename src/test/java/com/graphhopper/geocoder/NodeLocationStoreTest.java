@@ -0,0 +1,48 @@
+package com.graphhopper.geocoder;
+
+import java.io.File;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class NodeLocationStoreTest {
+
+    @Test
+    public void testStore() throws Exception {
+        File file = File.createTempFile("geocoder-nodes", ".bin");
+        NodeLocationStore store = new NodeLocationStore(file);
+        try {
+            double[] latLon = new double[2];
+            assertFalse(store.get(1, latLon));
+
+            store.put(1, 51.0504088, 13.7372621);
+            store.put(2, -33.8688197, -151.2092955);
+            store.put(3, 0, 0);
+            // in the next segment
+            store.put(3000000000L, 90, 180);
+            assertEquals(4, store.size());
+
+            assertTrue(store.get(1, latLon));
+            assertEquals(51.0504088, latLon[0], 1e-7);
+            assertEquals(13.7372621, latLon[1], 1e-7);
+            assertTrue(store.get(2, latLon));
+            assertEquals(-33.8688197, latLon[0], 1e-7);
+            assertEquals(-151.2092955, latLon[1], 1e-7);
+            assertTrue(store.get(3, latLon));
+            assertEquals(0, latLon[0], 1e-7);
+            assertTrue(store.get(3000000000L, latLon));
+            assertEquals(90, latLon[0], 1e-7);
+            assertEquals(180, latLon[1], 1e-7);
+
+            assertFalse(store.get(4, latLon));
+            assertFalse(store.get(-1, latLon));
+            assertFalse(store.get(5000000000L, latLon));
+        } finally {
+            store.close();
+        }
+        assertFalse(file.exists());
+    }
+}
@@ -0,0 +1,74 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class OsmChangeReaderTest {
+
+    @Test
+    public void testRead() throws Exception {
+        String osc = "<?xml version='1.0' encoding='UTF-8'?>\n"
+                + "<osmChange version=\"0.6\">\n"
+                + " <modify>\n"
+                + "  <node id=\"1\" lat=\"51.05\" lon=\"13.74\" version=\"2\">\n"
+                + "   <tag k=\"name\" v=\"Dresden\"/>\n"
+                + "   <tag k=\"place\" v=\"city\"/>\n"
+                + "  </node>\n"
+                + "  <way id=\"2\" version=\"3\">\n"
+                + "   <nd ref=\"1\"/>\n"
+                + "   <tag k=\"highway\" v=\"residential\"/>\n"
+                + "  </way>\n"
+                + " </modify>\n"
+                + " <create>\n"
+                + "  <node id=\"3\" lat=\"51.0\" lon=\"13.0\" version=\"1\"/>\n"
+                + " </create>\n"
+                + " <delete>\n"
+                + "  <node id=\"4\" version=\"5\"/>\n"
+                + "  <relation id=\"5\" version=\"2\"/>\n"
+                + " </delete>\n"
+                + "</osmChange>";
+        final List<String> deleted = new ArrayList<String>();
+        final List<String> changed = new ArrayList<String>();
+        final List<JsonObject> nodes = new ArrayList<JsonObject>();
+        final List<Boolean> created = new ArrayList<Boolean>();
+        new OsmChangeReader().read(new ByteArrayInputStream(osc.getBytes("UTF-8")), new OsmChangeReader.Handler() {
+            @Override public void delete(String id) {
+                deleted.add(id);
+            }
+
+            @Override public void node(boolean c, JsonObject node) {
+                created.add(c);
+                nodes.add(node);
+            }
+
+            @Override public void changed(String id) {
+                changed.add(id);
+            }
+        });
+
+        assertEquals(2, nodes.size());
+        JsonObject node = nodes.get(0);
+        assertEquals("osmnode/1", node.getString("id"));
+        assertEquals("Dresden", node.getString("title"));
+        assertEquals("city", node.getObject("tags").getString("place"));
+        assertEquals(13.74, node.getObject("geometry").getArray("coordinates").get(0).asDouble(), 1e-7);
+        assertEquals(51.05, node.getObject("geometry").getArray("coordinates").get(1).asDouble(), 1e-7);
+        assertFalse(created.get(0));
+
+        assertEquals("osmnode/3", nodes.get(1).getString("id"));
+        assertNull(nodes.get(1).getString("title"));
+        assertTrue(nodes.get(1).getObject("tags").isEmpty());
+        assertTrue(created.get(1));
+
+        assertEquals("[osmway/2]", changed.toString());
+        assertEquals("[osmnode/4, osmrelation/5]", deleted.toString());
+    }
+}
@@ -0,0 +1,53 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import static com.github.jsonj.tools.JsonBuilder.$;
+import static com.github.jsonj.tools.JsonBuilder._;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class PbfImporterTest {
+
+    @Test
+    public void testBuildRings() {
+        List<long[]> ways = new ArrayList<long[]>();
+        ways.add(new long[]{1, 2, 3});
+        // reversed
+        ways.add(new long[]{5, 4, 3});
+        ways.add(new long[]{5, 6, 1});
+        // closed on its own
+        ways.add(new long[]{7, 8, 9, 7});
+        // not closed
+        ways.add(new long[]{10, 11});
+        List<long[]> rings = PbfImporter.buildRings(ways);
+        assertEquals(2, rings.size());
+        assertEquals("[1, 2, 3, 4, 5, 6, 1]", Arrays.toString(rings.get(0)));
+        assertEquals("[7, 8, 9, 7]", Arrays.toString(rings.get(1)));
+    }
+
+    @Test
+    public void testCreateInput() {
+        Map<String, String> tags = new HashMap<String, String>();
+        tags.put("name", "Dresden");
+        tags.put("place", "city");
+        JsonObject input = PbfImporter.createInput("osmnode/1", tags, $(_("type", "Point")));
+        assertEquals("osmnode/1", input.getString("id"));
+        assertEquals("Dresden", input.getString("title"));
+        assertEquals("city", input.getObject("tags").getString("place"));
+        assertEquals("Point", input.getObject("geometry").getString("type"));
+
+        tags.put("type", "boundary");
+        assertTrue(PbfImporter.isArea(tags));
+        tags.put("type", "route");
+        assertFalse(PbfImporter.isArea(tags));
+    }
+}
@@ -0,0 +1,237 @@
+package com.graphhopper.geocoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class PbfReaderTest {
+
+    @Test
+    public void testRead() throws Exception {
+        File file = File.createTempFile("geocoder-test", ".osm.pbf");
+        try {
+            writeTestFile(file);
+            final List<PbfReader.Block> blocks = new ArrayList<PbfReader.Block>();
+            new PbfReader(2).read(file, new PbfReader.Handler() {
+                @Override public void handle(PbfReader.Block block) {
+                    blocks.add(block);
+                }
+            });
+            assertEquals(3, blocks.size());
+
+            PbfReader.Block nodes = blocks.get(0);
+            assertEquals(3, nodes.nodeIds.size());
+            assertEquals(10, nodes.nodeIds.get(0));
+            assertEquals(12, nodes.nodeIds.get(2));
+            assertEquals(51.05, nodes.nodeLats.get(0), 1e-7);
+            assertEquals(13.74, nodes.nodeLons.get(0), 1e-7);
+            assertEquals(51.06, nodes.nodeLats.get(1), 1e-7);
+            assertEquals(13.70, nodes.nodeLons.get(2), 1e-7);
+            assertNull(nodes.nodeTags.get(0));
+            assertEquals("Dresden", nodes.nodeTags.get(1).get("name"));
+            assertEquals("city", nodes.nodeTags.get(1).get("place"));
+            assertNull(nodes.nodeTags.get(2));
+
+            PbfReader.Way way = blocks.get(1).ways.get(0);
+            assertEquals(20, way.id);
+            assertArrayEquals(new long[]{10, 11, 12, 10}, way.refs);
+            assertEquals("Pragerstraße", way.tags.get("name"));
+
+            PbfReader.Relation relation = blocks.get(2).relations.get(0);
+            assertEquals(30, relation.id);
+            assertArrayEquals(new long[]{20, 11}, relation.memberIds);
+            assertArrayEquals(new int[]{PbfReader.WAY, PbfReader.NODE}, relation.memberTypes);
+            assertEquals("outer", relation.memberRoles[0]);
+            assertEquals("admin_centre", relation.memberRoles[1]);
+            assertEquals("boundary", relation.tags.get("type"));
+
+            // the relation pass
+            blocks.clear();
+            new PbfReader(1).setSkipNodes(true).setSkipWays(true).read(file, new PbfReader.Handler() {
+                @Override public void handle(PbfReader.Block block) {
+                    blocks.add(block);
+                }
+            });
+            assertEquals(0, blocks.get(0).nodeIds.size());
+            assertTrue(blocks.get(1).ways.isEmpty());
+            assertEquals(1, blocks.get(2).relations.size());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testVarint() throws Exception {
+        ProtoWriter writer = new ProtoWriter();
+        writer.varint(1, 300);
+        writer.sint(2, -3);
+        writer.sint(2, Long.MAX_VALUE);
+        byte[] bytes = writer.toByteArray();
+        PbfReader.ProtoReader reader = new PbfReader.ProtoReader(bytes, 0, bytes.length);
+        assertEquals(1, reader.nextField());
+        assertEquals(300, reader.readVarint());
+        assertEquals(2, reader.nextField());
+        assertEquals(-3, reader.readSVarint());
+        assertEquals(2, reader.nextField());
+        assertEquals(Long.MAX_VALUE, reader.readSVarint());
+        assertFalse(reader.hasNext());
+    }
+
+    static void writeTestFile(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            ProtoWriter header = new ProtoWriter();
+            header.string(4, "OsmSchema-V0.6");
+            header.string(4, "DenseNodes");
+            writeBlob(out, "OSMHeader", header.toByteArray(), false);
+
+            // dense nodes, with a granularity of 100 and no offsets
+            ProtoWriter dense = new ProtoWriter();
+            dense.packedSint(1, 10, 1, 1);
+            dense.packedSint(8, 510500000, 100000, -100000);
+            dense.packedSint(9, 137400000, -200000, -200000);
+            // no tags, name=Dresden place=city, no tags
+            dense.packedInt(10, 0, 1, 2, 3, 4, 0, 0);
+            ProtoWriter group = new ProtoWriter();
+            group.message(2, dense);
+            writeBlob(out, "OSMData", block(group), true);
+
+            ProtoWriter way = new ProtoWriter();
+            way.varint(1, 20);
+            way.packedInt(2, 1);
+            way.packedInt(3, 5);
+            way.packedSint(8, 10, 1, 1, -2);
+            group = new ProtoWriter();
+            group.message(3, way);
+            writeBlob(out, "OSMData", block(group), false);
+
+            ProtoWriter relation = new ProtoWriter();
+            relation.varint(1, 30);
+            // not packed, both is allowed
+            relation.varint(2, 1);
+            relation.varint(2, 6);
+            relation.varint(3, 2);
+            relation.varint(3, 7);
+            relation.packedInt(8, 8, 9);
+            relation.packedSint(9, 20, -9);
+            relation.packedInt(10, PbfReader.WAY, PbfReader.NODE);
+            group = new ProtoWriter();
+            group.message(4, relation);
+            writeBlob(out, "OSMData", block(group), true);
+        } finally {
+            out.close();
+        }
+    }
+
+    static byte[] block(ProtoWriter group) throws IOException {
+        ProtoWriter table = new ProtoWriter();
+        for (String str : new String[]{"", "name", "Dresden", "place", "city", "Pragerstraße",
+            "type", "boundary", "outer", "admin_centre"}) {
+            table.string(1, str);
+        }
+        ProtoWriter block = new ProtoWriter();
+        block.message(1, table);
+        block.message(2, group);
+        return block.toByteArray();
+    }
+
+    static void writeBlob(DataOutputStream out, String type, byte[] data, boolean zlib) throws IOException {
+        ProtoWriter blob = new ProtoWriter();
+        if (zlib) {
+            Deflater deflater = new Deflater();
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[data.length + 64];
+            int size = deflater.deflate(buffer);
+            deflater.end();
+            blob.varint(2, data.length);
+            blob.bytes(3, buffer, size);
+        } else {
+            blob.bytes(1, data, data.length);
+        }
+        byte[] blobBytes = blob.toByteArray();
+        ProtoWriter header = new ProtoWriter();
+        header.string(1, type);
+        header.varint(3, blobBytes.length);
+        byte[] headerBytes = header.toByteArray();
+        out.writeInt(headerBytes.length);
+        out.write(headerBytes);
+        out.write(blobBytes);
+    }
+
+    /**
+     * Writes the protobuf wire format for the test data.
+     */
+    static class ProtoWriter {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        void varint(int field, long value) {
+            writeVarint((long) field << 3);
+            writeVarint(value);
+        }
+
+        void sint(int field, long value) {
+            varint(field, zigzag(value));
+        }
+
+        void bytes(int field, byte[] bytes, int length) {
+            writeVarint((long) field << 3 | 2);
+            writeVarint(length);
+            out.write(bytes, 0, length);
+        }
+
+        void string(int field, String str) throws IOException {
+            byte[] bytes = str.getBytes("UTF-8");
+            bytes(field, bytes, bytes.length);
+        }
+
+        void message(int field, ProtoWriter message) {
+            byte[] bytes = message.toByteArray();
+            bytes(field, bytes, bytes.length);
+        }
+
+        void packedInt(int field, long... values) {
+            ProtoWriter packed = new ProtoWriter();
+            for (long value : values) {
+                packed.writeVarint(value);
+            }
+            message(field, packed);
+        }
+
+        void packedSint(int field, long... values) {
+            ProtoWriter packed = new ProtoWriter();
+            for (long value : values) {
+                packed.writeVarint(zigzag(value));
+            }
+            message(field, packed);
+        }
+
+        static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.graphhopper.geocoder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class PlaceIndexTest {
+
+    PlaceIndex createIndex() {
+        PlaceIndexBuilder builder = new PlaceIndexBuilder(0.1);
+        assertTrue(builder.add(51.05, 13.74, "city", Arrays.asList("Dresden", "Sachsen")));
+        assertTrue(builder.add(51.12, 13.63, "village", Arrays.asList("Moritzburg")));
+        assertTrue(builder.add(51.0, 13.0, "hamlet", Arrays.asList("Kleindorf")));
+        assertFalse(builder.add(51.0, 13.0, "residential", Arrays.asList("Weg")));
+        assertEquals(3, builder.size());
+        return builder.build();
+    }
+
+    @Test
+    public void testSearchClosest() {
+        PlaceIndex index = createIndex();
+        assertEquals(3, index.size());
+        assertEquals(Arrays.asList("Dresden", "Sachsen"), getIsIn(index, 51.06, 13.75));
+        // Moritzburg is closer than Dresden
+        assertEquals(Arrays.asList("Moritzburg"), getIsIn(index, 51.11, 13.64));
+        // ~6km away from Moritzburg, only the radius of Dresden is big enough
+        assertEquals(Arrays.asList("Dresden", "Sachsen"), getIsIn(index, 51.12, 13.72));
+        // 1.4km to Kleindorf
+        assertEquals(Arrays.asList("Kleindorf"), getIsIn(index, 51.01, 13.01));
+        // ~3.5km to Kleindorf, too far for a hamlet
+        assertEquals(-1, index.searchClosest(51.0, 13.05));
+        assertEquals(-1, index.searchClosest(40, 10));
+        assertEquals(-1, index.searchClosest(Double.NaN, 10));
+    }
+
+    @Test
+    public void testSearchClosestBatch() {
+        PlaceIndex index = createIndex();
+        double[] lats = new double[100];
+        double[] lons = new double[100];
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = 50.9 + i * 0.003;
+            lons[i] = 12.9 + i * 0.01;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            int[] res = index.searchClosest(lats, lons, executor);
+            for (int i = 0; i < lats.length; i++) {
+                assertEquals(index.searchClosest(lats[i], lons[i]), res[i]);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        PlaceIndex index = new PlaceIndexBuilder(0.1).build();
+        assertEquals(0, index.size());
+        assertEquals(-1, index.searchClosest(51, 13));
+    }
+
+    List<String> getIsIn(PlaceIndex index, double lat, double lon) {
+        int position = index.searchClosest(lat, lon);
+        assertTrue(position >= 0);
+        return index.getIsIn(position);
+    }
+}
@@ -4,17 +4,159 @@ import com.graphhopper.util.PointList;
 import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
 import org.junit.Test;
+import static org.junit.Assert.*;
 
 /**
  *
  * @author Peter Karich
  */
-public class RelationShipFixerTest {
+public class RelationShipFixerTest extends AbstractNodesTests {
+
+    protected static Client client;
+
+    @BeforeClass public static void createNodes() throws Exception {
+        startNode("node1");
+        client = client("node1");
+    }
+
+    @AfterClass public static void closeNodes() {
+        client.close();
+        closeAllNodes();
+    }
 
     @Test
     public void testBulky() {   
     }
 
+    @Test
+    public void testGetName() {
+        assertEquals("Hauptstraße, Dresden, Sachsen",
+                RelationShipFixer.getName("Hauptstraße", Arrays.asList("Dresden", "Sachsen")));
+        // no duplicate
+        assertEquals("Dresden, Sachsen", RelationShipFixer.getName("Dresden", Arrays.asList("Dresden", "Sachsen")));
+        assertEquals("Dresden", RelationShipFixer.getName(null, Arrays.asList("Dresden")));
+    }
+
+    @Test
+    public void testSetLayerValues() {
+        Map<String, Object> source = new HashMap<String, Object>();
+        Map<String, String> values = new HashMap<String, String>();
+        assertFalse(RelationShipFixer.setLayerValues(source, values));
+
+        values.put("postcode", "01067");
+        values.put("district", "Altstadt");
+        assertTrue(RelationShipFixer.setLayerValues(source, values));
+        assertEquals("01067", ((Map) source.get("address")).get("postcode"));
+        assertEquals("Altstadt", ((Map) source.get("layers")).get("district"));
+        assertFalse(RelationShipFixer.setLayerValues(source, values));
+
+        // a found postcode and a layer value are replaced
+        values.put("postcode", "01069");
+        values.put("district", "Neustadt");
+        assertTrue(RelationShipFixer.setLayerValues(source, values));
+        assertEquals("01069", ((Map) source.get("address")).get("postcode"));
+        assertEquals("Neustadt", ((Map) source.get("layers")).get("district"));
+
+        // and removed if nothing is found
+        values.clear();
+        assertTrue(RelationShipFixer.setLayerValues(source, values));
+        assertNull(((Map) source.get("address")).get("postcode"));
+        assertNull(source.get("layers"));
+
+        // a postcode from OSM is kept
+        ((Map) source.get("address")).put("postcode", "01099");
+        values.put("postcode", "01067");
+        assertTrue(RelationShipFixer.setLayerValues(source, values));
+        assertEquals("01099", ((Map) source.get("address")).get("postcode"));
+        values.clear();
+        assertTrue(RelationShipFixer.setLayerValues(source, values));
+        assertEquals("01099", ((Map) source.get("address")).get("postcode"));
+    }
+
+    @Test
+    public void testMergeBoundarySource() {
+        PointList pl = new PointList();
+        pl.add(51, 13.7);
+        pl.add(51.1, 13.8);
+        pl.add(51, 13.8);
+        pl.add(51, 13.7);
+        String enc = GeometryCodec.encodeBase64(Arrays.asList(pl));
+
+        Map<String, Object> place = new HashMap<String, Object>();
+        place.put("name", "Dresden");
+        place.put("wikipedia", "de:Dresden");
+        // a boundary hit without bounds in the source
+        Map<String, Object> boundary = new HashMap<String, Object>();
+        boundary.put("bounds_enc", enc);
+        boundary.put("bounds_area", 0.005);
+        boundary.put("admin_level", 6);
+        boundary.put("wikipedia", "en:Dresden");
+
+        RelationShipFixer.restoreBounds(boundary);
+        JsonFeeder.mergeBoundary(place, boundary, Boolean.TRUE);
+        assertEquals("Polygon", ((Map) place.get("bounds")).get("type"));
+        assertEquals(enc, place.get("bounds_enc"));
+        assertEquals(0.005, (Double) place.get("bounds_area"), 1e-6);
+        assertEquals(6, place.get("admin_level"));
+        assertEquals("de:Dresden", place.get("wikipedia"));
+        assertEquals(Boolean.TRUE, place.get("has_fixed_boundary"));
+    }
+
+    @Test
+    public void testUpdateDeletedBoundary() {
+        Configuration config = new Configuration();
+        new JsonFeeder(config, client).initIndices();
+        String bounds = "\"bounds\":{\"type\":\"Polygon\",\"coordinates\":"
+                + "[[[13.6,50.9],[13.9,50.9],[13.9,51.2],[13.6,51.2],[13.6,50.9]]]}";
+        index("osmnode/1", "{\"name\":\"Dresden\",\"type\":\"city\",\"center\":[13.74,51.05],"
+                + "\"is_in\":[\"Dresden\",\"Sachsen\"],\"has_fixed_boundary\":true," + bounds + "}");
+        index("osmrelation/2", "{\"name\":\"01067\",\"type\":\"postcode\",\"center\":[13.74,51.05],"
+                + "\"address\":{\"postcode\":\"01067\"}," + bounds + "}");
+        index("osmnode/3", "{\"name\":\"Pirna\",\"type\":\"town\",\"center\":[13.78,51.02]}");
+        index("osmway/4", "{\"name\":\"Hauptstraße\",\"type\":\"residential\",\"center\":[13.74,51.05]}");
+        index("osmway/5", "{\"name\":\"Bautzner Straße\",\"type\":\"residential\",\"center\":[13.76,51.06],"
+                + "\"address\":{\"postcode\":\"01099\"}}");
+        client.admin().indices().prepareRefresh("osm").get();
+        List<BBox> areas = Arrays.asList(new BBox(13.5, 14, 50.8, 51.3));
+        try {
+            RelationShipFixer fixer = new RelationShipFixer(config, client);
+            fixer.update(areas);
+            Map<String, Object> street = get("osmway/4");
+            assertEquals(Arrays.asList("Dresden", "Sachsen"), street.get("is_in"));
+            assertEquals("Hauptstraße, Dresden, Sachsen", street.get("name"));
+            assertEquals("01067", ((Map) street.get("address")).get("postcode"));
+            assertEquals("01099", ((Map) get("osmway/5").get("address")).get("postcode"));
+
+            // the entries of the deleted boundary get the nearest place and lose the postcode
+            client.prepareDelete("osm", "osmobject", "osmnode/1").get();
+            client.prepareDelete("osm", "osmobject", "osmrelation/2").get();
+            client.admin().indices().prepareRefresh("osm").get();
+            fixer.update(areas);
+            street = get("osmway/4");
+            assertEquals(Arrays.asList("Pirna"), street.get("is_in"));
+            assertEquals("Hauptstraße, Pirna", street.get("name"));
+            assertNull(((Map) street.get("address")).get("postcode"));
+            assertNull(street.get("layers"));
+            assertEquals("01099", ((Map) get("osmway/5").get("address")).get("postcode"));
+        } finally {
+            client.prepareDeleteByQuery("osm").setQuery(QueryBuilders.matchAllQuery()).get();
+        }
+    }
+
+    void index(String id, String source) {
+        client.prepareIndex("osm", "osmobject", id).setSource(source).get();
+    }
+
+    Map<String, Object> get(String id) {
+        return client.prepareGet("osm", "osmobject", id).get().getSource();
+    }
 }
@@ -0,0 +1,57 @@
+package com.graphhopper.geocoder;
+
+import com.graphhopper.util.shapes.BBox;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class SpatialRoutingTest {
+
+    @Test
+    public void testDisabled() {
+        SpatialRouting routing = new SpatialRouting(new Configuration());
+        assertFalse(routing.isEnabled());
+        assertNull(routing.getRouting(51.05, 13.74));
+        assertNull(routing.getRoutings(new BBox(13, 14, 51, 52)));
+    }
+
+    @Test
+    public void testRouting() {
+        SpatialRouting routing = new SpatialRouting(true, 10, 16);
+        // the same cell
+        assertEquals(routing.getRouting(51.05, 13.74), routing.getRouting(51.3, 13.2));
+        assertFalse(routing.getRouting(51.05, 13.74).equals(routing.getRouting(-33.9, 18.4)));
+
+        Map<String, Object> source = new HashMap<String, Object>();
+        source.put("center", Arrays.asList(13.74, 51.05));
+        assertEquals(routing.getRouting(51.05, 13.74), routing.getRouting(source));
+        assertNull(routing.getRouting(new HashMap<String, Object>()));
+    }
+
+    @Test
+    public void testRoutings() {
+        SpatialRouting routing = new SpatialRouting(true, 10, 16);
+        String[] res = routing.getRoutings(new BBox(13.6, 13.9, 51, 51.1));
+        assertEquals(1, res.length);
+        assertEquals(routing.getRouting(51.05, 13.74), res[0]);
+
+        // 11.25 degrees per cell in longitude
+        BBox bbox = new BBox(10, 12, 51, 51.1);
+        List<String> list = Arrays.asList(routing.getRoutings(bbox));
+        assertEquals(2, list.size());
+        assertTrue(list.contains(routing.getRouting(51.05, 10.1)));
+        assertTrue(list.contains(routing.getRouting(51.05, 11.9)));
+
+        // too many cells -> all shards
+        assertNull(routing.getRoutings(new BBox(-10, 40, 30, 60)));
+        // crossing the date line
+        assertNull(routing.getRoutings(new BBox(170, -170, 30, 60)));
+    }
+}
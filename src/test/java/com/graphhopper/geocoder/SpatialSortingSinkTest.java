@@ -0,0 +1,76 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonObject;
+import static com.github.jsonj.tools.JsonBuilder.$;
+import static com.github.jsonj.tools.JsonBuilder._;
+import static com.github.jsonj.tools.JsonBuilder.array;
+import com.graphhopper.geohash.SpatialKeyAlgo;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class SpatialSortingSinkTest {
+
+    @Test
+    public void testSortInMemory() throws Exception {
+        assertSorted(1000);
+    }
+
+    @Test
+    public void testSortWithRuns() throws Exception {
+        assertSorted(7);
+    }
+
+    void assertSorted(int bufferSize) throws Exception {
+        final List<String> ids = new ArrayList<String>();
+        final List<JsonObject> docs = new ArrayList<JsonObject>();
+        final boolean[] closed = new boolean[1];
+        DocumentSink inner = new DocumentSink() {
+            @Override public Collection<Integer> store(String indexName, String indexType, List<String> i, List<JsonObject> d) {
+                assertEquals("osm", indexName);
+                assertTrue(d.size() <= 5);
+                ids.addAll(i);
+                docs.addAll(d);
+                return Collections.emptyList();
+            }
+
+            @Override public void close() {
+                closed[0] = true;
+            }
+        };
+        SpatialKeyAlgo keyAlgo = new SpatialKeyAlgo(32);
+        SpatialSortingSink sink = new SpatialSortingSink(inner, keyAlgo, bufferSize, 5);
+        Random rand = new Random(1);
+        for (int bulk = 0; bulk < 10; bulk++) {
+            List<String> bulkIds = new ArrayList<String>();
+            List<JsonObject> bulkDocs = new ArrayList<JsonObject>();
+            for (int i = 0; i < 10; i++) {
+                bulkIds.add("osmnode/" + (bulk * 10 + i));
+                if (bulk == 3 && i == 3)
+                    bulkDocs.add($(_("name", "no center")));
+                else
+                    bulkDocs.add($(_("center", array(rand.nextDouble() * 360 - 180, rand.nextDouble() * 180 - 90))));
+            }
+            assertTrue(sink.store("osm", "osmobject", bulkIds, bulkDocs).isEmpty());
+        }
+        assertTrue(ids.isEmpty());
+        sink.close();
+        assertTrue(closed[0]);
+        assertEquals(100, ids.size());
+        assertEquals("osmnode/33", ids.get(99));
+        long previous = -1;
+        for (JsonObject doc : docs) {
+            long key = sink.getKey(doc);
+            assertTrue(key >= previous);
+            previous = key;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.graphhopper.geocoder;
+
+import com.github.jsonj.JsonArray;
+import com.github.jsonj.JsonObject;
+import static com.github.jsonj.tools.JsonBuilder.$;
+import static com.github.jsonj.tools.JsonBuilder._;
+import static com.github.jsonj.tools.JsonBuilder.array;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class StreetMergerTest {
+
+    JsonObject createWay(double... lonLats) {
+        JsonArray coordinates = array();
+        for (int i = 0; i < lonLats.length; i += 2) {
+            coordinates.add(array(lonLats[i], lonLats[i + 1]));
+        }
+        return $(_("geometry", $(_("type", "LineString"), _("coordinates", coordinates))));
+    }
+
+    JsonObject createDoc(String name, String type) {
+        return $(_("name", name), _("type", type), _("population", 0L));
+    }
+
+    @Test
+    public void testMerge() throws IOException {
+        StreetMerger merger = new StreetMerger(50, 4);
+        try {
+            // touching ways
+            assertTrue(merger.add("osmway/3", createWay(13.40, 52.50, 13.41, 52.50), createDoc("Hauptstraße", "residential")));
+            assertTrue(merger.add("osmway/2", createWay(13.41, 52.50, 13.43, 52.50), createDoc("Hauptstraße", "residential")));
+            // 20m gap to the end of osmway/2
+            assertTrue(merger.add("osmway/7", createWay(13.4303, 52.50, 13.45, 52.50), createDoc("Hauptstraße", "residential")));
+            // same name in another town
+            assertTrue(merger.add("osmway/4", createWay(11.50, 48.10, 11.51, 48.10), createDoc("Hauptstraße", "residential")));
+            // other type
+            assertTrue(merger.add("osmway/5", createWay(13.40, 52.50, 13.40, 52.51), createDoc("Hauptstraße", "footway")));
+
+            // no street
+            assertFalse(merger.add("osmnode/1", $(_("geometry", $(_("type", "Point"), _("coordinates", array(13.4, 52.5))))),
+                    createDoc("Hauptstraße", "bus_stop")));
+            assertFalse(merger.add("osmway/6", createWay(13.40, 52.50, 13.41, 52.50), $(_("type", "residential"))));
+            assertEquals(5, merger.size());
+
+            final Map<String, JsonObject> res = new HashMap<String, JsonObject>();
+            merger.finish(new StreetMerger.Handler() {
+                @Override public void handle(String id, JsonObject doc) {
+                    assertNull(res.put(id, doc));
+                }
+            });
+            assertEquals(3, res.size());
+            assertFalse(res.get("osmway/4").containsKey("lines"));
+            assertFalse(res.get("osmway/5").containsKey("lines"));
+
+            JsonObject street = res.get("osmway/2");
+            assertEquals(3, (int) street.getInt("way_count"));
+            assertEquals("MultiLineString", street.getObject("lines").getString("type"));
+            assertEquals(3, street.getObject("lines").getArray("coordinates").size());
+            // in the order of the lines
+            assertEquals(Arrays.asList("osmway/2", "osmway/3", "osmway/7"), Arrays.asList(street.getArray("way_ids").asStringArray()));
+            JsonArray firstLine = street.getObject("lines").getArray("coordinates").get(0).asArray();
+            assertEquals(13.43, firstLine.get(1).asArray().get(0).asDouble(), 1e-6);
+            JsonArray bbox = street.getArray("bbox");
+            assertEquals(13.40, bbox.get(0).asDouble(), 1e-6);
+            assertEquals(52.50, bbox.get(1).asDouble(), 1e-6);
+            assertEquals(13.45, bbox.get(2).asDouble(), 1e-6);
+            // the point closest to the middle of the bbox
+            assertEquals(13.43, street.getArray("center").get(0).asDouble(), 1e-6);
+            assertEquals("Hauptstraße", street.getString("name"));
+        } finally {
+            merger.close();
+        }
+    }
+
+    @Test
+    public void testKeepApart() throws IOException {
+        StreetMerger merger = new StreetMerger(50, 1);
+        try {
+            merger.add("osmway/1", createWay(13.40, 52.50, 13.41, 52.50), createDoc("Weg", "track"));
+            // 136m away
+            merger.add("osmway/2", createWay(13.412, 52.50, 13.42, 52.50), createDoc("Weg", "track"));
+            // same street with is_in of another town
+            JsonObject doc = createDoc("Weg", "track");
+            doc.put("is_in", "Potsdam");
+            merger.add("osmway/3", createWay(13.41, 52.50, 13.42, 52.51), doc);
+            final int[] count = new int[1];
+            merger.finish(new StreetMerger.Handler() {
+                @Override public void handle(String id, JsonObject doc) {
+                    assertFalse(doc.containsKey("lines"));
+                    count[0]++;
+                }
+            });
+            assertEquals(3, count[0]);
+        } finally {
+            merger.close();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.graphhopper.geocoder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.util.PointList;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class SuggesterTest {
+
+    Suggester createSuggester() {
+        Suggester suggester = new Suggester();
+        suggester.add("osmnode/1", "Dresden", 51.05, 13.74, 500000, 1000, "city");
+        suggester.add("osmway/2", "Dresden gorbitz birkenstrasse", 51.04, 13.65, 0, 30, "residential");
+        suggester.add("osmway/3", "bautzen dresdenerstrasse", 51.18, 14.42, 0, 30, "residential");
+        suggester.add("osmnode/4", "Düsseldorf", 51.22, 6.77, 600000, 1000, "city");
+        suggester.add("osmway/5", "Dresdner Dresdenweg", 51.0, 13.0, 0, 5, "footway");
+        return suggester;
+    }
+
+    @Test
+    public void testSuggest() {
+        Suggester suggester = createSuggester().prepare();
+        List<Map<String, Object>> res = suggester.suggest("dre", 10);
+        assertEquals(4, res.size());
+        // population first, then type_rank
+        assertEquals("osmnode/1", res.get(0).get("id"));
+        assertEquals("osmway/5", res.get(3).get("id"));
+
+        res = suggester.suggest("dre", 2);
+        assertEquals(2, res.size());
+
+        res = suggester.suggest("Bau", 10);
+        assertEquals(1, res.size());
+        assertEquals("osmway/3", res.get(0).get("id"));
+
+        res = suggester.suggest("xyz", 10);
+        assertEquals(0, res.size());
+    }
+
+    @Test
+    public void testFolding() {
+        Suggester suggester = createSuggester().prepare();
+        List<Map<String, Object>> res = suggester.suggest("dus", 10);
+        assertEquals(1, res.size());
+        assertEquals("Düsseldorf", res.get(0).get("name"));
+
+        res = suggester.suggest("birkenstraße", 10);
+        assertEquals(1, res.size());
+    }
+
+    @Test
+    public void testManyPostings() {
+        Suggester suggester = new Suggester();
+        for (int i = 0; i < 1000; i++) {
+            suggester.add("osmway/" + i, "Berg " + i, 0, 0, i % 100 == 7 ? i : 0, i % 13, "residential");
+        }
+        suggester.prepare();
+        List<Map<String, Object>> res = suggester.suggest("be", 3);
+        assertEquals(3, res.size());
+        assertEquals("osmway/907", res.get(0).get("id"));
+        assertEquals("osmway/807", res.get(1).get("id"));
+        assertEquals("osmway/707", res.get(2).get("id"));
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        File file = File.createTempFile("suggester", ".bin");
+        try {
+            createSuggester().save(file);
+            Suggester suggester = new Suggester().load(file).prepare();
+            assertEquals(5, suggester.size());
+            List<Map<String, Object>> res = suggester.suggest("gor", 10);
+            assertEquals(1, res.size());
+            assertEquals("residential", res.get(0).get("type"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCount() {
+        Suggester suggester = createSuggester().prepare();
+        // "Dresdner Dresdenweg" counts once
+        assertEquals(4, suggester.count("dre"));
+        assertEquals(1, suggester.count("dresdn"));
+        assertEquals(4, suggester.count("dresd"));
+        assertEquals(1, suggester.count("Dresdenw"));
+        assertEquals(0, suggester.count("xyz"));
+        assertEquals(5, suggester.count("d"));
+    }
+
+    @Test
+    public void testSource() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, Object> source = mapper.readValue("{\"name\":\"Krumbach\",\"type\":\"town\","
+                + "\"center\":[10.36,48.24],\"population\":12000,\"is_in\":[\"Günzburg\",\"Bayern\"],"
+                + "\"wikipedia\":\"de:Krumbach\",\"admin_level\":8,\"address\":{\"postcode\":\"86381\"},"
+                + "\"bounds\":{\"type\":\"Polygon\",\"coordinates\":[[[10.3,48.2],[10.4,48.2],[10.4,48.3],[10.3,48.2]]]},"
+                + "\"lines\":{\"type\":\"MultiLineString\",\"coordinates\":[]}}", Map.class);
+        Suggester suggester = new Suggester();
+        suggester.add("osmnode/1", source);
+        suggester.add("osmway/2", "Krumbachstraße", 48.2, 10.3, 0, 30, "residential");
+        suggester.prepare();
+
+        File file = File.createTempFile("suggester", ".bin");
+        try {
+            suggester.save(file);
+            suggester = new Suggester().load(file).prepare();
+        } finally {
+            file.delete();
+        }
+        List<Map<String, Object>> res = suggester.suggest("krum", 10);
+        assertEquals(2, res.size());
+        Map<String, Object> hit = res.get(0);
+        assertEquals("Krumbach", hit.get("name"));
+        assertEquals("[Günzburg, Bayern]", hit.get("is_in").toString());
+        assertEquals("de:Krumbach", hit.get("wikipedia"));
+        assertEquals(8, hit.get("admin_level"));
+        assertEquals("86381", ((Map) hit.get("address")).get("postcode"));
+        assertFalse(hit.containsKey("lines"));
+        assertFalse(hit.containsKey("bounds"));
+        List<PointList> polygons = GeometryCodec.decodeBase64((String) hit.get("bounds_enc"));
+        assertEquals(4, polygons.get(0).size());
+        assertEquals(48.3, polygons.get(0).getLatitude(2), 1e-7);
+        // without source
+        assertEquals("osmway/2", res.get(1).get("id"));
+    }
+}
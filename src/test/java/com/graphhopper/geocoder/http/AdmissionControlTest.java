@@ -0,0 +1,49 @@
+package com.graphhopper.geocoder.http;
+
+import com.graphhopper.geocoder.Configuration;
+import com.graphhopper.geocoder.Metrics;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class AdmissionControlTest {
+
+    @Test
+    public void testTryAcquire() {
+        Configuration config = new Configuration();
+        config.set("geocoder.request.maxinflight", "2");
+        config.set("geocoder.request.maxqueuedepth", "1");
+        config.set("geocoder.request.retryafter", "3");
+        AdmissionControl admission = new AdmissionControl(config, new Metrics());
+        assertEquals(3, admission.getRetryAfterSeconds());
+
+        assertTrue(admission.tryAcquire());
+        assertTrue(admission.tryAcquire());
+        // a rejected request does not count
+        assertFalse(admission.tryAcquire());
+        assertEquals(2, admission.getInFlight());
+        admission.release();
+        assertTrue(admission.tryAcquire());
+        admission.release();
+        admission.release();
+        assertEquals(0, admission.getInFlight());
+
+        // too many jobs waiting for a thread
+        Runnable job = new Runnable() {
+            @Override public void run() {
+            }
+        };
+        admission.getJobQueue().add(job);
+        assertTrue(admission.tryAcquire());
+        admission.release();
+        admission.getJobQueue().add(job);
+        assertEquals(2, admission.getQueueDepth());
+        assertFalse(admission.tryAcquire());
+        assertEquals(0, admission.getInFlight());
+        admission.getJobQueue().clear();
+        assertTrue(admission.tryAcquire());
+    }
+}
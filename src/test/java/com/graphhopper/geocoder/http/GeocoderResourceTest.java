@@ -0,0 +1,270 @@
+package com.graphhopper.geocoder.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.graphhopper.geocoder.Configuration;
+import com.graphhopper.geocoder.Metrics;
+import com.graphhopper.geocoder.QueryHandler;
+import com.graphhopper.util.shapes.BBox;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHits;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class GeocoderResourceTest {
+
+    // a street merged from two ways like stored by the feeder
+    String merged = "{\"name\":\"Hauptstraße\",\"type\":\"residential\",\"way_count\":2,"
+            + "\"center\":[13.41,52.5],\"bbox\":[13.4,52.5,13.43,52.5],"
+            + "\"lines\":{\"type\":\"MultiLineString\",\"coordinates\":[[[13.4,52.5],[13.41,52.5]],[[13.41,52.5],[13.43,52.5]]]}}";
+    private final Configuration config = new Configuration();
+    private final Metrics metrics = new Metrics();
+    private final AdmissionControl admission = new AdmissionControl(config, metrics);
+
+    @Test
+    public void testMergedStreetWithoutLines() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, Object> source = mapper.readValue(merged, Map.class);
+        GeocoderResource.prepareBounds(source, true, false);
+        String json = mapper.writeValueAsString(source);
+        assertFalse(json, json.contains("lines"));
+        assertTrue(json, json.contains("\"bbox\""));
+        assertTrue(json, json.contains("\"way_count\":2"));
+
+        source = mapper.readValue(merged, Map.class);
+        GeocoderResource.prepareBounds(source, false, true);
+        assertEquals("MultiLineString", ((Map) source.get("lines")).get("type"));
+    }
+
+    @Test
+    public void testExecuteThrows() throws Exception {
+        GeocoderResource resource = createResource(new SearchRequestBuilder(null) {
+            @Override public void execute(ActionListener<SearchResponse> listener) {
+                throw new IllegalStateException("no node available");
+            }
+        });
+        Exchange exchange = new Exchange("Dresden");
+        resource.doGet(exchange.req, exchange.res);
+        assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, exchange.status);
+        assertTrue(exchange.getBody(), exchange.getBody().contains("search failed"));
+        assertEquals(1, exchange.completed);
+        assertEquals(0, admission.getInFlight());
+
+        // a timeout afterwards must not release the slot again
+        exchange.listeners.get(0).onTimeout(new AsyncEvent(exchange.ctx));
+        assertEquals(0, admission.getInFlight());
+        assertEquals(1, exchange.completed);
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        GeocoderResource resource = createResource(new SearchRequestBuilder(null));
+        while (admission.tryAcquire()) {
+        }
+        int inFlight = admission.getInFlight();
+        Exchange exchange = new Exchange("Dresden");
+        resource.doGet(exchange.req, exchange.res);
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, exchange.status);
+        assertEquals("" + config.getRetryAfterSeconds(), exchange.headers.get("Retry-After"));
+        assertEquals(inFlight, admission.getInFlight());
+        assertTrue(exchange.listeners.isEmpty());
+    }
+
+    @Test
+    public void testResponse() throws Exception {
+        CapturingBuilder srb = new CapturingBuilder();
+        Exchange exchange = new Exchange("Dresden");
+        createResource(srb).doGet(exchange.req, exchange.res);
+        // the slot is kept until the response is written
+        assertEquals(1, admission.getInFlight());
+        assertEquals(0, exchange.completed);
+
+        srb.listener.onResponse(createResponse(false, false));
+        assertEquals(HttpServletResponse.SC_OK, exchange.status);
+        assertFalse(exchange.getBody(), exchange.getBody().contains("timed_out"));
+        assertFalse(exchange.getBody(), exchange.getBody().contains("partial"));
+        assertReleasedOnce(srb, exchange);
+    }
+
+    @Test
+    public void testPartialResponse() throws Exception {
+        CapturingBuilder srb = new CapturingBuilder();
+        Exchange exchange = new Exchange("Dresden");
+        createResource(srb).doGet(exchange.req, exchange.res);
+        srb.listener.onResponse(createResponse(true, true));
+        assertEquals(HttpServletResponse.SC_OK, exchange.status);
+        assertTrue(exchange.getBody(), exchange.getBody().contains("\"timed_out\":true"));
+        assertTrue(exchange.getBody(), exchange.getBody().contains("\"partial\":true"));
+        assertReleasedOnce(srb, exchange);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        CapturingBuilder srb = new CapturingBuilder();
+        Exchange exchange = new Exchange("Dresden");
+        createResource(srb).doGet(exchange.req, exchange.res);
+        srb.listener.onFailure(new IllegalStateException("shard failure"));
+        assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, exchange.status);
+        assertReleasedOnce(srb, exchange);
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        CapturingBuilder srb = new CapturingBuilder();
+        Exchange exchange = new Exchange("Dresden");
+        createResource(srb).doGet(exchange.req, exchange.res);
+        exchange.listeners.get(0).onTimeout(new AsyncEvent(exchange.ctx));
+        assertEquals(HttpServletResponse.SC_GATEWAY_TIMEOUT, exchange.status);
+        assertTrue(exchange.getBody(), exchange.getBody().contains("\"timed_out\":true"));
+        assertReleasedOnce(srb, exchange);
+    }
+
+    /**
+     * Every other way to finish the request comes too late and must neither
+     * release the slot nor complete the context again.
+     */
+    void assertReleasedOnce(CapturingBuilder srb, Exchange exchange) throws Exception {
+        assertEquals(0, admission.getInFlight());
+        assertEquals(1, exchange.completed);
+        int status = exchange.status;
+        String body = exchange.getBody();
+        srb.listener.onResponse(createResponse(false, false));
+        srb.listener.onFailure(new IllegalStateException("late"));
+        exchange.listeners.get(0).onTimeout(new AsyncEvent(exchange.ctx));
+        exchange.listeners.get(0).onError(new AsyncEvent(exchange.ctx));
+        assertEquals(0, admission.getInFlight());
+        assertEquals(1, exchange.completed);
+        assertEquals(status, exchange.status);
+        assertEquals(body, exchange.getBody());
+    }
+
+    static SearchResponse createResponse(boolean timedOut, boolean partial) {
+        InternalSearchHits hits = new InternalSearchHits(new InternalSearchHit[0], 0, 0);
+        ShardSearchFailure[] failures = partial
+                ? new ShardSearchFailure[]{new ShardSearchFailure(new IllegalStateException("shard failure"))}
+                : ShardSearchFailure.EMPTY_ARRAY;
+        return new SearchResponse(new InternalSearchResponse(hits, null, null, timedOut), null, 2, 2 - failures.length, 1, failures);
+    }
+
+    /**
+     * Keeps the listener to answer the search later.
+     */
+    static class CapturingBuilder extends SearchRequestBuilder {
+
+        ActionListener<SearchResponse> listener;
+
+        CapturingBuilder() {
+            super(null);
+        }
+
+        @Override public void execute(ActionListener<SearchResponse> listener) {
+            this.listener = listener;
+        }
+    }
+
+    GeocoderResource createResource(final SearchRequestBuilder srb) {
+        Client client = (Client) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Client.class},
+                new InvocationHandler() {
+                    @Override public Object invoke(Object proxy, Method method, Object[] args) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        final QueryHandler queryHandler = new QueryHandler(config, client) {
+            @Override public List<Map<String, Object>> searchLocal(String query, int size, boolean suggest, BBox bbox) {
+                return null;
+            }
+
+            @Override public SearchRequestBuilder createRequest(String query, int size, BBox bbox) {
+                return srb;
+            }
+        };
+        GeocoderResource resource = new GeocoderResource();
+        Guice.createInjector(new AbstractModule() {
+            @Override protected void configure() {
+                bind(QueryHandler.class).toInstance(queryHandler);
+                bind(ObjectMapper.class).toInstance(new ObjectMapper());
+                bind(AdmissionControl.class).toInstance(admission);
+                bind(Configuration.class).toInstance(config);
+                bind(Metrics.class).toInstance(metrics);
+            }
+        }).injectMembers(resource);
+        return resource;
+    }
+
+    /**
+     * The request, response and async context of one query, recording what
+     * the servlet does with them.
+     */
+    static class Exchange implements InvocationHandler {
+
+        final Map<String, String> params = new HashMap<String, String>();
+        final Map<String, String> headers = new HashMap<String, String>();
+        final List<AsyncListener> listeners = new ArrayList<AsyncListener>();
+        final StringWriter body = new StringWriter();
+        final HttpServletRequest req;
+        final HttpServletResponse res;
+        final AsyncContext ctx;
+        int status = HttpServletResponse.SC_OK;
+        int completed;
+
+        Exchange(String query) {
+            params.put("q", query);
+            ClassLoader loader = getClass().getClassLoader();
+            req = (HttpServletRequest) Proxy.newProxyInstance(loader, new Class[]{HttpServletRequest.class}, this);
+            res = (HttpServletResponse) Proxy.newProxyInstance(loader, new Class[]{HttpServletResponse.class}, this);
+            ctx = (AsyncContext) Proxy.newProxyInstance(loader, new Class[]{AsyncContext.class}, this);
+        }
+
+        String getBody() {
+            return body.toString();
+        }
+
+        @Override public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("getParameter".equals(name))
+                return params.get((String) args[0]);
+            if ("startAsync".equals(name))
+                return ctx;
+            if ("getResponse".equals(name))
+                return res;
+            if ("getWriter".equals(name))
+                return new PrintWriter(body);
+            if ("addListener".equals(name))
+                listeners.add((AsyncListener) args[0]);
+            else if ("complete".equals(name))
+                completed++;
+            else if ("setStatus".equals(name))
+                status = (Integer) args[0];
+            else if ("setHeader".equals(name))
+                headers.put((String) args[0], (String) args[1]);
+            else if (method.getReturnType() != void.class)
+                throw new UnsupportedOperationException(name);
+            return null;
+        }
+    }
+}